@@ -3,13 +3,33 @@ package waldonsm.paint;
 import javax.swing.UIManager;
 
 import waldonsm.paint.gui.PaintFrame;
+import waldonsm.paint.metrics.EdtWatchdog;
 
 public class Main {
+	
+	/**
+	 * Classes that are not needed to show the first frame but are needed as soon as the user does anything.  These are
+	 * loaded on a background thread while the frame is being set up, so that the first File or Edit action doesn't stall.
+	 */
+	private static final String[] PRELOAD_CLASSES = {
+		"javax.swing.JFileChooser",
+		"javax.swing.filechooser.FileNameExtensionFilter",
+		"javax.swing.JOptionPane",
+		"javax.imageio.ImageIO",
+		"java.util.zip.ZipFile",
+		"java.io.ObjectInputStream",
+		"java.io.ObjectOutputStream",
+		"waldonsm.paint.gui.GetDimensionsDialog",
+		"waldonsm.paint.gui.SliderDialog",
+		"waldonsm.paint.tools.drawables.PencilDrawable",
+		"waldonsm.paint.tools.drawables.FillRegionDrawable",
+	};
 
 	/**
 	 * @param args
 	 */
 	public static void main(String[] args) {
+		StartupTimer.start();
 		if (System.getProperty("os.name").toLowerCase().contains("windows")) {
 			try {
 				UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -17,11 +37,37 @@ public class Main {
 				System.err.println("Couldn't set up look and feel... sucks for you");
 			}
 		}
+		StartupTimer.mark("look and feel");
+		EdtWatchdog.install();
 //		new ToolRegister().addNewDrawingToolClass("waldonsm.paint.tools.PencilTool");
 //		SetShapeModePanel.testMain();
 		PaintFrame.showPaintFrame();
+		startClassPreloader();
 //		ExceptionUtils.testMain();
 //		OvalTool.testMain();
+//		DrawingTool.testMain();
+	}
+	
+	/**
+	 * Starts a low priority daemon thread that loads the classes in PRELOAD_CLASSES.  The classes are loaded but not
+	 * initialized, so no Swing code is run off the EDT.
+	 */
+	private static void startClassPreloader() {
+		Thread t = new Thread("JavaPaint class preloader") {
+			public void run() {
+				ClassLoader loader = Main.class.getClassLoader();
+				for (String name : PRELOAD_CLASSES) {
+					try {
+						Class.forName(name, false, loader);
+					} catch (Throwable t) {
+						// only an optimization, the class will be loaded when it is needed
+					}
+				}
+			}
+		};
+		t.setDaemon(true);
+		t.setPriority(Thread.MIN_PRIORITY);
+		t.start();
 	}
 
 }
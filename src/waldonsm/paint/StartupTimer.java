@@ -0,0 +1,95 @@
+package waldonsm.paint;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records how long each phase of starting the program takes, from the JVM starting up to the PaintFrame being painted for
+ * the first time. <P>
+ * Timing is only done when the program is run with -Djavapaint.timing=true, otherwise every method returns straight away.
+ * The phases are printed to System.err once the first frame has been painted.
+ * @author Shawn Waldon
+ *
+ */
+public final class StartupTimer {
+
+	/**
+	 * The system property that turns on reporting of startup times to System.err (-Djavapaint.timing=true)
+	 */
+	public static final String TIMING_PROPERTY = "javapaint.timing";
+
+	/**
+	 * The system property that makes the program exit as soon as the first frame has been painted.  This is used to make a
+	 * training run for a class data sharing archive (see the README).
+	 */
+	public static final String EXIT_AFTER_STARTUP_PROPERTY = "javapaint.exitAfterStartup";
+
+	private static final boolean enabled = Boolean.getBoolean(TIMING_PROPERTY);
+	private static final boolean exitAfterStartup = Boolean.getBoolean(EXIT_AFTER_STARTUP_PROPERTY);
+
+	private static final List<String> phases = new ArrayList<String>();
+	private static final List<Long> times = new ArrayList<Long>();
+	private static long last = 0;
+	private static boolean finished = false;
+
+	private StartupTimer() {
+		// static methods only
+	}
+
+	/**
+	 * Returns true if startup times are being recorded
+	 * @return true if startup times are being recorded
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts timing the first phase.  This must be the first thing main does, since the class is otherwise only loaded
+	 * when the first phase ends.
+	 */
+	public static synchronized void start() {
+		last = System.nanoTime();
+	}
+
+	/**
+	 * Marks the end of a startup phase, recording the time since the end of the previous one.
+	 * @param phase a short description of the phase that just finished
+	 */
+	public static synchronized void mark(String phase) {
+		if (!enabled || finished)
+			return;
+		long now = System.nanoTime();
+		phases.add(phase);
+		times.add(now - last);
+		last = now;
+	}
+
+	/**
+	 * Marks the end of startup (the first paint of the frame), printing the recorded phases if timing is enabled and exiting
+	 * if the program was started for a training run.  Only the first call does anything.
+	 */
+	public static synchronized void finish() {
+		if (finished)
+			return;
+		mark("first paint");
+		finished = true;
+		if (enabled) {
+			long total = 0;
+			StringBuilder sb = new StringBuilder("JavaPaint startup:");
+			for (int i = 0; i < phases.size(); i++) {
+				long ms = times.get(i) / 1000000L;
+				total += ms;
+				sb.append("\n  ").append(phases.get(i)).append(": ").append(ms).append(" ms");
+			}
+			sb.append("\n  total since main: ").append(total).append(" ms");
+			long sinceJvmStart = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+			sb.append("\n  total since JVM start: ").append(sinceJvmStart).append(" ms");
+			System.err.println(sb);
+		}
+		if (exitAfterStartup) {
+			System.exit(0);
+		}
+	}
+}
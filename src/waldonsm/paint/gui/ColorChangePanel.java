@@ -49,7 +49,7 @@ public final class ColorChangePanel extends JPanel implements NewModelListener {
 
 	private boolean oddNumColors = false;
 	private final PaintFrame frame;
-	private final SliderDialog dialog;
+	private SliderDialog dialog = null;
 
 	
 	private final ArrayList<Color> colors1 = new ArrayList<Color>();
@@ -62,7 +62,6 @@ public final class ColorChangePanel extends JPanel implements NewModelListener {
 	public ColorChangePanel(PaintFrame frame) {
 		model = null;
 		this.frame = frame;
-		dialog = new SliderDialog(frame, 0, 0, this);
 		frame.addNewModelListener(this);
 		currWidth = DEFAULT_WIDTH;
 		currHeight = DEFAULT_HEIGHT;
@@ -146,6 +145,9 @@ public final class ColorChangePanel extends JPanel implements NewModelListener {
 	 * @param y
 	 */
 	private void showAddColorDialog(int x, int y) {
+		// the dialog is only created the first time it is needed, to keep it out of startup
+		if (dialog == null)
+			dialog = new SliderDialog(frame, x, y, this);
 		dialog.showWithNewCoords(x, y);
 	}
 
@@ -1,6 +1,7 @@
 package waldonsm.paint.gui;
 
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
@@ -13,6 +14,8 @@ import javax.swing.JDialog;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JTextField;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 import waldonsm.utils.ExceptionUtils;
 import waldonsm.utils.builders.GridBagConstraintsBuilder;
@@ -40,6 +43,7 @@ public class GetDimensionsDialog extends JDialog {
 	private boolean hasError = false;
 	private final JLabel errorLabel = new JLabel("Input numbers only please!");
 	private final ActionListener listener;
+	private final boolean shouldResize;
 
 	/**
 	 * Creates a new GetDimensionsDialog on the specified PaintFrame which will either make a new tab, or resize the current tab
@@ -49,11 +53,17 @@ public class GetDimensionsDialog extends JDialog {
 	public GetDimensionsDialog(PaintFrame frame, boolean shouldResize) {
 		super(frame, true);
 		this.frame = frame;
+		this.shouldResize = shouldResize;
 		if (shouldResize)
 			listener = new ResizeCurrentTabListener();
 		else
 			listener = new MakeNewTabListener();
 		init(!shouldResize);
+		if (shouldResize) {
+			PreviewListener preview = new PreviewListener();
+			widthField.getDocument().addDocumentListener(preview);
+			heightField.getDocument().addDocumentListener(preview);
+		}
 	}
 
 	/**
@@ -81,7 +91,8 @@ public class GetDimensionsDialog extends JDialog {
 	}
 
 	/**
-	 * Resets the dialog before it is shown and then calls the superclass's setVisible method
+	 * Resets the dialog before it is shown and then calls the superclass's setVisible method.  A resize dialog previews the
+	 * size in its fields on the current tab while it is showing, and takes the preview away again when it is hidden.
 	 */
 	public void setVisible(boolean b) {
 		if (b) {
@@ -90,10 +101,31 @@ public class GetDimensionsDialog extends JDialog {
 			validate();
 			pack();
 			hasError = false;
+			if (shouldResize)
+				updatePreview(true);
+		} else if (shouldResize) {
+			frame.previewCurrentTabSize(null);
 		}
 		super.setVisible(b);
 	}
 	
+	/**
+	 * Shows the size in the width and height fields on the current tab, if they both hold positive numbers
+	 * @param showing true if the dialog is showing or about to be (nothing is previewed while it is hidden)
+	 */
+	private void updatePreview(boolean showing) {
+		if (!showing)
+			return;
+		try {
+			int width = Integer.parseInt(widthField.getText());
+			int height = Integer.parseInt(heightField.getText());
+			if (width > 0 && height > 0)
+				frame.previewCurrentTabSize(new Dimension(width, height));
+		} catch (NumberFormatException nfe) {
+			// keep showing the last size that made sense until the user finishes typing
+		}
+	}
+	
 	/**
 	 * Sets the value stored in the height and width text fields
 	 * @param height the height to use
@@ -134,6 +166,25 @@ public class GetDimensionsDialog extends JDialog {
 		}
 	}
 	
+	/**
+	 * A listener that previews the size in the width and height fields whenever either of them is edited
+	 * @author Shawn Waldon
+	 *
+	 */
+	private class PreviewListener implements DocumentListener {
+		public void insertUpdate(DocumentEvent e) {
+			updatePreview(isVisible());
+		}
+
+		public void removeUpdate(DocumentEvent e) {
+			updatePreview(isVisible());
+		}
+
+		public void changedUpdate(DocumentEvent e) {
+			updatePreview(isVisible());
+		}
+	}
+	
 	/**
 	 * A listener that resizes the current tab of the PaintFrame
 	 * @author Shawn Waldon
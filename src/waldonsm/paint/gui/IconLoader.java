@@ -0,0 +1,90 @@
+package waldonsm.paint.gui;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+import javax.swing.AbstractButton;
+import javax.swing.Icon;
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+
+/**
+ * Loads the images for the tool and fill mode buttons on a background thread so that the PaintFrame can be shown
+ * before they are decoded. <P>
+ * Buttons are given a blank placeholder icon of the right size straight away and the real icon is set on the EDT
+ * once it has been read.  Decoded icons are cached by file, since several tools share the same fill mode images.
+ * @author Shawn Waldon
+ *
+ */
+final class IconLoader {
+
+	/**
+	 * The size of the placeholder used for tool buttons, the size that tool button images are required to be
+	 */
+	static final int TOOL_ICON_SIZE = 24;
+
+	private static final ExecutorService loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "JavaPaint icon loader");
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		}
+	});
+
+	/**
+	 * Decoded icons by absolute path.  Only touched on the EDT.
+	 */
+	private static final Map<String,Icon> cache = new HashMap<String,Icon>();
+
+	private IconLoader() {
+		// static methods only
+	}
+
+	/**
+	 * Sets the icon of the given button to the image in the given file, decoding the image in the background if it has not
+	 * been loaded before.  Must be called on the EDT.
+	 * @param button the button to set the icon of
+	 * @param f the image file
+	 * @param placeholderSize the width and height of the blank icon to show until the image is loaded, or 0 for no placeholder
+	 */
+	static void loadInto(final AbstractButton button, File f, int placeholderSize) {
+		final String path = f.getAbsolutePath();
+		Icon icon = cache.get(path);
+		if (icon != null) {
+			button.setIcon(icon);
+			return;
+		}
+		if (placeholderSize > 0)
+			button.setIcon(new ImageIcon(new BufferedImage(placeholderSize, placeholderSize, BufferedImage.TYPE_INT_ARGB)));
+		loader.execute(new Runnable() {
+			public void run() {
+				BufferedImage im;
+				try {
+					im = ImageIO.read(new File(path));
+				} catch (Throwable t) {
+					im = null;
+				}
+				final BufferedImage image = im;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if (image == null)
+							return;
+						Icon loaded = cache.get(path);
+						if (loaded == null) {
+							loaded = new ImageIcon(image);
+							cache.put(path, loaded);
+						}
+						button.setIcon(loaded);
+					}
+				});
+			}
+		});
+	}
+}
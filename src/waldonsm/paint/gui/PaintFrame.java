@@ -2,6 +2,10 @@ package waldonsm.paint.gui;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.GridLayout;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
@@ -10,23 +14,38 @@ import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JMenuBar;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JSlider;
 import javax.swing.JTabbedPane;
 import javax.swing.SwingUtilities;
 import javax.swing.WindowConstants;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
 
+import waldonsm.paint.StartupTimer;
 import waldonsm.paint.gui.events.NewModelEvent;
 import waldonsm.paint.gui.listeners.NewModelListener;
+import waldonsm.paint.metrics.EdtWatchdog;
+import waldonsm.paint.model.Autosave;
 import waldonsm.paint.model.PaintModel;
 import waldonsm.paint.model.PaintModelUtils;
+import waldonsm.paint.model.SharedRaster;
 import waldonsm.paint.tools.ToolRegister;
+import waldonsm.paint.tools.drawables.ClearRegionDrawable;
+import waldonsm.paint.tools.drawables.Drawable;
+import waldonsm.paint.tools.drawables.FilterDrawable;
+import waldonsm.paint.tools.drawables.ImageFilters;
+import waldonsm.paint.tools.drawables.PasteDrawable;
 import waldonsm.utils.ExceptionUtils;
 
 /**
@@ -51,11 +70,14 @@ public class PaintFrame extends JFrame {
 	private transient final TabbedPaneListener tabChangeListener = new TabbedPaneListener();
 	private transient final CloseModelListener closeListener = new CloseModelListener();
 	private transient final UndoRedoListener undoListener = new UndoRedoListener();
+	private transient final LayerListener layerListener = new LayerListener();
+	private transient final ClipboardListener clipboardListener = new ClipboardListener();
+	private transient final FilterListener filterListener = new FilterListener();
 	private transient MouseAdapter mouseStatusListener;
 
 	private final JTabbedPane tabbedPane = new JTabbedPane();
-	private final GetDimensionsDialog newModelDialog = new GetDimensionsDialog(this, false);
-	private final GetDimensionsDialog resizeDialog = new GetDimensionsDialog(this, true);
+	private GetDimensionsDialog newModelDialog = null;
+	private GetDimensionsDialog resizeDialog = null;
 	
 	private final ToolRegister tools = new ToolRegister();
 
@@ -76,11 +98,18 @@ public class PaintFrame extends JFrame {
 	 * initializes the GUI of the paintFrame
 	 */
 	private void init() {
+		StartupTimer.mark("frame and tools");
 		addNewModelListener(saveListener);
 		addNewModelListener(undoListener);
+		addNewModelListener(layerListener);
+		addNewModelListener(clipboardListener);
+		addNewModelListener(filterListener);
 		setJMenuBar(createMenuBar());
+		StartupTimer.mark("menu bar");
 		add(new SetShapeAndFillPanel(this), BorderLayout.WEST);
+		StartupTimer.mark("tool panels");
 		add(new StatusBar(this), BorderLayout.SOUTH);
+		StartupTimer.mark("status bar");
 		//		// everything added to this method should go above here
 		tabbedPane.addChangeListener(tabChangeListener);
 		add(tabbedPane, BorderLayout.CENTER);
@@ -88,6 +117,36 @@ public class PaintFrame extends JFrame {
 		tabbedPane.setSize(new Dimension(500,500));
 		addWindowListener(new WindowCloseListener());
 		pack();
+		StartupTimer.mark("layout");
+	}
+	
+	/**
+	 * Returns the dialog used to get the size of new images, creating it the first time it is needed
+	 * @return the dialog for the New menu item
+	 */
+	private GetDimensionsDialog getNewModelDialog() {
+		if (newModelDialog == null)
+			newModelDialog = new GetDimensionsDialog(this, false);
+		return newModelDialog;
+	}
+	
+	/**
+	 * Returns the dialog used to get the new size of the current image, creating it the first time it is needed
+	 * @return the dialog for the Resize menu item
+	 */
+	private GetDimensionsDialog getResizeDialog() {
+		if (resizeDialog == null)
+			resizeDialog = new GetDimensionsDialog(this, true);
+		return resizeDialog;
+	}
+	
+	/**
+	 * Paints the frame, ending the startup timing the first time it is called
+	 */
+	@Override
+	public void paint(Graphics g) {
+		super.paint(g);
+		StartupTimer.finish();
 	}
 
 	/**
@@ -101,7 +160,11 @@ public class PaintFrame extends JFrame {
 		menuBar.addCloseListener(closeListener);
 		menuBar.addExitListener(new ExitListener());
 		menuBar.addUndoRedoListener(undoListener);
+		menuBar.addClipboardListener(clipboardListener);
 		menuBar.addResizeListener(new ResizeListener());
+		menuBar.addLayerListener(layerListener);
+		menuBar.addLayerMenuListener(layerListener);
+		menuBar.addFilterListener(filterListener);
 		menuBar.setCloseButtonEnabled(false);
 		menuBar.setSaveButtonsEnabled(false);
 		return menuBar;
@@ -141,10 +204,19 @@ public class PaintFrame extends JFrame {
 	public static void showPaintFrame() {
 		SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
+				StartupTimer.mark("Swing startup");
 				PaintFrame frame = new PaintFrame();
 				frame.setLocationRelativeTo(null);
 				frame.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
 				frame.setVisible(true);
+				StartupTimer.mark("show frame");
+				frame.offerRecovery();
+				Autosave.start();
+				if (StartupTimer.isEnabled()) {
+					ToolRegister tools = frame.getTools();
+					System.err.println("JavaPaint: " + tools.getDrawingTools().size() + " tools registered in " + (tools.getLoadTimeNanos() / 1000000L)
+							+ " ms (" + tools.getIndexedToolCount() + " checked from the index)");
+				}
 			}
 		});
 	}
@@ -160,7 +232,7 @@ public class PaintFrame extends JFrame {
 		panel.addMouseMotionListener(mouseStatusListener);
 		JScrollPane scrollPane = new JScrollPane(panel);
 		panel.setWrapperScrollPane(scrollPane);
-		tabbedPane.add(panel.getModel().getName(), scrollPane);
+		tabbedPane.addTab(panel.getModel().getName(), panel.getThumbnailIcon(), scrollPane);
 		tabbedPane.setSelectedIndex(tabbedPane.getTabCount() -1);
 	}
 
@@ -175,10 +247,65 @@ public class PaintFrame extends JFrame {
 		panel.addMouseMotionListener(mouseStatusListener);
 		JScrollPane scrollPane = new JScrollPane(panel);
 		panel.setWrapperScrollPane(scrollPane);
-		tabbedPane.add(panel.getModel().getName(), scrollPane);
+		tabbedPane.addTab(panel.getModel().getName(), panel.getThumbnailIcon(), scrollPane);
 		tabbedPane.setSelectedIndex(tabbedPane.getTabCount() -1);
 	}
 
+	/**
+	 * Adds a tab containing a new PaintPanel showing the given model
+	 * @param hardReference the hard reference to the model, such as one recovered from an autosave
+	 */
+	public void addTab(PaintModel hardReference) {
+		PaintPanel panel = new PaintPanel(hardReference, this, tabbedPane);
+		panel.addMouseMotionListener(mouseStatusListener);
+		JScrollPane scrollPane = new JScrollPane(panel);
+		panel.setWrapperScrollPane(scrollPane);
+		PaintModel model = panel.getModel();
+		tabbedPane.addTab((model.hasChanged() ? "*" : "") + model.getName(), panel.getThumbnailIcon(), scrollPane);
+		tabbedPane.setSelectedIndex(tabbedPane.getTabCount() -1);
+	}
+	
+	/**
+	 * Checks for images autosaved by a previous run of the program that did not exit normally, and asks the user whether
+	 * to open them.  The autosaves of reopened images are deleted (they are autosaved again), and the others are only
+	 * deleted if the user confirms discarding them.  Otherwise they are kept until the program next exits normally.
+	 */
+	private void offerRecovery() {
+		List<File> dirs = Autosave.findRecoverable();
+		if (dirs.isEmpty())
+			return;
+		String images = dirs.size() + " unsaved image" + (dirs.size() == 1 ? "" : "s");
+		String[] options = {"Recover", "Not Now", "Discard"};
+		int selection = JOptionPane.showOptionDialog(this, "JavaPaint did not exit normally last time.\nRecover " + images + "?", "Recover Images", JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+		boolean discard = false;
+		if (selection == 2) {
+			discard = JOptionPane.showConfirmDialog(this, "Permanently delete " + images + "?\nThis can't be undone.", "Discard Images", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE) == JOptionPane.YES_OPTION;
+		}
+		for (File dir : dirs) {
+			if (selection == 0) {
+				try {
+					addTab(Autosave.recover(dir));
+					Autosave.discard(dir);
+				} catch (Throwable t) {
+					Autosave.keepUntilExit(dir);
+					JOptionPane.showMessageDialog(this, "There was an error recovering an image:\n" + ExceptionUtils.getStackTraceString(t), "ERROR: " + t.getClass().getName(), JOptionPane.ERROR_MESSAGE);
+				}
+			} else if (discard) {
+				Autosave.discard(dir);
+			} else {
+				Autosave.keepUntilExit(dir);
+			}
+		}
+	}
+	
+	/**
+	 * Exits the program, first deleting the autosaves of the open images since nothing needs to be recovered
+	 */
+	private void exit() {
+		Autosave.discardAll();
+		System.exit(0);
+	}
+
 	/**
 	 * Iterates through the open tabs and finds all the unsaved PaintModels, returning them in an ArrayList
 	 * @return an ArrayList containing all of the unsaved PaintModels
@@ -255,9 +382,21 @@ public class PaintFrame extends JFrame {
 	 * @param height the new height for the PaintModel's image
 	 */
 	public void resizeCurrentTabTo(int width, int height) {
+		EdtWatchdog.noteOperation("resize", null, saveListener.model);
+		previewCurrentTabSize(null);
 		saveListener.model.setSize(width, height);
 	}
 
+	/**
+	 * Shows the current PaintModel as it would look at the given size, without resizing it
+	 * @param size the size to show the current PaintModel at, or null to show it as it is
+	 */
+	public void previewCurrentTabSize(Dimension size) {
+		JScrollPane js = (JScrollPane) tabbedPane.getSelectedComponent();
+		if (js != null)
+			((PaintPanel) js.getViewport().getView()).setResizePreview(size);
+	}
+
 	/**
 	 * A listener to save models to a file
 	 * @author Shawn Waldon
@@ -279,6 +418,7 @@ public class PaintFrame extends JFrame {
 		 */
 		public void actionPerformed(ActionEvent e) {
 			try {
+				EdtWatchdog.noteOperation(e.getActionCommand(), null, model);
 				if (! e.getActionCommand().equals(PaintMenuBar.SAVE_ALL)) {
 					PaintModelUtils.saveModelToFile(model, e.getActionCommand(), PaintFrame.this);
 				} else {
@@ -323,7 +463,7 @@ public class PaintFrame extends JFrame {
 				if (unsavedModels.size() > 0) {
 					int selection = JOptionPane.showOptionDialog(PaintFrame.this, "There are unsaved images.\nExit?", "WARNING: Unsaved Images", JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE, null, new String[] {"Don't Save", "Cancel", "Save"}, "Save");
 					if (selection == 0) { // User selected "Don't Save"
-						System.exit(0);
+						exit();
 					} else if (selection == 1 || selection == JOptionPane.CLOSED_OPTION) { // User selected "Cancel"
 						// DO NOTHING
 					} else if (selection == 2) { // User selected "Save"
@@ -332,13 +472,13 @@ public class PaintFrame extends JFrame {
 							exit &= PaintModelUtils.saveModelToFile(model, "Save", PaintFrame.this);
 						}
 						if (exit) {
-							System.exit(0);
+							exit();
 						}
 					} else {
 						throw new IllegalStateException("HOW THE &*(%*^$)%#$*!!!!!");
 					}
 				} else {
-					System.exit(0);
+					exit();
 				}
 			} catch (Throwable t) {
 				JOptionPane.showMessageDialog(PaintFrame.this, "There was an error:\n" + ExceptionUtils.getStackTraceString(t), "ERROR: " + t.getClass().getName(), JOptionPane.ERROR_MESSAGE);
@@ -358,8 +498,9 @@ public class PaintFrame extends JFrame {
 		public void actionPerformed(ActionEvent e) {
 			try {
 				if (e.getActionCommand().equals(PaintMenuBar.NEW)) {
-					newModelDialog.setVisible(true);
+					getNewModelDialog().setVisible(true);
 				} else if (e.getActionCommand().equals(PaintMenuBar.OPEN)) {
+					EdtWatchdog.noteOperation(PaintMenuBar.OPEN, null, null);
 					PaintModelUtils.openModelFromFiles(PaintFrame.this);
 				}
 			} catch (Throwable t) {
@@ -453,6 +594,7 @@ public class PaintFrame extends JFrame {
 		 * @param command the command, should be either PaintMenuBar.UNDO or PaintMenuBar.REDO
 		 */
 		public void doUndoRedo(String command) {
+			EdtWatchdog.noteOperation(command, null, model);
 			if (command.equals(PaintMenuBar.UNDO)) {
 				if (model != null)
 					model.undoLastAction();
@@ -471,6 +613,219 @@ public class PaintFrame extends JFrame {
 		}
 	}
 	
+	/**
+	 * Adds a final Drawable to the model from a menu, then lets the next mouse press through (finalizeDrawing expects to be
+	 * called by a tool while the mouse is down, and ignores everything until it is released)
+	 * @param model the model to add the Drawable to
+	 * @param d the Drawable
+	 */
+	private void finalizeFromMenu(PaintModel model, Drawable d) {
+		model.finalizeDrawing(d);
+		if (model.getClickCount() == 0)
+			model.setClickCode(PaintModel.NO_CLICKS);
+	}
+	
+	/**
+	 * The listener for Cut, Copy, Paste and Select All.  There is one clipboard for every open model, so what is copied from
+	 * one image can be pasted into another.
+	 * @author Shawn Waldon
+	 *
+	 */
+	private class ClipboardListener implements ActionListener, NewModelListener {
+		
+		private PaintModel model = null;
+		
+		/**
+		 * The pixels last copied or cut, or null if nothing has been
+		 */
+		private SharedRaster clipboard = null;
+		
+		/**
+		 * Copies the selection to the clipboard (and for Cut, fills it with the secondary color), pastes the clipboard at
+		 * the top left corner of the selection (or of the image, if nothing is selected) and selects what was pasted, or
+		 * selects the whole image
+		 */
+		public void actionPerformed(ActionEvent e) {
+			try {
+				String command = e.getActionCommand();
+				EdtWatchdog.noteOperation(command, null, model);
+				if (model == null)
+					return;
+				Rectangle selection = model.getSelection();
+				if (command.equals(PaintMenuBar.SELECT_ALL)) {
+					model.setSelection(new Rectangle(0, 0, model.getWidth(), model.getHeight()));
+				} else if (command.equals(PaintMenuBar.COPY) || command.equals(PaintMenuBar.CUT)) {
+					if (selection == null)
+						return;
+					// nothing is copied until the image changes
+					clipboard = model.shareRegion(selection);
+					if (command.equals(PaintMenuBar.CUT)) {
+						finalizeFromMenu(model, new ClearRegionDrawable(selection, model.getSecondaryColor().getRGB()));
+						model.setSelection(null);
+					}
+				} else if (command.equals(PaintMenuBar.PASTE)) {
+					if (clipboard == null)
+						return;
+					Point at = (selection == null) ? new Point(0, 0) : selection.getLocation();
+					finalizeFromMenu(model, new PasteDrawable(at.x, at.y, clipboard));
+					model.setSelection(new Rectangle(at.x, at.y, clipboard.getWidth(), clipboard.getHeight()));
+				} else throw new IllegalArgumentException("Illegal clipboard command: " + command);
+				repaint();
+			} catch (Throwable t) {
+				JOptionPane.showMessageDialog(PaintFrame.this, "There was an error:\n" + ExceptionUtils.getStackTraceString(t), "ERROR: " + t.getClass().getName(), JOptionPane.ERROR_MESSAGE);
+			}
+		}
+		
+		/**
+		 * Receives new model events and sets the new model
+		 */
+		public void newModel(NewModelEvent e) {
+			model = e.getNewModel();
+		}
+	}
+	
+	/**
+	 * The listener for the Layers menu, which also fills in the list of layers each time the menu is shown
+	 * @author Shawn Waldon
+	 *
+	 */
+	private class LayerListener implements ActionListener, NewModelListener, MenuListener {
+		
+		private PaintModel model = null;
+		
+		/**
+		 * Adds, deletes, shows or hides, or selects a layer, or asks for the opacity of the current layer, depending on the
+		 * action command
+		 */
+		public void actionPerformed(ActionEvent e) {
+			try {
+				String command = e.getActionCommand();
+				EdtWatchdog.noteOperation(command, null, model);
+				if (model == null)
+					return;
+				int current = model.getCurrentLayer();
+				if (command.equals(PaintMenuBar.NEW_LAYER)) {
+					model.addLayer();
+				} else if (command.equals(PaintMenuBar.DELETE_LAYER)) {
+					int selection = JOptionPane.showConfirmDialog(PaintFrame.this, "Delete " + model.getLayerName(current)
+							+ "?\nThis can not be undone.", "Delete Layer", JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE);
+					if (selection == JOptionPane.OK_OPTION)
+						model.removeLayer(current);
+				} else if (command.equals(PaintMenuBar.TOGGLE_LAYER)) {
+					model.setLayerVisible(current, !model.isLayerVisible(current));
+				} else if (command.equals(PaintMenuBar.LAYER_OPACITY)) {
+					String percent = JOptionPane.showInputDialog(PaintFrame.this, "Opacity of " + model.getLayerName(current) + " (0 to 100%):",
+							Integer.toString(Math.round(model.getLayerOpacity(current) * 100)));
+					if (percent != null)
+						model.setLayerOpacity(current, Integer.parseInt(percent.trim()) / 100f);
+				} else if (command.startsWith(PaintMenuBar.SELECT_LAYER)) {
+					model.setCurrentLayer(Integer.parseInt(command.substring(PaintMenuBar.SELECT_LAYER.length())));
+				} else throw new IllegalArgumentException("Illegal layer command: " + command);
+				repaint();
+			} catch (Throwable t) {
+				JOptionPane.showMessageDialog(PaintFrame.this, "There was an error:\n" + ExceptionUtils.getStackTraceString(t), "ERROR: " + t.getClass().getName(), JOptionPane.ERROR_MESSAGE);
+			}
+		}
+		
+		/**
+		 * Lists the model's layers in the menu, marking the hidden ones and the ones that aren't fully opaque
+		 */
+		public void menuSelected(MenuEvent e) {
+			List<String> labels = new ArrayList<String>();
+			if (model != null) {
+				for (int i = 0; i < model.getLayerCount(); i++) {
+					String label = model.getLayerName(i);
+					float opacity = model.getLayerOpacity(i);
+					if (opacity < 1f)
+						label += " (" + Math.round(opacity * 100) + "%)";
+					if (!model.isLayerVisible(i))
+						label += " (hidden)";
+					labels.add(label);
+				}
+			}
+			menuBar.setLayers(labels, model == null ? -1 : model.getCurrentLayer());
+		}
+		
+		public void menuDeselected(MenuEvent e) {
+		}
+		
+		public void menuCanceled(MenuEvent e) {
+		}
+		
+		/**
+		 * Receives new model events and sets the new model
+		 */
+		public void newModel(NewModelEvent e) {
+			model = e.getNewModel();
+		}
+	}
+	
+	/**
+	 * The listener for the Filters menu.  Each filter is run over the selection, or the whole image if nothing is selected,
+	 * and added to the model's history.
+	 * @author Shawn Waldon
+	 *
+	 */
+	private class FilterListener implements ActionListener, NewModelListener {
+		
+		private PaintModel model = null;
+		
+		/**
+		 * Asks for the settings of the filter named by the action command, if it has any, and runs it
+		 */
+		public void actionPerformed(ActionEvent e) {
+			try {
+				String command = e.getActionCommand();
+				EdtWatchdog.noteOperation(command, null, model);
+				if (model == null)
+					return;
+				Rectangle area = model.getSelection();
+				if (area == null)
+					area = new Rectangle(0, 0, model.getWidth(), model.getHeight());
+				FilterDrawable d;
+				if (command.equals(PaintMenuBar.BLUR)) {
+					String radius = JOptionPane.showInputDialog(PaintFrame.this, "Blur radius (1 to " + ImageFilters.MAX_RADIUS + " pixels):", "3");
+					if (radius == null)
+						return;
+					d = new FilterDrawable(FilterDrawable.Filter.BLUR, Integer.parseInt(radius.trim()), 0, area, model);
+				} else if (command.equals(PaintMenuBar.SHARPEN)) {
+					String percent = JOptionPane.showInputDialog(PaintFrame.this, "Sharpen amount (%):", "100");
+					if (percent == null)
+						return;
+					d = new FilterDrawable(FilterDrawable.Filter.SHARPEN, Integer.parseInt(percent.trim()), 0, area, model);
+				} else if (command.equals(PaintMenuBar.INVERT)) {
+					d = new FilterDrawable(FilterDrawable.Filter.INVERT, 0, 0, area, model);
+				} else if (command.equals(PaintMenuBar.GRAYSCALE)) {
+					d = new FilterDrawable(FilterDrawable.Filter.GRAYSCALE, 0, 0, area, model);
+				} else if (command.equals(PaintMenuBar.BRIGHTNESS_CONTRAST)) {
+					JSlider brightness = new JSlider(-100, 100, 0);
+					JSlider contrast = new JSlider(-100, 100, 0);
+					JPanel panel = new JPanel(new GridLayout(2, 2));
+					panel.add(new JLabel("Brightness:"));
+					panel.add(brightness);
+					panel.add(new JLabel("Contrast:"));
+					panel.add(contrast);
+					int selection = JOptionPane.showConfirmDialog(PaintFrame.this, panel, PaintMenuBar.BRIGHTNESS_CONTRAST,
+							JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+					if (selection != JOptionPane.OK_OPTION)
+						return;
+					d = new FilterDrawable(FilterDrawable.Filter.BRIGHTNESS_CONTRAST, brightness.getValue(), contrast.getValue(), area, model);
+				} else throw new IllegalArgumentException("Illegal filter command: " + command);
+				finalizeFromMenu(model, d);
+				repaint();
+			} catch (Throwable t) {
+				JOptionPane.showMessageDialog(PaintFrame.this, "There was an error:\n" + ExceptionUtils.getStackTraceString(t), "ERROR: " + t.getClass().getName(), JOptionPane.ERROR_MESSAGE);
+			}
+		}
+		
+		/**
+		 * Receives new model events and sets the new model
+		 */
+		public void newModel(NewModelEvent e) {
+			model = e.getNewModel();
+		}
+	}
+	
 	/**
 	 * The listener to the Resize button
 	 * @author Shawn Waldon
@@ -481,8 +836,9 @@ public class PaintFrame extends JFrame {
 		public void actionPerformed(ActionEvent e) {
 			try {
 				PaintModel model = saveListener.model;
-				resizeDialog.setDefaults(model.getHeight(), model.getHeight());
-				resizeDialog.setVisible(true);
+				GetDimensionsDialog dialog = getResizeDialog();
+				dialog.setDefaults(model.getHeight(), model.getWidth());
+				dialog.setVisible(true);
 			} catch (Throwable t) {
 				JOptionPane.showMessageDialog(PaintFrame.this, "There was an error:\n" + ExceptionUtils.getStackTraceString(t), "ERROR: " + t.getClass().getName(), JOptionPane.ERROR_MESSAGE);
 			}
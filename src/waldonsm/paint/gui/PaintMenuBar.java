@@ -1,10 +1,15 @@
 package waldonsm.paint.gui;
 
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
 
+import javax.swing.ButtonGroup;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
+import javax.swing.JRadioButtonMenuItem;
+import javax.swing.event.MenuListener;
 
 /**
  * Contains the code for the menu bar of the Paint program.  Allows the menus to be set up, and the ActionListeners to be added later.
@@ -64,11 +69,81 @@ public class PaintMenuBar extends JMenuBar {
 	 */
 	public static final String REDO = "Redo";
 	
+	/**
+	 * Serves as text and action command for the Cut MenuItem
+	 */
+	public static final String CUT = "Cut";
+	
+	/**
+	 * Serves as text and action command for the Copy MenuItem
+	 */
+	public static final String COPY = "Copy";
+	
+	/**
+	 * Serves as text and action command for the Paste MenuItem
+	 */
+	public static final String PASTE = "Paste";
+	
+	/**
+	 * Serves as text and action command for the Select All MenuItem
+	 */
+	public static final String SELECT_ALL = "Select All";
+	
 	/**
 	 * Serves as text and action command for the Resize MenuItem
 	 */
 	public static final String RESIZE = "Resize";
 	
+	/**
+	 * Serves as text and action command for the New Layer MenuItem
+	 */
+	public static final String NEW_LAYER = "New Layer";
+	
+	/**
+	 * Serves as text and action command for the Delete Layer MenuItem
+	 */
+	public static final String DELETE_LAYER = "Delete Layer";
+	
+	/**
+	 * Serves as text and action command for the Show/Hide Layer MenuItem
+	 */
+	public static final String TOGGLE_LAYER = "Show/Hide Layer";
+	
+	/**
+	 * Serves as text and action command for the Layer Opacity MenuItem
+	 */
+	public static final String LAYER_OPACITY = "Layer Opacity...";
+	
+	/**
+	 * The start of the action command of the MenuItem for each layer, followed by the index of the layer
+	 */
+	public static final String SELECT_LAYER = "Select Layer ";
+	
+	/**
+	 * Serves as text and action command for the Blur MenuItem
+	 */
+	public static final String BLUR = "Blur...";
+	
+	/**
+	 * Serves as text and action command for the Sharpen MenuItem
+	 */
+	public static final String SHARPEN = "Sharpen...";
+	
+	/**
+	 * Serves as text and action command for the Invert Colors MenuItem
+	 */
+	public static final String INVERT = "Invert Colors";
+	
+	/**
+	 * Serves as text and action command for the Grayscale MenuItem
+	 */
+	public static final String GRAYSCALE = "Grayscale";
+	
+	/**
+	 * Serves as text and action command for the Brightness/Contrast MenuItem
+	 */
+	public static final String BRIGHTNESS_CONTRAST = "Brightness/Contrast...";
+	
 	/**
 	 * The title for the File menu
 	 */
@@ -78,6 +153,16 @@ public class PaintMenuBar extends JMenuBar {
 	 * The title for the Edit menu
 	 */
 	private static final String EDIT = "Edit";
+	
+	/**
+	 * The title for the Layers menu
+	 */
+	private static final String LAYERS = "Layers";
+	
+	/**
+	 * The title for the Filters menu
+	 */
+	private static final String FILTERS = "Filters";
 
 	/**
 	 * serves to shut up the eclipse warnings
@@ -96,14 +181,43 @@ public class PaintMenuBar extends JMenuBar {
 	
 	private final JMenuItem undoButton = new JMenuItem(UNDO);
 	private final JMenuItem redoButton = new JMenuItem(REDO);
+	private final JMenuItem cutButton = new JMenuItem(CUT);
+	private final JMenuItem copyButton = new JMenuItem(COPY);
+	private final JMenuItem pasteButton = new JMenuItem(PASTE);
+	private final JMenuItem selectAllButton = new JMenuItem(SELECT_ALL);
 	private final JMenuItem resizeButton = new JMenuItem(RESIZE);
 	
+	private final JMenu layersMenu = new JMenu(LAYERS);
+	private final JMenuItem newLayerButton = new JMenuItem(NEW_LAYER);
+	private final JMenuItem deleteLayerButton = new JMenuItem(DELETE_LAYER);
+	private final JMenuItem toggleLayerButton = new JMenuItem(TOGGLE_LAYER);
+	private final JMenuItem layerOpacityButton = new JMenuItem(LAYER_OPACITY);
+	
+	private final JMenu filtersMenu = new JMenu(FILTERS);
+	private final JMenuItem blurButton = new JMenuItem(BLUR);
+	private final JMenuItem sharpenButton = new JMenuItem(SHARPEN);
+	private final JMenuItem invertButton = new JMenuItem(INVERT);
+	private final JMenuItem grayscaleButton = new JMenuItem(GRAYSCALE);
+	private final JMenuItem brightnessContrastButton = new JMenuItem(BRIGHTNESS_CONTRAST);
+	
+	/**
+	 * The listeners added with addLayerListener, which are added to the layer MenuItems each time they are made again
+	 */
+	private final List<ActionListener> layerListeners = new ArrayList<ActionListener>();
+	
+	/**
+	 * The number of items in the Layers menu before the ones for the layers
+	 */
+	private int firstLayerItem;
+	
 	/**
 	 * Creates a new PaintMenuBar and sets up all the menus
 	 */
 	public PaintMenuBar() {
 		fileMenu();
 		editMenu();
+		layersMenu();
+		filtersMenu();
 	}
 	
 	/**
@@ -134,9 +248,64 @@ public class PaintMenuBar extends JMenuBar {
 		editMenu.add(undoButton);
 		editMenu.add(redoButton);
 		editMenu.addSeparator();
+		editMenu.add(cutButton);
+		editMenu.add(copyButton);
+		editMenu.add(pasteButton);
+		editMenu.add(selectAllButton);
+		editMenu.addSeparator();
 		editMenu.add(resizeButton);
 	}
 	
+	/**
+	 * Creates, sets up, and adds the Layers menu.  The MenuItems for the layers themselves are added by setLayers.
+	 */
+	private void layersMenu() {
+		add(layersMenu);
+		layersMenu.add(newLayerButton);
+		layersMenu.add(deleteLayerButton);
+		layersMenu.addSeparator();
+		layersMenu.add(toggleLayerButton);
+		layersMenu.add(layerOpacityButton);
+		layersMenu.addSeparator();
+		firstLayerItem = layersMenu.getMenuComponentCount();
+	}
+	
+	/**
+	 * Creates, sets up, and adds the Filters menu
+	 */
+	private void filtersMenu() {
+		add(filtersMenu);
+		filtersMenu.add(blurButton);
+		filtersMenu.add(sharpenButton);
+		filtersMenu.addSeparator();
+		filtersMenu.add(invertButton);
+		filtersMenu.add(grayscaleButton);
+		filtersMenu.add(brightnessContrastButton);
+	}
+	
+	/**
+	 * Replaces the MenuItems for the layers with one for each of the given layers, listed top layer first, with the current
+	 * layer selected.  Their action command is SELECT_LAYER followed by the index of the layer.
+	 * @param labels the text to show for each layer, bottom layer first
+	 * @param current the index of the current layer
+	 */
+	public void setLayers(List<String> labels, int current) {
+		while (layersMenu.getMenuComponentCount() > firstLayerItem) {
+			layersMenu.remove(firstLayerItem);
+		}
+		ButtonGroup group = new ButtonGroup();
+		for (int i = labels.size() - 1; i >= 0; i--) {
+			JRadioButtonMenuItem item = new JRadioButtonMenuItem(labels.get(i), i == current);
+			item.setActionCommand(SELECT_LAYER + i);
+			for (ActionListener listener : layerListeners) {
+				item.addActionListener(listener);
+			}
+			group.add(item);
+			layersMenu.add(item);
+		}
+		deleteLayerButton.setEnabled(labels.size() > 1);
+	}
+	
 	/**
 	 * Adds the given ActionListener to the New and Open buttons
 	 * @param listener the listener
@@ -182,6 +351,17 @@ public class PaintMenuBar extends JMenuBar {
 		redoButton.addActionListener(listener);
 	}
 	
+	/**
+	 * Adds the given ActionListener to the Cut, Copy, Paste and Select All buttons
+	 * @param listener the listener
+	 */
+	public void addClipboardListener(ActionListener listener) {
+		cutButton.addActionListener(listener);
+		copyButton.addActionListener(listener);
+		pasteButton.addActionListener(listener);
+		selectAllButton.addActionListener(listener);
+	}
+	
 	/**
 	 * Adds the given ActionListener to the Resize button
 	 * @param listener the listener
@@ -190,6 +370,39 @@ public class PaintMenuBar extends JMenuBar {
 		resizeButton.addActionListener(listener);
 	}
 	
+	/**
+	 * Adds the given ActionListener to the buttons of the Layers menu, including the ones for the layers
+	 * @param listener the listener
+	 */
+	public void addLayerListener(ActionListener listener) {
+		layerListeners.add(listener);
+		newLayerButton.addActionListener(listener);
+		deleteLayerButton.addActionListener(listener);
+		toggleLayerButton.addActionListener(listener);
+		layerOpacityButton.addActionListener(listener);
+	}
+	
+	/**
+	 * Adds the given MenuListener to the Layers menu, so the listener can bring the list of layers up to date (with setLayers)
+	 * just before it is shown
+	 * @param listener the listener
+	 */
+	public void addLayerMenuListener(MenuListener listener) {
+		layersMenu.addMenuListener(listener);
+	}
+	
+	/**
+	 * Adds the given ActionListener to the buttons of the Filters menu
+	 * @param listener the listener
+	 */
+	public void addFilterListener(ActionListener listener) {
+		blurButton.addActionListener(listener);
+		sharpenButton.addActionListener(listener);
+		invertButton.addActionListener(listener);
+		grayscaleButton.addActionListener(listener);
+		brightnessContrastButton.addActionListener(listener);
+	}
+	
 	/**
 	 * Enables the Save and Save As buttons if the argument is true, otherwise disables them
 	 * @param b whether or not the Save and Save As buttons should be enabled
@@ -210,5 +423,11 @@ public class PaintMenuBar extends JMenuBar {
 		resizeButton.setEnabled(b);
 		undoButton.setEnabled(b);
 		redoButton.setEnabled(b);
+		cutButton.setEnabled(b);
+		copyButton.setEnabled(b);
+		pasteButton.setEnabled(b);
+		selectAllButton.setEnabled(b);
+		layersMenu.setEnabled(b);
+		filtersMenu.setEnabled(b);
 	}
 }
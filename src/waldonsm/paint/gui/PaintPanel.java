@@ -1,24 +1,34 @@
 package waldonsm.paint.gui;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.geom.AffineTransform;
-import java.awt.image.BufferedImage;
-import java.awt.image.Raster;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
 import java.io.File;
 import java.io.IOException;
 
+import javax.swing.Icon;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
 
+import waldonsm.paint.gui.events.ModelChangeEvent;
 import waldonsm.paint.gui.listeners.ModelChangeListener;
 import waldonsm.paint.gui.listeners.PaintListener;
+import waldonsm.paint.metrics.LatencyHistogram;
+import waldonsm.paint.metrics.Metrics;
+import waldonsm.paint.model.Autosave;
 import waldonsm.paint.model.PaintModel;
 import waldonsm.paint.model.PaintModelUtils;
+import waldonsm.paint.tools.MagnifyingTool;
 
 /**
  * This class is an extension of JPanel that holds and displays a PaintModel
@@ -32,6 +42,13 @@ class PaintPanel extends JPanel implements ModelChangeListener {
 	 */
 	private static final long serialVersionUID = 1L;
 	
+	private static final LatencyHistogram paintTime = Metrics.histogram(Metrics.PAINT);
+	
+	/**
+	 * The dashed line drawn around the resize preview and the selection
+	 */
+	private static final BasicStroke PREVIEW_OUTLINE = new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10, new float[] {4, 4}, 0);
+	
 	/**
 	 * This is the ONLY hard reference to the PaintModelImpl being used and should never be used or passed to any method other than PaintModelUtils.getModelWrapperFromReference()
 	 */
@@ -52,13 +69,22 @@ class PaintPanel extends JPanel implements ModelChangeListener {
 	 */
 	private transient PaintListener listener;
 	
-	private transient BufferedImage scratch;
-	private transient Raster scratchData;
+	private final ZoomRenderer renderer = new ZoomRenderer();
+	
+	/**
+	 * Keeps the thumbnail of the current model that is shown on this panel's tab
+	 */
+	private ThumbnailCache thumbnails = null;
 	
 	private final JTabbedPane tabbedPane;
 	private JScrollPane scrollPaneWrapper = null;
 	private boolean saved = true;
 	
+	/**
+	 * The size the resize dialog is showing the model at, or null if the model is shown as it is
+	 */
+	private Dimension resizePreview = null;
+	
 	/**
 	 * Creates a new PaintPanel with a model of the specified width and height, and optionally a transparent background.
 	 * @param width the width of the model to be created by this PaintPanel
@@ -71,6 +97,7 @@ class PaintPanel extends JPanel implements ModelChangeListener {
 		this.frame = frame;
 		tabbedPane = pane;
 		setCursor(Cursor.getPredefinedCursor(Cursor.CROSSHAIR_CURSOR));
+		addMouseWheelListener(new ZoomWheelListener());
 		if (!fillWhite) {
 			newTransparentModel(width, height);
 		} else {
@@ -91,25 +118,48 @@ class PaintPanel extends JPanel implements ModelChangeListener {
 		this.frame = frame;
 		tabbedPane = pane;
 		setCursor(Cursor.getPredefinedCursor(Cursor.CROSSHAIR_CURSOR));
+		addMouseWheelListener(new ZoomWheelListener());
 		newModelFromFile(f);
 	}
 	
+	/**
+	 * Creates a new PaintPanel showing the given model, such as one recovered from an autosave
+	 * @param hardReference the hard reference to the new model, which must not be kept anywhere else
+	 * @param frame the PaintFrame to fire newModelEvents through
+	 * @param pane the JTabbedPane that this PaintPanel will edit tabs on to show that an image is modified and unsaved.
+	 */
+	public PaintPanel(PaintModel hardReference, PaintFrame frame, JTabbedPane pane) {
+		super();
+		this.frame = frame;
+		tabbedPane = pane;
+		setCursor(Cursor.getPredefinedCursor(Cursor.CROSSHAIR_CURSOR));
+		addMouseWheelListener(new ZoomWheelListener());
+		hardModelReference = hardReference;
+		model = PaintModelUtils.getModelWrapperFromReference(hardReference);
+		listener = new PaintListener(model, frame);
+		model.addModelChangeListener(this);
+		Autosave.register(model);
+		watchThumbnail();
+		addMouseListener(listener);
+		addMouseMotionListener(listener);
+		resizePanel();
+	}
+	
 	/**
 	 * Resizes the panel based on the current dimensions of the image and the scale factor.
 	 */
 	private void resizePanel() {
 		Dimension d = model.getEffectiveSize();
+		if (resizePreview != null) {
+			Dimension p = getPreviewSize();
+			d = new Dimension(Math.max(d.width, p.width), Math.max(d.height, p.height));
+		}
 		int w = (d.width >= 475) ? d.width + 25 : 500;
 		int h = (d.height >= 475) ? d.height + 25 : 500;
 		setSize(w,h);
 		setPreferredSize(new Dimension(w,h));
 		if (scrollPaneWrapper != null)
 			scrollPaneWrapper.validate();
-		d = model.getSize();
-		if (scratch == null || d.width != scratch.getWidth() || d.height != scratch.getHeight()) {
-			scratch = new BufferedImage(d.width, d.height, BufferedImage.TYPE_4BYTE_ABGR);
-			scratchData = scratch.getData();
-		}
 	}
 	
 	/**
@@ -125,6 +175,8 @@ class PaintPanel extends JPanel implements ModelChangeListener {
 		model = PaintModelUtils.getModelWrapperFromReference((PaintModel)hardModelReference);
 		listener = new PaintListener(model, frame);
 		model.addModelChangeListener(this);
+		Autosave.register(model);
+		watchThumbnail();
 		addMouseListener(listener);
 		addMouseMotionListener(listener);
 		resizePanel();
@@ -143,6 +195,8 @@ class PaintPanel extends JPanel implements ModelChangeListener {
 		model = PaintModelUtils.getModelWrapperFromReference((PaintModel)hardModelReference);
 		listener = new PaintListener(model, frame);
 		model.addModelChangeListener(this);
+		Autosave.register(model);
+		watchThumbnail();
 		addMouseListener(listener);
 		addMouseMotionListener(listener);
 		resizePanel();
@@ -162,6 +216,8 @@ class PaintPanel extends JPanel implements ModelChangeListener {
 		model = PaintModelUtils.getModelWrapperFromReference((PaintModel)hardModelReference);
 		listener = new PaintListener(model, frame);
 		model.addModelChangeListener(this);
+		Autosave.register(model);
+		watchThumbnail();
 		addMouseListener(listener);
 		addMouseMotionListener(listener);
 		resizePanel();
@@ -184,26 +240,72 @@ class PaintPanel extends JPanel implements ModelChangeListener {
 	}
 	
 	/**
-	 * Changes the panel's label to add/take off the * to indicate an unsaved model
+	 * Shows the model as it would look resized to the given size, without changing it: whatever would be cropped is hidden
+	 * and whatever would be added is shown filled with the model's background.  Only repaints, so the resize dialog can call
+	 * it every time its numbers change and the model is resized once, when the user is happy with them.
+	 * @param size the size to show the model at, or null to show the model as it is again
+	 */
+	void setResizePreview(Dimension size) {
+		resizePreview = (size == null) ? null : new Dimension(size);
+		resizePanel();
+		repaint();
+	}
+	
+	/**
+	 * Returns the size of the resize preview at the model's scale factor
 	 */
-	public void modelChanged(int code) {
+	private Dimension getPreviewSize() {
+		double scale = model.getScaleFactor();
+		return new Dimension((int) Math.ceil(resizePreview.width * scale), (int) Math.ceil(resizePreview.height * scale));
+	}
+	
+	/**
+	 * Returns an Icon showing a thumbnail of the current model, which keeps itself up to date, for this panel's tab
+	 * @return the thumbnail Icon
+	 */
+	Icon getThumbnailIcon() {
+		return thumbnails.getIcon();
+	}
+	
+	/**
+	 * Starts keeping a thumbnail of the (new) model, replacing the icon on this panel's tab if it already has one
+	 */
+	private void watchThumbnail() {
+		if (thumbnails != null)
+			thumbnails.dispose();
+		thumbnails = new ThumbnailCache(model, tabbedPane);
+		if (scrollPaneWrapper != null) {
+			int index = tabbedPane.indexOfComponent(scrollPaneWrapper);
+			if (index >= 0)
+				tabbedPane.setIconAt(index, thumbnails.getIcon());
+		}
+	}
+	
+	/**
+	 * Changes the panel's label to add/take off the * to indicate an unsaved model, resizes the panel if the model was
+	 * resized or rescaled, and repaints the part of the panel that changed
+	 */
+	public void modelChanged(ModelChangeEvent e) {
+		if (e.has(PaintModel.CODE_MODEL_SIZE_CHANGED) || e.has(PaintModel.CODE_MODEL_RESCALED)) {
+			resizePanel();
+			repaint();
+		} else if (e.has(PaintModel.CODE_MODEL_PREVIEW_CHANGED)) {
+			// the in-progress drawing doesn't say where it is
+			repaint();
+		} else if (e.getDirtyRegion() != null) {
+			Rectangle dirty = e.getDirtyRegion();
+			double scale = model.getScaleFactor();
+			int x = (int) Math.floor(dirty.x * scale);
+			int y = (int) Math.floor(dirty.y * scale);
+			repaint(x, y, (int) Math.ceil((dirty.x + dirty.width) * scale) - x + 1, (int) Math.ceil((dirty.y + dirty.height) * scale) - y + 1);
+		}
 		if (scrollPaneWrapper == null)
 			return;
-		int index = tabbedPane.indexOfComponent(scrollPaneWrapper);
-		if (code == PaintModel.CODE_MODEL_CHANGED) {
-			if (saved) {
-				tabbedPane.setTitleAt(index, "*" + model.getName());
-				saved = false;
-			}
-		} else if (code == PaintModel.CODE_MODEL_SAVED) {
-			if (!saved) {
-				tabbedPane.setTitleAt(index, model.getName());
-				saved = true;
-			}
-		} else if (code == PaintModel.CODE_MODEL_SIZE_CHANGED || code == PaintModel.CODE_MODEL_RESCALED) {
-			resizePanel();
+		if (saved == model.hasChanged()) {
+			// the * only changes when the model goes from saved to changed or back
+			saved = !model.hasChanged();
+			tabbedPane.setTitleAt(tabbedPane.indexOfComponent(scrollPaneWrapper), (saved ? "" : "*") + model.getName());
 		}
-		tabbedPane.repaint();
 	}
 	
 	/**
@@ -211,6 +313,7 @@ class PaintPanel extends JPanel implements ModelChangeListener {
 	 */
 	@Override
 	public void paintComponent(Graphics g) {
+		long start = System.nanoTime();
 		super.paintComponent(g);
 		Graphics2D g2 = (Graphics2D) g;
 		// draw dark gray box
@@ -242,22 +345,46 @@ class PaintPanel extends JPanel implements ModelChangeListener {
 //		if (model.getCurrentDrawing() instanceof LineDrawable)
 //			((LineDrawable) model.getCurrentDrawing()).drawScaled(g2, model.getScaleFactor());
 		
-		// scale the graphics object then draw the images... bingo!
-		if (model.getScaleFactor() != 1) {
-			AffineTransform aff = g2.getTransform();
-			g2.scale(model.getScaleFactor(), model.getScaleFactor());
-
-			scratch.setData(scratchData);
-			g2.drawImage(model.getMainImage(), 0, 0, null);
-			model.getCurrentDrawing().draw(scratch.createGraphics());
-			g2.drawImage(scratch, 0, 0, null);
-
-			g2.setTransform(aff);
-		} else { // the scale factor is one
-			g2.drawImage(model.getMainImage(), 0, 0, null);
-			model.getCurrentDrawing().draw(g2);
+		// scaling the whole image made every paint cost as much as the image is big, so only draw what is in the clip
+		Rectangle clip = g2.getClipBounds();
+		if (clip == null)
+			clip = new Rectangle(getSize());
+		if (resizePreview != null) {
+			Dimension p = getPreviewSize();
+			g2.setColor(Color.DARK_GRAY);
+			g2.fillRect(0, 0, getSize().width, getSize().height);
+			g2.setColor(model.isWhiteBackground() ? Color.WHITE : Color.LIGHT_GRAY);
+			g2.fillRect(0, 0, p.width, p.height);
+			clip = clip.intersection(new Rectangle(p));
+			if (!clip.isEmpty()) {
+				// the in-progress drawing isn't cut off by the renderer's clip
+				Graphics2D cropped = (Graphics2D) g2.create();
+				cropped.clipRect(0, 0, p.width, p.height);
+				renderer.paint(cropped, model, clip);
+				cropped.dispose();
+			}
+			g2.setColor(Color.BLACK);
+			g2.setStroke(PREVIEW_OUTLINE);
+			g2.drawRect(0, 0, p.width, p.height);
+		} else {
+			renderer.paint(g2, model, clip);
 		}
-		// end test
+		Rectangle selection = model.getSelection();
+		if (selection != null) {
+			double scale = model.getScaleFactor();
+			int x = (int) Math.floor(selection.x * scale);
+			int y = (int) Math.floor(selection.y * scale);
+			int w = (int) Math.ceil((selection.x + selection.width) * scale) - x - 1;
+			int h = (int) Math.ceil((selection.y + selection.height) * scale) - y - 1;
+			// black dashes on white, to show up on any image
+			g2.setColor(Color.WHITE);
+			g2.setStroke(new BasicStroke(1));
+			g2.drawRect(x, y, w, h);
+			g2.setColor(Color.BLACK);
+			g2.setStroke(PREVIEW_OUTLINE);
+			g2.drawRect(x, y, w, h);
+		}
+		paintTime.recordSince(start);
 	}
 	
 	// unneeded with new changes
@@ -281,10 +408,45 @@ class PaintPanel extends JPanel implements ModelChangeListener {
 		return model;
 	}
 	
+	/**
+	 * Zooms in or out a step when the wheel is turned with Control held down, keeping the image pixel under the mouse where it
+	 * is.  Without Control, the event is passed on to the JScrollPane so that the wheel still scrolls.
+	 * @author Shawn Waldon
+	 *
+	 */
+	private final class ZoomWheelListener implements MouseWheelListener {
+		public void mouseWheelMoved(MouseWheelEvent e) {
+			if (!e.isControlDown()) {
+				if (scrollPaneWrapper != null)
+					scrollPaneWrapper.dispatchEvent(SwingUtilities.convertMouseEvent(PaintPanel.this, e, scrollPaneWrapper));
+				return;
+			}
+			double scale = model.getScaleFactor();
+			double next = e.getWheelRotation() < 0 ? MagnifyingTool.getNextZoomIn(scale) : MagnifyingTool.getNextZoomOut(scale);
+			if (next == scale)
+				return;
+			model.setScaleFactor(next);
+			// the model tells the panel about the new scale at the end of this turn, but the new size is needed now
+			resizePanel();
+			if (scrollPaneWrapper != null) {
+				JViewport viewport = scrollPaneWrapper.getViewport();
+				Point view = viewport.getViewPosition();
+				Dimension extent = viewport.getExtentSize();
+				int x = (int) Math.round(e.getX() / scale * next) - (e.getX() - view.x);
+				int y = (int) Math.round(e.getY() / scale * next) - (e.getY() - view.y);
+				x = Math.max(0, Math.min(x, getWidth() - extent.width));
+				y = Math.max(0, Math.min(y, getHeight() - extent.height));
+				viewport.setViewPosition(new Point(x, y));
+			}
+		}
+	}
+	
 	/**
 	 * Sets the model hard reference to null, allowing the model to be garbage collected.
 	 */
 	public void closeModel() {
+		Autosave.unregister(model);
+		thumbnails.dispose();
 		hardModelReference = null;
 	}
 
@@ -11,7 +11,6 @@ import java.util.HashMap;
 import java.util.List;
 
 import javax.swing.BorderFactory;
-import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
@@ -99,7 +98,8 @@ public class SetFillModePanel extends JPanel implements NewModelListener {
 //					} catch (Exception e) {
 //						
 //					}
-					JButton button = new JButton(new ImageIcon(fileList.get(i).getAbsolutePath()));
+					JButton button = new JButton();
+					IconLoader.loadInto(button, fileList.get(i), 0);
 					button.setActionCommand("" + i);
 					button.addActionListener(listener);
 					buttonsList.add(button);
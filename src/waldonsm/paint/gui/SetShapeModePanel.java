@@ -6,11 +6,11 @@ import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
 import java.util.Collection;
 import java.util.HashMap;
 
 import javax.swing.BorderFactory;
-import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
@@ -60,7 +60,8 @@ public class SetShapeModePanel extends JPanel implements NewModelListener {
 		JButton select = null;
 		
 		for (DrawingTool tool : tools) {
-			JButton button = new JButton(new ImageIcon(tool.getButtonImageFileName()));
+			JButton button = new JButton();
+			IconLoader.loadInto(button, new File(tool.getButtonImageFileName()), IconLoader.TOOL_ICON_SIZE);
 			button.setActionCommand("" + (tool.getToolName().hashCode() + tool.getOffset()));
 			button.addActionListener(listener);
 			add(button, builder.setLocation(btnCount%2, btnCount/2).build());
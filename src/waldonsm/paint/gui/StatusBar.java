@@ -1,11 +1,23 @@
 package waldonsm.paint.gui;
 
 import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JToggleButton;
+import javax.swing.Timer;
+
+import waldonsm.paint.gui.events.ModelChangeEvent;
+import waldonsm.paint.gui.events.NewModelEvent;
+import waldonsm.paint.gui.listeners.ModelChangeListener;
+import waldonsm.paint.gui.listeners.NewModelListener;
+import waldonsm.paint.metrics.Metrics;
+import waldonsm.paint.model.PaintModel;
 
 /**
  * The panel that will be along the bottom of the PaintFrame GUI with the ColorChangePanel and status.
@@ -21,6 +33,21 @@ public final class StatusBar extends JPanel {
 	
 	private final ColorChangePanel colorPanel;
 	private final JLabel mouseLocation = new JLabel();
+	private final JLabel metricsLabel = new JLabel();
+	private final JLabel historyLabel = new JLabel();
+	private final JToggleButton metricsButton = new JToggleButton("Stats");
+	
+	/**
+	 * How often the metrics overlay is refreshed while it is shown, in milliseconds
+	 */
+	private static final int METRICS_REFRESH_MS = 500;
+	
+	/**
+	 * The metrics shown in the overlay, as median/99th percentile times
+	 */
+	private static final String[] OVERLAY_METRICS = { Metrics.PAINT, Metrics.FINALIZE, Metrics.REPLAY, Metrics.FILL, Metrics.SAVE };
+	
+	private final Timer metricsTimer;
 	
 	/**
 	 * Creates a new StatusBar that will be attached to the given PaintFrame
@@ -31,7 +58,105 @@ public final class StatusBar extends JPanel {
 		frame.setMouseStatusListener(new MouseTracker());
 		colorPanel = new ColorChangePanel(frame);
 		add(colorPanel, BorderLayout.WEST);
-		add(mouseLocation, BorderLayout.EAST);
+		JPanel eastPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+		eastPanel.add(metricsLabel);
+		eastPanel.add(metricsButton);
+		eastPanel.add(historyLabel);
+		eastPanel.add(mouseLocation);
+		add(eastPanel, BorderLayout.EAST);
+		historyLabel.setToolTipText("Memory used by the undo history of this image");
+		frame.addNewModelListener(new HistoryTracker());
+		metricsTimer = new Timer(METRICS_REFRESH_MS, new MetricsUpdater());
+		metricsButton.setToolTipText("Show paint, replay, fill and save times (median/99th percentile)");
+		metricsButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (metricsButton.isSelected()) {
+					metricsTimer.start();
+					updateMetrics();
+				} else {
+					metricsTimer.stop();
+					metricsLabel.setText("");
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Sets the text of the metrics overlay to the current summaries of the metrics
+	 */
+	private void updateMetrics() {
+		StringBuilder sb = new StringBuilder();
+		for (String name : OVERLAY_METRICS) {
+			String s = Metrics.summarize(name);
+			if (s.length() > 0) {
+				if (sb.length() > 0)
+					sb.append("   ");
+				sb.append(s);
+			}
+		}
+		metricsLabel.setText(sb.toString());
+	}
+	
+	/**
+	 * Refreshes the metrics overlay each time the timer fires
+	 * @author Shawn Waldon
+	 *
+	 */
+	private class MetricsUpdater implements ActionListener {
+		public void actionPerformed(ActionEvent e) {
+			updateMetrics();
+		}
+	}
+	
+	/**
+	 * Keeps the history label showing the memory used by the current model's undo history, updating it whenever the model
+	 * changes
+	 * @author Shawn Waldon
+	 *
+	 */
+	private class HistoryTracker implements NewModelListener, ModelChangeListener {
+		
+		private PaintModel model = null;
+		
+		/**
+		 * Moves the listener from the old model to the new one
+		 */
+		public void newModel(NewModelEvent e) {
+			if (model != null) {
+				try {
+					model.removeModelChangeListener(this);
+				} catch (RuntimeException re) {
+					// the old model has been closed
+				}
+			}
+			model = e.getNewModel();
+			if (model != null)
+				model.addModelChangeListener(this);
+			updateHistory();
+		}
+		
+		public void modelChanged(ModelChangeEvent e) {
+			// the history changes when Drawables are added or removed (or flattened when one is added), and when the history
+			// of an opened file has finished loading, which is only reported as a change to the model
+			if (!e.getAddedDrawables().isEmpty() || !e.getRemovedDrawables().isEmpty() || e.has(PaintModel.CODE_MODEL_CHANGED))
+				updateHistory();
+		}
+		
+		/**
+		 * Sets the text of the history label, like "History 12.5 MB (300 on disk)"
+		 */
+		private void updateHistory() {
+			if (model == null) {
+				historyLabel.setText("");
+				return;
+			}
+			long tenths = (model.getHistoryMemoryUsage() * 10 + 512 * 1024) / (1024 * 1024);
+			String text = "History " + (tenths / 10) + "." + (tenths % 10) + " MB";
+			int spilled = model.getSpilledDrawableCount();
+			if (spilled > 0)
+				text += " (" + spilled + " on disk)";
+			historyLabel.setText(text);
+		}
 	}
 	
 	/**
@@ -0,0 +1,247 @@
+package waldonsm.paint.gui;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+
+import javax.swing.Icon;
+import javax.swing.Timer;
+
+import waldonsm.paint.gui.events.ModelChangeEvent;
+import waldonsm.paint.gui.listeners.ModelChangeListener;
+import waldonsm.paint.metrics.LatencyHistogram;
+import waldonsm.paint.metrics.Metrics;
+import waldonsm.paint.model.PaintModel;
+
+/**
+ * Keeps a small copy of a PaintModel's image, for the icon of its tab (and anything else that wants an overview of the
+ * image). <P>
+ * Each pixel of the thumbnail is the (alpha weighted) average of the block of image pixels it covers.  When the model
+ * changes, only the blocks in the tiles whose PaintModel.getTileVersion has changed are averaged again, so drawing a
+ * line on a huge image costs about as much as the line covers rather than a rescale of the whole image.  Changes are
+ * collected for UPDATE_DELAY milliseconds before the thumbnail is updated, so a burst of changes updates it once.
+ * @author Shawn Waldon
+ *
+ */
+final class ThumbnailCache implements ModelChangeListener {
+
+	/**
+	 * The longest side of the thumbnail, in pixels
+	 */
+	static final int THUMBNAIL_SIZE = 96;
+
+	/**
+	 * The width and height of the tab icon
+	 */
+	private static final int ICON_SIZE = 24;
+
+	private static final int UPDATE_DELAY = 250;
+
+	private static final LatencyHistogram updateTime = Metrics.histogram("thumbnail.update");
+
+	private final PaintModel model;
+	private final Component toRepaint;
+	private final Timer updateTimer;
+	private final Icon icon = new ThumbnailIcon();
+
+	/**
+	 * The image the thumbnail was made from, so that a new image (after a resize) is noticed
+	 */
+	private BufferedImage source = null;
+	private BufferedImage thumbnail = null;
+	private long[] tileVersions;
+	private int tilesAcross, tilesDown;
+
+	/**
+	 * Creates a new ThumbnailCache for the given model, and starts listening to it for changes
+	 * @param model the model to keep a thumbnail of
+	 * @param toRepaint the Component showing the thumbnail, repainted whenever it is updated
+	 */
+	ThumbnailCache(PaintModel model, Component toRepaint) {
+		this.model = model;
+		this.toRepaint = toRepaint;
+		updateTimer = new Timer(UPDATE_DELAY, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				update();
+				ThumbnailCache.this.toRepaint.repaint();
+			}
+		});
+		updateTimer.setRepeats(false);
+		model.addModelChangeListener(this);
+		update();
+	}
+
+	/**
+	 * Stops listening to the model
+	 */
+	void dispose() {
+		updateTimer.stop();
+		model.removeModelChangeListener(this);
+	}
+
+	/**
+	 * Returns the thumbnail, which is no bigger than THUMBNAIL_SIZE on either side
+	 * @return the thumbnail, a TYPE_INT_ARGB image
+	 */
+	BufferedImage getThumbnail() {
+		return thumbnail;
+	}
+
+	/**
+	 * Returns an Icon showing the thumbnail, for the model's tab
+	 * @return an Icon showing the thumbnail
+	 */
+	Icon getIcon() {
+		return icon;
+	}
+
+	/**
+	 * Schedules an update of the thumbnail when the model's image has changed
+	 */
+	public void modelChanged(ModelChangeEvent e) {
+		if (e.getDirtyRegion() != null || e.has(PaintModel.CODE_MODEL_SIZE_CHANGED)) {
+			if (!updateTimer.isRunning())
+				updateTimer.start();
+		}
+	}
+
+	/**
+	 * Brings the thumbnail up to date with the model's image, averaging again only the blocks in the tiles that changed
+	 */
+	void update() {
+		long start = System.nanoTime();
+		BufferedImage image = model.getCompositeImage();
+		int w = image.getWidth();
+		int h = image.getHeight();
+		if (image != source || thumbnail == null) {
+			source = image;
+			double k = Math.min(1.0, (double) THUMBNAIL_SIZE / Math.max(w, h));
+			thumbnail = new BufferedImage(Math.max(1, (int) Math.round(w * k)), Math.max(1, (int) Math.round(h * k)), BufferedImage.TYPE_INT_ARGB);
+			tilesAcross = (w + PaintModel.TILE_SIZE - 1) / PaintModel.TILE_SIZE;
+			tilesDown = (h + PaintModel.TILE_SIZE - 1) / PaintModel.TILE_SIZE;
+			tileVersions = new long[tilesAcross * tilesDown];
+			for (int ty = 0; ty < tilesDown; ty++) {
+				for (int tx = 0; tx < tilesAcross; tx++) {
+					tileVersions[ty * tilesAcross + tx] = model.getTileVersion(tx, ty);
+				}
+			}
+			averageBlocks(0, 0, thumbnail.getWidth(), thumbnail.getHeight());
+			updateTime.recordSince(start);
+			return;
+		}
+		int tw = thumbnail.getWidth();
+		int th = thumbnail.getHeight();
+		boolean changed = false;
+		for (int ty = 0; ty < tilesDown; ty++) {
+			for (int tx = 0; tx < tilesAcross; tx++) {
+				long version = model.getTileVersion(tx, ty);
+				if (version == tileVersions[ty * tilesAcross + tx])
+					continue;
+				tileVersions[ty * tilesAcross + tx] = version;
+				int x0 = tx * PaintModel.TILE_SIZE;
+				int y0 = ty * PaintModel.TILE_SIZE;
+				int x1 = Math.min(w, x0 + PaintModel.TILE_SIZE);
+				int y1 = Math.min(h, y0 + PaintModel.TILE_SIZE);
+				// the thumbnail pixels whose blocks overlap the tile, with one to spare on each side for rounding
+				averageBlocks(Math.max(0, x0 * tw / w - 1), Math.max(0, y0 * th / h - 1),
+						Math.min(tw, (x1 - 1) * tw / w + 2), Math.min(th, (y1 - 1) * th / h + 2));
+				changed = true;
+			}
+		}
+		if (changed)
+			updateTime.recordSince(start);
+	}
+
+	/**
+	 * Sets each thumbnail pixel in the given rectangle to the average of the block of image pixels it covers
+	 */
+	private void averageBlocks(int px0, int py0, int px1, int py1) {
+		int w = source.getWidth();
+		int h = source.getHeight();
+		int tw = thumbnail.getWidth();
+		int th = thumbnail.getHeight();
+		int[] out = ((DataBufferInt) thumbnail.getRaster().getDataBuffer()).getData();
+		boolean abgr = source.getType() == BufferedImage.TYPE_4BYTE_ABGR;
+		byte[] data = abgr ? ((DataBufferByte) source.getRaster().getDataBuffer()).getData() : null;
+		for (int py = py0; py < py1; py++) {
+			int sy0 = (int) ((long) py * h / th);
+			int sy1 = Math.max(sy0 + 1, (int) ((long) (py + 1) * h / th));
+			for (int px = px0; px < px1; px++) {
+				int sx0 = (int) ((long) px * w / tw);
+				int sx1 = Math.max(sx0 + 1, (int) ((long) (px + 1) * w / tw));
+				long a = 0, r = 0, g = 0, b = 0;
+				for (int sy = sy0; sy < sy1; sy++) {
+					for (int sx = sx0; sx < sx1; sx++) {
+						int pa, pr, pg, pb;
+						if (abgr) {
+							int idx = (sy * w + sx) * 4;
+							pa = data[idx] & 0xff;
+							pb = data[idx + 1] & 0xff;
+							pg = data[idx + 2] & 0xff;
+							pr = data[idx + 3] & 0xff;
+						} else {
+							int argb = source.getRGB(sx, sy);
+							pa = argb >>> 24;
+							pr = (argb >> 16) & 0xff;
+							pg = (argb >> 8) & 0xff;
+							pb = argb & 0xff;
+						}
+						a += pa;
+						r += pr * pa;
+						g += pg * pa;
+						b += pb * pa;
+					}
+				}
+				int count = (sy1 - sy0) * (sx1 - sx0);
+				if (a == 0) {
+					out[py * tw + px] = 0;
+				} else {
+					out[py * tw + px] = (int) ((a + count / 2) / count) << 24 | (int) ((r + a / 2) / a) << 16
+							| (int) ((g + a / 2) / a) << 8 | (int) ((b + a / 2) / a);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Draws the thumbnail scaled to fit an ICON_SIZE square
+	 * @author Shawn Waldon
+	 *
+	 */
+	private final class ThumbnailIcon implements Icon {
+
+		public int getIconWidth() {
+			return ICON_SIZE;
+		}
+
+		public int getIconHeight() {
+			return ICON_SIZE;
+		}
+
+		public void paintIcon(Component c, Graphics g, int x, int y) {
+			BufferedImage t = thumbnail;
+			if (t == null)
+				return;
+			double k = Math.min((double) ICON_SIZE / t.getWidth(), (double) ICON_SIZE / t.getHeight());
+			int iw = Math.max(1, (int) Math.round(t.getWidth() * k));
+			int ih = Math.max(1, (int) Math.round(t.getHeight() * k));
+			int ix = x + (ICON_SIZE - iw) / 2;
+			int iy = y + (ICON_SIZE - ih) / 2;
+			Graphics2D g2 = (Graphics2D) g.create();
+			g2.setColor(Color.LIGHT_GRAY);
+			g2.fillRect(ix, iy, iw, ih);
+			g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g2.drawImage(t, ix, iy, iw, ih, null);
+			g2.setColor(Color.DARK_GRAY);
+			g2.drawRect(ix - 1, iy - 1, iw + 1, ih + 1);
+			g2.dispose();
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package waldonsm.paint.gui;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+
+import waldonsm.paint.model.PaintModel;
+import waldonsm.paint.tools.drawables.Drawable;
+
+/**
+ * Draws a PaintModel's image and its current Drawable at the model's scale factor, for a PaintPanel. <P>
+ * Only the part of the image inside the clip is ever looked at.  Zoomed in, that part is scaled up with nearest neighbour
+ * sampling.  Zoomed out, it is drawn from copies of the image at 1/2, 1/4, 1/8... of its size (mip levels), which are
+ * made the first time they are needed and after that only updated in the tiles whose PaintModel.getTileVersion has
+ * changed, so zooming and scrolling around a very large image does not touch every pixel of it on every paint.
+ * @author Shawn Waldon
+ *
+ */
+final class ZoomRenderer {
+
+	/**
+	 * The deepest mip level kept, 1/64 of the size of the image (PaintModel.MIN_SCALE_FACTOR)
+	 */
+	private static final int MAX_LEVEL = 6;
+
+	/**
+	 * The image that the mip levels were made from
+	 */
+	private BufferedImage source = null;
+
+	/**
+	 * The mip levels made so far, level n (1/2^n of the size of the image) at index n - 1
+	 */
+	private final List<BufferedImage> levels = new ArrayList<BufferedImage>();
+
+	/**
+	 * The version of each tile of the source when the mip levels were last updated
+	 */
+	private long[] tileVersions;
+	private int tilesAcross, tilesDown;
+
+	/**
+	 * Where the current Drawable is drawn before it is scaled up, reused between paints
+	 */
+	private BufferedImage scratch = null;
+
+	/**
+	 * Draws the part of the model's image (and current Drawable) that is inside the clip
+	 * @param g the Graphics2D of the PaintPanel
+	 * @param model the model to draw
+	 * @param clip the part of the panel to draw, in panel coordinates
+	 */
+	void paint(Graphics2D g, PaintModel model, Rectangle clip) {
+		BufferedImage image = model.getCompositeImage();
+		double scale = model.getScaleFactor();
+		int w = image.getWidth();
+		int h = image.getHeight();
+		Rectangle dest = clip.intersection(new Rectangle(0, 0, (int) Math.ceil(w * scale), (int) Math.ceil(h * scale)));
+		if (dest.isEmpty())
+			return;
+		// the source pixels that show up in the clip
+		int sx0 = (int) Math.floor(dest.x / scale);
+		int sy0 = (int) Math.floor(dest.y / scale);
+		int sx1 = Math.min(w, (int) Math.ceil((dest.x + dest.width) / scale));
+		int sy1 = Math.min(h, (int) Math.ceil((dest.y + dest.height) / scale));
+		Object oldInterpolation = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+		Drawable current = model.getCurrentDrawing();
+		if (scale == 1) {
+			g.drawImage(image, sx0, sy0, sx1, sy1, sx0, sy0, sx1, sy1, null);
+			current.draw(g);
+		} else if (scale > 1) {
+			drawScaled(g, image, sx0, sy0, sx1, sy1, scale);
+			if (current != Drawable.NOTHING)
+				drawCurrentScaled(g, current, sx0, sy0, sx1, sy1, scale);
+		} else {
+			int level = Math.min(MAX_LEVEL, (int) Math.floor(Math.log(1 / scale) / Math.log(2) + 1e-9));
+			BufferedImage mip = level == 0 ? image : getLevel(model, image, level);
+			int f = 1 << level;
+			drawScaled(g, mip, sx0 / f, sy0 / f, Math.min(mip.getWidth(), (sx1 + f - 1) / f),
+					Math.min(mip.getHeight(), (sy1 + f - 1) / f), scale * f);
+			if (current != Drawable.NOTHING) {
+				// too small to see the difference from drawing the Drawable at full size and scaling it down
+				AffineTransform aff = g.getTransform();
+				g.scale(scale, scale);
+				current.draw(g);
+				g.setTransform(aff);
+			}
+		}
+		if (oldInterpolation != null)
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, oldInterpolation);
+	}
+
+	/**
+	 * Draws the given source rectangle of the image at the given scale, where it would be if the whole image were drawn
+	 */
+	private static void drawScaled(Graphics2D g, BufferedImage image, int sx0, int sy0, int sx1, int sy1, double scale) {
+		g.drawImage(image, (int) Math.floor(sx0 * scale), (int) Math.floor(sy0 * scale), (int) Math.floor(sx1 * scale),
+				(int) Math.floor(sy1 * scale), sx0, sy0, sx1, sy1, null);
+	}
+
+	/**
+	 * Draws the current Drawable at full size into the scratch image (covering only the given source rectangle), then
+	 * scales that up like the image, so that it lines up with the image pixel for pixel
+	 */
+	private void drawCurrentScaled(Graphics2D g, Drawable current, int sx0, int sy0, int sx1, int sy1, double scale) {
+		int sw = sx1 - sx0;
+		int sh = sy1 - sy0;
+		if (scratch == null || scratch.getWidth() < sw || scratch.getHeight() < sh) {
+			int cw = scratch == null ? sw : Math.max(sw, scratch.getWidth());
+			int ch = scratch == null ? sh : Math.max(sh, scratch.getHeight());
+			scratch = new BufferedImage(cw, ch, BufferedImage.TYPE_INT_ARGB);
+		}
+		Graphics2D sg = scratch.createGraphics();
+		sg.setComposite(AlphaComposite.Clear);
+		sg.fillRect(0, 0, sw, sh);
+		sg.setComposite(AlphaComposite.SrcOver);
+		sg.translate(-sx0, -sy0);
+		current.draw(sg);
+		sg.dispose();
+		g.drawImage(scratch, (int) Math.floor(sx0 * scale), (int) Math.floor(sy0 * scale), (int) Math.floor(sx1 * scale),
+				(int) Math.floor(sy1 * scale), 0, 0, sw, sh, null);
+	}
+
+	/**
+	 * Returns the given mip level of the image, bringing the levels already made up to date with the tiles of the image that
+	 * have changed and making any missing levels from the one above
+	 */
+	private BufferedImage getLevel(PaintModel model, BufferedImage image, int level) {
+		if (image != source) {
+			// a new image (or the model was resized), start over
+			source = image;
+			levels.clear();
+		}
+		if (levels.isEmpty()) {
+			tilesAcross = (image.getWidth() + PaintModel.TILE_SIZE - 1) / PaintModel.TILE_SIZE;
+			tilesDown = (image.getHeight() + PaintModel.TILE_SIZE - 1) / PaintModel.TILE_SIZE;
+			tileVersions = new long[tilesAcross * tilesDown];
+			for (int ty = 0; ty < tilesDown; ty++) {
+				for (int tx = 0; tx < tilesAcross; tx++) {
+					tileVersions[ty * tilesAcross + tx] = model.getTileVersion(tx, ty);
+				}
+			}
+		} else {
+			updateChangedTiles(model);
+		}
+		while (levels.size() < level) {
+			BufferedImage from = levels.isEmpty() ? image : levels.get(levels.size() - 1);
+			BufferedImage to = new BufferedImage((from.getWidth() + 1) / 2, (from.getHeight() + 1) / 2, BufferedImage.TYPE_INT_ARGB);
+			downsample(from, to, 0, 0, to.getWidth(), to.getHeight());
+			levels.add(to);
+		}
+		return levels.get(level - 1);
+	}
+
+	/**
+	 * Redoes every mip level in the tiles of the image that have changed since the last update, level by level so that each
+	 * level is made from an up to date one
+	 */
+	private void updateChangedTiles(PaintModel model) {
+		int tile = PaintModel.TILE_SIZE;
+		for (int ty = 0; ty < tilesDown; ty++) {
+			for (int tx = 0; tx < tilesAcross; tx++) {
+				long version = model.getTileVersion(tx, ty);
+				if (version == tileVersions[ty * tilesAcross + tx])
+					continue;
+				tileVersions[ty * tilesAcross + tx] = version;
+				int x0 = tx * tile;
+				int y0 = ty * tile;
+				int x1 = Math.min(source.getWidth(), x0 + tile);
+				int y1 = Math.min(source.getHeight(), y0 + tile);
+				BufferedImage from = source;
+				for (BufferedImage to : levels) {
+					x0 >>= 1;
+					y0 >>= 1;
+					x1 = (x1 + 1) >> 1;
+					y1 = (y1 + 1) >> 1;
+					downsample(from, to, x0, y0, x1, y1);
+					from = to;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Makes the given rectangle of an image at half the size of another, each pixel the average of the 2x2 block of pixels
+	 * it covers (weighted by their alpha, so that transparent pixels do not darken their neighbours)
+	 * @param from the larger image, TYPE_4BYTE_ABGR or TYPE_INT_ARGB for speed
+	 * @param to the smaller TYPE_INT_ARGB image
+	 */
+	private static void downsample(BufferedImage from, BufferedImage to, int x0, int y0, int x1, int y1) {
+		int fw = from.getWidth();
+		int fh = from.getHeight();
+		int tw = to.getWidth();
+		int[] out = ((DataBufferInt) to.getRaster().getDataBuffer()).getData();
+		int xs = 2 * x0;
+		int n = Math.min(fw, 2 * x1) - xs;
+		int[] row0 = new int[n];
+		int[] row1 = new int[n];
+		for (int y = y0; y < y1; y++) {
+			readRow(from, 2 * y, xs, n, row0);
+			readRow(from, Math.min(2 * y + 1, fh - 1), xs, n, row1);
+			for (int x = x0; x < x1; x++) {
+				int i = 2 * x - xs;
+				int j = Math.min(i + 1, n - 1);
+				out[y * tw + x] = average(row0[i], row0[j], row1[i], row1[j]);
+			}
+		}
+	}
+
+	/**
+	 * Reads n pixels of a row of the image, starting at x, as ARGB ints
+	 */
+	private static void readRow(BufferedImage image, int y, int x, int n, int[] into) {
+		if (image.getType() == BufferedImage.TYPE_4BYTE_ABGR) {
+			byte[] abgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+			int idx = (y * image.getWidth() + x) * 4;
+			for (int i = 0; i < n; i++, idx += 4) {
+				into[i] = ((abgr[idx] & 0xff) << 24) | ((abgr[idx + 3] & 0xff) << 16) | ((abgr[idx + 2] & 0xff) << 8) | (abgr[idx + 1] & 0xff);
+			}
+		} else if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+			int[] argb = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			System.arraycopy(argb, y * image.getWidth() + x, into, 0, n);
+		} else {
+			image.getRGB(x, y, n, 1, into, 0, n);
+		}
+	}
+
+	/**
+	 * Returns the alpha weighted average of four ARGB pixels
+	 */
+	private static int average(int p, int q, int r, int s) {
+		int pa = p >>> 24, qa = q >>> 24, ra = r >>> 24, sa = s >>> 24;
+		int a = pa + qa + ra + sa;
+		if (a == 0)
+			return 0;
+		int red = ((p >> 16) & 0xff) * pa + ((q >> 16) & 0xff) * qa + ((r >> 16) & 0xff) * ra + ((s >> 16) & 0xff) * sa;
+		int green = ((p >> 8) & 0xff) * pa + ((q >> 8) & 0xff) * qa + ((r >> 8) & 0xff) * ra + ((s >> 8) & 0xff) * sa;
+		int blue = (p & 0xff) * pa + (q & 0xff) * qa + (r & 0xff) * ra + (s & 0xff) * sa;
+		int half = a >> 1;
+		return ((a + 2) >> 2) << 24 | ((red + half) / a) << 16 | ((green + half) / a) << 8 | ((blue + half) / a);
+	}
+}
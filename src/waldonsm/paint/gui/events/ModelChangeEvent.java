@@ -0,0 +1,106 @@
+package waldonsm.paint.gui.events;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.Collections;
+import java.util.List;
+
+import waldonsm.paint.model.PaintModel;
+import waldonsm.paint.tools.drawables.Drawable;
+
+/**
+ * This event tells a ModelChangeListener what has happened to a model since the last event.  The model collects its
+ * changes and sends them all in one event at the end of the current turn of the EDT, so a listener does its work once
+ * however many changes were made, and can look at what actually changed to skip work it does not need.
+ * @author Shawn Waldon
+ *
+ */
+// Immutable
+public class ModelChangeEvent {
+
+	private final int codes;
+	private final Rectangle dirtyRegion;
+	private final List<Drawable> added;
+	private final List<Drawable> removed;
+	private final Dimension oldSize;
+	private final Dimension newSize;
+
+	/**
+	 * Creates a new ModelChangeEvent
+	 * @param codes the PaintModel.CODE_* codes that happened, as a mask made with getBit()
+	 * @param dirtyRegion the part of the image that changed, or null if the image did not change
+	 * @param added the final Drawables added (drawn or redone), oldest first
+	 * @param removed the final Drawables removed (undone), in the order they were removed
+	 * @param oldSize the size of the image before it was resized, or null if it was not
+	 * @param newSize the size of the image after it was resized, or null if it was not
+	 */
+	public ModelChangeEvent(int codes, Rectangle dirtyRegion, List<Drawable> added, List<Drawable> removed,
+			Dimension oldSize, Dimension newSize) {
+		this.codes = codes;
+		this.dirtyRegion = dirtyRegion == null ? null : new Rectangle(dirtyRegion);
+		this.added = Collections.unmodifiableList(added);
+		this.removed = Collections.unmodifiableList(removed);
+		this.oldSize = oldSize == null ? null : new Dimension(oldSize);
+		this.newSize = newSize == null ? null : new Dimension(newSize);
+	}
+
+	/**
+	 * Returns the bit that stands for the given code in the mask passed to the constructor
+	 * @param code one of the PaintModel.CODE_* codes
+	 * @return the bit for that code
+	 */
+	public static int getBit(int code) {
+		return 1 << (code - PaintModel.CODE_MODEL_PREVIEW_CHANGED);
+	}
+
+	/**
+	 * Returns true if the given change happened
+	 * @param code one of <code>PaintModel.CODE_MODEL_CHANGED</code>, <code>PaintModel.CODE_MODEL_SAVED</code>,
+	 * <code>PaintModel.CODE_MODEL_SIZE_CHANGED</code>, <code>PaintModel.CODE_MODEL_RESCALED</code>, or
+	 * <code>PaintModel.CODE_MODEL_PREVIEW_CHANGED</code>
+	 * @return true if the change happened
+	 */
+	public boolean has(int code) {
+		return (codes & getBit(code)) != 0;
+	}
+
+	/**
+	 * Returns the smallest rectangle holding every pixel of the image that changed, or null if no pixels changed
+	 * @return the changed part of the image, in image coordinates
+	 */
+	public Rectangle getDirtyRegion() {
+		return dirtyRegion == null ? null : new Rectangle(dirtyRegion);
+	}
+
+	/**
+	 * Returns the final Drawables that were drawn or redone
+	 * @return an unmodifiable list of the added Drawables, oldest first
+	 */
+	public List<Drawable> getAddedDrawables() {
+		return added;
+	}
+
+	/**
+	 * Returns the final Drawables that were undone
+	 * @return an unmodifiable list of the removed Drawables, in the order they were undone
+	 */
+	public List<Drawable> getRemovedDrawables() {
+		return removed;
+	}
+
+	/**
+	 * Returns the size of the image before it was resized, or null if it was not resized
+	 * @return the old size of the image
+	 */
+	public Dimension getOldSize() {
+		return oldSize == null ? null : new Dimension(oldSize);
+	}
+
+	/**
+	 * Returns the size of the image after it was resized, or null if it was not resized
+	 * @return the new size of the image
+	 */
+	public Dimension getNewSize() {
+		return newSize == null ? null : new Dimension(newSize);
+	}
+}
@@ -1,5 +1,6 @@
 package waldonsm.paint.gui.listeners;
 
+import waldonsm.paint.gui.events.ModelChangeEvent;
 
 /**
  * An interface to be implemented by parts of the GUI that need to be notified of model changes.
@@ -9,9 +10,11 @@ package waldonsm.paint.gui.listeners;
 public interface ModelChangeListener {
 
 	/**
-	 * Called on registered ModelChangeListeners to notify them of changes to the model
-	 * @param code the code describing the change to the model: should be either <code>PaintModel.CODE_MODEL_CHANGED</code>,
-	 * <code>PaintModel.CODE_MODEL_SAVED</code>, <code>PaintModel.CODE_MODEL_SIZE_CHANGED</code>, or <code>PaintModel.CODE_MODEL_RESCALED</code>
+	 * Called on registered ModelChangeListeners, on the EDT, to notify them of changes to the model.  All of the changes
+	 * made in one turn of the EDT arrive together in one event.
+	 * @param e the event describing what changed: which of <code>PaintModel.CODE_MODEL_CHANGED</code>,
+	 * <code>PaintModel.CODE_MODEL_SAVED</code>, <code>PaintModel.CODE_MODEL_SIZE_CHANGED</code>, <code>PaintModel.CODE_MODEL_RESCALED</code>,
+	 * or <code>PaintModel.CODE_MODEL_PREVIEW_CHANGED</code> happened, and where
 	 */
-	void modelChanged(int code);
+	void modelChanged(ModelChangeEvent e);
 }
@@ -7,6 +7,7 @@ import java.awt.event.MouseEvent;
 import javax.swing.JOptionPane;
 
 import waldonsm.paint.gui.PaintFrame;
+import waldonsm.paint.metrics.EdtWatchdog;
 import waldonsm.paint.model.PaintModel;
 import waldonsm.paint.tools.DrawingTool;
 import waldonsm.paint.tools.ToolRegister;
@@ -48,6 +49,7 @@ public final class PaintListener extends MouseAdapter {
 		try {
 			DrawingTool currTool = toolReg.getToolFor(paintModel.getShapeMode());
 			if (currTool != null) {
+				EdtWatchdog.noteOperation("mousePressed", currTool.getToolName(), paintModel);
 				currTool.mousePressed(getUnscaledPoint(e.getPoint(), paintModel.getScaleFactor()), e.getButton() == RIGHT_MOUSE_BUTTON, paintModel);
 				frame.repaint();
 			}
@@ -63,6 +65,7 @@ public final class PaintListener extends MouseAdapter {
 		try {
 			DrawingTool currTool = toolReg.getToolFor(paintModel.getShapeMode());
 			if (currTool != null) {
+				EdtWatchdog.noteOperation("mouseDragged", currTool.getToolName(), paintModel);
 				currTool.mouseDragged(getUnscaledPoint(e.getPoint(), paintModel.getScaleFactor()), paintModel);
 				frame.repaint();
 			}
@@ -75,6 +78,7 @@ public final class PaintListener extends MouseAdapter {
 		try {
 			DrawingTool currTool = toolReg.getToolFor(paintModel.getShapeMode());
 			if (currTool != null) {
+				EdtWatchdog.noteOperation("mouseClicked", currTool.getToolName(), paintModel);
 				currTool.mouseClicked(getUnscaledPoint(e.getPoint(), paintModel.getScaleFactor()), paintModel);
 				frame.repaint();
 			}
@@ -90,6 +94,7 @@ public final class PaintListener extends MouseAdapter {
 		try {
 			DrawingTool currTool = toolReg.getToolFor(paintModel.getShapeMode());
 			if (currTool != null) {
+				EdtWatchdog.noteOperation("mouseReleased", currTool.getToolName(), paintModel);
 				currTool.mouseReleased(getUnscaledPoint(e.getPoint(), paintModel.getScaleFactor()), paintModel);
 				frame.repaint();
 			}
@@ -105,6 +110,7 @@ public final class PaintListener extends MouseAdapter {
 		try {
 			DrawingTool currTool = toolReg.getToolFor(paintModel.getShapeMode());
 			if (currTool != null) {
+				EdtWatchdog.noteOperation("mouseMoved", currTool.getToolName(), paintModel);
 				currTool.mouseMoved(getUnscaledPoint(e.getPoint(), paintModel.getScaleFactor()), paintModel);
 				frame.repaint();
 			}
@@ -117,12 +123,13 @@ public final class PaintListener extends MouseAdapter {
 	 * Takes the scale of the image being displayed into account when drawing to the model.
 	 * <P>
 	 * This method divides the coordinates of the point by the scale factor and returns a new Point that represents the resulting position
+	 * (rounded down, so that every screen pixel showing an image pixel maps back to that pixel)
 	 * @param p the Point to un-scale
 	 * @param scaleFactor the current scale factor of the model
 	 * @return a new Point that is at the coordinates of the old point divided by the scale factor
 	 */
-	private Point getUnscaledPoint(Point p, int scaleFactor) {
-		return new Point(p.x / scaleFactor, p.y / scaleFactor);
+	private Point getUnscaledPoint(Point p, double scaleFactor) {
+		return new Point((int) Math.floor(p.x / scaleFactor), (int) Math.floor(p.y / scaleFactor));
 	}
 	
 }
@@ -0,0 +1,55 @@
+package waldonsm.paint.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A named running total, such as the number of pixels filled or bytes saved. <P>
+ * Counters are created through Metrics.counter() and should be kept in a static field by the code that updates them,
+ * so that updating one never allocates or looks anything up.
+ * @author Shawn Waldon
+ *
+ */
+public final class Counter {
+
+	private final String name;
+	private final AtomicLong value = new AtomicLong();
+
+	/**
+	 * Creates a new Counter with the given name, only called by Metrics
+	 * @param name the name of the counter
+	 */
+	Counter(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Adds one to the counter
+	 */
+	public void increment() {
+		value.incrementAndGet();
+	}
+
+	/**
+	 * Adds the given amount to the counter
+	 * @param n the amount to add
+	 */
+	public void add(long n) {
+		value.addAndGet(n);
+	}
+
+	/**
+	 * Returns the current value of the counter
+	 * @return the current value of the counter
+	 */
+	public long get() {
+		return value.get();
+	}
+
+	/**
+	 * Returns the name of this counter
+	 * @return the name of this counter
+	 */
+	public String getName() {
+		return name;
+	}
+}
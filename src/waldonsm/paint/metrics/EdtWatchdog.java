@@ -0,0 +1,326 @@
+package waldonsm.paint.metrics;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import waldonsm.paint.model.PaintModel;
+
+/**
+ * Watches the event dispatch thread for events that take too long to dispatch. <P>
+ * Once installed, every event dispatched on the EDT is timed (and recorded in the "edt.dispatch" histogram).  A daemon
+ * thread checks on the current event every SAMPLE_INTERVAL_MS; when an event has been running for longer than the
+ * threshold, the stall and its operation context are appended to a log file (rotated once it gets too big) straight
+ * away, and the watchdog starts taking stack samples of the EDT.  The distinct samples are appended once MAX_SAMPLES
+ * have been taken or the event finishes, whichever comes first, followed by the event's duration when it finishes.  A
+ * hung EDT that never finishes is still reported, so it can be seen which operations need to come off the EDT. <P>
+ * The operation context (what the user was doing, with which tool, on which model) is given by the code handling the
+ * event through noteOperation, and is cleared when the event is done.  The threshold can be set with
+ * -Djavapaint.stallThresholdMs=&lt;ms&gt;, and 0 turns the watchdog off.
+ * @author Shawn Waldon
+ *
+ */
+public final class EdtWatchdog {
+
+	/**
+	 * The system property giving the stall threshold in milliseconds
+	 */
+	public static final String THRESHOLD_PROPERTY = "javapaint.stallThresholdMs";
+
+	private static final long DEFAULT_THRESHOLD_MS = 250;
+	private static final long SAMPLE_INTERVAL_MS = 50;
+	private static final int MAX_SAMPLES = 40;
+	private static final File LOG_FILE = new File("javapaint-stalls.log");
+	private static final long MAX_LOG_SIZE = 1024 * 1024;
+	private static final int LOG_FILES_KEPT = 3;
+
+	private static final LatencyHistogram dispatchTime = Metrics.histogram("edt.dispatch");
+	private static final Counter stalls = Metrics.counter("edt.stalls");
+
+	private static final Object lock = new Object();
+
+	// all of the following are written on the EDT and read by the watchdog thread under lock
+	private static long dispatchStart = 0;
+	private static long dispatchNumber = 0;
+	private static AWTEvent currentEvent = null;
+	private static String operation = null;
+	private static String toolName = null;
+	private static String modelName = null;
+	private static int drawableCount = -1;
+
+	private static Thread edt = null;
+	private static boolean installed = false;
+
+	private EdtWatchdog() {
+		// static methods only
+	}
+
+	/**
+	 * Replaces the system EventQueue with one that times each event and starts the watchdog thread, unless the threshold
+	 * has been set to 0.  Only the first call does anything.
+	 */
+	public static synchronized void install() {
+		if (installed)
+			return;
+		installed = true;
+		final long thresholdMs = Long.getLong(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD_MS);
+		if (thresholdMs <= 0)
+			return;
+		Toolkit.getDefaultToolkit().getSystemEventQueue().push(new TimedEventQueue());
+		Thread t = new Thread("JavaPaint EDT watchdog") {
+			public void run() {
+				watch(thresholdMs * 1000000L);
+			}
+		};
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Records what the event currently being dispatched is doing, to be reported if it stalls.  Must be called on the EDT.
+	 * @param op a short description of the operation, like "mousePressed" or "undo"
+	 * @param tool the name of the tool being used, or null if no tool is involved
+	 * @param model the model being worked on, or null if there is none
+	 */
+	public static void noteOperation(String op, String tool, PaintModel model) {
+		if (!installed)
+			return;
+		String name = null;
+		int count = -1;
+		if (model != null) {
+			try {
+				name = model.getName();
+				count = model.getDrawableCount();
+			} catch (RuntimeException e) {
+				// a closed model, report what we have
+			}
+		}
+		synchronized (lock) {
+			operation = op;
+			toolName = tool;
+			modelName = name;
+			drawableCount = count;
+		}
+	}
+
+	/**
+	 * Called on the EDT when an event starts dispatching
+	 */
+	private static void dispatchStarted(AWTEvent e) {
+		synchronized (lock) {
+			if (edt == null)
+				edt = Thread.currentThread();
+			dispatchNumber++;
+			dispatchStart = System.nanoTime();
+			currentEvent = e;
+			operation = null;
+			toolName = null;
+			modelName = null;
+			drawableCount = -1;
+		}
+	}
+
+	/**
+	 * Called on the EDT when an event finishes dispatching.  If this event was dispatched from inside another (by a
+	 * modal dialog), the outer event is no longer timed, since it is now waiting on the user rather than working.
+	 */
+	private static void dispatchFinished(long start) {
+		dispatchTime.recordSince(start);
+		synchronized (lock) {
+			dispatchNumber++;
+			dispatchStart = 0;
+			currentEvent = null;
+		}
+	}
+
+	/**
+	 * The body of the watchdog thread
+	 * @param thresholdNanos the time an event may dispatch for before it is treated as a stall
+	 */
+	private static void watch(long thresholdNanos) {
+		List<StackTraceElement[]> samples = new ArrayList<StackTraceElement[]>();
+		long stalledDispatch = -1;
+		long stallStart = 0;
+		boolean samplesWritten = false;
+		String stallOp = null, stallTool = null, stallModel = null;
+		int stallCount = -1;
+		while (true) {
+			try {
+				Thread.sleep(SAMPLE_INTERVAL_MS);
+			} catch (InterruptedException ie) {
+				return;
+			}
+			long number, start;
+			Thread thread;
+			synchronized (lock) {
+				number = dispatchNumber;
+				start = dispatchStart;
+				thread = edt;
+				if (number == stalledDispatch) {
+					// still stalled, pick up any context noted since the last sample
+					stallOp = operation;
+					stallTool = toolName;
+					stallModel = modelName;
+					stallCount = drawableCount;
+				}
+			}
+			if (stalledDispatch != -1 && number != stalledDispatch) {
+				// the stalled event has finished (or a modal dialog took over)
+				long nanos = System.nanoTime() - stallStart;
+				StringWriter report = new StringWriter();
+				PrintWriter pw = new PrintWriter(report);
+				if (!samplesWritten)
+					printSamples(pw, stallOp, stallTool, stallModel, stallCount, samples);
+				pw.println("--- finished after " + (nanos / 1000000L) + " ms");
+				pw.println();
+				pw.close();
+				appendToLog(report.toString(), false);
+				samples.clear();
+				stalledDispatch = -1;
+			}
+			if (start != 0 && thread != null && System.nanoTime() - start > thresholdNanos) {
+				if (stalledDispatch == -1) {
+					String event;
+					synchronized (lock) {
+						if (dispatchNumber != number)
+							continue;
+						event = describe(currentEvent);
+						stallOp = operation;
+						stallTool = toolName;
+						stallModel = modelName;
+						stallCount = drawableCount;
+					}
+					stalledDispatch = number;
+					stallStart = start;
+					samplesWritten = false;
+					stalls.increment();
+					// reported now rather than when it finishes, since a hung EDT never does
+					StringWriter report = new StringWriter();
+					PrintWriter pw = new PrintWriter(report);
+					pw.println("=== EDT stall at " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date()) + ": "
+							+ ((System.nanoTime() - start) / 1000000L) + " ms and still running");
+					pw.println("event: " + event);
+					printOperation(pw, stallOp, stallTool, stallModel, stallCount);
+					pw.close();
+					appendToLog(report.toString(), true);
+				}
+				if (samples.size() < MAX_SAMPLES)
+					samples.add(thread.getStackTrace());
+				if (samples.size() == MAX_SAMPLES && !samplesWritten) {
+					StringWriter report = new StringWriter();
+					PrintWriter pw = new PrintWriter(report);
+					printSamples(pw, stallOp, stallTool, stallModel, stallCount, samples);
+					pw.close();
+					appendToLog(report.toString(), false);
+					samplesWritten = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a short description of the given event
+	 */
+	private static String describe(AWTEvent e) {
+		if (e == null)
+			return "unknown event";
+		return e.getClass().getName() + " (id " + e.getID() + ") from " + e.getSource().getClass().getName();
+	}
+
+	/**
+	 * Prints the operation context of a stall
+	 */
+	private static void printOperation(PrintWriter pw, String op, String tool, String model, int count) {
+		pw.println("operation: " + op + ", tool: " + tool + ", model: " + model + ", drawables: " + count);
+	}
+
+	/**
+	 * Prints the stack samples of a stall, with identical samples grouped so the report shows where the time went, and
+	 * the operation context as it was when the last sample was taken
+	 */
+	private static void printSamples(PrintWriter pw, String op, String tool, String model, int count, List<StackTraceElement[]> samples) {
+		printOperation(pw, op, tool, model, count);
+		List<StackTraceElement[]> distinct = new ArrayList<StackTraceElement[]>();
+		List<Integer> counts = new ArrayList<Integer>();
+		for (StackTraceElement[] s : samples) {
+			int i = 0;
+			while (i < distinct.size() && !Arrays.equals(distinct.get(i), s))
+				i++;
+			if (i == distinct.size()) {
+				distinct.add(s);
+				counts.add(1);
+			} else {
+				counts.set(i, counts.get(i) + 1);
+			}
+		}
+		for (int i = 0; i < distinct.size(); i++) {
+			pw.println("--- " + counts.get(i) + " of " + samples.size() + " samples:");
+			for (StackTraceElement ste : distinct.get(i)) {
+				pw.println("\tat " + ste);
+			}
+		}
+	}
+
+	/**
+	 * Appends part of a stall report to the log file
+	 * @param newReport true if this starts a new report, in which case the log is rotated first if it is too big (the
+	 * rest of a report always goes in the same file as its start)
+	 */
+	private static void appendToLog(String text, boolean newReport) {
+		if (newReport)
+			rotateLog();
+		PrintWriter pw = null;
+		try {
+			pw = new PrintWriter(new FileOutputStream(LOG_FILE, true));
+			pw.print(text);
+		} catch (IOException e) {
+			// nowhere to report the stall, give up on this part
+		} finally {
+			if (pw != null)
+				pw.close();
+		}
+	}
+
+	/**
+	 * Renames javapaint-stalls.log to javapaint-stalls.log.1 (and so on, keeping LOG_FILES_KEPT old logs) once the log
+	 * is bigger than MAX_LOG_SIZE
+	 */
+	private static void rotateLog() {
+		if (LOG_FILE.length() < MAX_LOG_SIZE)
+			return;
+		String path = LOG_FILE.getPath();
+		new File(path + "." + LOG_FILES_KEPT).delete();
+		for (int i = LOG_FILES_KEPT - 1; i >= 1; i--) {
+			new File(path + "." + i).renameTo(new File(path + "." + (i + 1)));
+		}
+		LOG_FILE.renameTo(new File(path + ".1"));
+	}
+
+	/**
+	 * An EventQueue that reports the start and end of every event it dispatches
+	 * @author Shawn Waldon
+	 *
+	 */
+	private static final class TimedEventQueue extends EventQueue {
+		@Override
+		protected void dispatchEvent(AWTEvent event) {
+			dispatchStarted(event);
+			long start = System.nanoTime();
+			try {
+				super.dispatchEvent(event);
+			} finally {
+				dispatchFinished(start);
+			}
+		}
+	}
+}
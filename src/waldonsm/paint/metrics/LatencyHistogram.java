@@ -0,0 +1,137 @@
+package waldonsm.paint.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds, with buckets in the style of an HDR histogram: each power of two is split into
+ * 16 linear sub-buckets, so any recorded value is reported to within about 6% of its real value, from 1 ns up to
+ * hundreds of years. <P>
+ * Recording a value only increments a few atomic longs, so it never allocates and is safe to call from any thread.
+ * Histograms are created through Metrics.histogram() and should be kept in a static field by the code that records to them.
+ * @author Shawn Waldon
+ *
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final String name;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Creates a new, empty LatencyHistogram with the given name, only called by Metrics
+	 * @param name the name of the histogram
+	 */
+	LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Records a single duration.  Negative durations are recorded as 0.
+	 * @param nanos the duration in nanoseconds
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		counts.incrementAndGet(indexOf(nanos));
+		total.incrementAndGet();
+		sum.addAndGet(nanos);
+		long m = max.get();
+		while (nanos > m && !max.compareAndSet(m, nanos)) {
+			m = max.get();
+		}
+	}
+
+	/**
+	 * Records the time since the given start time, as returned by System.nanoTime()
+	 * @param startNanos the System.nanoTime() value at the start of the timed operation
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Returns the bucket that the given value is counted in
+	 */
+	private static int indexOf(long v) {
+		if (v < SUB_BUCKETS)
+			return (int) v;
+		int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BUCKET_BITS;
+		int sub = (int) (v >>> shift);
+		return (shift + 1) * SUB_BUCKETS + (sub - SUB_BUCKETS);
+	}
+
+	/**
+	 * Returns the largest value that is counted in the given bucket
+	 */
+	private static long highestValueIn(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int shift = index / SUB_BUCKETS - 1;
+		long sub = SUB_BUCKETS + index % SUB_BUCKETS;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	/**
+	 * Returns the value that the given percentage of recorded values are at or below, accurate to the bucket size
+	 * @param percentile the percentile, from 0 to 100
+	 * @return the value at the given percentile in nanoseconds, or 0 if nothing has been recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			n += counts.get(i);
+		}
+		if (n == 0)
+			return 0;
+		long target = (long) Math.ceil(percentile / 100.0 * n);
+		if (target < 1)
+			target = 1;
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += counts.get(i);
+			if (seen >= target)
+				return Math.min(highestValueIn(i), getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * Returns the number of values recorded
+	 * @return the number of values recorded
+	 */
+	public long getCount() {
+		return total.get();
+	}
+
+	/**
+	 * Returns the largest value recorded
+	 * @return the largest value recorded in nanoseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the mean of the values recorded
+	 * @return the mean of the recorded values in nanoseconds, or 0 if nothing has been recorded
+	 */
+	public long getMean() {
+		long n = total.get();
+		return n == 0 ? 0 : sum.get() / n;
+	}
+
+	/**
+	 * Returns the name of this histogram
+	 * @return the name of this histogram
+	 */
+	public String getName() {
+		return name;
+	}
+}
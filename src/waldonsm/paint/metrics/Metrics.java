@@ -0,0 +1,172 @@
+package waldonsm.paint.metrics;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The registry of all of the program's runtime metrics: LatencyHistograms for how long things take and Counters for how
+ * much work was done. <P>
+ * Code that wants to be measured gets its metrics once (usually into a static final field) and then records to them
+ * directly, so measuring costs nothing but a few atomic increments.  The collected metrics can be shown in the StatusBar
+ * or written to a file for offline analysis, either with dumpTo() or by starting the program with
+ * -Djavapaint.metrics.file=&lt;file&gt;, which writes them when the program exits.
+ * @author Shawn Waldon
+ *
+ */
+public final class Metrics {
+
+	/**
+	 * The system property naming the file that the metrics are written to when the program exits
+	 */
+	public static final String DUMP_FILE_PROPERTY = "javapaint.metrics.file";
+
+	/**
+	 * Time taken by PaintPanel.paintComponent
+	 */
+	public static final String PAINT = "paint";
+
+	/**
+	 * Time taken to replay the drawables in PaintModel.redrawImage
+	 */
+	public static final String REPLAY = "replay";
+
+	/**
+	 * Time taken to draw a new final drawable in PaintModel.finalizeDrawing
+	 */
+	public static final String FINALIZE = "finalize";
+
+	/**
+	 * Time taken by each fill in FillRegionDrawable.draw
+	 */
+	public static final String FILL = "fill";
+
+	/**
+	 * Time taken by each filter in FilterDrawable.draw
+	 */
+	public static final String FILTER = "filter";
+
+	/**
+	 * Time taken by PaintModel.saveModelToFile
+	 */
+	public static final String SAVE = "save";
+
+	private static final Map<String,LatencyHistogram> histograms = new LinkedHashMap<String,LatencyHistogram>();
+	private static final Map<String,Counter> counters = new LinkedHashMap<String,Counter>();
+
+	static {
+		String dumpFile = System.getProperty(DUMP_FILE_PROPERTY);
+		if (dumpFile != null) {
+			final File f = new File(dumpFile);
+			Runtime.getRuntime().addShutdownHook(new Thread("JavaPaint metrics dump") {
+				public void run() {
+					try {
+						dumpTo(f);
+					} catch (FileNotFoundException e) {
+						System.err.println("Couldn't write metrics to " + f + ": " + e.getMessage());
+					}
+				}
+			});
+		}
+	}
+
+	private Metrics() {
+		// static methods only
+	}
+
+	/**
+	 * Returns the LatencyHistogram with the given name, creating it if it does not exist yet
+	 * @param name the name of the histogram
+	 * @return the LatencyHistogram with the given name
+	 */
+	public static synchronized LatencyHistogram histogram(String name) {
+		LatencyHistogram h = histograms.get(name);
+		if (h == null) {
+			h = new LatencyHistogram(name);
+			histograms.put(name, h);
+		}
+		return h;
+	}
+
+	/**
+	 * Returns the Counter with the given name, creating it if it does not exist yet
+	 * @param name the name of the counter
+	 * @return the Counter with the given name
+	 */
+	public static synchronized Counter counter(String name) {
+		Counter c = counters.get(name);
+		if (c == null) {
+			c = new Counter(name);
+			counters.put(name, c);
+		}
+		return c;
+	}
+
+	/**
+	 * Returns all of the histograms, in the order they were created
+	 * @return a copy of the list of histograms
+	 */
+	public static synchronized List<LatencyHistogram> getHistograms() {
+		return new ArrayList<LatencyHistogram>(histograms.values());
+	}
+
+	/**
+	 * Returns all of the counters, in the order they were created
+	 * @return a copy of the list of counters
+	 */
+	public static synchronized List<Counter> getCounters() {
+		return new ArrayList<Counter>(counters.values());
+	}
+
+	/**
+	 * Returns a short one line summary (median and 99th percentile in milliseconds) of the histogram with the given name,
+	 * for display in the GUI
+	 * @param name the name of the histogram
+	 * @return a summary like "paint 1.2/4.5 ms", or the empty String if nothing has been recorded
+	 */
+	public static String summarize(String name) {
+		LatencyHistogram h = histogram(name);
+		if (h.getCount() == 0)
+			return "";
+		return name + " " + toMillis(h.getValueAtPercentile(50)) + "/" + toMillis(h.getValueAtPercentile(99)) + " ms";
+	}
+
+	/**
+	 * Writes every histogram and counter to the given file, one per line, overwriting the file
+	 * @param f the file to write to
+	 * @throws FileNotFoundException if the file cannot be opened for writing
+	 */
+	public static void dumpTo(File f) throws FileNotFoundException {
+		PrintWriter pw = null;
+		try {
+			pw = new PrintWriter(new FileOutputStream(f));
+			pw.println("# histogram count mean_ms p50_ms p90_ms p99_ms p99.9_ms max_ms");
+			for (LatencyHistogram h : getHistograms()) {
+				pw.println(h.getName() + " " + h.getCount() + " " + toMillis(h.getMean())
+						+ " " + toMillis(h.getValueAtPercentile(50)) + " " + toMillis(h.getValueAtPercentile(90))
+						+ " " + toMillis(h.getValueAtPercentile(99)) + " " + toMillis(h.getValueAtPercentile(99.9))
+						+ " " + toMillis(h.getMax()));
+			}
+			pw.println("# counter value");
+			for (Counter c : getCounters()) {
+				pw.println(c.getName() + " " + c.get());
+			}
+		} finally {
+			if (pw != null)
+				pw.close();
+		}
+	}
+
+	/**
+	 * Formats nanoseconds as milliseconds with one decimal place
+	 */
+	private static String toMillis(long nanos) {
+		long tenths = (nanos + 50000) / 100000;
+		return (tenths / 10) + "." + (tenths % 10);
+	}
+}
@@ -0,0 +1,578 @@
+package waldonsm.paint.model;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.imageio.ImageIO;
+import javax.swing.Timer;
+
+import waldonsm.paint.metrics.LatencyHistogram;
+import waldonsm.paint.metrics.Metrics;
+import waldonsm.paint.tools.drawables.Drawable;
+import waldonsm.paint.tools.drawables.DrawableStore;
+
+/**
+ * Saves the open models to a recovery directory every so often, so that their changes are not lost if the program
+ * crashes. <P>
+ * On each tick of a Swing Timer, every registered model that has changed is asked for an AutosaveSnapshot of what has
+ * changed since its last autosave.  That only takes references and copies of a few arrays, so it costs the EDT very
+ * little; the snapshot is then written by a background thread, which is also where the Drawables are made and
+ * serialized.  Each model gets its own directory holding, for each layer, a PNG of its base raster
+ * and a series of segment files (each one the number of Drawables kept from before and the Drawables added since), and a
+ * manifest listing the layers with the base and segments to use for each.  A layer's base is only written again when it
+ * has been replaced, and a segment only when its history has changed, so layers that were not touched cost nothing.
+ * Every file is written to a temporary file, synced to the disk and then renamed over the old one, so a crash at any
+ * point leaves the last complete autosave in place. <P>
+ * A model's directory is deleted when it is closed, and all of them when the program exits normally, so any directory
+ * left over at startup (that is not locked by another running copy of the program) can be recovered with recover().
+ * Left over directories that the user neither recovers nor discards are kept until the program next exits normally.
+ * The interval can be set with -Djavapaint.autosaveSeconds=&lt;seconds&gt;, and 0 turns autosave off.
+ * @author Shawn Waldon
+ *
+ */
+public final class Autosave {
+
+	/**
+	 * The system property giving the autosave interval in seconds
+	 */
+	public static final String INTERVAL_PROPERTY = "javapaint.autosaveSeconds";
+
+	private static final int DEFAULT_INTERVAL_SECONDS = 30;
+	private static final File RECOVERY_DIR = new File("javapaint-recovery");
+	private static final String MANIFEST = "manifest.properties";
+	private static final String LOCK = "lock";
+	private static final int EXIT_WAIT_SECONDS = 2;
+
+	private static final LatencyHistogram captureTime = Metrics.histogram("autosave.capture");
+	private static final LatencyHistogram writeTime = Metrics.histogram("autosave.write");
+
+	private static final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "JavaPaint autosave");
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		}
+	});
+
+	/**
+	 * The models being autosaved, only used on the EDT
+	 */
+	private static final List<Entry> entries = new ArrayList<Entry>();
+
+	/**
+	 * Left over recovery directories to delete when the program exits normally, only used on the EDT
+	 */
+	private static final List<File> keptUntilExit = new ArrayList<File>();
+	private static int nextId = 0;
+	private static Timer timer = null;
+
+	private Autosave() {
+		// static methods only
+	}
+
+	/**
+	 * Starts autosaving the registered models every INTERVAL_PROPERTY seconds, unless it is set to 0.  Must be called on
+	 * the EDT, and only the first call does anything.
+	 */
+	public static void start() {
+		if (timer != null)
+			return;
+		int seconds = Integer.getInteger(INTERVAL_PROPERTY, DEFAULT_INTERVAL_SECONDS);
+		if (seconds <= 0)
+			return;
+		timer = new Timer(seconds * 1000, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				autosaveAll();
+			}
+		});
+		timer.start();
+	}
+
+	/**
+	 * Starts autosaving the given model.  Must be called on the EDT.
+	 * @param model the model to autosave, either a hard reference or a wrapper
+	 */
+	public static void register(PaintModel model) {
+		PaintModelImpl impl = getImpl(model);
+		for (Entry e : entries) {
+			if (e.model.get() == impl)
+				return;
+		}
+		File dir = new File(RECOVERY_DIR, System.currentTimeMillis() + "-" + (nextId++));
+		entries.add(new Entry(impl, dir));
+	}
+
+	/**
+	 * Stops autosaving the given model and deletes its recovery directory, for when the model is closed.  Must be called
+	 * on the EDT.
+	 * @param model the model being closed, either a hard reference or a wrapper
+	 */
+	public static void unregister(PaintModel model) {
+		PaintModelImpl impl = getImpl(model);
+		for (Iterator<Entry> it = entries.iterator(); it.hasNext();) {
+			Entry e = it.next();
+			if (e.model.get() == impl) {
+				it.remove();
+				discard(e);
+			}
+		}
+	}
+
+	/**
+	 * Deletes the recovery directories of all of the registered models, and the left over ones passed to keepUntilExit(),
+	 * for when the program is exiting normally.  Waits (for a couple of seconds at most) for any write in progress to
+	 * finish first.  Must be called on the EDT.
+	 */
+	public static void discardAll() {
+		for (Entry e : entries) {
+			discard(e);
+		}
+		entries.clear();
+		for (final File dir : keptUntilExit) {
+			writer.execute(new Runnable() {
+				public void run() {
+					deleteDirectory(dir);
+				}
+			});
+		}
+		keptUntilExit.clear();
+		try {
+			writer.submit(new Runnable() {
+				public void run() {
+					// nothing, just waiting for the deletes queued before this
+				}
+			}).get(EXIT_WAIT_SECONDS, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			// can't happen, the task does nothing
+		} catch (TimeoutException e) {
+			// give up, the directories will be offered for recovery next time
+		}
+	}
+
+	/**
+	 * Returns the recovery directories left behind by a copy of the program that did not exit normally, skipping the ones
+	 * still in use by a running copy.  Directories with nothing to recover in them are deleted.
+	 * @return the recovery directories that can be passed to recover(), oldest first
+	 */
+	public static List<File> findRecoverable() {
+		List<File> result = new ArrayList<File>();
+		File[] dirs = RECOVERY_DIR.listFiles();
+		if (dirs == null)
+			return result;
+		Arrays.sort(dirs);
+		for (File dir : dirs) {
+			if (!dir.isDirectory() || isLocked(dir))
+				continue;
+			if (new File(dir, MANIFEST).exists())
+				result.add(dir);
+			else
+				deleteDirectory(dir);
+		}
+		return result;
+	}
+
+	/**
+	 * Makes a new model from the last complete autosave in a recovery directory.  The directory is left alone, so it
+	 * should be deleted with discard() once the model is open (the new model gets its own directory).
+	 * @param dir a directory returned by findRecoverable()
+	 * @return a new PaintModel hard reference, marked as changed
+	 * @throws IOException if the autosave cannot be read
+	 * @throws ClassNotFoundException if a Drawable in the autosave can no longer be loaded
+	 */
+	public static PaintModel recover(File dir) throws IOException, ClassNotFoundException {
+		Properties manifest = new Properties();
+		FileInputStream in = new FileInputStream(new File(dir, MANIFEST));
+		try {
+			manifest.load(in);
+		} finally {
+			in.close();
+		}
+		List<AutosaveSnapshot.LayerSnapshot> layers = new ArrayList<AutosaveSnapshot.LayerSnapshot>();
+		int layerCount = Integer.parseInt(manifest.getProperty("layers"));
+		for (int i = 0; i < layerCount; i++) {
+			layers.add(readLayer(dir, manifest, "layer." + i + "."));
+		}
+		String saveFile = manifest.getProperty("saveFile");
+		return new PaintModelImpl(manifest.getProperty("name"), saveFile == null ? null : new File(saveFile),
+				Boolean.parseBoolean(manifest.getProperty("white")), layers,
+				Integer.parseInt(manifest.getProperty("currentLayer", "0")));
+	}
+
+	/**
+	 * Reads one layer of an autosave: its base and the Drawables its segments leave it with
+	 * @param key what the layer's properties start with in the manifest
+	 * @return the layer, with all of its Drawables as the added ones
+	 */
+	private static AutosaveSnapshot.LayerSnapshot readLayer(File dir, Properties manifest, String key)
+			throws IOException, ClassNotFoundException {
+		String filePrefix = manifest.getProperty(key + "id") + "-";
+		BufferedImage read = ImageIO.read(new File(dir, "base-" + filePrefix + manifest.getProperty(key + "base") + ".png"));
+		if (read == null)
+			throw new IOException("Unreadable base image in " + dir);
+		BufferedImage base = new BufferedImage(read.getWidth(), read.getHeight(), BufferedImage.TYPE_4BYTE_ABGR);
+		base.getRaster().setRect(read.getRaster());
+		List<Drawable> drawables = new ArrayList<Drawable>();
+		int first = Integer.parseInt(manifest.getProperty(key + "firstSegment"));
+		int last = Integer.parseInt(manifest.getProperty(key + "lastSegment"));
+		for (int seg = first; seg <= last; seg++) {
+			DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(dir, "seg-" + filePrefix + seg + ".bin"))));
+			try {
+				int kept = dis.readInt();
+				int count = dis.readInt();
+				drawables.subList(kept, drawables.size()).clear();
+				ObjectInputStream ois = new ObjectInputStream(dis);
+				for (int i = 0; i < count; i++) {
+					drawables.add((Drawable) ois.readObject());
+				}
+			} finally {
+				dis.close();
+			}
+		}
+		DrawableStore store = new DrawableStore();
+		for (Drawable d : drawables) {
+			store.add(d);
+		}
+		return new AutosaveSnapshot.LayerSnapshot(0, manifest.getProperty(key + "name"),
+				!"false".equals(manifest.getProperty(key + "visible")), Float.parseFloat(manifest.getProperty(key + "opacity", "1")),
+				Boolean.parseBoolean(manifest.getProperty(key + "white")), 0, base.getRaster(), 0, store);
+	}
+
+	/**
+	 * Deletes a recovery directory returned by findRecoverable()
+	 * @param dir the directory to delete
+	 */
+	public static void discard(File dir) {
+		deleteDirectory(dir);
+	}
+
+	/**
+	 * Keeps a recovery directory returned by findRecoverable() until the program exits normally, for when the user has
+	 * not recovered it or confirmed discarding it.  Must be called on the EDT.
+	 * @param dir the directory to keep
+	 */
+	public static void keepUntilExit(File dir) {
+		keptUntilExit.add(dir);
+	}
+
+	/**
+	 * Takes a snapshot of every changed model and hands it to the writer thread.  Models whose last snapshot is still
+	 * being written are skipped until the next tick.  Runs on the EDT.
+	 */
+	private static void autosaveAll() {
+		for (Iterator<Entry> it = entries.iterator(); it.hasNext();) {
+			final Entry e = it.next();
+			PaintModelImpl impl = e.model.get();
+			if (impl == null) {
+				// closed without being unregistered
+				it.remove();
+				discard(e);
+				continue;
+			}
+			if (e.writing)
+				continue;
+			long start = System.nanoTime();
+			final AutosaveSnapshot s = impl.takeAutosaveSnapshot(e.needsFull);
+			captureTime.recordSince(start);
+			if (s == null)
+				continue;
+			e.needsFull = false;
+			e.writing = true;
+			writer.execute(new Runnable() {
+				public void run() {
+					long start = System.nanoTime();
+					try {
+						write(e, s);
+						writeTime.recordSince(start);
+					} catch (IOException ex) {
+						System.err.println("Couldn't autosave " + s.name + ": " + ex.getMessage());
+						e.needsFull = true;
+					} finally {
+						e.writing = false;
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Writes a snapshot to the model's recovery directory.  Runs on the writer thread.
+	 */
+	private static void write(Entry e, AutosaveSnapshot s) throws IOException {
+		if (e.discarded)
+			return;
+		if (!e.dir.isDirectory() && !e.dir.mkdirs())
+			throw new IOException("Couldn't create " + e.dir);
+		e.lock();
+		Properties manifest = new Properties();
+		manifest.setProperty("name", s.name);
+		if (s.saveFile != null)
+			manifest.setProperty("saveFile", s.saveFile);
+		manifest.setProperty("width", Integer.toString(s.width));
+		manifest.setProperty("height", Integer.toString(s.height));
+		manifest.setProperty("white", Boolean.toString(s.isWhiteBGround));
+		manifest.setProperty("layers", Integer.toString(s.layers.size()));
+		manifest.setProperty("currentLayer", Integer.toString(s.currentLayer));
+		Map<Integer, LayerFiles> written = new HashMap<Integer, LayerFiles>();
+		Set<String> inUse = new HashSet<String>();
+		for (int i = 0; i < s.layers.size(); i++) {
+			AutosaveSnapshot.LayerSnapshot layer = s.layers.get(i);
+			LayerFiles files = e.layerFiles.get(layer.id);
+			if (files == null)
+				files = new LayerFiles();
+			writeLayer(e.dir, layer, files);
+			written.put(layer.id, files);
+			String key = "layer." + i + ".";
+			manifest.setProperty(key + "id", Integer.toString(layer.id));
+			manifest.setProperty(key + "name", layer.name);
+			manifest.setProperty(key + "visible", Boolean.toString(layer.visible));
+			manifest.setProperty(key + "opacity", Float.toString(layer.opacity));
+			manifest.setProperty(key + "white", Boolean.toString(layer.white));
+			manifest.setProperty(key + "base", Long.toString(files.baseGeneration));
+			manifest.setProperty(key + "firstSegment", Integer.toString(files.firstSegment));
+			manifest.setProperty(key + "lastSegment", Integer.toString(files.nextSegment - 1));
+			inUse.add("base-" + layer.id + "-" + files.baseGeneration + ".png");
+			for (int seg = files.firstSegment; seg < files.nextSegment; seg++) {
+				inUse.add("seg-" + layer.id + "-" + seg + ".bin");
+			}
+		}
+		ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+		manifest.store(manifestBytes, "JavaPaint autosave");
+		writeAtomically(new File(e.dir, MANIFEST), manifestBytes.toByteArray());
+		// the files of layers that have been removed are forgotten along with them
+		e.layerFiles.clear();
+		e.layerFiles.putAll(written);
+
+		// now that the manifest no longer points at them, remove the old bases and segments
+		File[] files = e.dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				String name = f.getName();
+				if ((name.startsWith("base-") || name.startsWith("seg-")) && !inUse.contains(name)) {
+					f.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes what has changed in one layer: its base, if it has been replaced, and a segment, if its history has changed.
+	 * Runs on the writer thread.
+	 * @param files what has been written for the layer before, which is brought up to date
+	 */
+	private static void writeLayer(File dir, AutosaveSnapshot.LayerSnapshot s, LayerFiles files) throws IOException {
+		if (s.base != null) {
+			BufferedImage baseImage = new BufferedImage(s.base.getWidth(), s.base.getHeight(), BufferedImage.TYPE_4BYTE_ABGR);
+			baseImage.setData(s.base);
+			ByteArrayOutputStream png = new ByteArrayOutputStream();
+			ImageIO.write(baseImage, PaintModel.INTERNAL_FORMAT_OF_ZIPFILE, png);
+			writeAtomically(new File(dir, "base-" + s.id + "-" + s.baseGeneration + ".png"), png.toByteArray());
+			files.baseGeneration = s.baseGeneration;
+			// the earlier segments were drawn on the old base
+			files.firstSegment = files.nextSegment;
+			files.count = 0;
+		} else if (s.added.size() == 0 && s.kept == files.count) {
+			return;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(bytes);
+		dos.writeInt(s.kept);
+		dos.writeInt(s.added.size());
+		ObjectOutputStream oos = new ObjectOutputStream(dos);
+		for (Drawable d : s.added.asList()) {
+			oos.writeObject(d);
+		}
+		oos.close();
+		writeAtomically(new File(dir, "seg-" + s.id + "-" + files.nextSegment + ".bin"), bytes.toByteArray());
+		files.nextSegment++;
+		files.count = s.kept + s.added.size();
+	}
+
+	/**
+	 * Writes the data to a temporary file, syncs it to the disk and renames it over the target file, so the target is
+	 * always either the old or the new contents
+	 */
+	private static void writeAtomically(File target, byte[] data) throws IOException {
+		File tmp = new File(target.getParentFile(), target.getName() + ".tmp");
+		FileOutputStream fos = new FileOutputStream(tmp);
+		try {
+			fos.write(data);
+			fos.getFD().sync();
+		} finally {
+			fos.close();
+		}
+		Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Returns true if the directory's lock file is held by a running copy of the program (including this one)
+	 */
+	private static boolean isLocked(File dir) {
+		File lockFile = new File(dir, LOCK);
+		if (!lockFile.exists())
+			return false;
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(lockFile, "rw");
+			FileLock lock = raf.getChannel().tryLock();
+			if (lock == null)
+				return true;
+			lock.release();
+			return false;
+		} catch (OverlappingFileLockException ex) {
+			return true;
+		} catch (IOException ex) {
+			return true;
+		} finally {
+			if (raf != null) {
+				try {
+					raf.close();
+				} catch (IOException ex) {
+					// nothing more to do
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops any further writes for the entry and deletes its directory, on the writer thread so that it happens after any
+	 * write already in progress
+	 */
+	private static void discard(final Entry e) {
+		e.discarded = true;
+		writer.execute(new Runnable() {
+			public void run() {
+				e.unlock();
+				deleteDirectory(e.dir);
+			}
+		});
+	}
+
+	/**
+	 * Deletes a recovery directory and the files in it
+	 */
+	private static void deleteDirectory(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Returns the PaintModelImpl behind a hard reference or a wrapper
+	 */
+	private static PaintModelImpl getImpl(PaintModel model) {
+		if (model instanceof PaintModelWrapper)
+			return ((PaintModelWrapper) model).get();
+		return (PaintModelImpl) model;
+	}
+
+	/**
+	 * The autosave state of one model
+	 * @author Shawn Waldon
+	 *
+	 */
+	private static final class Entry {
+
+		final WeakReference<PaintModelImpl> model;
+		final File dir;
+
+		// used by the writer thread only
+		final Map<Integer, LayerFiles> layerFiles = new HashMap<Integer, LayerFiles>();
+		FileChannel lockChannel = null;
+
+		// set on the EDT, read and set by the writer thread
+		volatile boolean writing = false;
+		volatile boolean needsFull = false;
+		volatile boolean discarded = false;
+
+		Entry(PaintModelImpl model, File dir) {
+			this.model = new WeakReference<PaintModelImpl>(model);
+			this.dir = dir;
+		}
+
+		/**
+		 * Locks the directory so that another copy of the program does not offer to recover it, if not already locked
+		 */
+		void lock() throws IOException {
+			if (lockChannel != null)
+				return;
+			lockChannel = new RandomAccessFile(new File(dir, LOCK), "rw").getChannel();
+			if (lockChannel.tryLock() == null)
+				throw new IOException("Recovery directory " + dir + " is in use");
+		}
+
+		/**
+		 * Releases the lock on the directory
+		 */
+		void unlock() {
+			if (lockChannel == null)
+				return;
+			try {
+				lockChannel.close();
+			} catch (IOException ex) {
+				// the lock goes when the program does
+			}
+			lockChannel = null;
+		}
+	}
+
+	/**
+	 * What has been written to a recovery directory for one layer, used by the writer thread only
+	 * @author Shawn Waldon
+	 *
+	 */
+	private static final class LayerFiles {
+
+		long baseGeneration = -1;
+
+		/**
+		 * The segments that go on the base are firstSegment up to (not including) nextSegment
+		 */
+		int firstSegment = 0;
+		int nextSegment = 0;
+
+		/**
+		 * The number of Drawables the layer has after the last segment
+		 */
+		int count = 0;
+	}
+}
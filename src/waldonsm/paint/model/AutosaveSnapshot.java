@@ -0,0 +1,95 @@
+package waldonsm.paint.model;
+
+import java.awt.image.Raster;
+import java.util.List;
+
+import waldonsm.paint.tools.drawables.DrawableStore;
+
+/**
+ * What has changed in a PaintModelImpl since its last autosave, taken on the EDT by takeAutosaveSnapshot() and written
+ * to disk by Autosave on its own thread.  The base rasters are only referenced (they are never changed once they are
+ * made) and the new Drawables are a copy of their entries in the history's store, so taking a snapshot costs about as
+ * much as copying a few arrays, and the Drawable objects are only made when the writer serializes them.
+ * @author Shawn Waldon
+ *
+ */
+final class AutosaveSnapshot {
+
+	final String name;
+	final String saveFile;
+	final int width, height;
+	final boolean isWhiteBGround;
+
+	/**
+	 * The index of the current layer
+	 */
+	final int currentLayer;
+
+	/**
+	 * What has changed in each layer, bottom first (a model that has never had layers has one)
+	 */
+	final List<LayerSnapshot> layers;
+
+	AutosaveSnapshot(String name, String saveFile, int width, int height, boolean isWhiteBGround, int currentLayer,
+			List<LayerSnapshot> layers) {
+		this.name = name;
+		this.saveFile = saveFile;
+		this.width = width;
+		this.height = height;
+		this.isWhiteBGround = isWhiteBGround;
+		this.currentLayer = currentLayer;
+		this.layers = layers;
+	}
+
+	/**
+	 * What has changed in one layer since the last autosave, along with how it is shown.  Autosave.recover() also uses
+	 * these for the layers it reads back, each with its base raster and all of its Drawables.
+	 * @author Shawn Waldon
+	 *
+	 */
+	static final class LayerSnapshot {
+
+		/**
+		 * Identifies the layer within its model, so that the writer knows which files are its
+		 */
+		final int id;
+
+		final String name;
+		final boolean visible;
+		final float opacity;
+		final boolean white;
+
+		/**
+		 * The number of times the layer's base raster has been replaced, so the writer knows which base the Drawables go on
+		 */
+		final long baseGeneration;
+
+		/**
+		 * The base raster, or null if it has not changed since the last snapshot
+		 */
+		final Raster base;
+
+		/**
+		 * The number of Drawables from the previous snapshot that are still in the layer (the rest were undone)
+		 */
+		final int kept;
+
+		/**
+		 * The Drawables added since the previous snapshot
+		 */
+		final DrawableStore added;
+
+		LayerSnapshot(int id, String name, boolean visible, float opacity, boolean white, long baseGeneration, Raster base,
+				int kept, DrawableStore added) {
+			this.id = id;
+			this.name = name;
+			this.visible = visible;
+			this.opacity = opacity;
+			this.white = white;
+			this.baseGeneration = baseGeneration;
+			this.base = base;
+			this.kept = kept;
+			this.added = added;
+		}
+	}
+}
@@ -0,0 +1,292 @@
+package waldonsm.paint.model;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.w3c.dom.NodeList;
+
+/**
+ * Writes JPEG files.  JPEG has no alpha, and the JPEG writer refuses (or on older JDKs, misreads) a TYPE_4BYTE_ABGR image,
+ * so the image is first flattened onto a background color in one pass straight into the bytes of a TYPE_3BYTE_BGR image,
+ * the layout the writer encodes from without converting. <P>
+ * The quality (0 to 100, 90 by default) and progressive encoding (off by default) are set with -Djavapaint.jpegQuality and
+ * -Djavapaint.jpegProgressive.  The color is stored at half resolution both ways (4:2:0, what the writer does by default)
+ * unless -Djavapaint.jpegChromaSubsampling=false, which keeps it at full resolution (4:4:4) through the JPEG metadata, for
+ * sharper colored edges in a somewhat larger file.  One ImageWriter is kept and reused for every file, and it writes
+ * through a memory cached stream rather than ImageIO's default temporary file.  testMain() measures each of these.
+ * @author Shawn Waldon
+ *
+ */
+final class JpegExport {
+
+	/**
+	 * The system property giving the quality of JPEG files, from 0 to 100
+	 */
+	static final String QUALITY_PROPERTY = "javapaint.jpegQuality";
+
+	/**
+	 * The system property that turns progressive JPEG files on
+	 */
+	static final String PROGRESSIVE_PROPERTY = "javapaint.jpegProgressive";
+
+	/**
+	 * The system property that, set to false, keeps the color at full resolution
+	 */
+	static final String CHROMA_SUBSAMPLING_PROPERTY = "javapaint.jpegChromaSubsampling";
+
+	private static final int DEFAULT_QUALITY = 90;
+
+	private static ImageWriter writer = null;
+
+	private JpegExport() {
+		// static methods only
+	}
+
+	/**
+	 * Writes the image as a JPEG file, with the quality, progressive encoding and chroma subsampling set by the system
+	 * properties
+	 * @param image a TYPE_4BYTE_ABGR image
+	 * @param backgroundRGB the color see-through pixels are drawn over, as an RGB int
+	 * @param out the stream to write to, which is left open
+	 * @throws IOException if the file cannot be written
+	 */
+	static void write(BufferedImage image, int backgroundRGB, OutputStream out) throws IOException {
+		int quality = Math.max(0, Math.min(100, Integer.getInteger(QUALITY_PROPERTY, DEFAULT_QUALITY)));
+		write(flatten(image, backgroundRGB), quality / 100f, Boolean.getBoolean(PROGRESSIVE_PROPERTY),
+				!"false".equals(System.getProperty(CHROMA_SUBSAMPLING_PROPERTY)), out);
+	}
+
+	/**
+	 * Writes a TYPE_3BYTE_BGR image as a JPEG file
+	 * @param bgr the image
+	 * @param quality the quality, from 0 to 1
+	 * @param progressive true to write a progressive JPEG
+	 * @param subsampleChroma true to store the color at half resolution both ways (4:2:0), false for full resolution (4:4:4)
+	 * @param out the stream to write to, which is left open
+	 * @throws IOException if the file cannot be written
+	 */
+	static synchronized void write(BufferedImage bgr, float quality, boolean progressive, boolean subsampleChroma,
+			OutputStream out) throws IOException {
+		ImageWriter w = getWriter();
+		ImageWriteParam param = w.getDefaultWriteParam();
+		param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+		param.setCompressionQuality(quality);
+		param.setProgressiveMode(progressive ? ImageWriteParam.MODE_DEFAULT : ImageWriteParam.MODE_DISABLED);
+		IIOMetadata metadata = null;
+		if (!subsampleChroma) {
+			// the writer samples the luminance at twice the color's resolution, so making every component 1x1 keeps it all
+			metadata = w.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(bgr), param);
+			String format = metadata.getNativeMetadataFormatName();
+			IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+			NodeList components = root.getElementsByTagName("componentSpec");
+			for (int i = 0; i < components.getLength(); i++) {
+				IIOMetadataNode component = (IIOMetadataNode) components.item(i);
+				component.setAttribute("HsamplingFactor", "1");
+				component.setAttribute("VsamplingFactor", "1");
+			}
+			metadata.setFromTree(format, root);
+		}
+		ImageOutputStream ios = new MemoryCacheImageOutputStream(out);
+		try {
+			w.setOutput(ios);
+			w.write(null, new IIOImage(bgr, null, metadata), param);
+			ios.flush();
+		} finally {
+			w.reset();
+			ios.close();
+		}
+	}
+
+	/**
+	 * Returns the image drawn over the background color, as a TYPE_3BYTE_BGR image
+	 * @param image a TYPE_4BYTE_ABGR image
+	 * @param backgroundRGB the background color, as an RGB int
+	 * @return the flattened image
+	 */
+	static BufferedImage flatten(BufferedImage image, int backgroundRGB) {
+		if (image.getType() != BufferedImage.TYPE_4BYTE_ABGR)
+			throw new IllegalArgumentException("Not a TYPE_4BYTE_ABGR image: " + image.getType());
+		byte[] abgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		BufferedImage flat = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+		byte[] bgr = ((DataBufferByte) flat.getRaster().getDataBuffer()).getData();
+		int backB = backgroundRGB & 0xff, backG = (backgroundRGB >> 8) & 0xff, backR = (backgroundRGB >> 16) & 0xff;
+		for (int i = 0, o = 0; i < abgr.length; i += 4, o += 3) {
+			int a = abgr[i] & 0xff;
+			if (a == 0xff) {
+				bgr[o] = abgr[i + 1];
+				bgr[o + 1] = abgr[i + 2];
+				bgr[o + 2] = abgr[i + 3];
+			} else {
+				int back = 255 - a;
+				// (v + 128) * 257 >> 16 is v / 255, rounded, for v up to 255 * 255
+				bgr[o] = (byte) (((abgr[i + 1] & 0xff) * a + backB * back + 128) * 257 >> 16);
+				bgr[o + 1] = (byte) (((abgr[i + 2] & 0xff) * a + backG * back + 128) * 257 >> 16);
+				bgr[o + 2] = (byte) (((abgr[i + 3] & 0xff) * a + backR * back + 128) * 257 >> 16);
+			}
+		}
+		return flat;
+	}
+
+	/**
+	 * Measures how long flattening and writing take, and how big the file is, for a 2000x1500 image drawn from a fixed seed
+	 * (smooth shading with a little noise, under hard-edged shapes, like a painted-over photo), at each setting the
+	 * properties allow and for ImageIO.write of the same image converted with Graphics2D.  Each is run a few times to warm
+	 * up and then timed as the median of several runs.  Throws an IllegalStateException if a file does not read back at the
+	 * size it was written, or with the chroma subsampling it was written with.
+	 */
+	public static void testMain() {
+		BufferedImage image = benchmarkImage(2000, 1500, 47);
+		long[] times = new long[7];
+		BufferedImage bgr = null;
+		for (int run = -3; run < times.length; run++) {
+			long start = System.nanoTime();
+			bgr = flatten(image, 0xffffff);
+			if (run >= 0)
+				times[run] = System.nanoTime() - start;
+		}
+		System.out.println("flatten: " + median(times) + " ms");
+		Object[][] settings = {{"quality 75", 0.75f, false, true}, {"quality 90", 0.9f, false, true},
+				{"quality 90 progressive", 0.9f, true, true}, {"quality 90 4:4:4", 0.9f, false, false}};
+		try {
+			for (Object[] setting : settings) {
+				float quality = (Float) setting[1];
+				boolean progressive = (Boolean) setting[2];
+				boolean subsample = (Boolean) setting[3];
+				ByteArrayOutputStream out = null;
+				for (int run = -3; run < times.length; run++) {
+					out = new ByteArrayOutputStream();
+					long start = System.nanoTime();
+					write(bgr, quality, progressive, subsample, out);
+					if (run >= 0)
+						times[run] = System.nanoTime() - start;
+				}
+				checkReadBack(out.toByteArray(), image.getWidth(), image.getHeight(), subsample ? 2 : 1);
+				System.out.println(setting[0] + ": " + median(times) + " ms, " + out.size() + " bytes");
+			}
+			ByteArrayOutputStream out = null;
+			for (int run = -3; run < times.length; run++) {
+				out = new ByteArrayOutputStream();
+				long start = System.nanoTime();
+				BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+				Graphics2D g = rgb.createGraphics();
+				g.setColor(Color.white);
+				g.fillRect(0, 0, rgb.getWidth(), rgb.getHeight());
+				g.drawImage(image, 0, 0, null);
+				g.dispose();
+				ImageIO.write(rgb, "jpeg", out);
+				if (run >= 0)
+					times[run] = System.nanoTime() - start;
+			}
+			System.out.println("ImageIO.write (quality 75) of a Graphics2D conversion: " + median(times) + " ms, " + out.size()
+					+ " bytes");
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the benchmark image for testMain, the same pixels for the same arguments
+	 */
+	private static BufferedImage benchmarkImage(int w, int h, long seed) {
+		Random random = new Random(seed);
+		BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_4BYTE_ABGR);
+		byte[] abgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		for (int y = 0, i = 0; y < h; y++) {
+			for (int x = 0; x < w; x++, i += 4) {
+				abgr[i] = (byte) 0xff;
+				abgr[i + 1] = (byte) (x * 255 / w + random.nextInt(9));
+				abgr[i + 2] = (byte) ((x + y) * 127 / (w + h) + 64 + random.nextInt(9));
+				abgr[i + 3] = (byte) (y * 255 / h + random.nextInt(9));
+			}
+		}
+		Graphics2D g = image.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+		for (int i = 0; i < 400; i++) {
+			g.setColor(new Color(random.nextInt(), true));
+			int x = random.nextInt(w), y = random.nextInt(h);
+			int sw = 5 + random.nextInt(200), sh = 5 + random.nextInt(200);
+			switch (random.nextInt(3)) {
+			case 0:
+				g.fillRect(x, y, sw, sh);
+				break;
+			case 1:
+				g.fillOval(x, y, sw, sh);
+				break;
+			default:
+				g.drawLine(x, y, x + sw, y + sh);
+				break;
+			}
+		}
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * Reads back the width, height and luminance sampling factor of a JPEG file written by testMain, and throws an
+	 * IllegalStateException if they are not the ones given
+	 */
+	private static void checkReadBack(byte[] jpeg, int width, int height, int lumaSampling) throws IOException {
+		ImageInputStream iis = new MemoryCacheImageInputStream(new ByteArrayInputStream(jpeg));
+		ImageReader reader = ImageIO.getImageReaders(iis).next();
+		try {
+			reader.setInput(iis);
+			IIOMetadata metadata = reader.getImageMetadata(0);
+			IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(metadata.getNativeMetadataFormatName());
+			IIOMetadataNode luma = (IIOMetadataNode) root.getElementsByTagName("componentSpec").item(0);
+			if (reader.getWidth(0) != width || reader.getHeight(0) != height
+					|| Integer.parseInt(luma.getAttribute("HsamplingFactor")) != lumaSampling
+					|| Integer.parseInt(luma.getAttribute("VsamplingFactor")) != lumaSampling)
+				throw new IllegalStateException("Wrote a " + width + "x" + height + " JPEG sampled " + lumaSampling + "x"
+						+ lumaSampling + ", read back " + reader.getWidth(0) + "x" + reader.getHeight(0) + " sampled "
+						+ luma.getAttribute("HsamplingFactor") + "x" + luma.getAttribute("VsamplingFactor"));
+		} finally {
+			reader.dispose();
+			iis.close();
+		}
+	}
+
+	/**
+	 * Returns the median of the times, in milliseconds
+	 */
+	private static long median(long[] nanos) {
+		long[] sorted = nanos.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2] / 1000000;
+	}
+
+	/**
+	 * Returns the JPEG ImageWriter, finding it the first time
+	 */
+	private static ImageWriter getWriter() throws IOException {
+		if (writer == null) {
+			Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+			if (!writers.hasNext())
+				throw new IOException("No JPEG writer available");
+			writer = writers.next();
+		}
+		return writer;
+	}
+}
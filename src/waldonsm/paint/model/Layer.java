@@ -0,0 +1,55 @@
+package waldonsm.paint.model;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+
+/**
+ * One layer of a PaintModelImpl: its image, the base raster its Drawables are drawn on and their history, and how it is
+ * shown in the composite.  While a layer is the model's current layer, the model works on its image, base raster and
+ * history (and the autosave state that goes with them) directly and the ones here are out of date; they are put back
+ * when another layer is selected.
+ * @author Shawn Waldon
+ *
+ */
+final class Layer {
+
+	/**
+	 * Identifies the layer within its model (the model's first layer is 0), which names its files in the model's autosaves
+	 */
+	final int id;
+
+	String name;
+	boolean visible = true;
+
+	/**
+	 * The opacity the layer is composited with, from 0 to 1
+	 */
+	float opacity = 1f;
+
+	BufferedImage image;
+	Raster base;
+	UndoHistory history;
+
+	/**
+	 * True if the space a resize adds to the layer is filled white rather than left transparent, which is only the case for
+	 * the bottom layer of a model with a white background
+	 */
+	final boolean white;
+
+	/**
+	 * The number of times base has been replaced, and what the layer's part of the last autosave snapshot had (see
+	 * PaintModelImpl.takeAutosaveSnapshot)
+	 */
+	long baseGeneration = 0;
+	long autosaveBaseGeneration = -1;
+	int autosaveKept = 0;
+
+	Layer(int id, String name, BufferedImage image, Raster base, UndoHistory history, boolean white) {
+		this.id = id;
+		this.name = name;
+		this.white = white;
+		this.image = image;
+		this.base = base;
+		this.history = history;
+	}
+}
@@ -0,0 +1,120 @@
+package waldonsm.paint.model;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+
+import waldonsm.paint.gui.events.ModelChangeEvent;
+import waldonsm.paint.gui.listeners.ModelChangeListener;
+import waldonsm.paint.tools.drawables.Drawable;
+
+/**
+ * Collects the changes made to a PaintModelImpl and sends them to its ModelChangeListeners as one ModelChangeEvent at the
+ * end of the current turn of the EDT.  Making several changes in one turn (resizing sends a size change and an image
+ * change, and a tool may draw and then finalize) only wakes the listeners once.
+ * @author Shawn Waldon
+ *
+ */
+final class ModelEventBus {
+
+	private final List<ModelChangeListener> listeners = new ArrayList<ModelChangeListener>();
+
+	// what has happened since the last event was sent
+	private int codes = 0;
+	private Rectangle dirtyRegion = null;
+	private List<Drawable> added = new ArrayList<Drawable>();
+	private List<Drawable> removed = new ArrayList<Drawable>();
+	private Dimension oldSize = null;
+	private Dimension newSize = null;
+	private boolean scheduled = false;
+
+	private final Runnable sender = new Runnable() {
+		public void run() {
+			send();
+		}
+	};
+
+	void addListener(ModelChangeListener l) {
+		listeners.add(l);
+	}
+
+	void removeListener(ModelChangeListener l) {
+		listeners.remove(l);
+	}
+
+	/**
+	 * Records that the change with the given PaintModel.CODE_* code has happened
+	 */
+	void changed(int code) {
+		codes |= ModelChangeEvent.getBit(code);
+		schedule();
+	}
+
+	/**
+	 * Records that the pixels of the image in the rectangle have changed
+	 */
+	void imageChanged(Rectangle r) {
+		if (dirtyRegion == null)
+			dirtyRegion = new Rectangle(r);
+		else
+			dirtyRegion.add(r);
+		changed(PaintModel.CODE_MODEL_CHANGED);
+	}
+
+	/**
+	 * Records that a final Drawable was drawn or redone
+	 */
+	void drawableAdded(Drawable d) {
+		added.add(d);
+	}
+
+	/**
+	 * Records that a final Drawable was undone
+	 */
+	void drawableRemoved(Drawable d) {
+		removed.add(d);
+	}
+
+	/**
+	 * Records that the image was resized.  Only the size before the first resize of the turn is kept.
+	 */
+	void sizeChanged(Dimension from, Dimension to) {
+		if (oldSize == null)
+			oldSize = from;
+		newSize = to;
+		changed(PaintModel.CODE_MODEL_SIZE_CHANGED);
+	}
+
+	/**
+	 * Makes sure the collected changes will be sent at the end of this turn of the EDT
+	 */
+	private void schedule() {
+		if (!scheduled) {
+			scheduled = true;
+			SwingUtilities.invokeLater(sender);
+		}
+	}
+
+	/**
+	 * Sends the collected changes to every listener as one event, and starts collecting again
+	 */
+	private void send() {
+		scheduled = false;
+		if (codes == 0)
+			return;
+		ModelChangeEvent e = new ModelChangeEvent(codes, dirtyRegion, added, removed, oldSize, newSize);
+		codes = 0;
+		dirtyRegion = null;
+		added = new ArrayList<Drawable>();
+		removed = new ArrayList<Drawable>();
+		oldSize = null;
+		newSize = null;
+		// a listener may remove itself (or others) while being told
+		for (ModelChangeListener l : new ArrayList<ModelChangeListener>(listeners)) {
+			l.modelChanged(e);
+		}
+	}
+}
@@ -3,6 +3,7 @@ package waldonsm.paint.model;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -44,12 +45,32 @@ public interface PaintModel {
 	 * The code to represent that a model's scale factor has been changed to a ModelChangeListener
 	 */
 	public static final int CODE_MODEL_RESCALED = -2;
+	/**
+	 * The code to represent that the model's current (in-progress) Drawable has changed by itself, for example as a background
+	 * operation makes progress, and needs to be repainted
+	 */
+	public static final int CODE_MODEL_PREVIEW_CHANGED = -3;
 	
 	/**
 	 * This constant hold the string representation of the format used in the program's custom save format
 	 */
 	public static final String INTERNAL_FORMAT_OF_ZIPFILE = "png";
 	
+	/**
+	 * The smallest scale factor a model can be shown at (1/64, for very large images)
+	 */
+	public static final double MIN_SCALE_FACTOR = 1.0 / 64;
+	
+	/**
+	 * The largest scale factor a model can be shown at
+	 */
+	public static final double MAX_SCALE_FACTOR = 32;
+	
+	/**
+	 * The width and height of the tiles that getTileVersion keeps track of changes in
+	 */
+	public static final int TILE_SIZE = 256;
+	
 	/**
 	 * This enum represents the possible save file formats used by this program
 	 * @author Shawn Waldon
@@ -212,6 +233,12 @@ public interface PaintModel {
 	 */
 	List<Point> getPointsList();
 	
+	/**
+	 * Returns the number of Points in the internal points list, without copying it
+	 * @return the number of Points in the internal points list
+	 */
+	int getPointsCount();
+	
 	/**
 	 *  
 	 * @return a copy of the initial point (set by the setInitialPoint method, or null if the finalizeDrawable method has been called since the initial point has been set
@@ -251,6 +278,13 @@ public interface PaintModel {
 	 */
 	void setSize(int w, int h);
 	
+	/**
+	 * Returns true if the model has an opaque white background, which fills any space added by setSize, and false if it is
+	 * transparent
+	 * @return true if the model's background is white
+	 */
+	boolean isWhiteBackground();
+	
 	/**
 	 * Returns the display name of the model (the name of the save file or "Untitled#" where # is a count of untitled images
 	 * @return the display name of the model
@@ -278,15 +312,15 @@ public interface PaintModel {
 	
 	/**
 	 * Sets the scale factor to a new value
-	 * @param scaleFactor the new scale factor, should be a decimal between 0 and 5
+	 * @param scaleFactor the new scale factor, between MIN_SCALE_FACTOR and MAX_SCALE_FACTOR
 	 */
-	public void setScaleFactor(int scaleFactor);
+	public void setScaleFactor(double scaleFactor);
 
 	/**
 	 * Returns the scale factor for this panel
 	 * @return
 	 */
-	public int getScaleFactor();
+	public double getScaleFactor();
 	
 	/**
 	 * Returns a Dimension representing the effective size of the model plus the scale factor
@@ -315,4 +349,143 @@ public interface PaintModel {
 	 * @return the width of this model's image
 	 */
 	public int getWidth();
+	
+	/**
+	 * Returns the number of Drawables in the model's history (the Drawables that are replayed by redrawImage)
+	 * @return the number of final Drawables in the model
+	 */
+	public int getDrawableCount();
+	
+	/**
+	 * Returns roughly how many bytes of memory the model's undo history (its final Drawables and the Drawables that have
+	 * been undone) is using.  The estimate is based on what each Drawable holds (see MeasuredDrawable).
+	 * @return the approximate memory used by the undo history, in bytes
+	 */
+	public long getHistoryMemoryUsage();
+	
+	/**
+	 * Returns the number of old Drawables that have been flattened into the model's base image and spilled to disk to keep
+	 * the history under its memory cap.  They are read back if they are undone.
+	 * @return the number of Drawables in the history that are on disk rather than in memory
+	 */
+	public int getSpilledDrawableCount();
+	
+	/**
+	 * Returns a count that goes up every time the model's image is changed by a final Drawable, an undo or redo, or a resize.
+	 * Background operations working on a copy of the image can compare this before and after to see if their copy is still current.
+	 * @return the number of changes made to the model's image
+	 */
+	public long getModificationCount();
+	
+	/**
+	 * Notifies the listeners (with CODE_MODEL_PREVIEW_CHANGED) that the current Drawable has changed without a call to
+	 * setCurrentDrawable and should be repainted
+	 */
+	public void repaintCurrentDrawing();
+	
+	/**
+	 * Returns a number that changes whenever a pixel of the main image in the given tile (of TILE_SIZE by TILE_SIZE pixels)
+	 * is changed, so that anything cached from the image only has to be updated in the tiles whose version has changed.
+	 * Replacing the main image (by resizing it) also changes the version of every tile.
+	 * @param tileX the column of the tile
+	 * @param tileY the row of the tile
+	 * @return the version of the tile
+	 */
+	public long getTileVersion(int tileX, int tileY);
+	
+	/**
+	 * Returns the image that is shown for the model and saved to flat image files: the visible layers drawn over each
+	 * other, bottom first, each at its opacity.  With only one layer that is shown as it is, this is the main image itself.
+	 * The tile versions (see getTileVersion) cover this image as well as the main image.
+	 * @return the composite of the model's layers
+	 */
+	public BufferedImage getCompositeImage();
+	
+	/**
+	 * Returns the number of layers in the model, which is always at least one
+	 * @return the number of layers
+	 */
+	public int getLayerCount();
+	
+	/**
+	 * Returns the index of the current layer, counting up from the bottom layer at 0.  The main image is the current layer's
+	 * image, Drawables are drawn onto it, and undo and redo work on its history: each layer has a history of its own.
+	 * @return the index of the current layer
+	 */
+	public int getCurrentLayer();
+	
+	/**
+	 * Makes the layer with the given index the current layer
+	 * @param index the index of the layer
+	 */
+	public void setCurrentLayer(int index);
+	
+	/**
+	 * Adds a new, transparent layer just above the current layer and makes it the current layer.  Adding a layer can not be
+	 * undone.
+	 */
+	public void addLayer();
+	
+	/**
+	 * Removes the layer with the given index, along with its history.  Removing a layer can not be undone.
+	 * @param index the index of the layer
+	 * @throws IllegalStateException if it is the only layer
+	 */
+	public void removeLayer(int index);
+	
+	/**
+	 * Returns the name of the layer with the given index
+	 * @param index the index of the layer
+	 * @return the name of the layer
+	 */
+	public String getLayerName(int index);
+	
+	/**
+	 * Returns true if the layer with the given index is drawn in the composite image
+	 * @param index the index of the layer
+	 * @return true if the layer is visible
+	 */
+	public boolean isLayerVisible(int index);
+	
+	/**
+	 * Shows or hides the layer with the given index
+	 * @param index the index of the layer
+	 * @param visible true to draw the layer in the composite image
+	 */
+	public void setLayerVisible(int index, boolean visible);
+	
+	/**
+	 * Returns the opacity the layer with the given index is drawn with in the composite image
+	 * @param index the index of the layer
+	 * @return the opacity of the layer, from 0 (invisible) to 1 (opaque)
+	 */
+	public float getLayerOpacity(int index);
+	
+	/**
+	 * Sets the opacity the layer with the given index is drawn with in the composite image
+	 * @param index the index of the layer
+	 * @param opacity the opacity of the layer, from 0 (invisible) to 1 (opaque)
+	 */
+	public void setLayerOpacity(int index, float opacity);
+	
+	/**
+	 * Returns the selected part of the image, or null if nothing is selected
+	 * @return the selection, which always lies inside the image
+	 */
+	public Rectangle getSelection();
+	
+	/**
+	 * Selects a part of the image (only the part of the rectangle inside the image), and notifies the listeners with
+	 * CODE_MODEL_PREVIEW_CHANGED so the outline of the selection is repainted
+	 * @param r the part of the image to select, or null to select nothing
+	 */
+	public void setSelection(Rectangle r);
+	
+	/**
+	 * Returns the pixels of part of the current layer's image, sharing them with the image until it is about to change
+	 * (see SharedRaster), so taking them costs nothing however big the part is
+	 * @param r the part of the image, which must lie inside it
+	 * @return the pixels of that part of the image
+	 */
+	public SharedRaster shareRegion(Rectangle r);
 }
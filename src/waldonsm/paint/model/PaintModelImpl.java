@@ -1,10 +1,14 @@
 package waldonsm.paint.model;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
 import java.awt.image.Raster;
 import java.io.File;
 import java.io.FileOutputStream;
@@ -12,19 +16,37 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
 import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
 
 import waldonsm.paint.gui.listeners.ModelChangeListener;
+import waldonsm.paint.metrics.Counter;
+import waldonsm.paint.metrics.LatencyHistogram;
+import waldonsm.paint.metrics.Metrics;
+import waldonsm.paint.tools.drawables.BoundedDrawable;
 import waldonsm.paint.tools.drawables.Drawable;
+import waldonsm.paint.tools.drawables.DrawableStore;
 import waldonsm.paint.tools.drawables.ModelDependentDrawable;
+import waldonsm.paint.tools.drawables.PixelDelta;
+import waldonsm.paint.tools.drawables.ReversibleDrawable;
 
 /**
  * Provides the actual implementation for the PaintModel methods.  However the methods should never be called directly on these objects: 
@@ -38,6 +60,47 @@ class PaintModelImpl implements PaintModel {
 
 	private static int unnamedModelCount = 0;
 	private static final String defaultName = "Untitled-";
+	
+	private static final LatencyHistogram replayTime = Metrics.histogram(Metrics.REPLAY);
+	private static final LatencyHistogram finalizeTime = Metrics.histogram(Metrics.FINALIZE);
+	private static final LatencyHistogram saveTime = Metrics.histogram(Metrics.SAVE);
+	private static final Counter drawablesReplayed = Metrics.counter("replay.drawables");
+	private static final Counter bytesSaved = Metrics.counter("save.bytes");
+	private static final Counter drawablesFlattened = Metrics.counter("history.flattened");
+	private static final LatencyHistogram resizeTime = Metrics.histogram("model.resize");
+	private static final Counter resizesKept = Metrics.counter("resize.kept");
+	private static final LatencyHistogram compositeTime = Metrics.histogram("layers.composite");
+	private static final LatencyHistogram deltaUndoTime = Metrics.histogram("undo.delta");
+	
+	/*
+	 * The names of the entries in a ZDLIF file: the base image, the final Drawables drawn on it, and the image as it was
+	 * when saved (so the file can be shown without replaying the Drawables)
+	 */
+	private static final String DATA_ENTRY = "DATA";
+	private static final String DRAWINGS_ENTRY = "DRAWINGS";
+	private static final String CURRENT_ENTRY = "CURRENT";
+	
+	/*
+	 * A ZDLIF file with layers also has a LAYERS entry listing them, bottom first.  The bottom layer is kept in the entries
+	 * above (so older versions can still open the file, showing just that layer), and each of the others in the same three
+	 * entries with LAYER_ENTRY_PREFIX and its index in front, like "LAYER.1.DRAWINGS".
+	 */
+	private static final String LAYERS_ENTRY = "LAYERS";
+	private static final String LAYER_ENTRY_PREFIX = "LAYER.";
+	
+	private static final String BACKGROUND_LAYER_NAME = "Background";
+	private static final String DEFAULT_LAYER_NAME = "Layer ";
+	
+	/**
+	 * Reads the history of ZDLIF files in the background, after the current image has been shown
+	 */
+	private static final ExecutorService historyLoader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "JavaPaint history loader");
+			t.setDaemon(true);
+			return t;
+		}
+	});
 
 	private Point mouseClickedAt;
 	private List<Point> clicksList;
@@ -53,18 +116,70 @@ class PaintModelImpl implements PaintModel {
 	private int fillMode = 0;
 	private int width;
 	private int height;
-	private int scaleFactor = 1;
+	private double scaleFactor = 1;
 	private boolean changed = false;
+	private long modificationCount = 0;
+	
+	/**
+	 * The version of each tile of the image (see getTileVersion), row by row, or null if every tile is at tileVersion
+	 */
+	private long[] tileVersions = null;
+	private long tileVersion = 0;
+	
+	/**
+	 * The number of times the current layer's defaultRaster has been replaced (by flattening the history or resizing)
+	 */
+	private long baseGeneration = 0;
+	
+	// what the last autosave snapshot had, see takeAutosaveSnapshot() (the last two for the current layer)
+	private long autosaveCount = 0;
+	private long autosaveBaseGeneration = -1;
+	private int autosaveKept = 0;
 	private boolean isWhiteBGround;
 
 	private BufferedImage image;
-	private List<Drawable> drawables;
-	private Stack<Drawable> undoneStack;
+	private UndoHistory history;
+	
+	/**
+	 * The history of a ZDLIF file that is still being read by the historyLoader, or null if there is none.  Until it is
+	 * merged in, defaultRaster is the file's current image and the history only holds the Drawables made since opening it.
+	 */
+	private Future<LoadedHistory> pendingHistory = null;
 	private Drawable newDrawing;
 	private String name;
 
-	private final List<ModelChangeListener> listeners;
+	private final ModelEventBus events;
 	private File saveFile;
+	
+	/**
+	 * The layers, bottom first, or empty while the model has only the layer it was made with.  The current layer's image,
+	 * base raster and history are the image, defaultRaster and history fields, and are only put back into its Layer (by
+	 * storeCurrentLayer) when it stops being current or the layers are saved.
+	 */
+	private final List<Layer> layers = new ArrayList<Layer>();
+	private int currentLayer = 0;
+	private int layersAdded = 0;
+	
+	/**
+	 * The id of the newest layer (see Layer.id)
+	 */
+	private int lastLayerId = 0;
+	
+	/**
+	 * The visible layers drawn over each other, and the part of it that is out of date (or null if it is all up to date).
+	 * Drawing on a layer only marks the part it covers as out of date, and it is brought up to date the next time it is
+	 * asked for, so any number of changes between two paints cost one composite of the area they cover.
+	 */
+	private BufferedImage composite = null;
+	private Rectangle compositeDirty = null;
+	
+	private Rectangle selection = null;
+	
+	/**
+	 * The SharedRasters made by shareRegion that may still be sharing pixels with an image of this model.  They are all made
+	 * to copy their pixels before any of the images is changed.
+	 */
+	private final List<WeakReference<SharedRaster>> sharedRasters = new ArrayList<WeakReference<SharedRaster>>();
 
 	/**
 	 * Creates a new PaintModelImpl, with the given width and height, and optionally a white background.
@@ -76,11 +191,10 @@ class PaintModelImpl implements PaintModel {
 		this.width = width;
 		this.height = height;
 		image = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
-		listeners = new ArrayList<ModelChangeListener>();
+		events = new ModelEventBus();
 		color1 = Color.black;
 		color2 = Color.white;
-		drawables = new ArrayList<Drawable>();
-		undoneStack = new Stack<Drawable>();
+		history = new UndoHistory();
 		clicksList = new ArrayList<Point>();
 		isWhiteBGround = fillWhite;
 		if (fillWhite) {
@@ -102,21 +216,39 @@ class PaintModelImpl implements PaintModel {
 	 * @throws ClassNotFoundException if there is an error reading a ZDLIF file with the ObjectInputStream
 	 */
 	PaintModelImpl(File f, Format format) throws IOException, ClassNotFoundException {
-		drawables = new ArrayList<Drawable>();
+		history = new UndoHistory();
 		switch (format) {
 		case ZDLIF:
 			ZipFile zf = null;
+			boolean replay = false;
 			try {
 				zf = new ZipFile(f);
-				for (Enumeration<? extends ZipEntry> enu = zf.entries(); enu.hasMoreElements();) {
-					ZipEntry entry = enu.nextElement();
-					readEntry(entry, zf.getInputStream(entry));
+				ZipEntry current = zf.getEntry(CURRENT_ENTRY);
+				if (current != null) {
+					// show the image as it was saved straight away, and read the history in the background
+					image = readImage(zf.getInputStream(current));
+					width = image.getWidth();
+					height = image.getHeight();
+					defaultRaster = image.getData();
+					isWhiteBGround = true;
+					history = new UndoHistory();
+					readLayers(zf);
+					loadHistoryInBackground(f);
+				} else {
+					// an older file without the current image, replay the history to get it
+					replay = true;
+					for (Enumeration<? extends ZipEntry> enu = zf.entries(); enu.hasMoreElements();) {
+						ZipEntry entry = enu.nextElement();
+						readEntry(entry, zf.getInputStream(entry));
+					}
 				}
 			} finally {
 				if (zf != null)
 					zf.close();
 			}
-			redrawImage();
+			// not pendingHistory == null, as the history may already have been merged in on the EDT
+			if (replay)
+				redrawImage();
 			break;
 		case PNG:
 		case GIF:
@@ -135,13 +267,276 @@ class PaintModelImpl implements PaintModel {
 		color1 = Color.black;
 		color2 = Color.white;
 		clicksList = new ArrayList<Point>();
-		undoneStack = new Stack<Drawable>();
-		listeners = new ArrayList<ModelChangeListener>();
+		events = new ModelEventBus();
 		newDrawing = Drawable.NOTHING;
 		saveFile = f;
 		name = f.getName();
 	}
 	
+	/**
+	 * Creates a new PaintModel from an autosave, with the given layers.  Each layer's image is replayed from its base raster
+	 * and history.  The model is marked as changed, since what was recovered has not been saved.
+	 * @param name the name of the model
+	 * @param saveFile the file the model was last saved to, or null
+	 * @param fillWhite true if the model has a white background
+	 * @param recovered the layers, bottom first, each with its TYPE_4BYTE_ABGR base raster and all of its final Drawables
+	 * (oldest first) as the added Drawables.  A single layer is recovered as a model without layers.
+	 * @param current the index of the current layer
+	 */
+	PaintModelImpl(String name, File saveFile, boolean fillWhite, List<AutosaveSnapshot.LayerSnapshot> recovered,
+			int current) {
+		width = recovered.get(0).base.getWidth();
+		height = recovered.get(0).base.getHeight();
+		isWhiteBGround = fillWhite;
+		color1 = Color.black;
+		color2 = Color.white;
+		clicksList = new ArrayList<Point>();
+		events = new ModelEventBus();
+		newDrawing = Drawable.NOTHING;
+		this.saveFile = saveFile;
+		this.name = name;
+		for (AutosaveSnapshot.LayerSnapshot r : recovered) {
+			image = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+			image.setData(r.base);
+			defaultRaster = image.getData();
+			history = new UndoHistory();
+			for (Drawable d : r.added.asList()) {
+				if (d instanceof ModelDependentDrawable) {
+					((ModelDependentDrawable)d).setModelToUse(this);
+				}
+				history.addLoaded(d);
+			}
+			redrawImage();
+			if (recovered.size() > 1) {
+				Layer layer = new Layer(layers.size(), r.name, image, defaultRaster, history, r.white);
+				layer.visible = r.visible;
+				layer.opacity = r.opacity;
+				layers.add(layer);
+			}
+		}
+		if (!layers.isEmpty()) {
+			layersAdded = layers.size() - 1;
+			lastLayerId = layers.size() - 1;
+			selectLayer(Math.max(0, Math.min(current, layers.size() - 1)));
+			compositeChanged(new Rectangle(0, 0, width, height));
+		}
+		changed = true;
+		modificationCount++;
+	}
+	
+	/**
+	 * Returns what has changed since the last call to this method, for Autosave to write out on another thread: for each
+	 * layer, the Drawables added (and how many of the earlier ones are still there) and, if it has been replaced, the base
+	 * raster.  Only references and the new Drawables' entries in the store are copied (no Drawable objects are made), so
+	 * this is quick enough to call on the EDT.
+	 * @param full true to include every base raster and Drawable, as if there had been no earlier snapshot
+	 * @return the changes, or null if the model has not changed since the last snapshot (or has never been changed)
+	 */
+	AutosaveSnapshot takeAutosaveSnapshot(boolean full) {
+		if (modificationCount == 0 || (modificationCount == autosaveCount && !full))
+			return null;
+		Layer current;
+		List<Layer> toSave;
+		if (layers.isEmpty()) {
+			current = new Layer(0, BACKGROUND_LAYER_NAME, image, defaultRaster, history, isWhiteBGround);
+			toSave = Collections.singletonList(current);
+		} else {
+			current = layers.get(currentLayer);
+			toSave = layers;
+		}
+		storeLayer(current);
+		List<AutosaveSnapshot.LayerSnapshot> snapshots = new ArrayList<AutosaveSnapshot.LayerSnapshot>(toSave.size());
+		for (Layer layer : toSave) {
+			DrawableStore drawables = layer.history.getStore();
+			boolean newBase = full || layer.baseGeneration != layer.autosaveBaseGeneration;
+			int kept = newBase ? 0 : layer.autosaveKept;
+			snapshots.add(new AutosaveSnapshot.LayerSnapshot(layer.id, layer.name, layer.visible, layer.opacity, layer.white,
+					layer.baseGeneration, newBase ? layer.base : null, kept,
+					drawables.copy(kept, drawables.size())));
+			layer.autosaveBaseGeneration = layer.baseGeneration;
+			layer.autosaveKept = drawables.size();
+		}
+		autosaveCount = modificationCount;
+		autosaveBaseGeneration = current.autosaveBaseGeneration;
+		autosaveKept = current.autosaveKept;
+		return new AutosaveSnapshot(name, saveFile == null ? null : saveFile.getPath(), width, height, isWhiteBGround,
+				currentLayer, snapshots);
+	}
+	
+	/**
+	 * Starts reading the base image and the history from a ZDLIF file on the historyLoader thread.  When it is done, it is
+	 * merged into the model on the EDT (or sooner by ensureHistoryLoaded(), if it is needed before then).
+	 * @param f the ZDLIF file
+	 */
+	private void loadHistoryInBackground(final File f) {
+		FutureTask<LoadedHistory> task = new FutureTask<LoadedHistory>(new Callable<LoadedHistory>() {
+			public LoadedHistory call() throws Exception {
+				return readHistory(f);
+			}
+		}) {
+			protected void done() {
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						ensureHistoryLoaded();
+					}
+				});
+			}
+		};
+		pendingHistory = task;
+		historyLoader.execute(task);
+	}
+	
+	/**
+	 * Merges the history being read in the background into the model, waiting for it to be read if it hasn't been yet.
+	 * The file's Drawables go in front of any made since it was opened, on top of the file's base image, so the image
+	 * itself does not change.  If the history could not be read, the model just keeps the image it was opened with as its
+	 * base.
+	 */
+	private void ensureHistoryLoaded() {
+		if (pendingHistory == null)
+			return;
+		LoadedHistory loaded = null;
+		try {
+			loaded = pendingHistory.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (ExecutionException e) {
+			System.err.println("Couldn't read the history of " + name + ", it can't be undone: " + e.getCause());
+		}
+		pendingHistory = null;
+		if (loaded == null)
+			return;
+		defaultRaster = loaded.base;
+		isWhiteBGround = loaded.isWhiteBGround;
+		for (Drawable d : loaded.drawables) {
+			if (d instanceof ModelDependentDrawable) {
+				((ModelDependentDrawable)d).setModelToUse(this);
+			}
+		}
+		history.prependLoaded(loaded.drawables, loaded.sizes);
+		baseGeneration++;
+		// the history count and whether there is anything to undo have changed
+		events.changed(CODE_MODEL_CHANGED);
+	}
+	
+	/**
+	 * Reads the base image and the history from a ZDLIF file.  Runs on the historyLoader thread, so only touches the file.
+	 * @param f the ZDLIF file
+	 * @return what was read
+	 * @throws IOException if the file cannot be read
+	 * @throws ClassNotFoundException if a Drawable in the file can not be loaded
+	 */
+	private static LoadedHistory readHistory(File f) throws IOException, ClassNotFoundException {
+		ZipFile zf = new ZipFile(f);
+		try {
+			LoadedHistory loaded = new LoadedHistory();
+			loaded.base = readImage(zf.getInputStream(zf.getEntry(DATA_ENTRY))).getData();
+			ObjectInputStream ois = new ObjectInputStream(zf.getInputStream(zf.getEntry(DRAWINGS_ENTRY)));
+			try {
+				loaded.isWhiteBGround = ois.readBoolean();
+				int numDs = ois.readInt();
+				loaded.drawables = new ArrayList<Drawable>(numDs);
+				loaded.sizes = new int[numDs];
+				for (int i = 0; i < numDs; i++) {
+					Drawable d = (Drawable)ois.readObject();
+					loaded.drawables.add(d);
+					loaded.sizes[i] = UndoHistory.estimateSize(d);
+				}
+			} finally {
+				ois.close();
+			}
+			return loaded;
+		} finally {
+			zf.close();
+		}
+	}
+	
+	/**
+	 * Reads an image, converting it to a TYPE_4BYTE_ABGR image whatever type the reader gives back
+	 * @param is the stream to read the image from
+	 * @return the image
+	 * @throws IOException if the image cannot be read
+	 */
+	private static BufferedImage readImage(InputStream is) throws IOException {
+		BufferedImage data = ImageIO.read(is);
+		if (data == null)
+			throw new IOException("Unreadable image");
+		if (data.getType() == BufferedImage.TYPE_4BYTE_ABGR)
+			return data;
+		BufferedImage result = new BufferedImage(data.getWidth(), data.getHeight(), BufferedImage.TYPE_4BYTE_ABGR);
+		result.createGraphics().drawImage(data, 0, 0, null);
+		return result;
+	}
+	
+	/**
+	 * Reads the list of layers from a ZDLIF file, if it has one, along with the images and histories of every layer above the
+	 * bottom one.  The bottom layer is the one already read from the file's main entries (whose history may still be being
+	 * read in the background), and stays the current layer.
+	 * @param zf the ZDLIF file
+	 * @throws IOException if the file cannot be read
+	 * @throws ClassNotFoundException if a Drawable in the file can not be loaded
+	 */
+	private void readLayers(ZipFile zf) throws IOException, ClassNotFoundException {
+		ZipEntry list = zf.getEntry(LAYERS_ENTRY);
+		if (list == null)
+			return;
+		ObjectInputStream ois = new ObjectInputStream(zf.getInputStream(list));
+		try {
+			int count = ois.readInt();
+			for (int i = 0; i < count; i++) {
+				String layerName = ois.readUTF();
+				boolean visible = ois.readBoolean();
+				float opacity = ois.readFloat();
+				boolean white = ois.readBoolean();
+				Layer layer;
+				if (i == 0) {
+					layer = new Layer(0, layerName, image, defaultRaster, history, white);
+				} else {
+					String prefix = LAYER_ENTRY_PREFIX + i + ".";
+					BufferedImage layerImage = readImage(zf.getInputStream(zf.getEntry(prefix + CURRENT_ENTRY)));
+					Raster layerBase = readImage(zf.getInputStream(zf.getEntry(prefix + DATA_ENTRY))).getData();
+					UndoHistory layerHistory = new UndoHistory();
+					ObjectInputStream drawings = new ObjectInputStream(zf.getInputStream(zf.getEntry(prefix + DRAWINGS_ENTRY)));
+					try {
+						drawings.readBoolean();
+						int numDs = drawings.readInt();
+						for (int j = 0; j < numDs; j++) {
+							Drawable d = (Drawable)drawings.readObject();
+							if (d instanceof ModelDependentDrawable) {
+								((ModelDependentDrawable)d).setModelToUse(this);
+							}
+							layerHistory.addLoaded(d);
+						}
+					} finally {
+						drawings.close();
+					}
+					layer = new Layer(i, layerName, layerImage, layerBase, layerHistory, white);
+				}
+				layer.visible = visible;
+				layer.opacity = opacity;
+				layers.add(layer);
+			}
+		} finally {
+			ois.close();
+		}
+		layersAdded = layers.size() - 1;
+		lastLayerId = layers.size() - 1;
+		compositeChanged(new Rectangle(0, 0, width, height));
+	}
+	
+	/**
+	 * The base image and history of a ZDLIF file, as read by the historyLoader
+	 * @author Shawn Waldon
+	 *
+	 */
+	private static final class LoadedHistory {
+		Raster base;
+		boolean isWhiteBGround;
+		List<Drawable> drawables;
+		int[] sizes;
+	}
+	
 	/**
 	 * Reads the data from a single ZipEntry on the given ZipInputStream
 	 * @param entry the entry that is being read
@@ -150,21 +545,22 @@ class PaintModelImpl implements PaintModel {
 	 * @throws ClassNotFoundException if there is an error on the readObject method of the ObjectInputStream
 	 */
 	private void readEntry(ZipEntry entry, InputStream is) throws IOException, ClassNotFoundException {
-		if (entry.getName().equals("DATA")) {
-			image = ImageIO.read(is);
+		if (entry.getName().equals(DATA_ENTRY)) {
+			// always work on a TYPE_4BYTE_ABGR image, whatever type the reader gives back
+			image = readImage(is);
 			width = image.getWidth();
 			height = image.getHeight();
 			defaultRaster = image.getData();
-		} else if (entry.getName().equals("DRAWINGS")) {
+		} else if (entry.getName().equals(DRAWINGS_ENTRY)) {
 			ObjectInputStream ois = null;
 			try {
 				ois = new ObjectInputStream(is);
 				isWhiteBGround = ois.readBoolean();
 				int numDs = ois.readInt();
 				for (int i = 0; i < numDs; i++) {
-					drawables.add((Drawable)ois.readObject());
+					history.addLoaded((Drawable)ois.readObject());
 				}
-				for (Drawable d: drawables) {
+				for (Drawable d: history.getDrawables()) {
 					if (d instanceof ModelDependentDrawable) {
 						((ModelDependentDrawable)d).setModelToUse(this);
 					}
@@ -202,18 +598,116 @@ class PaintModelImpl implements PaintModel {
 
 
 	public void finalizeDrawing(Drawable newDrawing) {
+		long start = System.nanoTime();
+		unshareRasters();
 		Graphics2D g = image.createGraphics();
-		newDrawing.draw(g);
-		drawables.add(newDrawing);
+		PixelDelta delta = null;
+		if (newDrawing instanceof ReversibleDrawable)
+			delta = ((ReversibleDrawable) newDrawing).drawWithDelta(g);
+		else
+			newDrawing.draw(g);
+		finalizeTime.recordSince(start);
+		markChanged(newDrawing);
+		history.add(newDrawing, delta);
+		events.drawableAdded(newDrawing);
+		if (history.isOverCap() && !history.isFlattening()) {
+			ensureHistoryLoaded();
+			flattenHistory();
+		}
 		this.newDrawing = Drawable.NOTHING;
 
 		clearPointsList();
-		undoneStack.clear();
 
 		mouseClickedAt = null;
 		changed = true;
+		modificationCount++;
 		clickCode = IGNORE_ALL;
-		fireModelChangeCode(CODE_MODEL_CHANGED);
+		events.changed(CODE_MODEL_CHANGED);
+	}
+	
+	/**
+	 * Starts drawing the oldest Drawables into a new base raster in the background, after which they are removed from the
+	 * history (which spills them to disk so that they can still be undone).  The image already shows them, so it is not
+	 * redrawn, and the history is brought well under its cap so this only happens every so often.
+	 */
+	private void flattenHistory() {
+		int n = history.getFlattenCount();
+		if (n == 0)
+			return;
+		final UndoHistory flattened = history;
+		history.startFlatten(n, defaultRaster, new Runnable() {
+			public void run() {
+				flattenFinished(flattened);
+			}
+		});
+	}
+	
+	/**
+	 * Makes the new base raster of a finished flatten the base raster of the layer whose history it was, unless the flatten
+	 * no longer applies, and starts another if the current layer's history is still over its cap
+	 * @param flattened the history that was flattened, which may since have been put away with its layer (or deleted)
+	 */
+	private void flattenFinished(UndoHistory flattened) {
+		Layer layer = null;
+		Raster base = null;
+		if (flattened == history) {
+			base = defaultRaster;
+		} else {
+			for (Layer l : layers) {
+				if (l.history == flattened) {
+					layer = l;
+					base = l.base;
+				}
+			}
+		}
+		int before = flattened.size();
+		Raster newBase = flattened.finishFlatten(base);
+		if (newBase != null) {
+			drawablesFlattened.add(before - flattened.size());
+			if (layer == null) {
+				defaultRaster = newBase;
+				baseGeneration++;
+			} else {
+				layer.base = newBase;
+				layer.baseGeneration++;
+			}
+		}
+		if (history.isOverCap() && !history.isFlattening())
+			flattenHistory();
+	}
+
+	/**
+	 * Reads the newest segment of the Drawables spilled to disk back into the history, and makes the base raster they were
+	 * drawn on the base raster again (grown or cropped to the current size if the model has been resized since)
+	 * @return true if the history was restored, false if it could not be read
+	 */
+	private boolean restoreHistory() {
+		BufferedImage base;
+		try {
+			base = history.restore();
+		} catch (Exception e) {
+			System.err.println("Couldn't read undo history back from disk: " + e.getMessage());
+			history.discardSpilled();
+			return false;
+		}
+		if (base.getWidth() != width || base.getHeight() != height) {
+			BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+			Graphics2D g = resized.createGraphics();
+			if (isCurrentLayerWhite()) {
+				g.setColor(Color.WHITE);
+				g.fillRect(0, 0, width+1, height+1);
+			}
+			g.drawImage(base, 0, 0, null);
+			base = resized;
+		}
+		defaultRaster = base.getData();
+		baseGeneration++;
+		for (Drawable d : history.getDrawables()) {
+			if (d instanceof ModelDependentDrawable) {
+				((ModelDependentDrawable)d).setModelToUse(this);
+			}
+		}
+		return true;
 	}
 	
 	public void clearPointsList() {
@@ -240,6 +734,10 @@ class PaintModelImpl implements PaintModel {
 		return result;
 	}
 
+	public int getPointsCount() {
+		return clicksList.size();
+	}
+
 	public boolean isRightClick() {
 		return isRightClick;
 	}
@@ -249,12 +747,61 @@ class PaintModelImpl implements PaintModel {
 	}
 
 	public void redrawImage() {
+		long start = System.nanoTime();
+		unshareRasters();
 		image.setData(defaultRaster);
-		Graphics2D g = image.createGraphics();
-		for (Drawable d : drawables) {
-			d.draw(g);
+		DrawableStore drawables = history.getStore();
+		ParallelReplay.replay(image, drawables, 0, drawables.size());
+		drawablesReplayed.add(drawables.size());
+		replayTime.recordSince(start);
+		tileVersion++;
+		tileVersions = null;
+		compositeChanged(new Rectangle(0, 0, width, height));
+		events.imageChanged(new Rectangle(0, 0, width, height));
+	}
+	
+	/**
+	 * Updates the version of every tile that the Drawable has just been drawn on (all of them, if it is not a
+	 * BoundedDrawable)
+	 */
+	private void markChanged(Drawable d) {
+		markChanged((d instanceof BoundedDrawable) ? ((BoundedDrawable) d).getBounds() : null);
+	}
+	
+	/**
+	 * Updates the version of every tile in the given rectangle (all of them, if it is null)
+	 */
+	private void markChanged(Rectangle r) {
+		int tilesAcross = (width + TILE_SIZE - 1) / TILE_SIZE;
+		int tilesDown = (height + TILE_SIZE - 1) / TILE_SIZE;
+		tileVersion++;
+		if (r == null) {
+			tileVersions = null;
+			compositeChanged(new Rectangle(0, 0, width, height));
+			events.imageChanged(new Rectangle(0, 0, width, height));
+			return;
+		}
+		r = r.intersection(new Rectangle(0, 0, width, height));
+		if (r.isEmpty())
+			return;
+		compositeChanged(r);
+		events.imageChanged(r);
+		if (tileVersions == null) {
+			tileVersions = new long[tilesAcross * tilesDown];
+			Arrays.fill(tileVersions, tileVersion - 1);
+		}
+		for (int ty = r.y / TILE_SIZE; ty <= (r.y + r.height - 1) / TILE_SIZE; ty++) {
+			for (int tx = r.x / TILE_SIZE; tx <= (r.x + r.width - 1) / TILE_SIZE; tx++) {
+				tileVersions[ty * tilesAcross + tx] = tileVersion;
+			}
 		}
 	}
+	
+	public long getTileVersion(int tileX, int tileY) {
+		if (tileVersions == null)
+			return tileVersion;
+		return tileVersions[tileY * ((width + TILE_SIZE - 1) / TILE_SIZE) + tileX];
+	}
 
 
 	public Color getMainColor() {
@@ -295,6 +842,7 @@ class PaintModelImpl implements PaintModel {
 	}
 
 	public void saveModelToFile(File f, Format format) throws IOException {
+		long start = System.nanoTime();
 		if (!f.getName().endsWith("." + format.toString())) {
 			// Ensure that the filename ends in the correct format ending
 			f = new File(f.getAbsolutePath() + "." + format.toString());
@@ -302,32 +850,34 @@ class PaintModelImpl implements PaintModel {
 		FileOutputStream fos = null;
 		try {
 			fos = new FileOutputStream(f);
-			if (format == Format.GIF || format == Format.JPG || format == Format.PNG) {
-				// Easy part - save with ImageIO
-				ImageIO.write(image, format.toString(), fos);
+			if (format == Format.GIF) {
+				// GIF only has a palette, so work one out here rather than leaving it to the writer
+				boolean dither = Boolean.getBoolean(PaletteQuantizer.DITHER_PROPERTY);
+				ImageIO.write(PaletteQuantizer.quantize(getCompositeImage(), dither), format.toString(), fos);
+			} else if (format == Format.PNG) {
+				// images with few colors (like most diagrams) are written with a palette, which is smaller and quicker
+				BufferedImage flat = getCompositeImage();
+				BufferedImage indexed = PaletteQuantizer.exactPalette(flat, false);
+				ImageIO.write(indexed != null ? indexed : flat, format.toString(), fos);
+			} else if (format == Format.JPG) {
+				// JPEG has no alpha, so see-through pixels are shown over white
+				JpegExport.write(getCompositeImage(), Color.WHITE.getRGB(), fos);
 			} else if (format == Format.ZDLIF) {
 				// Otherwise, save in my (hopefully) usable format
+				ensureHistoryLoaded();
 				ZipOutputStream zos = null;
 				try {
 					zos = new ZipOutputStream(fos);
-					zos.putNextEntry(new ZipEntry("DATA"));
-					image.setData(defaultRaster);
-					ImageIO.write(image, INTERNAL_FORMAT_OF_ZIPFILE, zos);
-					zos.flush();
-					zos.closeEntry();
-					ObjectOutputStream oos = null;
-					try {
-						zos.putNextEntry(new ZipEntry("DRAWINGS"));
-						oos = new ObjectOutputStream(zos);
-						oos.writeBoolean(isWhiteBGround);
-						oos.writeInt(drawables.size());
-						for (Drawable d : drawables) {
-							oos.writeObject(d);
+					if (layers.isEmpty()) {
+						writeLayer(zos, "", image, defaultRaster, history, isWhiteBGround);
+					} else {
+						storeCurrentLayer();
+						for (int i = 0; i < layers.size(); i++) {
+							Layer layer = layers.get(i);
+							writeLayer(zos, i == 0 ? "" : LAYER_ENTRY_PREFIX + i + ".", layer.image, layer.base, layer.history,
+									i == 0 ? isWhiteBGround : layer.white);
 						}
-						zos.closeEntry();
-					} finally {
-						if (oos != null)
-							oos.close();
+						writeLayerList(zos);
 					}
 				} finally {
 					if (zos != null)
@@ -338,11 +888,57 @@ class PaintModelImpl implements PaintModel {
 			if (fos != null)
 				fos.close();
 		}
-		redrawImage();
+		saveTime.recordSince(start);
+		bytesSaved.add(f.length());
 		saveFile = f;
 		name = f.getName();
 		changed = false;
-		fireModelChangeCode(CODE_MODEL_SAVED);
+		events.changed(CODE_MODEL_SAVED);
+	}
+
+	/**
+	 * Writes a layer to a ZDLIF file: its image as it is now, its base image and its Drawables, in the entries named with the
+	 * given prefix
+	 */
+	private void writeLayer(ZipOutputStream zos, String prefix, BufferedImage layerImage, Raster base, UndoHistory layerHistory,
+			boolean white) throws IOException {
+		zos.putNextEntry(new ZipEntry(prefix + CURRENT_ENTRY));
+		ImageIO.write(layerImage, INTERNAL_FORMAT_OF_ZIPFILE, zos);
+		zos.flush();
+		zos.closeEntry();
+		zos.putNextEntry(new ZipEntry(prefix + DATA_ENTRY));
+		BufferedImage baseImage = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+		baseImage.setData(base);
+		ImageIO.write(baseImage, INTERNAL_FORMAT_OF_ZIPFILE, zos);
+		zos.flush();
+		zos.closeEntry();
+		zos.putNextEntry(new ZipEntry(prefix + DRAWINGS_ENTRY));
+		// not closed, as that would close the zip file too
+		ObjectOutputStream oos = new ObjectOutputStream(zos);
+		oos.writeBoolean(white);
+		oos.writeInt(layerHistory.size());
+		for (Drawable d : layerHistory.getDrawables()) {
+			oos.writeObject(d);
+		}
+		oos.flush();
+		zos.closeEntry();
+	}
+	
+	/**
+	 * Writes the LAYERS entry of a ZDLIF file: the number of layers, then the name, visibility, opacity and background of each
+	 */
+	private void writeLayerList(ZipOutputStream zos) throws IOException {
+		zos.putNextEntry(new ZipEntry(LAYERS_ENTRY));
+		ObjectOutputStream oos = new ObjectOutputStream(zos);
+		oos.writeInt(layers.size());
+		for (Layer layer : layers) {
+			oos.writeUTF(layer.name);
+			oos.writeBoolean(layer.visible);
+			oos.writeFloat(layer.opacity);
+			oos.writeBoolean(layer.white);
+		}
+		oos.flush();
+		zos.closeEntry();
 	}
 
 	public int getShapeMode() {
@@ -366,90 +962,221 @@ class PaintModelImpl implements PaintModel {
 		return saveFile;
 	}
 
+	/**
+	 * Resizes the image (every layer of it), keeping its top left corner.  The base raster and the image are each copied once
+	 * into the new size (only the new margins are filled), and if replaying the history at the new size would give exactly
+	 * the image there is now (see canKeepImage) the image is carried over instead of replayed.
+	 */
 	public void setSize(int w, int h) {
+		ensureHistoryLoaded();
+		long start = System.nanoTime();
+		int oldWidth = width;
+		int oldHeight = height;
+		events.sizeChanged(new Dimension(width, height), new Dimension(w, h));
 		width = w;
 		height = h;
-		BufferedImage oldImage = image;
-		oldImage.setData(defaultRaster);
-		image = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
-		Graphics2D g = image.createGraphics();
-		if (isWhiteBGround) {
-			g.setColor(Color.WHITE);
-			g.fillRect(0, 0, width+1, height+1);
+		if (layers.isEmpty()) {
+			resizeCurrentLayer(oldWidth, oldHeight);
+		} else {
+			int current = currentLayer;
+			storeCurrentLayer();
+			for (int i = 0; i < layers.size(); i++) {
+				selectLayer(i);
+				resizeCurrentLayer(oldWidth, oldHeight);
+				storeCurrentLayer();
+			}
+			selectLayer(current);
 		}
-		g.drawImage(oldImage, 0, 0, null);
-		defaultRaster = image.getData();
-		redrawImage();
+		if (selection != null)
+			setSelection(selection);
+		resizeTime.recordSince(start);
 		changed = true;
-		fireModelChangeCode(CODE_MODEL_SIZE_CHANGED);
-		fireModelChangeCode(CODE_MODEL_CHANGED);
+		modificationCount++;
 	}
 
-	public String getName() {
-		return name;
+	/**
+	 * Resizes the current layer's base raster and image from the given size to the model's size
+	 */
+	private void resizeCurrentLayer(int oldWidth, int oldHeight) {
+		// the pixels the deltas put back may have been cropped away from the base raster
+		history.clearDeltas();
+		boolean keepImage = canKeepImage(oldWidth, oldHeight);
+		BufferedImage base = resized(defaultRaster, width, height);
+		defaultRaster = base.getRaster();
+		baseGeneration++;
+		if (keepImage) {
+			image = resized(image.getRaster(), width, height);
+			tileVersion++;
+			tileVersions = null;
+			compositeChanged(new Rectangle(0, 0, width, height));
+			events.imageChanged(new Rectangle(0, 0, width, height));
+			resizesKept.add(1);
+		} else {
+			image = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+			redrawImage();
+		}
 	}
 
-	public void addModelChangeListener(ModelChangeListener l) {
-		listeners.add(l);
+	/**
+	 * Returns true if the current layer's image can be carried over from the given size to the model's size without
+	 * replaying the history, which is when every Drawable says where it is and lies inside both the old and the new size.
+	 * Anything cut off at the old edge would be drawn into new margins by a replay, and a shape that crosses the edge of the
+	 * image is not always rasterized the same as one that does not, so cropping through a Drawable can move the pixels next
+	 * to the new edge.  ModelDependentDrawables (like fills, which can spread differently with a different edge) are always
+	 * replayed.
+	 */
+	private boolean canKeepImage(int oldWidth, int oldHeight) {
+		Rectangle kept = new Rectangle(0, 0, Math.min(width, oldWidth), Math.min(height, oldHeight));
+		DrawableStore drawables = history.getStore();
+		for (int i = 0; i < drawables.size(); i++) {
+			// (the shapes held in the store's arrays are all BoundedDrawables)
+			Drawable d = drawables.getObject(i);
+			if (d instanceof ModelDependentDrawable || (d != null && !(d instanceof BoundedDrawable)))
+				return false;
+			Rectangle r = drawables.getBounds(i);
+			if (r == null || !kept.contains(r))
+				return false;
+		}
+		return true;
 	}
 
-	public void removeModelChangeListener(ModelChangeListener l) {
-		listeners.remove(l);
+	/**
+	 * Returns a new TYPE_4BYTE_ABGR image of the given size holding the top left of the given raster, with whatever it does
+	 * not cover filled with the current layer's background.  Rows are copied straight between the byte arrays when the raster is laid out like
+	 * a TYPE_4BYTE_ABGR image, which they always are here.
+	 */
+	private BufferedImage resized(Raster from, int w, int h) {
+		BufferedImage to = new BufferedImage(w, h, BufferedImage.TYPE_4BYTE_ABGR);
+		int cw = Math.min(w, from.getWidth());
+		int ch = Math.min(h, from.getHeight());
+		byte[] dst = ((DataBufferByte) to.getRaster().getDataBuffer()).getData();
+		if (isPlainABGR(from)) {
+			byte[] src = ((DataBufferByte) from.getDataBuffer()).getData();
+			int srcStride = from.getWidth() * 4;
+			for (int y = 0; y < ch; y++) {
+				System.arraycopy(src, y * srcStride, dst, y * w * 4, cw * 4);
+			}
+		} else {
+			to.getRaster().setRect(from.createChild(0, 0, cw, ch, 0, 0, null));
+		}
+		if (isCurrentLayerWhite()) {
+			// transparent margins are already there, as a new image is all zeroes
+			for (int y = 0; y < ch; y++) {
+				Arrays.fill(dst, (y * w + cw) * 4, (y + 1) * w * 4, (byte) 0xff);
+			}
+			Arrays.fill(dst, ch * w * 4, h * w * 4, (byte) 0xff);
+		}
+		return to;
+	}
+
+	/**
+	 * Returns true if the raster's pixels are packed in one byte array four bytes each, row after row with no gaps, as in a
+	 * TYPE_4BYTE_ABGR image
+	 */
+	private static boolean isPlainABGR(Raster r) {
+		if (!(r.getDataBuffer() instanceof DataBufferByte) || !(r.getSampleModel() instanceof PixelInterleavedSampleModel))
+			return false;
+		PixelInterleavedSampleModel sm = (PixelInterleavedSampleModel) r.getSampleModel();
+		int[] offsets = sm.getBandOffsets();
+		return r.getParent() == null && r.getSampleModelTranslateX() == 0 && r.getSampleModelTranslateY() == 0
+				&& r.getDataBuffer().getOffset() == 0 && sm.getPixelStride() == 4 && sm.getScanlineStride() == r.getWidth() * 4
+				&& offsets.length == 4 && offsets[0] == 3 && offsets[1] == 2 && offsets[2] == 1 && offsets[3] == 0;
+	}
+
+	public boolean isWhiteBackground() {
+		return isWhiteBGround;
 	}
 	
 	/**
-	 * A helper method to notify all listeners that the given code has occurred.
-	 * @param code should be either PaintModel.CODE_MODEL_CHANGED or PaintModel.CODE_MODEL_SAVED
+	 * Returns true if the space a resize adds to the current layer is filled white
 	 */
-	private void fireModelChangeCode(int code) {
-		for (ModelChangeListener l : listeners) {
-			l.modelChanged(code);
-		}
+	private boolean isCurrentLayerWhite() {
+		return layers.isEmpty() ? isWhiteBGround : layers.get(currentLayer).white;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void addModelChangeListener(ModelChangeListener l) {
+		events.addListener(l);
+	}
+
+	public void removeModelChangeListener(ModelChangeListener l) {
+		events.removeListener(l);
 	}
 	
-	public void setScaleFactor(int scaleFactor) {
-		if (scaleFactor <= 0 || scaleFactor > 5) {
+	public void setScaleFactor(double scaleFactor) {
+		if (!(scaleFactor >= MIN_SCALE_FACTOR && scaleFactor <= MAX_SCALE_FACTOR)) {
 			throw new IllegalArgumentException("Illegal scale factor" + scaleFactor);
 		}
 		this.scaleFactor = scaleFactor;
-		fireModelChangeCode(CODE_MODEL_RESCALED);
+		events.changed(CODE_MODEL_RESCALED);
 	}
 
-	public int getScaleFactor() {
+	public double getScaleFactor() {
 		return scaleFactor;
 	}
 	
 	public Dimension getEffectiveSize() {
-		return new Dimension((int) (width * scaleFactor), (int) ( height * scaleFactor) );
+		return new Dimension((int) Math.ceil(width * scaleFactor), (int) Math.ceil(height * scaleFactor));
 	}
 	
 	public void undoLastAction() {
-		if (! drawables.isEmpty()) {
-			undoneStack.push(drawables.remove(drawables.size()-1));
-			redrawImage();
+		if (history.size() == 0)
+			ensureHistoryLoaded();
+		if (history.size() == 0 && history.hasSpilled())
+			restoreHistory();
+		if (history.size() > 0) {
+			PixelDelta delta = history.getNewestDelta();
+			events.drawableRemoved(history.undo());
+			if (history.size() < autosaveKept)
+				autosaveKept = history.size();
+			if (delta != null && delta.appliesTo(image)) {
+				// put back just the pixels it changed, rather than replaying everything before it
+				long start = System.nanoTime();
+				unshareRasters();
+				delta.revert(image);
+				markChanged(delta.getBounds());
+				deltaUndoTime.recordSince(start);
+			} else {
+				redrawImage();
+			}
 			
 			clearPointsList();
 			
 			mouseClickedAt = null;
 			changed = true;
+			modificationCount++;
 			clickCode = IGNORE_ALL;
-			fireModelChangeCode(CODE_MODEL_CHANGED);
+			events.changed(CODE_MODEL_CHANGED);
 		}
 	}
 	
 	public void redoLastAction() {
-		if (! undoneStack.isEmpty()) {
-			Drawable d = undoneStack.pop();
-			Graphics2D g = image.createGraphics();
-			d.draw(g);
-			drawables.add(d);
+		PixelDelta delta = history.getRedoDelta();
+		Drawable d = history.redo();
+		if (d != null) {
+			unshareRasters();
+			if (delta != null && delta.canReapply() && delta.appliesTo(image)) {
+				delta.reapply(image);
+				markChanged(delta.getBounds());
+			} else if (d instanceof ReversibleDrawable) {
+				history.setNewestDelta(((ReversibleDrawable) d).drawWithDelta(image.createGraphics()));
+				markChanged(d);
+			} else {
+				d.draw(image.createGraphics());
+				markChanged(d);
+			}
+			events.drawableAdded(d);
 			
 			clearPointsList();
 			
 			mouseClickedAt = null;
 			changed = true;
+			modificationCount++;
 			clickCode = IGNORE_ALL;
-			fireModelChangeCode(CODE_MODEL_CHANGED);
+			events.changed(CODE_MODEL_CHANGED);
 		}
 	}
 	
@@ -460,5 +1187,246 @@ class PaintModelImpl implements PaintModel {
 	public int getHeight() {
 		return height;
 	}
-
+	
+	public int getDrawableCount() {
+		return history.size();
+	}
+	
+	public long getHistoryMemoryUsage() {
+		return history.getMemoryUsage();
+	}
+	
+	public int getSpilledDrawableCount() {
+		return history.getSpilledCount();
+	}
+	
+	public long getModificationCount() {
+		return modificationCount;
+	}
+	
+	public void repaintCurrentDrawing() {
+		events.changed(CODE_MODEL_PREVIEW_CHANGED);
+	}
+	
+	/**
+	 * Brings the out of date part of the composite up to date before returning it, by clearing it and drawing that part of
+	 * each visible layer over it
+	 */
+	public BufferedImage getCompositeImage() {
+		if (layers.isEmpty() || (layers.size() == 1 && layers.get(0).visible && layers.get(0).opacity == 1f))
+			return image;
+		if (composite == null || composite.getWidth() != width || composite.getHeight() != height) {
+			composite = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+			compositeDirty = new Rectangle(0, 0, width, height);
+		}
+		if (compositeDirty == null)
+			return composite;
+		long start = System.nanoTime();
+		Rectangle r = compositeDirty.intersection(new Rectangle(0, 0, width, height));
+		compositeDirty = null;
+		if (r.isEmpty())
+			return composite;
+		int x1 = r.x + r.width;
+		int y1 = r.y + r.height;
+		Graphics2D g = composite.createGraphics();
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(r.x, r.y, r.width, r.height);
+		boolean first = true;
+		for (int i = 0; i < layers.size(); i++) {
+			Layer layer = layers.get(i);
+			if (!layer.visible || layer.opacity == 0f)
+				continue;
+			// the bottom layer is copied rather than blended onto nothing, which would round the colors of see-through pixels
+			g.setComposite(AlphaComposite.getInstance(first ? AlphaComposite.SRC : AlphaComposite.SRC_OVER, layer.opacity));
+			g.drawImage(i == currentLayer ? image : layer.image, r.x, r.y, x1, y1, r.x, r.y, x1, y1, null);
+			first = false;
+		}
+		g.dispose();
+		compositeTime.recordSince(start);
+		return composite;
+	}
+	
+	/**
+	 * Marks the given part of the composite as out of date
+	 */
+	private void compositeChanged(Rectangle r) {
+		if (layers.isEmpty())
+			return;
+		if (compositeDirty == null) {
+			compositeDirty = new Rectangle(r);
+		} else {
+			compositeDirty.add(r);
+		}
+	}
+	
+	public int getLayerCount() {
+		return Math.max(1, layers.size());
+	}
+	
+	public int getCurrentLayer() {
+		return currentLayer;
+	}
+	
+	public void setCurrentLayer(int index) {
+		getLayer(index);
+		if (index == currentLayer)
+			return;
+		ensureHistoryLoaded();
+		storeCurrentLayer();
+		selectLayer(index);
+		events.changed(CODE_MODEL_CHANGED);
+	}
+	
+	public void addLayer() {
+		ensureHistoryLoaded();
+		getLayer(0);
+		storeCurrentLayer();
+		BufferedImage layerImage = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+		layers.add(currentLayer + 1, new Layer(++lastLayerId, DEFAULT_LAYER_NAME + (++layersAdded), layerImage,
+				layerImage.getData(), new UndoHistory(), false));
+		selectLayer(currentLayer + 1);
+		layersChanged();
+	}
+	
+	public void removeLayer(int index) {
+		getLayer(index);
+		if (layers.size() == 1)
+			throw new IllegalStateException("Can't remove the only layer");
+		ensureHistoryLoaded();
+		storeCurrentLayer();
+		layers.remove(index).history.discardSpilled();
+		if (currentLayer > index || currentLayer == layers.size())
+			currentLayer--;
+		selectLayer(currentLayer);
+		layersChanged();
+	}
+	
+	public String getLayerName(int index) {
+		return getLayer(index).name;
+	}
+	
+	public boolean isLayerVisible(int index) {
+		return getLayer(index).visible;
+	}
+	
+	public void setLayerVisible(int index, boolean visible) {
+		Layer layer = getLayer(index);
+		if (layer.visible == visible)
+			return;
+		layer.visible = visible;
+		layersChanged();
+	}
+	
+	public float getLayerOpacity(int index) {
+		return getLayer(index).opacity;
+	}
+	
+	public void setLayerOpacity(int index, float opacity) {
+		if (!(opacity >= 0f && opacity <= 1f))
+			throw new IllegalArgumentException("Illegal opacity " + opacity);
+		Layer layer = getLayer(index);
+		if (layer.opacity == opacity)
+			return;
+		layer.opacity = opacity;
+		layersChanged();
+	}
+	
+	/**
+	 * Returns the layer with the given index, first making a Layer for the model's only layer if it doesn't have one yet
+	 * @throws IndexOutOfBoundsException if there is no layer with that index
+	 */
+	private Layer getLayer(int index) {
+		if (index < 0 || index >= getLayerCount())
+			throw new IndexOutOfBoundsException("No layer " + index);
+		if (layers.isEmpty())
+			layers.add(new Layer(0, BACKGROUND_LAYER_NAME, image, defaultRaster, history, isWhiteBGround));
+		return layers.get(index);
+	}
+	
+	/**
+	 * Puts the current layer's image, base raster and history back into its Layer
+	 */
+	private void storeCurrentLayer() {
+		if (layers.isEmpty())
+			return;
+		storeLayer(layers.get(currentLayer));
+	}
+	
+	/**
+	 * Puts the current layer's image, base raster, history and autosave state into the given Layer
+	 */
+	private void storeLayer(Layer layer) {
+		layer.image = image;
+		layer.base = defaultRaster;
+		layer.history = history;
+		layer.baseGeneration = baseGeneration;
+		layer.autosaveBaseGeneration = autosaveBaseGeneration;
+		layer.autosaveKept = autosaveKept;
+	}
+	
+	/**
+	 * Makes the layer with the given index current, without storing the current one first.  Whatever was being drawn on
+	 * the old layer is dropped, and the modification count goes up so that work started against the old layer's image
+	 * (such as a fill running in the background) knows it no longer applies.
+	 */
+	private void selectLayer(int index) {
+		Layer layer = layers.get(index);
+		currentLayer = index;
+		image = layer.image;
+		defaultRaster = layer.base;
+		history = layer.history;
+		baseGeneration = layer.baseGeneration;
+		autosaveBaseGeneration = layer.autosaveBaseGeneration;
+		autosaveKept = layer.autosaveKept;
+		newDrawing = Drawable.NOTHING;
+		modificationCount++;
+	}
+	
+	public Rectangle getSelection() {
+		return selection == null ? null : new Rectangle(selection);
+	}
+	
+	public void setSelection(Rectangle r) {
+		Rectangle clipped = r == null ? null : r.intersection(new Rectangle(0, 0, width, height));
+		selection = (clipped == null || clipped.isEmpty()) ? null : clipped;
+		events.changed(CODE_MODEL_PREVIEW_CHANGED);
+	}
+	
+	public SharedRaster shareRegion(Rectangle r) {
+		if (r.isEmpty() || !new Rectangle(0, 0, width, height).contains(r))
+			throw new IllegalArgumentException("Region not inside the image: " + r);
+		SharedRaster shared = new SharedRaster(image, r);
+		for (Iterator<WeakReference<SharedRaster>> it = sharedRasters.iterator(); it.hasNext();) {
+			if (it.next().get() == null)
+				it.remove();
+		}
+		sharedRasters.add(new WeakReference<SharedRaster>(shared));
+		return shared;
+	}
+	
+	/**
+	 * Makes every SharedRaster still sharing pixels with one of the images copy them, before an image is changed
+	 */
+	private void unshareRasters() {
+		for (WeakReference<SharedRaster> ref : sharedRasters) {
+			SharedRaster shared = ref.get();
+			if (shared != null)
+				shared.unshare();
+		}
+		sharedRasters.clear();
+	}
+	
+	/**
+	 * Marks the whole image as changed after the layers, or how they are shown, have changed
+	 */
+	private void layersChanged() {
+		Rectangle all = new Rectangle(0, 0, width, height);
+		tileVersion++;
+		tileVersions = null;
+		compositeChanged(all);
+		events.imageChanged(all);
+		changed = true;
+		modificationCount++;
+		events.changed(CODE_MODEL_CHANGED);
+	}
 }
@@ -23,17 +23,26 @@ public class PaintModelUtils {
 	private static final FileFilter ZDLIF_FILTER = new FileNameExtensionFilter("ZDLIF Files", "zdlif", "ZDLIF");
 	
 	/**
-	 * The JFileChooser for the saveModelToFile method
+	 * The JFileChooser for the saveModelToFile method.  Creating a JFileChooser is slow (it reads the file system), so this
+	 * is only created the first time it is needed, by getFileChooser()
 	 */
-	private static final JFileChooser jfc;
+	private static JFileChooser jfc = null;
 	
-	static { // set up the JFileChooser
-		jfc = new JFileChooser();
-		jfc.setFileSelectionMode(JFileChooser.FILES_ONLY);
-		jfc.setFileFilter(JPG_FILTER);
-		jfc.setFileFilter(GIF_FILTER);
-		jfc.setFileFilter(ZDLIF_FILTER);
-		jfc.setFileFilter(PNG_FILTER);
+	/**
+	 * Returns the JFileChooser used for saving and opening files, creating and setting it up the first time this is called.
+	 * Must be called on the EDT.
+	 * @return the JFileChooser for saving and opening files
+	 */
+	private static JFileChooser getFileChooser() {
+		if (jfc == null) {
+			jfc = new JFileChooser();
+			jfc.setFileSelectionMode(JFileChooser.FILES_ONLY);
+			jfc.setFileFilter(JPG_FILTER);
+			jfc.setFileFilter(GIF_FILTER);
+			jfc.setFileFilter(ZDLIF_FILTER);
+			jfc.setFileFilter(PNG_FILTER);
+		}
+		return jfc;
 	}
 	
 	/**
@@ -89,6 +98,7 @@ public class PaintModelUtils {
 	 * @return true if the save was successful
 	 */
 	public static boolean saveModelToFile(PaintModel model, String actionCommand, PaintFrame frame) {
+		JFileChooser jfc = getFileChooser();
 		jfc.setMultiSelectionEnabled(false);
 		File f = model.getSaveFile();
 		jfc.setSelectedFile(f);
@@ -167,6 +177,7 @@ public class PaintModelUtils {
 	
 	
 	public static void openModelFromFiles(PaintFrame frame) {
+		JFileChooser jfc = getFileChooser();
 		jfc.setMultiSelectionEnabled(true);
 		if (jfc.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
 			File[] files = jfc.getSelectedFiles();
@@ -3,6 +3,7 @@ package waldonsm.paint.model;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -218,6 +219,13 @@ class PaintModelWrapper extends WeakReference<PaintModelImpl> implements PaintMo
 		return get().getPointsList();
 	}
 
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public int getPointsCount() {
+		return get().getPointsCount();
+	}
+
 	/**
 	 * Implemented by calling the same method on the underlying PaintModelImpl
 	 */
@@ -253,6 +261,13 @@ class PaintModelWrapper extends WeakReference<PaintModelImpl> implements PaintMo
 		get().setSize(w, h);
 	}
 
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public boolean isWhiteBackground() {
+		return get().isWhiteBackground();
+	}
+
 	/**
 	 * Implemented by calling the same method on the underlying PaintModelImpl
 	 */
@@ -285,14 +300,14 @@ class PaintModelWrapper extends WeakReference<PaintModelImpl> implements PaintMo
 	/**
 	 * Implemented by calling the same method on the underlying PaintModelImpl
 	 */
-	public int getScaleFactor() {
+	public double getScaleFactor() {
 		return get().getScaleFactor();
 	}
 
 	/**
 	 * Implemented by calling the same method on the underlying PaintModelImpl
 	 */
-	public void setScaleFactor(int scaleFactor) {
+	public void setScaleFactor(double scaleFactor) {
 		get().setScaleFactor(scaleFactor);
 	}
 	
@@ -330,4 +345,144 @@ class PaintModelWrapper extends WeakReference<PaintModelImpl> implements PaintMo
 	public int getWidth() {
 		return get().getWidth();
 	}
+	
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public int getDrawableCount() {
+		return get().getDrawableCount();
+	}
+	
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public long getHistoryMemoryUsage() {
+		return get().getHistoryMemoryUsage();
+	}
+	
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public int getSpilledDrawableCount() {
+		return get().getSpilledDrawableCount();
+	}
+	
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public long getModificationCount() {
+		return get().getModificationCount();
+	}
+	
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public void repaintCurrentDrawing() {
+		get().repaintCurrentDrawing();
+	}
+	
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public long getTileVersion(int tileX, int tileY) {
+		return get().getTileVersion(tileX, tileY);
+	}
+
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public BufferedImage getCompositeImage() {
+		return get().getCompositeImage();
+	}
+
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public int getLayerCount() {
+		return get().getLayerCount();
+	}
+
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public int getCurrentLayer() {
+		return get().getCurrentLayer();
+	}
+
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public void setCurrentLayer(int index) {
+		get().setCurrentLayer(index);
+	}
+
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public void addLayer() {
+		get().addLayer();
+	}
+
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public void removeLayer(int index) {
+		get().removeLayer(index);
+	}
+
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public String getLayerName(int index) {
+		return get().getLayerName(index);
+	}
+
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public boolean isLayerVisible(int index) {
+		return get().isLayerVisible(index);
+	}
+
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public void setLayerVisible(int index, boolean visible) {
+		get().setLayerVisible(index, visible);
+	}
+
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public float getLayerOpacity(int index) {
+		return get().getLayerOpacity(index);
+	}
+
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public void setLayerOpacity(int index, float opacity) {
+		get().setLayerOpacity(index, opacity);
+	}
+
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public Rectangle getSelection() {
+		return get().getSelection();
+	}
+
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public void setSelection(Rectangle r) {
+		get().setSelection(r);
+	}
+
+	/**
+	 * Implemented by calling the same method on the underlying PaintModelImpl
+	 */
+	public SharedRaster shareRegion(Rectangle r) {
+		return get().shareRegion(r);
+	}
 }
@@ -0,0 +1,441 @@
+package waldonsm.paint.model;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Turns TYPE_4BYTE_ABGR images into TYPE_BYTE_INDEXED ones with at most 256 colors, for GIF files and for PNG files that
+ * fit in a palette. <P>
+ * An image that already has few enough colors gets exactly those colors.  Otherwise the colors are counted into a
+ * histogram of 5 bits per channel (each thread counting its own rows), the histogram is put in an octree, and the octree
+ * is merged from the bottom up, least used branches first, until few enough leaves are left; the palette is the average
+ * color of each leaf.  Every pixel is then given the palette color nearest to its histogram cell, through a table worked
+ * out once per cell, optionally after ordered (Bayer) dithering, which spreads banding out into a fine regular pattern.
+ * @author Shawn Waldon
+ *
+ */
+final class PaletteQuantizer {
+
+	/**
+	 * The system property that turns ordered dithering of GIF files on (it is off by default)
+	 */
+	static final String DITHER_PROPERTY = "javapaint.gifDither";
+
+	/**
+	 * The largest number of colors in a palette
+	 */
+	static final int MAX_COLORS = 256;
+
+	/**
+	 * The number of bits per channel kept by the histogram
+	 */
+	private static final int BITS = 5;
+
+	private static final int CELLS = 1 << (3 * BITS);
+
+	/**
+	 * The colors of an image are counted in a hash table with 1 &lt;&lt; SLOT_BITS slots, four for each color allowed
+	 */
+	private static final int SLOT_BITS = 10;
+
+	/**
+	 * How far (in 0-255 color levels) ordered dithering moves a pixel's color, from the lowest to the highest threshold
+	 */
+	private static final int DITHER_SPREAD = 24;
+
+	/**
+	 * The 8x8 Bayer matrix, thresholds 0 to 63
+	 */
+	private static final int[] BAYER = {
+		 0, 32,  8, 40,  2, 34, 10, 42,
+		48, 16, 56, 24, 50, 18, 58, 26,
+		12, 44,  4, 36, 14, 46,  6, 38,
+		60, 28, 52, 20, 62, 30, 54, 22,
+		 3, 35, 11, 43,  1, 33,  9, 41,
+		51, 19, 59, 27, 49, 17, 57, 25,
+		15, 47,  7, 39, 13, 45,  5, 37,
+		63, 31, 55, 23, 61, 29, 53, 21
+	};
+
+	private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+	private PaletteQuantizer() {
+		// static methods only
+	}
+
+	/**
+	 * Returns the image with a palette of exactly its colors, or null if it has more than MAX_COLORS of them
+	 * @param image a TYPE_4BYTE_ABGR image
+	 * @param binaryAlpha true to treat pixels less than half opaque as fully transparent and the rest as fully opaque (as in
+	 * a GIF file), false to keep every color's alpha
+	 * @return a TYPE_BYTE_INDEXED copy of the image, or null
+	 */
+	static BufferedImage exactPalette(BufferedImage image, boolean binaryAlpha) {
+		byte[] abgr = data(image);
+		int[] slots = new int[1 << SLOT_BITS];
+		boolean[] used = new boolean[slots.length];
+		int[] colors = new int[MAX_COLORS];
+		int count = 0;
+		int last = 0;
+		boolean any = false;
+		for (int i = 0; i < abgr.length; i += 4) {
+			int argb = argb(abgr, i, binaryAlpha);
+			if (any && argb == last)
+				continue;
+			any = true;
+			last = argb;
+			int slot = slotOf(slots, used, argb);
+			if (!used[slot]) {
+				if (count == MAX_COLORS)
+					return null;
+				used[slot] = true;
+				slots[slot] = argb;
+				colors[count++] = argb;
+			}
+		}
+		Arrays.sort(colors, 0, count);
+		int transparentIndex = -1;
+		if (binaryAlpha) {
+			for (int c = 0; c < count; c++) {
+				if (colors[c] == 0)
+					transparentIndex = c;
+			}
+		}
+		IndexColorModel model = colorModel(colors, count, transparentIndex, !binaryAlpha);
+		BufferedImage indexed = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_INDEXED, model);
+		byte[] out = ((DataBufferByte) indexed.getRaster().getDataBuffer()).getData();
+		int[] indexOfSlot = new int[slots.length];
+		for (int c = 0; c < count; c++) {
+			indexOfSlot[slotOf(slots, used, colors[c])] = c;
+		}
+		last = 0;
+		int lastIndex = -1;
+		for (int i = 0, p = 0; i < abgr.length; i += 4, p++) {
+			int argb = argb(abgr, i, binaryAlpha);
+			if (lastIndex < 0 || argb != last) {
+				last = argb;
+				lastIndex = indexOfSlot[slotOf(slots, used, argb)];
+			}
+			out[p] = (byte) lastIndex;
+		}
+		return indexed;
+	}
+
+	/**
+	 * Returns the image reduced to MAX_COLORS colors (including one for transparency, if any pixel is less than half opaque)
+	 * for a GIF file.  If the image has few enough colors already, they are kept exactly.
+	 * @param image a TYPE_4BYTE_ABGR image
+	 * @param dither true to use ordered dithering
+	 * @return a TYPE_BYTE_INDEXED copy of the image
+	 */
+	static BufferedImage quantize(BufferedImage image, final boolean dither) {
+		BufferedImage exact = exactPalette(image, true);
+		if (exact != null)
+			return exact;
+		final byte[] abgr = data(image);
+		final int w = image.getWidth();
+		final int h = image.getHeight();
+		// count the colors, each thread into its own histogram
+		List<Callable<long[][]>> counts = new ArrayList<Callable<long[][]>>();
+		for (final int[] rows : bands(h)) {
+			counts.add(new Callable<long[][]>() {
+				public long[][] call() {
+					long[][] histogram = new long[4][CELLS];
+					for (int i = rows[0] * w * 4, end = rows[1] * w * 4; i < end; i += 4) {
+						if ((abgr[i] & 0xff) < 128)
+							continue;
+						int b = abgr[i + 1] & 0xff, g = abgr[i + 2] & 0xff, r = abgr[i + 3] & 0xff;
+						int cell = cellOf(r, g, b);
+						histogram[0][cell]++;
+						histogram[1][cell] += r;
+						histogram[2][cell] += g;
+						histogram[3][cell] += b;
+					}
+					return histogram;
+				}
+			});
+		}
+		long[][] histogram = new long[4][CELLS];
+		long opaque = 0;
+		for (long[][] part : run(counts)) {
+			for (int k = 0; k < 4; k++) {
+				for (int c = 0; c < CELLS; c++) {
+					histogram[k][c] += part[k][c];
+				}
+			}
+		}
+		for (int c = 0; c < CELLS; c++) {
+			opaque += histogram[0][c];
+		}
+		boolean transparent = opaque < (long) w * h;
+		final int[] palette = buildPalette(histogram, transparent ? MAX_COLORS - 1 : MAX_COLORS);
+		final int colors = palette.length;
+		// the nearest palette color to the middle of every cell
+		final byte[] nearest = new byte[CELLS];
+		List<Callable<Void>> lookups = new ArrayList<Callable<Void>>();
+		for (final int[] cells : bands(CELLS)) {
+			lookups.add(new Callable<Void>() {
+				public Void call() {
+					int half = 1 << (7 - BITS);
+					for (int c = cells[0]; c < cells[1]; c++) {
+						int r = ((c >> (2 * BITS)) << (8 - BITS)) + half;
+						int g = (((c >> BITS) & ((1 << BITS) - 1)) << (8 - BITS)) + half;
+						int b = ((c & ((1 << BITS) - 1)) << (8 - BITS)) + half;
+						int best = 0;
+						int bestDistance = Integer.MAX_VALUE;
+						for (int p = 0; p < colors; p++) {
+							int dr = ((palette[p] >> 16) & 0xff) - r;
+							int dg = ((palette[p] >> 8) & 0xff) - g;
+							int db = (palette[p] & 0xff) - b;
+							// weighted for how much each channel shows
+							int distance = 3 * dr * dr + 4 * dg * dg + 2 * db * db;
+							if (distance < bestDistance) {
+								bestDistance = distance;
+								best = p;
+							}
+						}
+						nearest[c] = (byte) best;
+					}
+					return null;
+				}
+			});
+		}
+		run(lookups);
+		// the transparent color goes after the others
+		IndexColorModel model = colorModel(Arrays.copyOf(palette, colors + 1), transparent ? colors + 1 : colors,
+				transparent ? colors : -1, false);
+		BufferedImage indexed = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_INDEXED, model);
+		final byte[] out = ((DataBufferByte) indexed.getRaster().getDataBuffer()).getData();
+		final byte transparentIndex = (byte) colors;
+		List<Callable<Void>> maps = new ArrayList<Callable<Void>>();
+		for (final int[] rows : bands(h)) {
+			maps.add(new Callable<Void>() {
+				public Void call() {
+					for (int y = rows[0]; y < rows[1]; y++) {
+						int bayerRow = (y & 7) * 8;
+						for (int x = 0, i = y * w * 4, p = y * w; x < w; x++, i += 4, p++) {
+							if ((abgr[i] & 0xff) < 128) {
+								out[p] = transparentIndex;
+								continue;
+							}
+							int b = abgr[i + 1] & 0xff, g = abgr[i + 2] & 0xff, r = abgr[i + 3] & 0xff;
+							if (dither) {
+								int offset = (BAYER[bayerRow + (x & 7)] * 2 - 63) * DITHER_SPREAD / 128;
+								r = Math.max(0, Math.min(255, r + offset));
+								g = Math.max(0, Math.min(255, g + offset));
+								b = Math.max(0, Math.min(255, b + offset));
+							}
+							out[p] = nearest[cellOf(r, g, b)];
+						}
+					}
+					return null;
+				}
+			});
+		}
+		run(maps);
+		return indexed;
+	}
+
+	/**
+	 * A node of the octree the palette is built from.  The children of a node at depth d split it on bit 7-d of red, green
+	 * and blue.
+	 */
+	private static final class Node {
+		long count, red, green, blue;
+		final Node[] children = new Node[8];
+		final int depth;
+		boolean leaf;
+
+		Node(int depth) {
+			this.depth = depth;
+		}
+	}
+
+	/**
+	 * Builds an octree of the histogram and merges its least used branches, deepest first, until there are no more than
+	 * the given number of leaves, then returns the average color of each leaf as an RGB int
+	 */
+	private static int[] buildPalette(long[][] histogram, int maxColors) {
+		Node root = new Node(0);
+		List<List<Node>> levels = new ArrayList<List<Node>>();
+		for (int d = 0; d < BITS; d++) {
+			levels.add(new ArrayList<Node>());
+		}
+		levels.get(0).add(root);
+		int leaves = 0;
+		for (int c = 0; c < CELLS; c++) {
+			long n = histogram[0][c];
+			if (n == 0)
+				continue;
+			int r = c >> (2 * BITS), g = (c >> BITS) & ((1 << BITS) - 1), b = c & ((1 << BITS) - 1);
+			Node node = root;
+			for (int d = 0; d < BITS; d++) {
+				node.count += n;
+				node.red += histogram[1][c];
+				node.green += histogram[2][c];
+				node.blue += histogram[3][c];
+				int bit = BITS - 1 - d;
+				int child = (((r >> bit) & 1) << 2) | (((g >> bit) & 1) << 1) | ((b >> bit) & 1);
+				if (node.children[child] == null) {
+					node.children[child] = new Node(d + 1);
+					if (d + 1 < BITS)
+						levels.get(d + 1).add(node.children[child]);
+				}
+				node = node.children[child];
+			}
+			node.count = n;
+			node.red = histogram[1][c];
+			node.green = histogram[2][c];
+			node.blue = histogram[3][c];
+			node.leaf = true;
+			leaves++;
+		}
+		Comparator<Node> leastUsed = new Comparator<Node>() {
+			public int compare(Node a, Node b) {
+				return Long.compare(a.count, b.count);
+			}
+		};
+		for (int d = BITS - 1; d >= 0 && leaves > maxColors; d--) {
+			List<Node> level = levels.get(d);
+			Collections.sort(level, leastUsed);
+			for (int i = 0; i < level.size() && leaves > maxColors; i++) {
+				Node node = level.get(i);
+				int children = 0;
+				for (int k = 0; k < 8; k++) {
+					if (node.children[k] != null) {
+						children++;
+						node.children[k] = null;
+					}
+				}
+				node.leaf = true;
+				leaves -= children - 1;
+			}
+		}
+		int[] palette = new int[leaves];
+		collect(root, palette, new int[1]);
+		return palette;
+	}
+
+	/**
+	 * Puts the average color of every leaf under the node into the palette
+	 */
+	private static void collect(Node node, int[] palette, int[] next) {
+		if (node.leaf) {
+			int r = (int) ((node.red + node.count / 2) / node.count);
+			int g = (int) ((node.green + node.count / 2) / node.count);
+			int b = (int) ((node.blue + node.count / 2) / node.count);
+			palette[next[0]++] = (r << 16) | (g << 8) | b;
+			return;
+		}
+		for (Node child : node.children) {
+			if (child != null)
+				collect(child, palette, next);
+		}
+	}
+
+	/**
+	 * Returns an 8 bit IndexColorModel of the first count colors
+	 * @param colors the colors, as ARGB ints if alpha is true, or otherwise RGB ints (their alpha is ignored)
+	 * @param count the number of colors
+	 * @param transparentIndex the index of the fully transparent color, or -1 if there isn't one (ignored if alpha is true)
+	 * @param alpha true if each color has its own alpha
+	 */
+	private static IndexColorModel colorModel(int[] colors, int count, int transparentIndex, boolean alpha) {
+		count = Math.max(1, count);
+		if (alpha)
+			return new IndexColorModel(8, count, colors, 0, true, -1, DataBuffer.TYPE_BYTE);
+		int[] rgb = Arrays.copyOf(colors, count);
+		for (int i = 0; i < count; i++) {
+			rgb[i] |= 0xff000000;
+		}
+		return new IndexColorModel(8, count, rgb, 0, false, transparentIndex, DataBuffer.TYPE_BYTE);
+	}
+
+	/**
+	 * Returns the pixel at i as an ARGB int, all of whose bits are 0 if it is transparent and binaryAlpha is true
+	 */
+	private static int argb(byte[] abgr, int i, boolean binaryAlpha) {
+		int a = abgr[i] & 0xff;
+		if (binaryAlpha) {
+			if (a < 128)
+				return 0;
+			a = 0xff;
+		} else if (a == 0) {
+			return 0;
+		}
+		return (a << 24) | ((abgr[i + 3] & 0xff) << 16) | ((abgr[i + 2] & 0xff) << 8) | (abgr[i + 1] & 0xff);
+	}
+
+	/**
+	 * Returns the slot that holds the color, or the empty slot it would go in
+	 */
+	private static int slotOf(int[] slots, boolean[] used, int argb) {
+		int mask = slots.length - 1;
+		int slot = (argb * 0x9E3779B9) >>> (32 - SLOT_BITS);
+		while (used[slot] && slots[slot] != argb) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Returns the histogram cell of a color
+	 */
+	private static int cellOf(int r, int g, int b) {
+		return ((r >> (8 - BITS)) << (2 * BITS)) | ((g >> (8 - BITS)) << BITS) | (b >> (8 - BITS));
+	}
+
+	/**
+	 * Splits 0 to n into one band for each thread
+	 */
+	private static List<int[]> bands(int n) {
+		List<int[]> bands = new ArrayList<int[]>();
+		int step = Math.max(1, (n + THREADS - 1) / THREADS);
+		for (int start = 0; start < n; start += step) {
+			bands.add(new int[] { start, Math.min(n, start + step) });
+		}
+		return bands;
+	}
+
+	/**
+	 * Runs the tasks on the common pool and returns their results, once they are all done
+	 */
+	private static <T> List<T> run(List<Callable<T>> tasks) {
+		List<T> results = new ArrayList<T>();
+		try {
+			for (Future<T> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+				results.add(f.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the pixel data of a TYPE_4BYTE_ABGR image
+	 */
+	private static byte[] data(BufferedImage image) {
+		if (image.getType() != BufferedImage.TYPE_4BYTE_ABGR)
+			throw new IllegalArgumentException("Not a TYPE_4BYTE_ABGR image: " + image.getType());
+		return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+	}
+}
@@ -0,0 +1,442 @@
+package waldonsm.paint.model;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import waldonsm.paint.tools.drawables.BoundedDrawable;
+import waldonsm.paint.tools.drawables.BrushDrawable;
+import waldonsm.paint.tools.drawables.CircleDrawable;
+import waldonsm.paint.tools.drawables.ClearRegionDrawable;
+import waldonsm.paint.tools.drawables.Drawable;
+import waldonsm.paint.tools.drawables.DrawableStore;
+import waldonsm.paint.tools.drawables.FinalPolygonDrawable;
+import waldonsm.paint.tools.drawables.LineDrawable;
+import waldonsm.paint.tools.drawables.ModelDependentDrawable;
+import waldonsm.paint.tools.drawables.PencilDrawable;
+import waldonsm.paint.tools.drawables.RectangleDrawable;
+import waldonsm.paint.tools.drawables.SprayDrawable;
+
+/**
+ * Replays a list of Drawables onto an image using every core, with exactly the same result as drawing them one after
+ * another. <P>
+ * The Drawables are split into groups using their bounds: two Drawables are in the same group if their bounds might
+ * share a pixel (if they touch the same small cell of the image), directly or through other Drawables in the group.  No
+ * two groups draw on the same pixel, so the groups are drawn on different threads at the same time, each in its original
+ * order and without a clip (clipping can change which pixels a curve covers), and the image ends up exactly as it would
+ * after a serial replay.  Drawables that are not BoundedDrawables, or that work on the model's image directly
+ * (ModelDependentDrawables, like fills, which read what was drawn before them), are drawn on their own with everything
+ * before them finished.  The Drawables are drawn (and their bounds worked out) straight from the arrays of the
+ * DrawableStore they are kept in, without making an object for each. <P>
+ * The number of threads used is the number of processors, or -Djavapaint.replayThreads=&lt;n&gt;; with one thread the
+ * Drawables are just drawn in order.  testMain() checks that a parallel replay of random histories gives exactly the
+ * pixels of a serial one.
+ * @author Shawn Waldon
+ *
+ */
+final class ParallelReplay {
+
+	/**
+	 * The system property giving the number of threads used to replay Drawables
+	 */
+	static final String THREADS_PROPERTY = "javapaint.replayThreads";
+
+	/**
+	 * Runs of fewer independent Drawables than this are drawn in order, as splitting them up would cost more than it saves
+	 */
+	private static final int MIN_PARALLEL_RUN = 32;
+
+	/**
+	 * The size of the cells used to find which Drawables might overlap
+	 */
+	private static final int CELL_SIZE = 32;
+
+	private static final int THREADS = Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+
+	private static ForkJoinPool pool = null;
+
+	private ParallelReplay() {
+		// static methods only
+	}
+
+	/**
+	 * Draws drawables from (inclusive) to to (exclusive) of the store onto the image, with the same result as drawing them in
+	 * order with one Graphics2D from image.createGraphics().  Must be called on the thread that owns the image (the EDT),
+	 * and only returns once everything has been drawn.
+	 * @param image the image to draw on
+	 * @param drawables the store holding the Drawables
+	 * @param from the index of the first Drawable to draw
+	 * @param to the index after the last Drawable to draw
+	 */
+	static void replay(BufferedImage image, DrawableStore drawables, int from, int to) {
+		replay(image, drawables, from, to, THREADS, false);
+	}
+
+	/**
+	 * Draws the Drawables as replay does, onto an image that is not the model's (like a new base raster made in the
+	 * background), so ModelDependentDrawables are drawn onto it with drawOn.  May be called on any thread, as long as nothing
+	 * else changes the image or the store until it returns.
+	 * @param image the image to draw on
+	 * @param drawables the store holding the Drawables
+	 * @param from the index of the first Drawable to draw
+	 * @param to the index after the last Drawable to draw
+	 */
+	static void replayDetached(BufferedImage image, DrawableStore drawables, int from, int to) {
+		replay(image, drawables, from, to, THREADS, true);
+	}
+
+	/**
+	 * Draws the Drawables as replay does, with the given number of threads
+	 * @param detached true if the image is not the model's image (see replayDetached)
+	 */
+	private static void replay(BufferedImage image, DrawableStore drawables, int from, int to, int threads, boolean detached) {
+		Graphics2D g = image.createGraphics();
+		try {
+			if (threads <= 1) {
+				for (int i = from; i < to; i++) {
+					drawAlone(image, g, drawables, i, detached);
+				}
+				return;
+			}
+			int runStart = from;
+			for (int i = from; i < to; i++) {
+				if (!isIndependent(drawables, i)) {
+					replayRun(image, g, drawables, runStart, i, threads);
+					drawAlone(image, g, drawables, i, detached);
+					runStart = i + 1;
+				}
+			}
+			replayRun(image, g, drawables, runStart, to, threads);
+		} finally {
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Draws one Drawable with everything before it finished, onto the image with drawOn if it is a ModelDependentDrawable
+	 * and the image is not the model's
+	 */
+	private static void drawAlone(BufferedImage image, Graphics2D g, DrawableStore drawables, int i, boolean detached) {
+		Drawable d = drawables.getObject(i);
+		if (detached && d instanceof ModelDependentDrawable)
+			((ModelDependentDrawable) d).drawOn(image);
+		else
+			drawables.draw(i, g);
+	}
+
+	/**
+	 * Returns true if the Drawable can be drawn alongside others: it knows its bounds before it is drawn and only draws with
+	 * the Graphics2D it is given (which every shape held in the store's arrays does)
+	 */
+	private static boolean isIndependent(DrawableStore drawables, int i) {
+		Drawable d = drawables.getObject(i);
+		return d == null || (d instanceof BoundedDrawable && !(d instanceof ModelDependentDrawable));
+	}
+
+	/**
+	 * Draws a run of independent Drawables, in parallel groups if there are enough of them
+	 */
+	private static void replayRun(BufferedImage image, Graphics2D g, DrawableStore drawables, int from, int to, int threads) {
+		if (to - from < MIN_PARALLEL_RUN) {
+			for (int i = from; i < to; i++) {
+				drawables.draw(i, g);
+			}
+			return;
+		}
+		int w = image.getWidth();
+		int h = image.getHeight();
+		int cellsAcross = (w + CELL_SIZE - 1) / CELL_SIZE;
+		int cellsDown = (h + CELL_SIZE - 1) / CELL_SIZE;
+		// join every Drawable with the last one before it in each cell it touches, so that each group ends up holding all of
+		// the Drawables that could share a pixel
+		int n = to - from;
+		int[] parent = new int[n];
+		int[] lastInCell = new int[cellsAcross * cellsDown];
+		Arrays.fill(lastInCell, -1);
+		Rectangle imageBounds = new Rectangle(0, 0, w, h);
+		for (int i = 0; i < n; i++) {
+			parent[i] = i;
+			Rectangle r = drawables.getBounds(from + i);
+			r = r == null ? imageBounds : r.intersection(imageBounds);
+			if (r.isEmpty())
+				continue;
+			for (int cy = r.y / CELL_SIZE; cy <= (r.y + r.height - 1) / CELL_SIZE; cy++) {
+				for (int cx = r.x / CELL_SIZE; cx <= (r.x + r.width - 1) / CELL_SIZE; cx++) {
+					int c = cy * cellsAcross + cx;
+					if (lastInCell[c] >= 0)
+						union(parent, lastInCell[c], i);
+					lastInCell[c] = i;
+				}
+			}
+		}
+		// deal the groups out to the tasks, biggest first, each to the task with the fewest Drawables so far
+		int[] groupSize = new int[n];
+		for (int i = 0; i < n; i++) {
+			groupSize[find(parent, i)]++;
+		}
+		int taskCount = Math.min(threads * 4, n);
+		int[] taskSize = new int[taskCount];
+		int[] taskOf = new int[n];
+		Integer[] roots = rootsBySize(groupSize);
+		for (Integer root : roots) {
+			int best = 0;
+			for (int t = 1; t < taskCount; t++) {
+				if (taskSize[t] < taskSize[best])
+					best = t;
+			}
+			taskOf[root] = best;
+			taskSize[best] += groupSize[root];
+		}
+		if (roots.length < 2) {
+			// everything overlaps, so there is nothing to draw at the same time
+			for (int i = from; i < to; i++) {
+				drawables.draw(i, g);
+			}
+			return;
+		}
+		int[][] taskDrawables = new int[taskCount][];
+		int[] counts = new int[taskCount];
+		for (int t = 0; t < taskCount; t++) {
+			taskDrawables[t] = new int[taskSize[t]];
+		}
+		for (int i = 0; i < n; i++) {
+			int t = taskOf[find(parent, i)];
+			taskDrawables[t][counts[t]++] = from + i;
+		}
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int t = 0; t < taskCount; t++) {
+			if (counts[t] > 0)
+				tasks.add(new GroupTask(image.createGraphics(), drawables, taskDrawables[t]));
+		}
+		try {
+			for (Future<Void> f : getPool(threads).invokeAll(tasks)) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Checks that replaying random histories with several threads gives exactly the pixels of drawing them in order, over
+	 * a range of history sizes and thread counts, including Drawables that must be drawn on their own.  Prints the result
+	 * of each history and throws an IllegalStateException at the first one that differs.
+	 */
+	public static void testMain() {
+		int[] threadCounts = {2, 3, 4, 8};
+		for (int seed = 0; seed < 40; seed++) {
+			Random random = new Random(seed);
+			int w = 64 + random.nextInt(400);
+			int h = 64 + random.nextInt(300);
+			DrawableStore store = randomHistory(random, w, h, 50 + random.nextInt(1500));
+			BufferedImage serial = new BufferedImage(w, h, BufferedImage.TYPE_4BYTE_ABGR);
+			Graphics2D g = serial.createGraphics();
+			try {
+				for (int i = 0; i < store.size(); i++) {
+					store.draw(i, g);
+				}
+			} finally {
+				g.dispose();
+			}
+			byte[] expected = ((DataBufferByte) serial.getRaster().getDataBuffer()).getData();
+			int threads = threadCounts[seed % threadCounts.length];
+			BufferedImage parallel = new BufferedImage(w, h, BufferedImage.TYPE_4BYTE_ABGR);
+			replay(parallel, store, 0, store.size(), threads, false);
+			if (!Arrays.equals(expected, ((DataBufferByte) parallel.getRaster().getDataBuffer()).getData()))
+				throw new IllegalStateException("Parallel replay differs from serial replay: seed " + seed + ", " + store.size()
+						+ " Drawables on " + w + "x" + h + " with " + threads + " threads");
+			System.out.println("seed " + seed + ": " + store.size() + " Drawables on " + w + "x" + h + " with " + threads
+					+ " threads, identical");
+		}
+	}
+
+	/**
+	 * Returns a history of count random Drawables of every kind replay handles, with see-through colors so that the order
+	 * they are drawn in shows
+	 */
+	private static DrawableStore randomHistory(Random random, int w, int h, int count) {
+		DrawableStore store = new DrawableStore();
+		for (int i = 0; i < count; i++) {
+			int x = random.nextInt(w + 40) - 20;
+			int y = random.nextInt(h + 40) - 20;
+			int size = 1 + random.nextInt(random.nextInt(10) == 0 ? Math.max(w, h) : 40);
+			Color c1 = new Color(random.nextInt(), true);
+			Color c2 = new Color(random.nextInt(), true);
+			switch (random.nextInt(9)) {
+			case 0:
+				store.add(new LineDrawable(new Point(x, y), new Point(x + random.nextInt(2 * size) - size, y + random.nextInt(2 * size)
+						- size), c1));
+				break;
+			case 1:
+				store.add(new RectangleDrawable(x, y, size, 1 + random.nextInt(40), random.nextBoolean(), c1, c2));
+				break;
+			case 2:
+				store.add(new CircleDrawable(x, y, size, 1 + random.nextInt(40), random.nextBoolean(), c1, c2));
+				break;
+			case 3:
+				PencilDrawable pencil = new PencilDrawable(new Point(x, y), c1);
+				for (int j = random.nextInt(30); j > 0; j--) {
+					pencil.addPoint(new Point(x + random.nextInt(2 * size + 1) - size, y + random.nextInt(2 * size + 1) - size));
+				}
+				store.add(pencil);
+				break;
+			case 4:
+				List<Point> clicks = new ArrayList<Point>();
+				for (int j = 3 + random.nextInt(5); j > 0; j--) {
+					clicks.add(new Point(x + random.nextInt(2 * size + 1) - size, y + random.nextInt(2 * size + 1) - size));
+				}
+				store.add(new FinalPolygonDrawable(clicks, c1, c2, random.nextBoolean()));
+				break;
+			case 5:
+				store.add(new ClearRegionDrawable(new Rectangle(x, y, size, 1 + random.nextInt(40)), c1.getRGB()));
+				break;
+			case 6:
+				BrushDrawable brush = new BrushDrawable(x, y, c1.getRGB(), 1 + random.nextInt(20), random.nextInt(101));
+				for (int j = random.nextInt(10); j > 0; j--) {
+					brush.addPoint(x + random.nextInt(2 * size + 1) - size, y + random.nextInt(2 * size + 1) - size);
+				}
+				brush.finish();
+				store.add(brush);
+				break;
+			case 7:
+				SprayDrawable spray = new SprayDrawable(x, y, c1.getRGB(), 1 + random.nextInt(20), 1 + random.nextInt(20),
+						random.nextLong());
+				for (int j = random.nextInt(10); j > 0; j--) {
+					spray.addSample(x + random.nextInt(2 * size + 1) - size, y + random.nextInt(2 * size + 1) - size);
+				}
+				store.add(spray);
+				break;
+			default:
+				if (random.nextInt(8) == 0)
+					store.add(new UnboundedTestDrawable(c1));
+				else
+					store.add(new LineDrawable(new Point(x, y), new Point(x + size, y), c2));
+				break;
+			}
+		}
+		return store;
+	}
+
+	/**
+	 * A Drawable without bounds for testMain, which has to be drawn on its own with everything before it finished
+	 * @author Shawn Waldon
+	 *
+	 */
+	private static final class UnboundedTestDrawable implements Drawable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Color color;
+
+		UnboundedTestDrawable(Color color) {
+			this.color = color;
+		}
+
+		public void draw(Graphics2D g) {
+			Rectangle clip = g.getDeviceConfiguration().getBounds();
+			g.setColor(color);
+			g.fillRect(clip.width / 4, clip.height / 4, clip.width / 2, clip.height / 2);
+		}
+
+		public String getName() {
+			return "UnboundedTest";
+		}
+	}
+
+	/**
+	 * Returns the pool the groups are drawn on, creating it the first time (or again if it has fewer threads than asked for)
+	 */
+	private static synchronized ForkJoinPool getPool(int threads) {
+		if (pool == null || pool.getParallelism() < threads)
+			pool = new ForkJoinPool(threads);
+		return pool;
+	}
+
+	/**
+	 * Returns the root of the group holding i, shortening the path to it on the way
+	 */
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Joins the groups holding i and j
+	 */
+	private static void union(int[] parent, int i, int j) {
+		int a = find(parent, i);
+		int b = find(parent, j);
+		if (a != b)
+			parent[Math.max(a, b)] = Math.min(a, b);
+	}
+
+	/**
+	 * Returns the roots of the groups (the indexes with a non-zero size), biggest group first
+	 */
+	private static Integer[] rootsBySize(final int[] groupSize) {
+		List<Integer> roots = new ArrayList<Integer>();
+		for (int i = 0; i < groupSize.length; i++) {
+			if (groupSize[i] > 0)
+				roots.add(i);
+		}
+		Collections.sort(roots, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return groupSize[b] - groupSize[a];
+			}
+		});
+		return roots.toArray(new Integer[roots.size()]);
+	}
+
+	/**
+	 * Draws some groups of Drawables, in order.  No other task draws on the pixels they cover, so they can be drawn without
+	 * any clip, exactly as in a serial replay.
+	 * @author Shawn Waldon
+	 *
+	 */
+	private static final class GroupTask implements Callable<Void> {
+
+		private final Graphics2D g;
+		private final DrawableStore drawables;
+		private final int[] indexes;
+
+		GroupTask(Graphics2D g, DrawableStore drawables, int[] indexes) {
+			this.g = g;
+			this.drawables = drawables;
+			this.indexes = indexes;
+		}
+
+		public Void call() {
+			try {
+				for (int i : indexes) {
+					drawables.draw(i, g);
+				}
+			} finally {
+				g.dispose();
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package waldonsm.paint.model;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+import waldonsm.paint.metrics.Counter;
+import waldonsm.paint.metrics.Metrics;
+
+/**
+ * A read-only block of pixels that starts out as a view of part of a model's image, sharing its pixels, and only copies
+ * them when the image is about to change (copy on write).  Copying or picking up a selection makes one of these, so even
+ * a huge selection costs nothing until something is drawn on the image it came from, and is then copied just once. <P>
+ * The pixels must never be drawn on.  The image is swapped for its copy under the SharedRaster's lock, so another thread
+ * (like the autosave writer) can read the pixels safely with copyPixels.
+ * @author Shawn Waldon
+ *
+ */
+public final class SharedRaster {
+
+	private static final Counter pixelsCopied = Metrics.counter("shared.copied.pixels");
+
+	/**
+	 * A TYPE_4BYTE_ABGR image: a subimage of the model's image while shared, or a copy of its own after that
+	 */
+	private BufferedImage image;
+	private boolean shared;
+
+	/**
+	 * Creates a SharedRaster viewing the given part of a model's image
+	 */
+	SharedRaster(BufferedImage source, Rectangle r) {
+		image = source.getSubimage(r.x, r.y, r.width, r.height);
+		shared = true;
+	}
+
+	/**
+	 * Creates a SharedRaster that owns its pixels, which must not be changed afterwards
+	 * @param pixels a TYPE_4BYTE_ABGR image holding the pixels
+	 */
+	public SharedRaster(BufferedImage pixels) {
+		if (pixels.getType() != BufferedImage.TYPE_4BYTE_ABGR)
+			throw new IllegalArgumentException("Not a TYPE_4BYTE_ABGR image: " + pixels.getType());
+		image = pixels;
+		shared = false;
+	}
+
+	/**
+	 * Returns an image of the pixels, to be drawn with (never on).  It may stop being current when the image the pixels
+	 * came from changes, so get it again for each use instead of keeping it.
+	 * @return the pixels, as a TYPE_4BYTE_ABGR image
+	 */
+	public synchronized BufferedImage getImage() {
+		return image;
+	}
+
+	public synchronized int getWidth() {
+		return image.getWidth();
+	}
+
+	public synchronized int getHeight() {
+		return image.getHeight();
+	}
+
+	/**
+	 * Returns true if the pixels are still shared with the image they came from
+	 * @return true if the pixels have not been copied yet
+	 */
+	public synchronized boolean isShared() {
+		return shared;
+	}
+
+	/**
+	 * Returns a copy of the pixels, four bytes each (red, green, blue and alpha, as Raster.getDataElements gives them) row after
+	 * row.  Raster.setDataElements puts them back.
+	 * @return the pixels
+	 */
+	public synchronized byte[] copyPixels() {
+		Raster r = image.getRaster();
+		byte[] out = new byte[r.getWidth() * r.getHeight() * 4];
+		r.getDataElements(0, 0, r.getWidth(), r.getHeight(), out);
+		return out;
+	}
+
+	/**
+	 * Copies the pixels into the given raster, with their top left corner at (x,y).  The image they came from can not be
+	 * swapped for its copy part way through, so this is safe to call from another thread.
+	 * @param dest a raster of the same type as the pixels
+	 * @param x where the left edge of the pixels goes in dest
+	 * @param y where the top edge of the pixels goes in dest
+	 */
+	public synchronized void copyTo(WritableRaster dest, int x, int y) {
+		if (image == null)
+			throw new IllegalStateException("The pixels have been released");
+		dest.setRect(x, y, image.getRaster());
+	}
+
+	/**
+	 * Stops sharing the pixels without copying them, for when they are no longer needed, so that changing the image they
+	 * came from no longer copies them.  The SharedRaster must not be used afterwards.
+	 */
+	public synchronized void release() {
+		image = null;
+		shared = false;
+	}
+
+	/**
+	 * Copies the pixels out of the image they came from, if they are still shared with it.  Called by the model before it
+	 * changes that image.
+	 */
+	synchronized void unshare() {
+		if (!shared)
+			return;
+		int w = image.getWidth();
+		int h = image.getHeight();
+		BufferedImage copy = new BufferedImage(w, h, BufferedImage.TYPE_4BYTE_ABGR);
+		copy.getRaster().setRect(image.getRaster());
+		image = copy;
+		shared = false;
+		pixelsCopied.add((long) w * h);
+	}
+}
@@ -0,0 +1,603 @@
+package waldonsm.paint.model;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+import waldonsm.paint.metrics.LatencyHistogram;
+import waldonsm.paint.metrics.Metrics;
+import waldonsm.paint.tools.drawables.Drawable;
+import waldonsm.paint.tools.drawables.DrawableStore;
+import waldonsm.paint.tools.drawables.MeasuredDrawable;
+import waldonsm.paint.tools.drawables.PixelDelta;
+
+/**
+ * Holds the final Drawables of a PaintModelImpl and the Drawables that have been undone, and keeps track of roughly how
+ * much memory they use (estimated from what each one holds, see MeasuredDrawable). <P>
+ * Once the history grows past its cap (-Djavapaint.historyCapMb=&lt;MB&gt;, 64 MB by default), the model has the oldest
+ * Drawables flattened into a new base raster by startFlatten().  That is done on a background thread, from a copy of
+ * their entries in the store, and the image is left alone since it already shows them.  The background thread also
+ * writes them to disk as a segment of the spill log: a file of its own holding the base raster they were drawn on and
+ * the Drawables.  finishFlatten() then removes them from memory on the EDT and hands the model its new base raster,
+ * unless they have been undone in the meantime.  When the user undoes past
+ * everything that is still in memory, restore() reads back only the newest segment, so a deep undo never loads (or
+ * replays) more than one batch of flattened Drawables at a time.  With -Djavapaint.historySpill=false the flattened
+ * Drawables are just dropped, and can no longer be undone. <P>
+ * Next to each Drawable it can keep the PixelDelta recorded when it was drawn, which the model uses to undo it without a
+ * replay.  The deltas have a cap of their own (-Djavapaint.undoDeltaMb=&lt;MB&gt;, 64 MB by default), and once they go
+ * over it the deltas of the oldest Drawables are dropped, so those are undone by replaying the history as before. <P>
+ * The final Drawables are kept in a DrawableStore, which holds the common shapes as primitives rather than objects.
+ * @author Shawn Waldon
+ *
+ */
+final class UndoHistory {
+
+	/**
+	 * The system property giving the history memory cap in megabytes
+	 */
+	static final String CAP_PROPERTY = "javapaint.historyCapMb";
+
+	/**
+	 * The system property that turns spilling flattened Drawables to disk on (the default) or off
+	 */
+	static final String SPILL_PROPERTY = "javapaint.historySpill";
+
+	/**
+	 * The system property giving the memory cap of the PixelDeltas in megabytes
+	 */
+	static final String DELTA_CAP_PROPERTY = "javapaint.undoDeltaMb";
+
+	private static final long DEFAULT_CAP_MB = 64;
+
+	private static final long DEFAULT_DELTA_CAP_MB = 64;
+
+	/**
+	 * The number of Drawables that are always kept in memory, however big they are
+	 */
+	private static final int MIN_KEPT = 16;
+
+	/**
+	 * The size assumed for a Drawable that is not a MeasuredDrawable
+	 */
+	private static final int UNKNOWN_SIZE = MeasuredDrawable.OBJECT_BYTES;
+
+	private static final LatencyHistogram flattenTime = Metrics.histogram("history.flatten");
+
+	private static final ExecutorService flattenThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "JavaPaint history");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private final long cap;
+	private final DrawableStore drawables = new DrawableStore();
+	private final List<Drawable> undone = new ArrayList<Drawable>();
+	private int[] drawableSizes = new int[64];
+	private int[] undoneSizes = new int[16];
+	private long memoryUsed = 0;
+
+	private final long deltaCap;
+	private final List<PixelDelta> deltas = new ArrayList<PixelDelta>();
+	private final List<PixelDelta> undoneDeltas = new ArrayList<PixelDelta>();
+	private long deltaMemory = 0;
+
+	/**
+	 * Every final Drawable below this index has no delta, so dropping the oldest deltas does not start from the bottom
+	 */
+	private int deltaFloor = 0;
+
+	private boolean spillEnabled;
+
+	/**
+	 * The segments of the spill log, oldest first
+	 */
+	private final List<SpillSegment> spilled = new ArrayList<SpillSegment>();
+	private int spilledCount = 0;
+
+	/**
+	 * The oldest Drawables being flattened in the background, or null
+	 */
+	private Flatten flattening = null;
+
+	/**
+	 * Creates a new, empty UndoHistory with the cap and spilling set by the system properties
+	 */
+	UndoHistory() {
+		cap = Long.getLong(CAP_PROPERTY, DEFAULT_CAP_MB) * 1024 * 1024;
+		deltaCap = Long.getLong(DELTA_CAP_PROPERTY, DEFAULT_DELTA_CAP_MB) * 1024 * 1024;
+		spillEnabled = !"false".equals(System.getProperty(SPILL_PROPERTY));
+	}
+
+	/**
+	 * Returns an unmodifiable view of the final Drawables in memory, oldest first
+	 */
+	List<Drawable> getDrawables() {
+		return drawables.asList();
+	}
+
+	/**
+	 * Returns the store holding the final Drawables in memory, oldest first, for replaying them.  It must not be changed.
+	 */
+	DrawableStore getStore() {
+		return drawables;
+	}
+
+	/**
+	 * Returns the number of final Drawables in memory
+	 */
+	int size() {
+		return drawables.size();
+	}
+
+	/**
+	 * Adds a new final Drawable, clearing the undone Drawables
+	 */
+	void add(Drawable d) {
+		add(d, null);
+	}
+
+	/**
+	 * Adds a new final Drawable with the delta recorded when it was drawn, clearing the undone Drawables
+	 * @param d the Drawable
+	 * @param delta the pixels it changed, or null
+	 */
+	void add(Drawable d, PixelDelta delta) {
+		clearUndone();
+		push(d, estimateSize(d), delta);
+		trimDeltas();
+	}
+
+	/**
+	 * Adds a final Drawable without clearing the undone Drawables, used while loading a model
+	 */
+	void addLoaded(Drawable d) {
+		push(d, estimateSize(d), null);
+	}
+
+	/**
+	 * Returns the delta of the newest final Drawable (the one undo would undo), or null if it has none
+	 */
+	PixelDelta getNewestDelta() {
+		return deltas.isEmpty() ? null : deltas.get(deltas.size() - 1);
+	}
+
+	/**
+	 * Replaces the delta of the newest final Drawable, after it has been drawn again
+	 * @param delta the pixels it changed, or null
+	 */
+	void setNewestDelta(PixelDelta delta) {
+		if (deltas.isEmpty())
+			return;
+		PixelDelta old = deltas.set(deltas.size() - 1, delta);
+		if (old != null)
+			deltaMemory -= old.getMemoryUsage();
+		if (delta != null)
+			deltaMemory += delta.getMemoryUsage();
+		trimDeltas();
+	}
+
+	/**
+	 * Returns the delta of the most recently undone Drawable (the one redo would redo), or null if it has none
+	 */
+	PixelDelta getRedoDelta() {
+		return undoneDeltas.isEmpty() ? null : undoneDeltas.get(undoneDeltas.size() - 1);
+	}
+
+	/**
+	 * Forgets every delta, for when the image has changed in a way the history does not record (such as being resized)
+	 */
+	void clearDeltas() {
+		Collections.fill(deltas, null);
+		Collections.fill(undoneDeltas, null);
+		deltaMemory = 0;
+		deltaFloor = deltas.size();
+	}
+
+	/**
+	 * Moves the newest final Drawable to the undone Drawables
+	 * @return the Drawable that was undone, or null if there are none in memory
+	 */
+	Drawable undo() {
+		if (drawables.size() == 0)
+			return null;
+		int i = drawables.size() - 1;
+		int size = drawableSizes[i];
+		Drawable d = drawables.removeLast();
+		if (undone.size() == undoneSizes.length)
+			undoneSizes = Arrays.copyOf(undoneSizes, undoneSizes.length * 2);
+		undoneSizes[undone.size()] = size;
+		undone.add(d);
+		undoneDeltas.add(deltas.remove(i));
+		if (deltaFloor > i)
+			deltaFloor = i;
+		if (flattening != null && i < flattening.count)
+			flattening.stale = true;
+		return d;
+	}
+
+	/**
+	 * Moves the most recently undone Drawable back to the final Drawables
+	 * @return the Drawable that was redone, or null if nothing has been undone
+	 */
+	Drawable redo() {
+		if (undone.isEmpty())
+			return null;
+		int i = undone.size() - 1;
+		int size = undoneSizes[i];
+		Drawable d = undone.remove(i);
+		PixelDelta delta = undoneDeltas.remove(i);
+		memoryUsed -= size;
+		if (delta != null)
+			deltaMemory -= delta.getMemoryUsage();
+		push(d, size, delta);
+		return d;
+	}
+
+	/**
+	 * Returns true if the history is using more memory than the cap
+	 */
+	boolean isOverCap() {
+		return memoryUsed > cap;
+	}
+
+	/**
+	 * Returns how many of the oldest final Drawables should be flattened to bring the history down to three quarters of
+	 * the cap (so that it is not flattened again on the next Drawable), never leaving fewer than MIN_KEPT in memory
+	 */
+	int getFlattenCount() {
+		long target = cap / 4 * 3;
+		long used = memoryUsed;
+		int n = 0;
+		while (used > target && drawables.size() - n > MIN_KEPT) {
+			used -= drawableSizes[n];
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Starts flattening the oldest n final Drawables on the history thread: they are drawn onto a copy of the base raster
+	 * they were drawn on, which becomes the new base raster, and written to a new segment of the spill log (if spilling
+	 * is on).  The Drawables stay in memory until whenDone, which is run on the EDT once that is done, hands the base
+	 * raster to finishFlatten.  Must be called on the EDT, and not while another flatten is running.
+	 * @param n the number of Drawables to flatten
+	 * @param oldBase the base raster the Drawables were drawn on
+	 * @param whenDone run on the EDT when the flatten is done
+	 */
+	void startFlatten(int n, Raster oldBase, final Runnable whenDone) {
+		if (flattening != null)
+			throw new IllegalStateException("Already flattening");
+		final Flatten f = new Flatten(n, oldBase, drawables.copy(0, n), spillEnabled);
+		flattening = f;
+		flattenThread.execute(new Runnable() {
+			public void run() {
+				try {
+					f.run();
+				} finally {
+					SwingUtilities.invokeLater(whenDone);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns true if a flatten started by startFlatten has not been finished yet
+	 */
+	boolean isFlattening() {
+		return flattening != null;
+	}
+
+	/**
+	 * Finishes the flatten started by startFlatten, removing the flattened Drawables from memory and keeping their segment
+	 * of the spill log.  If they are no longer the oldest Drawables in memory (some have been undone, or older ones have
+	 * been loaded in front of them) or their base raster is no longer the model's, the flatten is thrown away.  If they
+	 * could not be written to disk, spilling is turned off and the older history is lost.
+	 * @param base the base raster the history is drawn on now
+	 * @return the new base raster, which the model must draw the history on from now on, or null if the flatten was
+	 * thrown away
+	 */
+	Raster finishFlatten(Raster base) {
+		Flatten f = flattening;
+		flattening = null;
+		if (f == null)
+			return null;
+		if (f.stale || f.newBase == null || base != f.oldBase) {
+			if (f.segment != null)
+				f.segment.file.delete();
+			return null;
+		}
+		if (f.spillError != null) {
+			System.err.println("Couldn't write undo history to disk, older changes can no longer be undone: " + f.spillError.getMessage());
+			discardSpilled();
+			spillEnabled = false;
+		} else if (f.segment != null) {
+			spilled.add(f.segment);
+			spilledCount += f.segment.count;
+		}
+		int n = f.count;
+		for (int i = 0; i < n; i++) {
+			memoryUsed -= drawableSizes[i];
+		}
+		System.arraycopy(drawableSizes, n, drawableSizes, 0, drawables.size() - n);
+		drawables.removeFirst(n);
+		List<PixelDelta> flattenedDeltas = deltas.subList(0, n);
+		for (PixelDelta delta : flattenedDeltas) {
+			if (delta != null)
+				deltaMemory -= delta.getMemoryUsage();
+		}
+		flattenedDeltas.clear();
+		deltaFloor = Math.max(0, deltaFloor - n);
+		return f.newBase;
+	}
+
+	/**
+	 * Returns true if there are Drawables in the spill log that restore() can read back
+	 */
+	boolean hasSpilled() {
+		return spilledCount > 0;
+	}
+
+	/**
+	 * Returns the number of Drawables in every segment of the spill log
+	 */
+	int getSpilledCount() {
+		return spilledCount;
+	}
+
+	/**
+	 * Reads the Drawables in the newest segment of the spill log back into memory, in front of the Drawables already there,
+	 * and deletes the segment.  The older segments stay on disk until they are needed.
+	 * @return the base raster the oldest Drawable of the segment was drawn on, as a TYPE_4BYTE_ABGR image
+	 * @throws IOException if the segment cannot be read
+	 * @throws ClassNotFoundException if a Drawable in the segment can no longer be loaded
+	 */
+	BufferedImage restore() throws IOException, ClassNotFoundException {
+		SpillSegment segment = spilled.get(spilled.size() - 1);
+		List<Drawable> restored = new ArrayList<Drawable>(segment.count);
+		int[] sizes = new int[segment.count];
+		BufferedImage base;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)));
+		try {
+			byte[] png = new byte[in.readInt()];
+			in.readFully(png);
+			BufferedImage read = ImageIO.read(new ByteArrayInputStream(png));
+			base = new BufferedImage(read.getWidth(), read.getHeight(), BufferedImage.TYPE_4BYTE_ABGR);
+			base.getRaster().setRect(read.getRaster());
+			for (int i = 0; i < segment.count; i++) {
+				byte[] record = new byte[in.readInt()];
+				in.readFully(record);
+				ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(record));
+				restored.add((Drawable) ois.readObject());
+				sizes[i] = estimateSize(restored.get(i));
+			}
+		} finally {
+			in.close();
+		}
+		prependLoaded(restored, sizes);
+		spilled.remove(spilled.size() - 1);
+		spilledCount -= segment.count;
+		segment.file.delete();
+		return base;
+	}
+
+	/**
+	 * Puts the given Drawables in front of the final Drawables already in memory
+	 * @param ds the older Drawables, oldest first
+	 * @param sizes the estimated size of each of them (from estimateSize)
+	 */
+	void prependLoaded(List<Drawable> ds, int[] sizes) {
+		if (flattening != null)
+			flattening.stale = true;
+		int kept = drawables.size();
+		drawables.addAllFirst(ds);
+		deltas.addAll(0, Collections.<PixelDelta>nCopies(ds.size(), null));
+		deltaFloor += ds.size();
+		if (drawables.size() > drawableSizes.length)
+			drawableSizes = Arrays.copyOf(drawableSizes, drawables.size() * 2);
+		System.arraycopy(drawableSizes, 0, drawableSizes, ds.size(), kept);
+		System.arraycopy(sizes, 0, drawableSizes, 0, ds.size());
+		for (int i = 0; i < ds.size(); i++) {
+			memoryUsed += sizes[i];
+		}
+	}
+
+	/**
+	 * Deletes every segment of the spill log, losing the Drawables in them
+	 */
+	void discardSpilled() {
+		for (SpillSegment segment : spilled) {
+			segment.file.delete();
+		}
+		spilled.clear();
+		spilledCount = 0;
+	}
+
+	/**
+	 * Returns the approximate number of bytes used by the final and undone Drawables in memory, and their deltas
+	 */
+	long getMemoryUsage() {
+		return memoryUsed + deltaMemory;
+	}
+
+	/**
+	 * Adds a final Drawable of the given size, and its delta, to the end of the list
+	 */
+	private void push(Drawable d, int size, PixelDelta delta) {
+		if (drawables.size() == drawableSizes.length)
+			drawableSizes = Arrays.copyOf(drawableSizes, drawableSizes.length * 2);
+		drawableSizes[drawables.size()] = size;
+		drawables.add(d);
+		deltas.add(delta);
+		memoryUsed += size;
+		if (delta != null)
+			deltaMemory += delta.getMemoryUsage();
+	}
+
+	/**
+	 * Drops the deltas of the oldest final Drawables until the deltas are under their cap (which may drop the newest one
+	 * too, if it is bigger than the cap on its own)
+	 */
+	private void trimDeltas() {
+		while (deltaMemory > deltaCap && deltaFloor < deltas.size()) {
+			PixelDelta delta = deltas.set(deltaFloor, null);
+			if (delta != null)
+				deltaMemory -= delta.getMemoryUsage();
+			deltaFloor++;
+		}
+	}
+
+	/**
+	 * Forgets all of the undone Drawables
+	 */
+	private void clearUndone() {
+		for (int i = 0; i < undone.size(); i++) {
+			memoryUsed -= undoneSizes[i];
+		}
+		undone.clear();
+		for (PixelDelta delta : undoneDeltas) {
+			if (delta != null)
+				deltaMemory -= delta.getMemoryUsage();
+		}
+		undoneDeltas.clear();
+	}
+
+	/**
+	 * Writes the Drawables, and the base raster they were drawn on, to a new segment of the spill log.  Each Drawable is
+	 * written as its own length-prefixed serialized record, after the base raster as a length-prefixed PNG.  Safe to call
+	 * on any thread, as it only writes the file.
+	 * @return the segment, to be added to the spill log
+	 */
+	private static SpillSegment spill(List<Drawable> ds, Raster oldBase) throws IOException {
+		List<byte[]> records = new ArrayList<byte[]>(ds.size());
+		for (Drawable d : ds) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(bytes);
+			oos.writeObject(d);
+			oos.close();
+			records.add(bytes.toByteArray());
+		}
+		BufferedImage baseImage = new BufferedImage(oldBase.getWidth(), oldBase.getHeight(), BufferedImage.TYPE_4BYTE_ABGR);
+		baseImage.setData(oldBase);
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(baseImage, PaintModel.INTERNAL_FORMAT_OF_ZIPFILE, png);
+		File file = File.createTempFile("javapaint-history", ".log");
+		file.deleteOnExit();
+		boolean written = false;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(png.size());
+			png.writeTo(out);
+			for (byte[] record : records) {
+				out.writeInt(record.length);
+				out.write(record);
+			}
+			written = true;
+		} finally {
+			out.close();
+			if (!written)
+				file.delete();
+		}
+		return new SpillSegment(file, records.size());
+	}
+
+	/**
+	 * Returns the estimated memory use of the Drawable, without serializing it.  Safe to call on any thread.
+	 */
+	static int estimateSize(Drawable d) {
+		if (d instanceof MeasuredDrawable)
+			return (int) Math.min(Integer.MAX_VALUE, ((MeasuredDrawable) d).getMemoryUsage());
+		return UNKNOWN_SIZE;
+	}
+
+	/**
+	 * One segment of the spill log: a file holding one batch of flattened Drawables and the base raster they were drawn on
+	 * @author Shawn Waldon
+	 *
+	 */
+	private static final class SpillSegment {
+
+		final File file;
+		final int count;
+
+		SpillSegment(File file, int count) {
+			this.file = file;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * A flatten of the oldest Drawables.  The fields below stale are set on the history thread by run, and only read on the
+	 * EDT once it has finished.
+	 * @author Shawn Waldon
+	 *
+	 */
+	private static final class Flatten {
+
+		final int count;
+		final Raster oldBase;
+
+		/**
+		 * A copy of the entries of the Drawables being flattened
+		 */
+		final DrawableStore store;
+		final boolean spill;
+
+		/**
+		 * Set on the EDT if the Drawables stop being the oldest ones in memory
+		 */
+		boolean stale = false;
+
+		Raster newBase = null;
+		SpillSegment segment = null;
+		IOException spillError = null;
+
+		Flatten(int count, Raster oldBase, DrawableStore store, boolean spill) {
+			this.count = count;
+			this.oldBase = oldBase;
+			this.store = store;
+			this.spill = spill;
+		}
+
+		/**
+		 * Draws the Drawables onto a copy of the old base raster, and writes them to a segment of the spill log
+		 */
+		void run() {
+			long start = System.nanoTime();
+			BufferedImage image = new BufferedImage(oldBase.getWidth(), oldBase.getHeight(), BufferedImage.TYPE_4BYTE_ABGR);
+			image.setData(oldBase);
+			ParallelReplay.replayDetached(image, store, 0, count);
+			newBase = image.getRaster();
+			flattenTime.recordSince(start);
+			if (spill) {
+				try {
+					segment = UndoHistory.spill(store.asList(), oldBase);
+				} catch (IOException e) {
+					spillError = e;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package waldonsm.paint.tools;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import waldonsm.paint.model.PaintModel;
+import waldonsm.paint.tools.drawables.BrushDrawable;
+import waldonsm.paint.tools.drawables.Drawable;
+
+/**
+ * This DrawingTool paints freehand strokes with a round brush that can have a soft edge.  The fill modes choose the brush:
+ * a small hard one, and medium, large and very large soft ones.
+ * @author Shawn Waldon
+ *
+ */
+public class BrushTool extends DrawingTool {
+
+	private static final String TOOL_IMAGE_FILE_NAME = "images/brush.png";
+	private static final String TOOL_NAME = "BRUSHTOOL";
+
+	/**
+	 * The diameter of the brush for each fill mode
+	 */
+	private static final int[] SIZES = {6, 24, 64, 200};
+
+	/**
+	 * The hardness of the brush for each fill mode (the percentage of its radius that is fully covered)
+	 */
+	private static final int[] HARDNESSES = {90, 60, 30, 20};
+
+	private final static List<File> listOfFiles = Collections.unmodifiableList(
+												  Arrays.asList(new File("images/brushSmall.png"),
+																new File("images/brushMedium.png"),
+																new File("images/brushLarge.png"),
+																new File("images/brushHuge.png"))
+												  );
+
+	/**
+	 * Returns the image filename for this tool
+	 */
+	@Override
+	public String getButtonImageFileName() {
+		return TOOL_IMAGE_FILE_NAME;
+	}
+
+	/**
+	 * Returns the images for the four brushes
+	 */
+	@Override
+	public List<File> getFillModeFiles() {
+		return listOfFiles;
+	}
+
+	/**
+	 * Returns the tool name for this tool
+	 */
+	@Override
+	public String getToolName() {
+		return TOOL_NAME;
+	}
+
+	/**
+	 * Does nothing for this tool
+	 */
+	@Override
+	public void mouseClicked(Point p, PaintModel pm) throws Throwable {
+		if (pm.getShapeMode() != getToolName().hashCode() + getOffset())
+			throw new IllegalStateException("PaintModel is in incorrect mode");
+	}
+
+	/**
+	 * Adds the point to the stroke in progress
+	 */
+	@Override
+	public void mouseDragged(Point p, PaintModel pm) throws Throwable {
+		if (pm.getShapeMode() != getToolName().hashCode() + getOffset())
+			throw new IllegalStateException("PaintModel is in incorrect mode");
+
+		int clickCode = pm.getClickCode();
+		if (clickCode == PaintModel.DRAG_A_LINE) {
+			((BrushDrawable) pm.getCurrentDrawing()).addPoint(p.x, p.y);
+		} else if (clickCode != PaintModel.IGNORE_ALL) {
+			throw new IllegalStateException("Illegal click code, mouse state inconsistent: " + clickCode);
+		}
+	}
+
+	/**
+	 * Does nothing for this tool
+	 */
+	@Override
+	public void mouseMoved(Point p, PaintModel pm) throws Throwable {
+		if (pm.getShapeMode() != getToolName().hashCode() + getOffset())
+			throw new IllegalStateException("PaintModel is in incorrect mode");
+	}
+
+	/**
+	 * Starts a stroke at the given point, or cancels the stroke if another button is pressed while painting
+	 */
+	@Override
+	public void mousePressed(Point p, boolean isRightClick, PaintModel pm) throws Throwable {
+		if (pm.getShapeMode() != getToolName().hashCode() + getOffset())
+			throw new IllegalStateException("PaintModel is in incorrect mode");
+		int clickCode = pm.getClickCode();
+
+		if (clickCode == PaintModel.NO_CLICKS) {
+			pm.setIsRightClick(isRightClick);
+			pm.setClickCode(PaintModel.DRAG_A_LINE);
+
+			Color color;
+			if (isRightClick) {
+				color = pm.getSecondaryColor();
+			} else {
+				color = pm.getMainColor();
+			}
+			int brush = Math.max(0, Math.min(SIZES.length - 1, pm.getFillMode()));
+			pm.setCurrentDrawable(new BrushDrawable(p.x, p.y, color.getRGB(), SIZES[brush], HARDNESSES[brush]));
+		} else if (clickCode == PaintModel.DRAG_A_LINE) {
+			// cancel drawing
+			pm.clearPointsList();
+			pm.setClickCode(PaintModel.IGNORE_ALL);
+			pm.setCurrentDrawable(Drawable.NOTHING);
+		} else if (clickCode != PaintModel.IGNORE_ALL) {
+			throw new IllegalStateException("Illegal click code (mouse in inconsistent state): " + clickCode);
+		}
+		pm.incrementClickCount();
+	}
+
+	/**
+	 * Finishes the stroke where the mouse was released and adds it to the model's final Drawables
+	 */
+	@Override
+	public void mouseReleased(Point p, PaintModel pm) throws Throwable {
+		if (pm.getShapeMode() != getToolName().hashCode() + getOffset())
+			throw new IllegalStateException("PaintModel is in incorrect mode");
+		pm.decrementClickCount();
+
+		int clickCode = pm.getClickCode();
+		if (clickCode == PaintModel.DRAG_A_LINE) {
+			mouseDragged(p, pm);
+			BrushDrawable d = (BrushDrawable) pm.getCurrentDrawing();
+			// drawn onto the image from the coverage it already has, which it can let go of afterwards
+			pm.finalizeDrawing(d);
+			d.finish();
+			clickCode = PaintModel.IGNORE_ALL;
+		} else if (clickCode != PaintModel.IGNORE_ALL) {
+			throw new IllegalStateException("Illegal click code (mouse in inconsistent state): " + clickCode);
+		}
+
+		if (clickCode == PaintModel.IGNORE_ALL && pm.getClickCount() == 0) {
+			pm.setClickCode(PaintModel.NO_CLICKS);
+		}
+	}
+}
@@ -1,13 +1,15 @@
 package waldonsm.paint.tools;
 
+import java.awt.Color;
 import java.awt.Point;
-import java.awt.image.BufferedImage;
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.util.List;
 
-import javax.imageio.ImageIO;
-
 import waldonsm.paint.model.PaintModel;
+import waldonsm.paint.model.PaintModelUtils;
+import waldonsm.paint.tools.drawables.Drawable;
+import waldonsm.paint.tools.drawables.ShapePreviewDrawable;
 
 /**
  * Implements the MouseListener methods for a particular type of Drawable (or drawing mode).
@@ -22,6 +24,11 @@ import waldonsm.paint.model.PaintModel;
  */
 public abstract class DrawingTool {
 	
+	/**
+	 * The drag events testMain measures for each tool, after as many again to warm up
+	 */
+	private static final int TEST_DRAGS = 100000;
+	
 	private int offset;
 	
 	/**
@@ -147,20 +154,89 @@ public abstract class DrawingTool {
 	 */
 	public abstract List<File> getFillModeFiles();
 	
+	/**
+	 * Returns the model's current Drawable if it is a ShapePreviewDrawable of the given kind (as set up by the tool when the
+	 * mouse was pressed), otherwise makes a new one starting at the model's initial point and sets it as the current Drawable.
+	 * @param pm the PaintModel being drawn on
+	 * @param kind the kind of shape, one of ShapePreviewDrawable.LINE, RECTANGLE or OVAL
+	 * @return the ShapePreviewDrawable on the model
+	 */
+	protected static ShapePreviewDrawable getShapePreview(PaintModel pm, int kind) {
+		Drawable current = pm.getCurrentDrawing();
+		if (current instanceof ShapePreviewDrawable && ((ShapePreviewDrawable) current).getKind() == kind)
+			return (ShapePreviewDrawable) current;
+		Point initial = pm.getInitialPoint();
+		ShapePreviewDrawable preview = new ShapePreviewDrawable(kind, initial.x, initial.y);
+		pm.setCurrentDrawable(preview);
+		return preview;
+	}
+	
+	/**
+	 * Checks that dragging with the line, rectangle and oval tools allocates nothing, using the JVM's count of the bytes
+	 * allocated by the current thread.  Each tool is pressed on a new model and dragged TEST_DRAGS times to warm up, then
+	 * TEST_DRAGS times more while counting.  Prints the bytes per drag for each tool and throws an IllegalStateException if
+	 * any of them allocated a byte or more per drag (which leaves room only for the counting itself), or if the JVM can not
+	 * count.
+	 */
+	public static void testMain() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)
+				|| !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported())
+			throw new IllegalStateException("This JVM can not count the bytes a thread allocates");
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		threads.setThreadAllocatedMemoryEnabled(true);
+		DrawingTool[] tools = {new LineTool(), new RectangleTool(), new OvalTool()};
+		for (DrawingTool tool : tools) {
+			PaintModel pm = PaintModelUtils.createNewModelWithWhiteBackground(800, 600);
+			pm.setShapeMode(tool.getToolName().hashCode() + tool.getOffset());
+			pm.setMainColor(Color.red);
+			Point p = new Point(100, 100);
+			long allocated;
+			try {
+				tool.mousePressed(p, false, pm);
+				drag(tool, pm, p);
+				long before = threads.getCurrentThreadAllocatedBytes();
+				drag(tool, pm, p);
+				allocated = threads.getCurrentThreadAllocatedBytes() - before;
+				tool.mouseReleased(p, pm);
+			} catch (Throwable t) {
+				throw new IllegalStateException(tool.getToolName() + " failed while dragging", t);
+			}
+			System.out.println(tool.getToolName() + ": " + allocated + " bytes in " + TEST_DRAGS + " drags, "
+					+ (double) allocated / TEST_DRAGS + " per drag");
+			if (allocated >= TEST_DRAGS)
+				throw new IllegalStateException(tool.getToolName() + " allocated " + allocated + " bytes in " + TEST_DRAGS
+						+ " drags");
+		}
+	}
+	
+	/**
+	 * Drags the tool TEST_DRAGS times around a square, moving the one Point so that testMain counts only what the tool
+	 * allocates
+	 */
+	private static void drag(DrawingTool tool, PaintModel pm, Point p) throws Throwable {
+		for (int i = 0; i < TEST_DRAGS; i++) {
+			p.setLocation(100 + i % 300, 100 + (i / 300) % 300);
+			tool.mouseDragged(p, pm);
+		}
+	}
+	
 
 	/**
 	 * Tests that the image is in the file returned by the getButtonImageFileName method 
 	 * and that the image is of the correct size
+	 * <P>
+	 * Only the image headers are read, the images themselves are decoded when they are shown.
 	 * @return true if the image is good, false if it is the wrong size or there was an exception reading
 	 */
 	public static boolean testOutFileNames(DrawingTool tool) {
 		try {
-			BufferedImage im = ImageIO.read(new File(tool.getButtonImageFileName()));
-			if ( im.getHeight() != 24 || im.getWidth() != 24)
+			int[] size = ToolIndex.readImageSize(new File(tool.getButtonImageFileName()));
+			if (size == null || size[0] != 24 || size[1] != 24)
 				return false;
 			for (File f : tool.getFillModeFiles()) {
-				im = ImageIO.read(f);
-				if ( im.getWidth() > 60)
+				size = ToolIndex.readImageSize(f);
+				if (size == null || size[0] > 60)
 					return false;
 			}
 			return true;
@@ -2,15 +2,43 @@ package waldonsm.paint.tools;
 
 import java.awt.Color;
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.io.File;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
 
 import waldonsm.paint.model.PaintModel;
+import waldonsm.paint.model.SharedRaster;
+import waldonsm.paint.tools.drawables.Drawable;
+import waldonsm.paint.tools.drawables.FillPreviewDrawable;
 import waldonsm.paint.tools.drawables.FillRegionDrawable;
+import waldonsm.paint.tools.drawables.FillSpans;
+import waldonsm.paint.tools.drawables.FloodFill;
 /**
  * This tool implements the Fill Region tool of the program.  The area that is initially clicked is filled with a new color
  * based on the click type and the currently selected colors.  It is equivalent to the paint can tool in MS Paint.
+ * <P>
+ * On large images the fill is done on a background thread against a copy of the image, with the filled area shown as a
+ * FillPreviewDrawable while it runs.  The copy is made on the fill thread, a band of rows at a time, from SharedRasters
+ * taken when the mouse was pressed, so the click costs nothing however big the image is (if the image is changed before
+ * a band has been copied, the model copies that band first).  When it finishes, the result is added to the model as a single FillRegionDrawable.
+ * Clicking again in the same image while a fill is running cancels it and starts the new one, so a fill started by
+ * mistake can be stopped straight away.  Anything else replacing the preview (such as changing tools or switching layers)
+ * abandons the running fill too.  Each image has its own running fill, so a click in one image never cancels another's.
+ * <P>
+ * There are three fill modes: the exact color, colors within a tolerance of the clicked color, and replacing the clicked
+ * color (within the tolerance) everywhere in the image.  Replacing everywhere is one pass over the image on every core, so
+ * it is done straight away rather than in the background.
  * @author Shawn Waldon
  *
  */
@@ -18,6 +46,45 @@ public class FillRegionTool extends DrawingTool {
 	
 	private static final String TOOL_NAME = "PAINT_CAN_TOOL";
 	private static final String TOOL_IMAGE_FILE_NAME = "images/paintcan.png";
+	
+	/**
+	 * Images with fewer pixels than this are filled straight away on the EDT, since the fill is quicker than starting a background one
+	 */
+	private static final long BACKGROUND_FILL_MIN_PIXELS = 1 << 20;
+	
+	/**
+	 * How often the preview of a background fill is repainted, in nanoseconds
+	 */
+	private static final long PREVIEW_INTERVAL_NANOS = 30 * 1000000L;
+	
+	/**
+	 * How far each channel of a color may be from the clicked color for the tolerance and replace fill modes
+	 */
+	private static final int TOLERANCE = 32;
+	
+	private static final int EXACT_MODE = 0;
+	private static final int TOLERANCE_MODE = 1;
+	private static final int REPLACE_MODE = 2;
+	
+	private final static List<File> listOfFiles = Collections.unmodifiableList(
+												  Arrays.asList(new File("images/fillExact.png"),
+																new File("images/fillTolerance.png"),
+																new File("images/fillReplace.png"))
+												  );
+	
+	private static final ExecutorService fillThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "JavaPaint fill");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	
+	/**
+	 * The background fill running for each model.  The tool is shared by every open image, so each model has its own.
+	 * Only used on the EDT.
+	 */
+	private final Map<PaintModel, BackgroundFill> pending = new WeakHashMap<PaintModel, BackgroundFill>();
 
 	/**
 	 * Returns the image file for this tool
@@ -28,11 +95,11 @@ public class FillRegionTool extends DrawingTool {
 	}
 
 	/**
-	 * Returns the empty list: no fill modes for this tool
+	 * Returns the images for the exact, tolerance and replace fill modes
 	 */
 	@Override
 	public List<File> getFillModeFiles() {
-		return Collections.emptyList();
+		return listOfFiles;
 	}
 
 	/**
@@ -74,18 +141,34 @@ public class FillRegionTool extends DrawingTool {
 	}
 
 	/**
-	 * Makes a new PaintDrawable for where the mouse was pressed and adds it to the model.
+	 * Makes a new PaintDrawable for where the mouse was pressed and adds it to the model, cancelling the fill still running
+	 * in the background for the model, if there is one.
 	 */
 	@Override
 	public void mousePressed(Point p, boolean isRightClick, PaintModel pm) throws Throwable {
 		if (pm.getShapeMode() != getToolName().hashCode() + getOffset())
 			throw new IllegalStateException("PaintModel is in incorrect mode");
+		BackgroundFill running = pending.remove(pm);
+		if (running != null)
+			running.cancel();
 		Color color;
 		if (isRightClick)
 			color = pm.getSecondaryColor();
 		else
 			color = pm.getMainColor();
-		pm.finalizeDrawing(new FillRegionDrawable(p, color, pm));
+		int mode = pm.getFillMode();
+		int tolerance = mode == EXACT_MODE ? 0 : TOLERANCE;
+		boolean everywhere = mode == REPLACE_MODE;
+		BufferedImage image = pm.getMainImage();
+		if ((long) image.getWidth() * image.getHeight() < BACKGROUND_FILL_MIN_PIXELS || !FloodFill.canFill(image) || everywhere
+				|| p.x < 0 || p.y < 0 || p.x >= image.getWidth() || p.y >= image.getHeight()) {
+			pm.finalizeDrawing(new FillRegionDrawable(p, color, pm, tolerance, everywhere));
+		} else {
+			BackgroundFill started = new BackgroundFill(p, color, tolerance, pm, image);
+			pending.put(pm, started);
+			pm.setCurrentDrawable(started.preview);
+			fillThread.execute(started);
+		}
 	}
 
 	/**
@@ -97,5 +180,155 @@ public class FillRegionTool extends DrawingTool {
 			throw new IllegalStateException("PaintModel is in incorrect mode");
 		// does nothing for this tool.
 	}
-
+	
+	/**
+	 * A fill running on the fill thread against a copy of the model's image.  The filled spans are fed to a
+	 * FillPreviewDrawable as they are found, and the finished result is committed to the model on the EDT.
+	 * @author Shawn Waldon
+	 *
+	 */
+	private final class BackgroundFill implements Runnable, FloodFill.SpanListener {
+		
+		private final Point p;
+		private final Color color;
+		private final int tolerance;
+		private final PaintModel model;
+		/**
+		 * The image of the layer the fill was started on
+		 */
+		private final BufferedImage target;
+		private final int width, height;
+		private final long modificationCount;
+		private final FillPreviewDrawable preview;
+		/**
+		 * The image, a band of PaintModel.TILE_SIZE rows each, until they have been copied by the fill thread
+		 */
+		private final SharedRaster[] bands;
+		private volatile boolean cancelled = false;
+		private long lastPreview;
+		
+		/**
+		 * Shares the image data, must be called on the EDT
+		 */
+		BackgroundFill(Point p, Color color, int tolerance, PaintModel model, BufferedImage image) {
+			this.p = new Point(p);
+			this.color = color;
+			this.tolerance = tolerance;
+			this.model = model;
+			target = image;
+			width = image.getWidth();
+			height = image.getHeight();
+			bands = new SharedRaster[(height + PaintModel.TILE_SIZE - 1) / PaintModel.TILE_SIZE];
+			for (int i = 0; i < bands.length; i++) {
+				int y = i * PaintModel.TILE_SIZE;
+				bands[i] = model.shareRegion(new Rectangle(0, y, width, Math.min(PaintModel.TILE_SIZE, height - y)));
+			}
+			modificationCount = model.getModificationCount();
+			preview = new FillPreviewDrawable(width, height, color.getRGB());
+			lastPreview = System.nanoTime();
+		}
+		
+		/**
+		 * Stops the fill and removes its preview from the model.  Must be called on the EDT.
+		 */
+		void cancel() {
+			cancelled = true;
+			try {
+				if (model.getCurrentDrawing() == preview) {
+					model.setCurrentDrawable(Drawable.NOTHING);
+					model.repaintCurrentDrawing();
+				}
+			} catch (RuntimeException e) {
+				// the model has been closed, nothing to clean up
+			}
+		}
+		
+		/**
+		 * Copies the image and does the fill on the copy, then hands the result to the EDT.  The EDT is told even if the
+		 * fill was stopped, so that it is no longer kept as the model's running fill.
+		 */
+		public void run() {
+			FillSpans result = null;
+			try {
+				byte[] copy = copyImage();
+				if (copy != null)
+					result = FloodFill.fill(copy, width, height, p.x, p.y, color.getRGB(), tolerance, this);
+			} finally {
+				for (SharedRaster band : bands) {
+					band.release();
+				}
+			}
+			final FillSpans spans = result;
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					commit(spans);
+				}
+			});
+		}
+		
+		/**
+		 * Copies the image band by band, letting go of each band once it has been copied
+		 * @return the image data, or null if the fill was cancelled first
+		 */
+		private byte[] copyImage() {
+			if (cancelled)
+				return null;
+			BufferedImage copy = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+			for (int i = 0; i < bands.length; i++) {
+				if (cancelled)
+					return null;
+				bands[i].copyTo(copy.getRaster(), 0, i * PaintModel.TILE_SIZE);
+				bands[i].release();
+			}
+			return ((DataBufferByte) copy.getRaster().getDataBuffer()).getData();
+		}
+		
+		/**
+		 * Adds each span to the preview, and asks for a repaint every PREVIEW_INTERVAL_NANOS
+		 */
+		public boolean spanFilled(int y, int x0, int x1) {
+			if (cancelled)
+				return false;
+			preview.addSpan(y, x0, x1);
+			long now = System.nanoTime();
+			if (now - lastPreview > PREVIEW_INTERVAL_NANOS) {
+				lastPreview = now;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						try {
+							if (model.getCurrentDrawing() != preview)
+								cancelled = true;
+							else if (!cancelled)
+								model.repaintCurrentDrawing();
+						} catch (RuntimeException e) {
+							cancelled = true;
+						}
+					}
+				});
+			}
+			return true;
+		}
+		
+		/**
+		 * Adds the finished fill to the model as a single FillRegionDrawable.  If the fill was cancelled, or the preview was
+		 * replaced in the meantime, or another layer has been made current, the fill was abandoned and is dropped.  If the
+		 * image changed while the fill was running, the spans no longer apply, so the drawable does the fill again itself.
+		 * @param spans the filled spans, or null if the fill was stopped
+		 */
+		private void commit(FillSpans spans) {
+			if (pending.get(model) == this)
+				pending.remove(model);
+			try {
+				if (spans == null || cancelled || model.getCurrentDrawing() != preview || model.getMainImage() != target)
+					return;
+				if (model.getModificationCount() == modificationCount) {
+					model.finalizeDrawing(new FillRegionDrawable(p, color, model, tolerance, false, spans));
+				} else {
+					model.finalizeDrawing(new FillRegionDrawable(p, color, model, tolerance, false));
+				}
+			} catch (RuntimeException e) {
+				// the model was closed while the fill was running
+			}
+		}
+	}
 }
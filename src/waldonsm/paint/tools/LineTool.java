@@ -9,6 +9,7 @@ import java.util.List;
 import waldonsm.paint.model.PaintModel;
 import waldonsm.paint.tools.drawables.Drawable;
 import waldonsm.paint.tools.drawables.LineDrawable;
+import waldonsm.paint.tools.drawables.ShapePreviewDrawable;
 
 public class LineTool extends DrawingTool {
 	
@@ -46,10 +47,8 @@ public class LineTool extends DrawingTool {
 			} else {
 				c = pm.getMainColor();
 			}
-		// make a new LineDrawable
-			LineDrawable line = new LineDrawable(pm.getInitialPoint(), p, c);
-		// set the LineDrawable as the current Drawable in the model
-			pm.setCurrentDrawable(line);
+		// move the end of the preview started when the mouse was pressed
+			getShapePreview(pm, ShapePreviewDrawable.LINE).setEnd(p.x, p.y, false, c, c);
 		} else if (clickCode != PaintModel.IGNORE_ALL) {
 		// otherwise, if the click code is not IGNORE_ALL there has been an error
 			throw new IllegalStateException("Model in illegal mouse state for mouseDragged.");
@@ -91,6 +90,8 @@ public class LineTool extends DrawingTool {
 			pm.setInitialPoint(p);
 			pm.setIsRightClick(isRightClick);
 			pm.setClickCode(PaintModel.ONE_CLICK);
+			// the preview is moved as the mouse is dragged, instead of making a new drawable every time
+			pm.setCurrentDrawable(new ShapePreviewDrawable(ShapePreviewDrawable.LINE, p.x, p.y));
 		} else if (clickCode == PaintModel.ONE_CLICK) {
 			// if this is the second click, then set the click code to ignore all
 			// and set the current drawable to the default do-nothing drawable
@@ -117,11 +118,13 @@ public class LineTool extends DrawingTool {
 		int clickCode = pm.getClickCode();
 		if (clickCode == PaintModel.ONE_CLICK) {
 			// if there is a valid line that has been dragged
-			// call mouseDragged with the current point to force
-			// the model to have a LineDrawable with the current point
+			// call mouseDragged with the current point to move
+			// the preview to the current point
 			mouseDragged(p, pm);
+			// make the final LineDrawable from the preview
+			ShapePreviewDrawable preview = (ShapePreviewDrawable) pm.getCurrentDrawing();
+			LineDrawable d = new LineDrawable(new Point(preview.getAnchorX(), preview.getAnchorY()), p, preview.getBorderColor());
 			// tell the LineDrawable that it is the final product and not a step along the way
-			LineDrawable d = (LineDrawable) pm.getCurrentDrawing();
 			d.thisIsFinalDrawable();
 			// send the new final Drawable to the PaintModel
 			pm.finalizeDrawing(d);
@@ -9,8 +9,8 @@ import waldonsm.paint.model.PaintModel;
 import waldonsm.paint.tools.DrawingTool;
 
 /**
- * This tool implements the zooming features of the PaintModel.  It toggles the model between two states, ZOOMED_OUT and ZOOMED_IN.
- * NOTE: if the model is found in any other state, an exception will be thrown
+ * This tool implements the zooming features of the PaintModel.  A left click zooms in to the next of the ZOOM_LEVELS, and
+ * a right click zooms out to the one before.
  * @author Shawn Waldon
  *
  */
@@ -20,14 +20,36 @@ public class MagnifyingTool extends DrawingTool {
 	private static final String TOOL_NAME = "MAGNIFYINGTOOL";
 	
 	/**
-	 * 500% zoom factor
+	 * The scale factors that the tool steps through, from PaintModel.MIN_SCALE_FACTOR to PaintModel.MAX_SCALE_FACTOR
 	 */
-	public static final int ZOOMED_IN = 5;
+	private static final double[] ZOOM_LEVELS = { 1.0 / 64, 1.0 / 32, 1.0 / 16, 1.0 / 8, 1.0 / 6, 1.0 / 4, 1.0 / 3, 1.0 / 2,
+			2.0 / 3, 1, 2, 3, 4, 5, 6, 8, 12, 16, 24, 32 };
 	
 	/**
-	 * 100% zoom factor
+	 * Returns the next zoom level bigger than the given scale factor, or the scale factor itself if it is already the biggest
+	 * @param scaleFactor the current scale factor
+	 * @return the scale factor to zoom in to
 	 */
-	public static final int ZOOMED_OUT = 1;
+	public static double getNextZoomIn(double scaleFactor) {
+		for (double level : ZOOM_LEVELS) {
+			if (level > scaleFactor * 1.0001)
+				return level;
+		}
+		return scaleFactor;
+	}
+	
+	/**
+	 * Returns the next zoom level smaller than the given scale factor, or the scale factor itself if it is already the smallest
+	 * @param scaleFactor the current scale factor
+	 * @return the scale factor to zoom out to
+	 */
+	public static double getNextZoomOut(double scaleFactor) {
+		for (int i = ZOOM_LEVELS.length - 1; i >= 0; i--) {
+			if (ZOOM_LEVELS[i] < scaleFactor / 1.0001)
+				return ZOOM_LEVELS[i];
+		}
+		return scaleFactor;
+	}
 
 	/**
 	 * Returns the image filename for this tool
@@ -54,20 +76,12 @@ public class MagnifyingTool extends DrawingTool {
 	}
 
 	/**
-	 * Toggles the zoom between zoomed in and zoomed out
+	 * Does nothing for this tool, the zoom is changed in mousePressed (which knows which button was used)
 	 */
 	@Override
 	public void mouseClicked(Point p, PaintModel pm) throws Throwable {
 		if (pm.getShapeMode() != getToolName().hashCode() + getOffset())
 			throw new IllegalStateException("PaintModel is in incorrect mode");
-		
-		if (pm.getScaleFactor() == ZOOMED_IN) {
-			pm.setScaleFactor(ZOOMED_OUT);
-		} else if (pm.getScaleFactor() == ZOOMED_OUT) {
-			pm.setScaleFactor(ZOOMED_IN);
-		} else {
-			throw new IllegalStateException("Unsupported zoom level");
-		}
 	}
 
 	/**
@@ -89,13 +103,18 @@ public class MagnifyingTool extends DrawingTool {
 	}
 
 	/**
-	 * Does nothing for this tool
+	 * Zooms in to the next zoom level, or out to the previous one on a right click
 	 */
 	@Override
 	public void mousePressed(Point p, boolean isRightClick, PaintModel pm)
 			throws Throwable {
 		if (pm.getShapeMode() != getToolName().hashCode() + getOffset())
 			throw new IllegalStateException("PaintModel is in incorrect mode");
+		
+		double scale = pm.getScaleFactor();
+		double next = isRightClick ? getNextZoomOut(scale) : getNextZoomIn(scale);
+		if (next != scale)
+			pm.setScaleFactor(next);
 	}
 
 	/**
@@ -14,6 +14,7 @@ import javax.imageio.ImageIO;
 import waldonsm.paint.model.PaintModel;
 import waldonsm.paint.tools.drawables.CircleDrawable;
 import waldonsm.paint.tools.drawables.Drawable;
+import waldonsm.paint.tools.drawables.ShapePreviewDrawable;
 
 /**
  * This class is the DrawingTool for oval drawables. implements the methods of the DrawingTool for making ovals.
@@ -62,14 +63,6 @@ public class OvalTool extends DrawingTool {
 		int clickCode = pm.getClickCode();
 		// if the click code is ONE_CLICK
 		if (clickCode == PaintModel.ONE_CLICK) {
-			// get the original point of the click
-			Point mouseClickedAt = pm.getInitialPoint();
-			// get the x and y at the top left of the box with corners at mouseClickedAt and mouseCurrentLocation
-			int x = (mouseClickedAt.x < p.x) ? mouseClickedAt.x : p.x;
-			int y = (mouseClickedAt.y < p.y) ? mouseClickedAt.y : p.y;
-			// get the width of the box with corners at mouseClickedAt and mouseCurrentLocation
-			int width = Math.abs(mouseClickedAt.x-p.x);
-			int height = Math.abs(mouseClickedAt.y-p.y);
 			// set up the fill color and outline color of the shape
 			Color fillColor;
 			Color outlineColor;
@@ -91,8 +84,8 @@ public class OvalTool extends DrawingTool {
 					fillColor = pm.getMainColor();
 				}
 			}
-			// if the mode is CIRCLE, set the current drawable to a CircleDrawable
-			pm.setCurrentDrawable(new CircleDrawable(x,y,width,height,(fillMode != OUTLINE_ONLY),outlineColor,fillColor));
+			// move the end of the preview started when the mouse was pressed
+			getShapePreview(pm, ShapePreviewDrawable.OVAL).setEnd(p.x, p.y, (fillMode != OUTLINE_ONLY), outlineColor, fillColor);
 				
 		}
 	}
@@ -131,6 +124,8 @@ public class OvalTool extends DrawingTool {
 			pm.setInitialPoint(p);
 			pm.setClickCode(PaintModel.ONE_CLICK);
 			pm.setIsRightClick(isRightClick);
+			// the preview is moved as the mouse is dragged, instead of making a new drawable every time
+			pm.setCurrentDrawable(new ShapePreviewDrawable(ShapePreviewDrawable.OVAL, p.x, p.y));
 		} else if (clickCode == PaintModel.ONE_CLICK) {
 			// if the user is doing something and clicks the other mouse button, cancel the drawing
 			pm.setCurrentDrawable(Drawable.NOTHING);
@@ -158,13 +153,14 @@ public class OvalTool extends DrawingTool {
 		int clickCode = pm.getClickCode();
 		// if the click code is ONE_CLICK
 		if (clickCode == PaintModel.ONE_CLICK) {
-			// act as if the mouse was dragged to this point, creating the needed drawable and setting it to the current drawing of the model
+			// act as if the mouse was dragged to this point, moving the preview to its final place
 			mouseDragged(p, pm);
-			// get the current drawing
-			Drawable newDrawing = pm.getCurrentDrawing();
-				// if this is a RectangleDrawable or a CircleDrawable, tell it that it is a final drawable (increments the drawable name counter)
-		
-			((CircleDrawable)newDrawing).thisIsFinalDrawable();
+			// make the final CircleDrawable from the preview
+			ShapePreviewDrawable preview = (ShapePreviewDrawable) pm.getCurrentDrawing();
+			CircleDrawable newDrawing = new CircleDrawable(preview.getX(), preview.getY(), preview.getWidth(), preview.getHeight(),
+					preview.isFilled(), preview.getBorderColor(), preview.getFillColor());
+			// tell it that it is a final drawable (increments the drawable name counter)
+			newDrawing.thisIsFinalDrawable();
 			
 			// set this drawable as a final drawable on the pm
 			pm.finalizeDrawing(newDrawing);
@@ -99,19 +99,36 @@ public class PolygonTool extends DrawingTool {
 	}
 	
 	/**
-	 * The actual worker method for the mouseMoved and mouseDragged methods on the PolygonTool
+	 * The actual worker method for the mouseMoved and mouseDragged methods on the PolygonTool. <P>
+	 * The InProgressPolygonDrawable already on the model is reused when it still matches the model's points, so a mouse
+	 * move only moves its rubber band point instead of copying every vertex.
 	 * @param p the point the mouse is at
 	 * @param pm the PaintModel being changed
 	 */
 	private void mouseMovedOnPolygonDrawing(Point p, PaintModel pm) {
-
-		List<Point> ps = pm.getPointsList();
-		// get a copy of the list of points and add the current mouse location
-		ps.add(p);
 		// get what color to draw the partial polygon
 		Color color = (pm.isRightClick()) ? pm.getSecondaryColor() : pm.getMainColor();
-		// set the current Drawable to an updated InProgressPolygonDrawable
-		pm.setCurrentDrawable(new InProgressPolygonDrawable(ps,color));
+		InProgressPolygonDrawable preview = getPreview(pm);
+		if (preview == null || !preview.getLineColor().equals(color)) {
+			// out of step with the model (or the first move), so build a new one from a copy of the list of points
+			preview = new InProgressPolygonDrawable(pm.getPointsList(), color);
+			pm.setCurrentDrawable(preview);
+		}
+		preview.setRubberBand(p.x, p.y);
+	}
+	
+	/**
+	 * Returns the model's current Drawable if it is an InProgressPolygonDrawable with the same vertices as the model's
+	 * points list, or null otherwise
+	 */
+	private static InProgressPolygonDrawable getPreview(PaintModel pm) {
+		Drawable current = pm.getCurrentDrawing();
+		if (current instanceof InProgressPolygonDrawable) {
+			InProgressPolygonDrawable preview = (InProgressPolygonDrawable) current;
+			if (preview.getVertexCount() == pm.getPointsCount())
+				return preview;
+		}
+		return null;
 	}
 	
 	/**
@@ -173,7 +190,11 @@ public class PolygonTool extends DrawingTool {
 		
 		if (clickCode == PaintModel.DRAG_A_LINE) {
 			// if the user is dragging a line on a polygon, add the point as a final polygon point and set the click code to CLICK_WAITING
+			// (adding it to the preview too, so it stays in step with the model)
+			InProgressPolygonDrawable preview = getPreview(pm);
 			pm.addToPointsList(p);
+			if (preview != null)
+				preview.addVertex(p.x, p.y);
 			pm.setClickCode(PaintModel.CLICK_WAITING);
 		} else if (clickCode == PaintModel.FINAL_CLICK) {
 			// if this is the final click of a polygon, add the point to the points list
@@ -9,6 +9,7 @@ import java.util.List;
 
 import waldonsm.paint.model.PaintModel;
 import waldonsm.paint.tools.drawables.Drawable;
+import waldonsm.paint.tools.drawables.ShapePreviewDrawable;
 import waldonsm.paint.tools.drawables.RectangleDrawable;
 
 /**
@@ -59,14 +60,6 @@ public class RectangleTool extends DrawingTool {
 		int clickCode = pm.getClickCode();
 		// if the click code is ONE_CLICK
 		if (clickCode == PaintModel.ONE_CLICK) {
-			// get the original point of the click
-			Point mouseClickedAt = pm.getInitialPoint();
-			// get the x and y at the top left of the box with corners at mouseClickedAt and mouseCurrentLocation
-			int x = (mouseClickedAt.x < p.x) ? mouseClickedAt.x : p.x;
-			int y = (mouseClickedAt.y < p.y) ? mouseClickedAt.y : p.y;
-			// get the width of the box with corners at mouseClickedAt and mouseCurrentLocation
-			int width = Math.abs(mouseClickedAt.x-p.x);
-			int height = Math.abs(mouseClickedAt.y-p.y);
 			// set up the fill color and outline color of the shape
 			Color fillColor;
 			Color outlineColor;
@@ -88,8 +81,8 @@ public class RectangleTool extends DrawingTool {
 					fillColor = pm.getMainColor();
 				}
 			}
-			// if the mode is RECTANGLE, set the current Drawable to a RectangleDrawable
-			pm.setCurrentDrawable(new RectangleDrawable(x,y,width,height,(fillMode != OUTLINE_ONLY),outlineColor,fillColor));
+			// move the end of the preview started when the mouse was pressed
+			getShapePreview(pm, ShapePreviewDrawable.RECTANGLE).setEnd(p.x, p.y, (fillMode != OUTLINE_ONLY), outlineColor, fillColor);
 
 		} else if (clickCode != PaintModel.IGNORE_ALL) {
 			throw new IllegalStateException("Illegal mouse state for Rectangle tool");
@@ -131,6 +124,8 @@ public class RectangleTool extends DrawingTool {
 			pm.setInitialPoint(p);
 			pm.setClickCode(PaintModel.ONE_CLICK);
 			pm.setIsRightClick(isRightClick);
+			// the preview is moved as the mouse is dragged, instead of making a new drawable every time
+			pm.setCurrentDrawable(new ShapePreviewDrawable(ShapePreviewDrawable.RECTANGLE, p.x, p.y));
 
 		} else if (clickCode == PaintModel.ONE_CLICK) {
 			// if the user is doing something and clicks the other mouse button, cancel the drawing
@@ -159,12 +154,14 @@ public class RectangleTool extends DrawingTool {
 		int clickCode = pm.getClickCode();
 		// if the click code is ONE_CLICK
 		if (clickCode == PaintModel.ONE_CLICK) {
-			// act as if the mouse was dragged to this point, creating the needed drawable and setting it to the current drawing of the model
+			// act as if the mouse was dragged to this point, moving the preview to its final place
 			mouseDragged(p, pm);
-			// get the current drawing
-			Drawable newDrawing = pm.getCurrentDrawing();
-			// if this is a RectangleDrawable or a CircleDrawable, tell it that it is a final drawable (increments the drawable name counter)
-			((RectangleDrawable)newDrawing).thisIsFinalDrawable();
+			// make the final RectangleDrawable from the preview
+			ShapePreviewDrawable preview = (ShapePreviewDrawable) pm.getCurrentDrawing();
+			RectangleDrawable newDrawing = new RectangleDrawable(preview.getX(), preview.getY(), preview.getWidth(), preview.getHeight(),
+					preview.isFilled(), preview.getBorderColor(), preview.getFillColor());
+			// tell it that it is a final drawable (increments the drawable name counter)
+			newDrawing.thisIsFinalDrawable();
 			
 			// set this drawable as a final drawable on the pm
 			pm.finalizeDrawing(newDrawing);
@@ -0,0 +1,163 @@
+package waldonsm.paint.tools;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import waldonsm.paint.model.PaintModel;
+import waldonsm.paint.tools.drawables.Drawable;
+import waldonsm.paint.tools.drawables.MoveSelectionDrawable;
+
+/**
+ * This DrawingTool selects a rectangle of the image, which can then be copied, cut and pasted from the Edit menu, or moved
+ * by dragging it with this tool. <P>
+ * Dragging outside the selection selects a new rectangle.  Dragging inside it picks the selected pixels up (as a
+ * SharedRaster, so nothing is copied while they are dragged around) and drops them where the mouse is released, filling
+ * the place they came from with the secondary color (or the main color, when dragged with the right button).
+ * @author Shawn Waldon
+ *
+ */
+public class SelectionTool extends DrawingTool {
+
+	private static final String TOOL_IMAGE_FILE_NAME = "images/select.png";
+	private static final String TOOL_NAME = "SELECTIONTOOL";
+
+	/**
+	 * Returns the image filename for this tool
+	 */
+	@Override
+	public String getButtonImageFileName() {
+		return TOOL_IMAGE_FILE_NAME;
+	}
+
+	/**
+	 * Returns an empty list, since this tool has no fill modes
+	 */
+	@Override
+	public List<File> getFillModeFiles() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Returns the tool name for this tool
+	 */
+	@Override
+	public String getToolName() {
+		return TOOL_NAME;
+	}
+
+	/**
+	 * Does nothing for this tool
+	 */
+	@Override
+	public void mouseClicked(Point p, PaintModel pm) throws Throwable {
+		if (pm.getShapeMode() != getToolName().hashCode() + getOffset())
+			throw new IllegalStateException("PaintModel is in incorrect mode");
+	}
+
+	/**
+	 * Stretches the new selection to the mouse, or moves the selection being dragged with it
+	 */
+	@Override
+	public void mouseDragged(Point p, PaintModel pm) throws Throwable {
+		if (pm.getShapeMode() != getToolName().hashCode() + getOffset())
+			throw new IllegalStateException("PaintModel is in incorrect mode");
+
+		int clickCode = pm.getClickCode();
+		Point start = pm.getInitialPoint();
+		if (clickCode == PaintModel.ONE_CLICK) {
+			pm.setSelection(new Rectangle(Math.min(start.x, p.x), Math.min(start.y, p.y), Math.abs(p.x - start.x), Math.abs(p.y - start.y)));
+		} else if (clickCode == PaintModel.DRAG_A_LINE) {
+			MoveSelectionDrawable move = (MoveSelectionDrawable) pm.getCurrentDrawing();
+			move.setOffset(p.x - start.x, p.y - start.y);
+			pm.setSelection(move.getDestination());
+		} else if (clickCode != PaintModel.IGNORE_ALL) {
+			throw new IllegalStateException("Illegal click code, mouse state inconsistent: " + clickCode);
+		}
+	}
+
+	/**
+	 * Does nothing for this tool
+	 */
+	@Override
+	public void mouseMoved(Point p, PaintModel pm) throws Throwable {
+		if (pm.getShapeMode() != getToolName().hashCode() + getOffset())
+			throw new IllegalStateException("PaintModel is in incorrect mode");
+	}
+
+	/**
+	 * Picks the selection up if the mouse is pressed inside it, otherwise starts a new selection.  Pressing another button
+	 * while dragging cancels the drag.
+	 */
+	@Override
+	public void mousePressed(Point p, boolean isRightClick, PaintModel pm) throws Throwable {
+		if (pm.getShapeMode() != getToolName().hashCode() + getOffset())
+			throw new IllegalStateException("PaintModel is in incorrect mode");
+		int clickCode = pm.getClickCode();
+
+		if (clickCode == PaintModel.NO_CLICKS) {
+			pm.setIsRightClick(isRightClick);
+			pm.setInitialPoint(p);
+			Rectangle selection = pm.getSelection();
+			if (selection != null && selection.contains(p)) {
+				Color fill = isRightClick ? pm.getMainColor() : pm.getSecondaryColor();
+				pm.setClickCode(PaintModel.DRAG_A_LINE);
+				pm.setCurrentDrawable(new MoveSelectionDrawable(selection, fill.getRGB(), pm.shareRegion(selection), pm));
+			} else {
+				pm.setClickCode(PaintModel.ONE_CLICK);
+				pm.setSelection(null);
+			}
+		} else if (clickCode == PaintModel.ONE_CLICK) {
+			// cancel the new selection
+			pm.setSelection(null);
+			pm.setClickCode(PaintModel.IGNORE_ALL);
+		} else if (clickCode == PaintModel.DRAG_A_LINE) {
+			// cancel the move, leaving the selection where it was
+			MoveSelectionDrawable move = (MoveSelectionDrawable) pm.getCurrentDrawing();
+			pm.setSelection(move.getSource());
+			pm.setCurrentDrawable(Drawable.NOTHING);
+			pm.setClickCode(PaintModel.IGNORE_ALL);
+		} else if (clickCode != PaintModel.IGNORE_ALL) {
+			throw new IllegalStateException("Illegal click code (mouse in inconsistent state): " + clickCode);
+		}
+		pm.incrementClickCount();
+	}
+
+	/**
+	 * Finishes the new selection, or drops the selection being dragged where the mouse was released
+	 */
+	@Override
+	public void mouseReleased(Point p, PaintModel pm) throws Throwable {
+		if (pm.getShapeMode() != getToolName().hashCode() + getOffset())
+			throw new IllegalStateException("PaintModel is in incorrect mode");
+		pm.decrementClickCount();
+
+		int clickCode = pm.getClickCode();
+		if (clickCode == PaintModel.ONE_CLICK) {
+			mouseDragged(p, pm);
+			clickCode = PaintModel.IGNORE_ALL;
+			pm.setClickCode(clickCode);
+		} else if (clickCode == PaintModel.DRAG_A_LINE) {
+			mouseDragged(p, pm);
+			MoveSelectionDrawable move = (MoveSelectionDrawable) pm.getCurrentDrawing();
+			if (move.hasMoved()) {
+				// the model copies the pixels out of its image before drawing the move, after which they aren't needed
+				pm.finalizeDrawing(move);
+				move.dropPixels();
+			} else {
+				pm.setCurrentDrawable(Drawable.NOTHING);
+			}
+			clickCode = PaintModel.IGNORE_ALL;
+			pm.setClickCode(clickCode);
+		} else if (clickCode != PaintModel.IGNORE_ALL) {
+			throw new IllegalStateException("Illegal click code (mouse in inconsistent state): " + clickCode);
+		}
+
+		if (clickCode == PaintModel.IGNORE_ALL && pm.getClickCount() == 0) {
+			pm.setClickCode(PaintModel.NO_CLICKS);
+		}
+	}
+}
@@ -1,60 +1,216 @@
 package waldonsm.paint.tools;
 
+import java.awt.Color;
 import java.awt.Point;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
-import waldonsm.paint.model.PaintModel;
+import javax.swing.Timer;
 
+import waldonsm.paint.model.PaintModel;
+import waldonsm.paint.tools.drawables.Drawable;
+import waldonsm.paint.tools.drawables.SprayDrawable;
+
+/**
+ * This DrawingTool sprays paint like a spray can (or the Airbrush from MS Paint): while the mouse is held down, dots are
+ * scattered around it, building up the longer it stays in one place. <P>
+ * The position of the mouse is sampled every SAMPLE_INTERVAL milliseconds into a SprayDrawable, which makes the dots from
+ * the samples and a random seed chosen when the mouse is pressed, so the history only holds the path of the spray.  The fill
+ * modes choose a small, medium or large spray.
+ * @author Shawn Waldon
+ *
+ */
 public class SprayPaintTool extends DrawingTool {
 
+	private static final String TOOL_IMAGE_FILE_NAME = "images/spraycan.png";
+	private static final String TOOL_NAME = "SPRAYPAINTTOOL";
+
+	/**
+	 * The time between samples of the mouse position, in milliseconds
+	 */
+	private static final int SAMPLE_INTERVAL = 40;
+
+	/**
+	 * The radius of the spray for each fill mode
+	 */
+	private static final int[] RADII = {6, 12, 24};
+
+	/**
+	 * The number of dots sprayed per sample for each fill mode, so that each size covers about the same fraction of its area
+	 */
+	private static final int[] DENSITIES = {4, 12, 40};
+
+	private final static List<File> listOfFiles = Collections.unmodifiableList(
+												  Arrays.asList(new File("images/spraySmall.png"),
+																new File("images/sprayMedium.png"),
+																new File("images/sprayLarge.png"))
+												  );
+
+	private final Random seeds = new Random();
+	private final Timer sampleTimer;
+
+	/**
+	 * The model being sprayed on, the spray in progress and where the mouse is, while the mouse is down
+	 */
+	private PaintModel sprayModel = null;
+	private SprayDrawable spray = null;
+	private Point mouseAt = null;
+
+	/**
+	 * Creates a new SprayPaintTool
+	 */
+	public SprayPaintTool() {
+		sampleTimer = new Timer(SAMPLE_INTERVAL, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				sample();
+			}
+		});
+	}
+
+	/**
+	 * Returns the image filename for this tool
+	 */
 	@Override
 	public String getButtonImageFileName() {
-		// TODO Auto-generated method stub
-		return null;
+		return TOOL_IMAGE_FILE_NAME;
 	}
 
+	/**
+	 * Returns the images for the small, medium and large sprays
+	 */
 	@Override
 	public List<File> getFillModeFiles() {
-		// TODO Auto-generated method stub
-		return null;
+		return listOfFiles;
 	}
 
+	/**
+	 * Returns the tool name for this tool
+	 */
 	@Override
 	public String getToolName() {
-		// TODO Auto-generated method stub
-		return null;
+		return TOOL_NAME;
 	}
 
+	/**
+	 * Does nothing for this tool
+	 */
 	@Override
 	public void mouseClicked(Point p, PaintModel pm) throws Throwable {
-		// TODO Auto-generated method stub
-
+		if (pm.getShapeMode() != getToolName().hashCode() + getOffset())
+			throw new IllegalStateException("PaintModel is in incorrect mode");
 	}
 
+	/**
+	 * Moves the spray to the new mouse position, which is sprayed at the next sample
+	 */
 	@Override
 	public void mouseDragged(Point p, PaintModel pm) throws Throwable {
-		// TODO Auto-generated method stub
-
+		if (pm.getShapeMode() != getToolName().hashCode() + getOffset())
+			throw new IllegalStateException("PaintModel is in incorrect mode");
+
+		int clickCode = pm.getClickCode();
+		if (clickCode == PaintModel.DRAG_A_LINE) {
+			mouseAt = new Point(p);
+		} else if (clickCode != PaintModel.IGNORE_ALL) {
+			throw new IllegalStateException("Illegal click code, mouse state inconsistent: " + clickCode);
+		}
 	}
 
+	/**
+	 * Does nothing for this tool
+	 */
 	@Override
 	public void mouseMoved(Point p, PaintModel pm) throws Throwable {
-		// TODO Auto-generated method stub
-
+		if (pm.getShapeMode() != getToolName().hashCode() + getOffset())
+			throw new IllegalStateException("PaintModel is in incorrect mode");
 	}
 
+	/**
+	 * Starts spraying at the given point, or cancels the spray if another button is pressed while spraying
+	 */
 	@Override
-	public void mousePressed(Point p, boolean isRightClick, PaintModel pm)
-			throws Throwable {
-		// TODO Auto-generated method stub
-
+	public void mousePressed(Point p, boolean isRightClick, PaintModel pm) throws Throwable {
+		if (pm.getShapeMode() != getToolName().hashCode() + getOffset())
+			throw new IllegalStateException("PaintModel is in incorrect mode");
+		int clickCode = pm.getClickCode();
+
+		if (clickCode == PaintModel.NO_CLICKS) {
+			pm.setIsRightClick(isRightClick);
+			pm.setClickCode(PaintModel.DRAG_A_LINE);
+
+			Color color;
+			if (isRightClick) {
+				color = pm.getSecondaryColor();
+			} else {
+				color = pm.getMainColor();
+			}
+			int size = Math.max(0, Math.min(RADII.length - 1, pm.getFillMode()));
+			spray = new SprayDrawable(p.x, p.y, color.getRGB(), RADII[size], DENSITIES[size], seeds.nextLong());
+			sprayModel = pm;
+			mouseAt = new Point(p);
+			pm.setCurrentDrawable(spray);
+			sampleTimer.restart();
+		} else if (clickCode == PaintModel.DRAG_A_LINE) {
+			// cancel drawing
+			stopSpraying();
+			pm.clearPointsList();
+			pm.setClickCode(PaintModel.IGNORE_ALL);
+			pm.setCurrentDrawable(Drawable.NOTHING);
+		} else if (clickCode != PaintModel.IGNORE_ALL) {
+			throw new IllegalStateException("Illegal click code (mouse in inconsistent state): " + clickCode);
+		}
+		pm.incrementClickCount();
 	}
 
+	/**
+	 * Sprays a last time where the mouse was released and adds the spray to the model's final Drawables
+	 */
 	@Override
 	public void mouseReleased(Point p, PaintModel pm) throws Throwable {
-		// TODO Auto-generated method stub
+		if (pm.getShapeMode() != getToolName().hashCode() + getOffset())
+			throw new IllegalStateException("PaintModel is in incorrect mode");
+		pm.decrementClickCount();
+
+		int clickCode = pm.getClickCode();
+		if (clickCode == PaintModel.DRAG_A_LINE) {
+			SprayDrawable d = (SprayDrawable) pm.getCurrentDrawing();
+			stopSpraying();
+			d.addSample(p.x, p.y);
+			pm.finalizeDrawing(d);
+			clickCode = PaintModel.IGNORE_ALL;
+		} else if (clickCode != PaintModel.IGNORE_ALL) {
+			throw new IllegalStateException("Illegal click code (mouse in inconsistent state): " + clickCode);
+		}
+
+		if (clickCode == PaintModel.IGNORE_ALL && pm.getClickCount() == 0) {
+			pm.setClickCode(PaintModel.NO_CLICKS);
+		}
+	}
 
+	/**
+	 * Adds the current mouse position to the spray in progress, if it is still the model's current Drawable
+	 */
+	private void sample() {
+		if (spray == null || sprayModel.getCurrentDrawing() != spray) {
+			stopSpraying();
+			return;
+		}
+		spray.addSample(mouseAt.x, mouseAt.y);
+		sprayModel.repaintCurrentDrawing();
 	}
 
+	/**
+	 * Stops sampling the mouse and forgets the spray in progress
+	 */
+	private void stopSpraying() {
+		sampleTimer.stop();
+		spray = null;
+		sprayModel = null;
+		mouseAt = null;
+	}
 }
@@ -0,0 +1,270 @@
+package waldonsm.paint.tools;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * A cache of the results of DrawingTool.testOutFileNames, stored next to the .extensions file.
+ * <P>
+ * Checking a tool's images means opening every button and fill mode image, which is a large part of the time it takes
+ * to bring up the PaintFrame.  This index remembers, for each tool class, whether its images checked out and the last
+ * modified time and length of each image file.  As long as none of the image files change, the stored result is used
+ * and the images are not touched again until they are actually shown.
+ * <P>
+ * Each line of the index file has the form: <code>className valid (path lastModified length)*</code> separated by tabs,
+ * where the first path is the button image and the rest are the fill mode images.
+ * @author Shawn Waldon
+ *
+ */
+final class ToolIndex {
+
+	private static final String SEPARATOR = "\t";
+
+	private final File indexFile;
+	private final Map<String,Entry> entries = new HashMap<String,Entry>();
+	private boolean dirty = false;
+	private int hits = 0;
+
+	/**
+	 * Creates a new ToolIndex backed by the given file and reads in any entries already stored in it
+	 * @param indexFile the file that the index is stored in
+	 */
+	ToolIndex(File indexFile) {
+		this.indexFile = indexFile;
+		load();
+	}
+
+	/**
+	 * Returns true if the tool's images are known to be good, checking them (and updating the index) if the index has no
+	 * up to date entry for the tool.
+	 * @param tool the tool to check
+	 * @return true if the tool's button image and fill mode images are valid
+	 */
+	boolean isValid(DrawingTool tool) {
+		String className = tool.getClass().getName();
+		List<File> files;
+		try {
+			files = getImageFiles(tool);
+		} catch (Throwable t) {
+			return false;
+		}
+		Entry e = entries.get(className);
+		if (e != null && e.matches(files)) {
+			hits++;
+			return e.valid;
+		}
+		e = new Entry(files, checkImages(files));
+		entries.put(className, e);
+		dirty = true;
+		return e.valid;
+	}
+
+	/**
+	 * Returns the number of tools whose results were served from the index without checking the images
+	 * @return the number of index hits since this index was created
+	 */
+	int getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * Drops all entries whose class is not in the given list, so that removed tools do not stay in the index forever.
+	 * @param classNames the class names of the currently registered tools
+	 */
+	void retainOnly(List<String> classNames) {
+		for (Iterator<String> it = entries.keySet().iterator(); it.hasNext();) {
+			if (!classNames.contains(it.next())) {
+				it.remove();
+				dirty = true;
+			}
+		}
+	}
+
+	/**
+	 * Writes the index back to its file if it has changed.  Failures are ignored, since the index is only a cache.
+	 */
+	void save() {
+		if (!dirty)
+			return;
+		PrintWriter pw = null;
+		try {
+			pw = new PrintWriter(new FileOutputStream(indexFile));
+			for (Map.Entry<String,Entry> me : entries.entrySet()) {
+				Entry e = me.getValue();
+				StringBuilder line = new StringBuilder(me.getKey()).append(SEPARATOR).append(e.valid);
+				for (int i = 0; i < e.paths.length; i++) {
+					line.append(SEPARATOR).append(e.paths[i]);
+					line.append(SEPARATOR).append(e.modified[i]);
+					line.append(SEPARATOR).append(e.lengths[i]);
+				}
+				pw.println(line);
+			}
+			dirty = false;
+		} catch (FileNotFoundException fe) {
+			// can't write the index (read only directory?) -- the tools just get checked again next time
+		} finally {
+			if (pw != null)
+				pw.close();
+		}
+	}
+
+	/**
+	 * Reads the index file, skipping any lines that can't be parsed
+	 */
+	private void load() {
+		if (!indexFile.isFile())
+			return;
+		Scanner scan = null;
+		try {
+			scan = new Scanner(indexFile);
+			while (scan.hasNextLine()) {
+				String[] parts = scan.nextLine().split(SEPARATOR);
+				if (parts.length < 2 || (parts.length - 2) % 3 != 0)
+					continue;
+				try {
+					int n = (parts.length - 2) / 3;
+					Entry e = new Entry(n, Boolean.parseBoolean(parts[1]));
+					for (int i = 0; i < n; i++) {
+						e.paths[i] = parts[2 + 3*i];
+						e.modified[i] = Long.parseLong(parts[3 + 3*i]);
+						e.lengths[i] = Long.parseLong(parts[4 + 3*i]);
+					}
+					entries.put(parts[0], e);
+				} catch (NumberFormatException nfe) {
+					dirty = true;
+				}
+			}
+		} catch (FileNotFoundException fe) {
+			// checked above, nothing to read
+		} finally {
+			if (scan != null)
+				scan.close();
+		}
+	}
+
+	/**
+	 * Returns the button image file followed by the fill mode image files of the tool
+	 */
+	private static List<File> getImageFiles(DrawingTool tool) {
+		List<File> fillFiles = tool.getFillModeFiles();
+		List<File> files = new ArrayList<File>(fillFiles.size() + 1);
+		files.add(new File(tool.getButtonImageFileName()));
+		files.addAll(fillFiles);
+		return files;
+	}
+
+	/**
+	 * Performs the same checks as DrawingTool.testOutFileNames, but only reads the image headers rather than decoding the images
+	 * @param files the button image file followed by the fill mode image files
+	 * @return true if the images are all the correct size
+	 */
+	private static boolean checkImages(List<File> files) {
+		for (int i = 0; i < files.size(); i++) {
+			int[] size = readImageSize(files.get(i));
+			if (size == null)
+				return false;
+			if (i == 0 && (size[0] != 24 || size[1] != 24))
+				return false;
+			if (i > 0 && size[0] > 60)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the width and height of an image from its header, without decoding the pixels
+	 * @param f the image file
+	 * @return an array of {width, height}, or null if the file could not be read as an image
+	 */
+	static int[] readImageSize(File f) {
+		ImageInputStream iis = null;
+		try {
+			iis = ImageIO.createImageInputStream(f);
+			if (iis == null)
+				return null;
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+			if (!readers.hasNext())
+				return null;
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(iis, true, true);
+				return new int[] {reader.getWidth(0), reader.getHeight(0)};
+			} finally {
+				reader.dispose();
+			}
+		} catch (Throwable t) {
+			return null;
+		} finally {
+			if (iis != null) {
+				try {
+					iis.close();
+				} catch (Throwable t) {
+					// nothing to do
+				}
+			}
+		}
+	}
+
+	/**
+	 * The stored check result for a single tool class
+	 * @author Shawn Waldon
+	 *
+	 */
+	private static final class Entry {
+
+		private final boolean valid;
+		private final String[] paths;
+		private final long[] modified;
+		private final long[] lengths;
+
+		/**
+		 * Creates an empty entry with room for n files, to be filled in while reading the index file
+		 */
+		private Entry(int n, boolean valid) {
+			this.valid = valid;
+			paths = new String[n];
+			modified = new long[n];
+			lengths = new long[n];
+		}
+
+		/**
+		 * Creates an entry holding the current timestamps of the given files
+		 */
+		private Entry(List<File> files, boolean valid) {
+			this(files.size(), valid);
+			for (int i = 0; i < paths.length; i++) {
+				File f = files.get(i);
+				paths[i] = f.getPath();
+				modified[i] = f.lastModified();
+				lengths[i] = f.length();
+			}
+		}
+
+		/**
+		 * Returns true if this entry was made from the same files, and none of them have changed since
+		 */
+		private boolean matches(List<File> files) {
+			if (files.size() != paths.length)
+				return false;
+			for (int i = 0; i < paths.length; i++) {
+				File f = files.get(i);
+				if (!f.getPath().equals(paths[i]) || f.lastModified() != modified[i] || f.length() != lengths[i])
+					return false;
+			}
+			return true;
+		}
+	}
+
+}
@@ -4,16 +4,26 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 
 /**
  * This class acts as a register for all the DrawingTools in the program.  The DrawingTools may be added via the
  * addNewDrawingToolClass method, and the next time the program is started, the new tool will appear on the
  * SetShapeModePanel.
+ * <P>
+ * Tools packaged in their own jar may also be registered by putting the jar on the classpath with a
+ * META-INF/services/waldonsm.paint.tools.DrawingTool file listing the tool classes, which are found with a ServiceLoader.
+ * The results of checking each tool's images are kept in a ToolIndex so that they only have to be read again when the
+ * image files change.
  * 
  * @author Shawn Waldon
  *
@@ -27,13 +37,26 @@ public class ToolRegister {
 	 */
 	private static final File toolsFile = new File(".extensions");
 	
+	/**
+	 * The file that caches the results of checking each DrawingTool's images
+	 */
+	private static final File indexFile = new File(".extensions.index");
+	
 	private final Map<Integer,DrawingTool> tools = new HashMap<Integer,DrawingTool>();
+	private final List<String> toolClassNames = new ArrayList<String>();
+	private final ToolIndex index = new ToolIndex(indexFile);
+	private long loadTimeNanos;
 	
 	/**
 	 * Creates a new ToolRegister.
 	 */
 	public ToolRegister() {
+		long start = System.nanoTime();
 		populateToolsMap();
+		loadServiceTools();
+		index.retainOnly(toolClassNames);
+		index.save();
+		loadTimeNanos = System.nanoTime() - start;
 	}
 
 	/**
@@ -52,6 +75,22 @@ public class ToolRegister {
 		return Collections.unmodifiableMap(tools);
 	}
 	
+	/**
+	 * Returns the time in nanoseconds that it took to find, create and check the DrawingTools when this ToolRegister was created
+	 * @return the time in nanoseconds taken to populate this ToolRegister
+	 */
+	public long getLoadTimeNanos() {
+		return loadTimeNanos;
+	}
+	
+	/**
+	 * Returns the number of DrawingTools whose images did not have to be checked because the result was in the index
+	 * @return the number of DrawingTools checked from the index
+	 */
+	public int getIndexedToolCount() {
+		return index.getHitCount();
+	}
+	
 	/**
 	 * Initializes the ToolRegister with the DrawingTools from the file
 	 */
@@ -71,6 +110,27 @@ public class ToolRegister {
 		}
 	}
 	
+	/**
+	 * Adds any DrawingTools provided through the ServiceLoader mechanism that were not already listed in the .extensions file
+	 */
+	private void loadServiceTools() {
+		try {
+			Iterator<DrawingTool> it = ServiceLoader.load(DrawingTool.class).iterator();
+			while (it.hasNext()) {
+				try {
+					DrawingTool d = it.next();
+					if (!toolClassNames.contains(d.getClass().getName())) {
+						addDrawingTool(d);
+					}
+				} catch (ServiceConfigurationError sce) {
+					// a broken provider shouldn't keep the others from loading
+				}
+			}
+		} catch (ServiceConfigurationError sce) {
+			// no usable providers
+		}
+	}
+	
 	/**
 	 * Gets the DrawingTool with the Integer code
 	 * @param toolKey the integer tool code
@@ -86,18 +146,33 @@ public class ToolRegister {
 	 * @return true if the Tool was successfully added.
 	 */
 	private boolean addDrawingToolClass(Class<? extends DrawingTool> c) {
+		if (toolClassNames.contains(c.getName()))
+			return false;
 		try {
-		DrawingTool d = c.newInstance();
-		if (DrawingTool.testOutFileNames(d)) {
-			int i = d.getToolName().hashCode();
-			while (tools.containsKey(i)) {
-				i = i++;
-				d.setOffset(d.getOffset()+1);
-			}
-			tools.put(i, d);
-			return true;
-		} else
+			return addDrawingTool(c.getDeclaredConstructor().newInstance());
+		} catch (Throwable t) {
 			return false;
+		}
+	}
+	
+	/**
+	 * Checks the given DrawingTool's images (using the index when possible) and if they are correct adds it to the internal map
+	 * @param d the tool to add
+	 * @return true if the Tool was successfully added.
+	 */
+	private boolean addDrawingTool(DrawingTool d) {
+		try {
+			if (index.isValid(d)) {
+				int i = d.getToolName().hashCode();
+				while (tools.containsKey(i)) {
+					i++;
+					d.setOffset(d.getOffset()+1);
+				}
+				tools.put(i, d);
+				toolClassNames.add(d.getClass().getName());
+				return true;
+			} else
+				return false;
 		} catch (Throwable t) {
 			return false;
 		}
@@ -124,7 +199,9 @@ public class ToolRegister {
 				if (pw != null)
 					pw.close();
 			}
-			return addDrawingToolClass(toolClass);
+			boolean added = addDrawingToolClass(toolClass);
+			index.save();
+			return added;
 		} catch (Exception e) {
 			return false;
 		}
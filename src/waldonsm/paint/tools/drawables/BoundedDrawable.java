@@ -0,0 +1,23 @@
+package waldonsm.paint.tools.drawables;
+
+import java.awt.Rectangle;
+
+/**
+ * A Drawable that knows which part of the image it draws on, so that whatever is cached from the image (such as the
+ * zoomed-out copies used by the PaintPanel) only has to be updated there.  Drawables that are not BoundedDrawables are
+ * assumed to change the whole image. <P>
+ * A BoundedDrawable must set everything it uses on the Graphics2D (such as the color) before drawing, so that it draws the
+ * same pixels whatever the Graphics2D was used for before, and whatever part of the image is clipped away.  That lets
+ * full replays draw different parts of the image on different threads.
+ * @author Shawn Waldon
+ *
+ */
+public interface BoundedDrawable extends Drawable {
+
+	/**
+	 * Returns a Rectangle containing every pixel that draw changes (or changed, for Drawables that only find out while
+	 * drawing), or null if that is not known
+	 * @return the bounds of the Drawable, in image coordinates
+	 */
+	Rectangle getBounds();
+}
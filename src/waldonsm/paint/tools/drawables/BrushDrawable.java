@@ -0,0 +1,331 @@
+package waldonsm.paint.tools.drawables;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A stroke of a round brush with a soft edge, made of round dabs placed every so often along the path of the mouse. <P>
+ * Each dab is a mask of how much of the brush covers each pixel, made once for each size and hardness and kept in a small
+ * cache.  The dabs are blended (with integer math) into a coverage raster for the stroke, one byte per pixel, which is
+ * drawn in one go through an IndexColorModel that maps each coverage to the brush color at that alpha.  While the stroke
+ * is being drawn its coverage raster is kept and each new point only adds its own dabs to it; once it is finished the
+ * raster is dropped and made again whenever the stroke is drawn, so the history only holds the points.
+ * @author Shawn Waldon
+ *
+ */
+public class BrushDrawable implements BoundedDrawable, MeasuredDrawable {
+
+	/**
+	 * to get rid of warnings
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private static final String DEFAULT_NAME = "Brush_";
+
+	/**
+	 * The distance between dabs, as a percentage of the brush size
+	 */
+	private static final int SPACING_PERCENT = 15;
+
+	/**
+	 * The number of dab masks kept in the cache
+	 */
+	private static final int MAX_CACHED_MASKS = 16;
+
+	/**
+	 * How far past the stroke the coverage raster of a stroke in progress is grown, so it doesn't have to grow on every point
+	 */
+	private static final int GROWTH = 128;
+
+	private static final Map<Long,byte[]> masks = new LinkedHashMap<Long,byte[]>(MAX_CACHED_MASKS, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<Long,byte[]> eldest) {
+			return size() > MAX_CACHED_MASKS;
+		}
+	};
+
+	private static int count = 0;
+
+	private final int argb;
+	private final int size;
+	private final int hardness;
+	private final String name;
+	private int[] points = new int[32];
+	private int pointCount = 0;
+
+	/**
+	 * The coverage raster of the stroke in progress, the part of the image it covers, and where the next dab goes: the
+	 * index of the point the next dab is on the way to and how far along the path it is from the last dab
+	 */
+	private transient boolean inProgress;
+	private transient byte[] coverage;
+	private transient Rectangle coverageBounds;
+	private transient int nextPoint;
+	private transient double travelled;
+
+	/**
+	 * Creates a new BrushDrawable starting at the given point
+	 * @param x the x coordinate the stroke starts at
+	 * @param y the y coordinate the stroke starts at
+	 * @param argb the color of the brush, as an ARGB int
+	 * @param size the diameter of the brush, in pixels
+	 * @param hardness the percentage of the radius of the brush that is fully covered, the rest fading out to the edge
+	 */
+	public BrushDrawable(int x, int y, int argb, int size, int hardness) {
+		if (size < 1 || hardness < 0 || hardness > 100)
+			throw new IllegalArgumentException("Illegal brush: size " + size + ", hardness " + hardness);
+		this.argb = argb;
+		this.size = size;
+		this.hardness = hardness;
+		name = DEFAULT_NAME + (count++);
+		inProgress = true;
+		addPoint(x, y);
+	}
+
+	/**
+	 * Adds a point to the path of the stroke, and lays the dabs on the way to it if the stroke is in progress
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 */
+	public void addPoint(int x, int y) {
+		if (pointCount * 2 + 2 > points.length)
+			points = Arrays.copyOf(points, points.length * 2);
+		points[pointCount * 2] = x;
+		points[pointCount * 2 + 1] = y;
+		pointCount++;
+		if (inProgress && coverage != null)
+			layDabs();
+	}
+
+	/**
+	 * Marks the stroke as finished, dropping its coverage raster.  Call it once the stroke has been added to the model.
+	 */
+	public void finish() {
+		points = Arrays.copyOf(points, pointCount * 2);
+		inProgress = false;
+		coverage = null;
+		coverageBounds = null;
+	}
+
+	/**
+	 * Draws the stroke, making its coverage raster first if it doesn't have one
+	 */
+	public void draw(Graphics2D g) {
+		byte[] cov;
+		Rectangle b;
+		if (inProgress) {
+			if (coverage == null) {
+				coverageBounds = getBounds();
+				coverageBounds.grow(GROWTH, GROWTH);
+				coverage = new byte[coverageBounds.width * coverageBounds.height];
+				nextPoint = 0;
+				travelled = 0;
+				layDabs();
+			}
+			cov = coverage;
+			b = coverageBounds;
+		} else {
+			// a finished stroke is drawn from scratch, keeping nothing, so that it can also be drawn on several threads at once
+			b = getBounds();
+			cov = new byte[b.width * b.height];
+			Walk walk = new Walk();
+			walk.lay(cov, b, pointCount);
+		}
+		WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(cov, cov.length), b.width, b.height, b.width, 1,
+				new int[] {0}, null);
+		g.drawImage(new BufferedImage(getColors(), raster, false, null), b.x, b.y, null);
+	}
+
+	/**
+	 * Lays the dabs up to the last point onto the coverage raster of the stroke in progress, growing it first if needed
+	 */
+	private void layDabs() {
+		Rectangle needed = getBounds();
+		if (!coverageBounds.contains(needed)) {
+			needed.grow(GROWTH, GROWTH);
+			needed.add(coverageBounds);
+			byte[] grown = new byte[needed.width * needed.height];
+			for (int y = 0; y < coverageBounds.height; y++) {
+				System.arraycopy(coverage, y * coverageBounds.width, grown,
+						(coverageBounds.y - needed.y + y) * needed.width + coverageBounds.x - needed.x, coverageBounds.width);
+			}
+			coverage = grown;
+			coverageBounds = needed;
+		}
+		Walk walk = new Walk();
+		walk.next = nextPoint;
+		walk.travelled = travelled;
+		walk.lay(coverage, coverageBounds, pointCount);
+		nextPoint = walk.next;
+		travelled = walk.travelled;
+	}
+
+	/**
+	 * Returns the IndexColorModel mapping each coverage to the brush color with that much of its alpha
+	 */
+	private IndexColorModel getColors() {
+		byte[] r = new byte[256], gr = new byte[256], bl = new byte[256], a = new byte[256];
+		Arrays.fill(r, (byte) (argb >> 16));
+		Arrays.fill(gr, (byte) (argb >> 8));
+		Arrays.fill(bl, (byte) argb);
+		int alpha = argb >>> 24;
+		for (int i = 0; i < 256; i++) {
+			a[i] = (byte) ((i * alpha + 127) / 255);
+		}
+		return new IndexColorModel(8, 256, r, gr, bl, a);
+	}
+
+	/**
+	 * Returns the smallest rectangle holding every dab of the stroke
+	 */
+	public Rectangle getBounds() {
+		int minX = points[0], maxX = minX, minY = points[1], maxY = minY;
+		for (int i = 1; i < pointCount; i++) {
+			minX = Math.min(minX, points[i * 2]);
+			maxX = Math.max(maxX, points[i * 2]);
+			minY = Math.min(minY, points[i * 2 + 1]);
+			maxY = Math.max(maxY, points[i * 2 + 1]);
+		}
+		return new Rectangle(minX - size / 2, minY - size / 2, maxX - minX + size, maxY - minY + size);
+	}
+
+	/**
+	 * Returns the size of the object and its points
+	 */
+	public long getMemoryUsage() {
+		return OBJECT_BYTES + points.length * 4L;
+	}
+
+	/**
+	 * Returns the name of this Drawable
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Reads the stroke back in as a finished stroke
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		inProgress = false;
+	}
+
+	/**
+	 * Returns the dab mask for a brush of the given size and hardness, size by size bytes of coverage, from the cache if it is
+	 * there.  Safe to call from any thread.
+	 */
+	static byte[] getMask(int size, int hardness) {
+		Long key = Long.valueOf((long) size << 8 | hardness);
+		synchronized (masks) {
+			byte[] mask = masks.get(key);
+			if (mask != null)
+				return mask;
+		}
+		byte[] mask = makeMask(size, hardness);
+		synchronized (masks) {
+			masks.put(key, mask);
+		}
+		return mask;
+	}
+
+	/**
+	 * Makes a dab mask: full coverage out to hardness percent of the radius, then fading smoothly to nothing at the edge
+	 */
+	private static byte[] makeMask(int size, int hardness) {
+		byte[] mask = new byte[size * size];
+		double radius = size / 2.0;
+		double centre = (size - 1) / 2.0;
+		double hard = hardness / 100.0;
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				double t = Math.sqrt((x - centre) * (x - centre) + (y - centre) * (y - centre)) / radius;
+				int value;
+				if (t >= 1) {
+					value = 0;
+				} else if (t <= hard) {
+					value = 255;
+				} else {
+					double u = (t - hard) / (1 - hard);
+					value = (int) Math.round(255 * (1 - u * u * (3 - 2 * u)));
+				}
+				mask[y * size + x] = (byte) value;
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Walks along the path of the stroke, putting down a dab every SPACING_PERCENT of the brush size
+	 * @author Shawn Waldon
+	 *
+	 */
+	private final class Walk {
+
+		/**
+		 * The index of the point the walk is heading to; the first point gets a dab of its own
+		 */
+		private int next = 0;
+
+		/**
+		 * The distance walked since the last dab
+		 */
+		private double travelled = 0;
+
+		/**
+		 * Lays the dabs from where the walk is up to the given point onto the coverage raster covering the given bounds
+		 */
+		void lay(byte[] cov, Rectangle bounds, int upTo) {
+			byte[] mask = getMask(size, hardness);
+			double spacing = Math.max(1, size * SPACING_PERCENT / 100.0);
+			if (next == 0) {
+				dab(cov, bounds, mask, points[0], points[1]);
+				next = 1;
+			}
+			for (; next < upTo; next++) {
+				int x0 = points[next * 2 - 2], y0 = points[next * 2 - 1];
+				int dx = points[next * 2] - x0, dy = points[next * 2 + 1] - y0;
+				double length = Math.sqrt((double) dx * dx + (double) dy * dy);
+				double along = spacing - travelled;
+				while (along <= length) {
+					dab(cov, bounds, mask, x0 + (int) Math.round(dx * along / length), y0 + (int) Math.round(dy * along / length));
+					along += spacing;
+				}
+				travelled = length - (along - spacing);
+			}
+		}
+
+		/**
+		 * Blends a dab centred on the given pixel into the coverage: each pixel's coverage goes up by the dab's share of what
+		 * is still uncovered
+		 */
+		private void dab(byte[] cov, Rectangle bounds, byte[] mask, int cx, int cy) {
+			int left = cx - size / 2 - bounds.x;
+			int top = cy - size / 2 - bounds.y;
+			int w = bounds.width;
+			for (int my = 0; my < size; my++) {
+				int row = (top + my) * w + left;
+				int mrow = my * size;
+				for (int mx = 0; mx < size; mx++) {
+					int m = mask[mrow + mx] & 0xff;
+					if (m == 0)
+						continue;
+					int c = cov[row + mx] & 0xff;
+					int add = m * (255 - c) + 128;
+					cov[row + mx] = (byte) (c + ((add + (add >> 8)) >> 8));
+				}
+			}
+		}
+	}
+}
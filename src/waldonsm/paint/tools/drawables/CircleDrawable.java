@@ -2,8 +2,9 @@ package waldonsm.paint.tools.drawables;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 
-public class CircleDrawable implements Drawable {
+public class CircleDrawable implements BoundedDrawable, MeasuredDrawable {
 	
 	/**
 	 * 
@@ -20,7 +21,7 @@ public class CircleDrawable implements Drawable {
 		count++;
 	}
 	
-	private static final String DEFAULT_NAME = "Circle";
+	static final String DEFAULT_NAME = "Circle";
 	
 	private final String name;
 	
@@ -48,11 +49,32 @@ public class CircleDrawable implements Drawable {
 		name = DEFAULT_NAME + getCount();
 	}
 	
+	/**
+	 * Creates a CircleDrawable with the given name, for a DrawableStore to hand out
+	 */
+	CircleDrawable(int x, int y, int width, int height, boolean isFilled, Color borderColor, Color fillColor, String name) {
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		this.isFilled = isFilled;
+		this.borderColor = borderColor;
+		this.fillColor = fillColor;
+		this.name = name;
+	}
+	
 	public void thisIsFinalDrawable() {
 		incrementCount();
 	}
 
 	public void draw(Graphics2D g) {
+		draw(g, x, y, width, height, isFilled, borderColor, fillColor);
+	}
+	
+	/**
+	 * Draws an oval, as draw does
+	 */
+	static void draw(Graphics2D g, int x, int y, int width, int height, boolean isFilled, Color borderColor, Color fillColor) {
 		if (isFilled) {
 			g.setColor(fillColor);
 			g.fillOval(x, y, width, height);
@@ -61,9 +83,39 @@ public class CircleDrawable implements Drawable {
 		g.drawOval(x, y, width, height);
 	}
 	
+	/**
+	 * Returns the size of its entry in the history's DrawableStore
+	 */
+	public long getMemoryUsage() {
+		return DrawableStore.getMemoryUsage(4);
+	}
+
+	/**
+	 * Adds this oval to the store's arrays
+	 * @return false if the store can not hold it
+	 */
+	boolean addTo(DrawableStore store) {
+		return store.addShape(DrawableStore.OVAL | (isFilled ? DrawableStore.FILLED : 0), DEFAULT_NAME, name, borderColor,
+				fillColor, x, y, width, height);
+	}
+	
 	public String getName() {
 		return name;
 	}
+	
+	/**
+	 * Returns the rectangle the oval is drawn in, with a pixel to spare on each side
+	 */
+	public Rectangle getBounds() {
+		return getBounds(x, y, width, height);
+	}
+
+	/**
+	 * Returns the bounds of an oval, as getBounds does
+	 */
+	static Rectangle getBounds(int x, int y, int width, int height) {
+		return new Rectangle(x - 1, y - 1, width + 3, height + 3);
+	}
 
 	public int getX() {
 		return x;
@@ -0,0 +1,107 @@
+package waldonsm.paint.tools.drawables;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+
+/**
+ * Replaces every pixel of a rectangle with one color, even a see-through one, as when a selection is cut
+ * @author Shawn Waldon
+ *
+ */
+public class ClearRegionDrawable implements BoundedDrawable, MeasuredDrawable {
+
+	/**
+	 * to get rid of warnings
+	 */
+	private static final long serialVersionUID = 1L;
+
+	static final String DEFAULT_NAME = "Clear_";
+
+	private static int count = 0;
+
+	private final int x, y, width, height;
+	private final int argb;
+	private final String name;
+
+	/**
+	 * Creates a new ClearRegionDrawable
+	 * @param r the rectangle to clear
+	 * @param argb the color to fill it with, as an ARGB int
+	 */
+	public ClearRegionDrawable(Rectangle r, int argb) {
+		x = r.x;
+		y = r.y;
+		width = r.width;
+		height = r.height;
+		this.argb = argb;
+		name = DEFAULT_NAME + (count++);
+	}
+
+	/**
+	 * Creates a ClearRegionDrawable with the given name, for a DrawableStore to hand out
+	 */
+	ClearRegionDrawable(int x, int y, int width, int height, int argb, String name) {
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		this.argb = argb;
+		this.name = name;
+	}
+
+	/**
+	 * Fills the rectangle, replacing what was there rather than drawing over it
+	 */
+	public void draw(Graphics2D g) {
+		draw(g, x, y, width, height, argb);
+	}
+
+	/**
+	 * Clears a rectangle, as draw does
+	 */
+	static void draw(Graphics2D g, int x, int y, int width, int height, int argb) {
+		Graphics2D g2 = (Graphics2D) g.create();
+		g2.setComposite(AlphaComposite.Src);
+		g2.setColor(new Color(argb, true));
+		g2.fillRect(x, y, width, height);
+		g2.dispose();
+	}
+
+	/**
+	 * Adds this rectangle to the store's arrays
+	 * @return false if the store can not hold it
+	 */
+	boolean addTo(DrawableStore store) {
+		return store.addShape(DrawableStore.CLEAR, DEFAULT_NAME, name, new Color(argb, true), null, x, y, width, height);
+	}
+
+	/**
+	 * Returns the rectangle that is cleared
+	 */
+	public Rectangle getBounds() {
+		return getBounds(x, y, width, height);
+	}
+
+	/**
+	 * Returns the bounds of a cleared rectangle, as getBounds does
+	 */
+	static Rectangle getBounds(int x, int y, int width, int height) {
+		return new Rectangle(x, y, width, height);
+	}
+
+	/**
+	 * Returns the size of its entry in the history's DrawableStore
+	 */
+	public long getMemoryUsage() {
+		return DrawableStore.getMemoryUsage(4);
+	}
+
+	/**
+	 * Returns the name of this Drawable
+	 */
+	public String getName() {
+		return name;
+	}
+}
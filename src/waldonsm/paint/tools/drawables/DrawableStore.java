@@ -0,0 +1,444 @@
+package waldonsm.paint.tools.drawables;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A list of Drawables kept in a few arrays of primitives instead of as objects, for the model's history.  Lines,
+ * rectangles, ovals, pencil strokes, polygons and cleared rectangles are stored as a type tag, two colors as ARGB ints,
+ * the number their name ends in, and an offset into one array shared by all of their coordinates.  Any other Drawable (or
+ * one of those with a color or name the arrays can not hold) is kept as the object itself. <P>
+ * A Drawable held in the arrays only exists as an object when get asks for it, and then it is a new object each time, with
+ * the same fields (and name) as the one that was added, so it draws and serializes the same.  The model replays the
+ * history straight from the arrays with draw and getBounds, without making any objects.
+ * @author Shawn Waldon
+ *
+ */
+public final class DrawableStore {
+
+	/**
+	 * The type tags, in the low bits of the entry's type byte
+	 */
+	static final int OBJECT = 0, LINE = 1, RECTANGLE = 2, OVAL = 3, PENCIL = 4, POLYGON = 5, CLEAR = 6;
+
+	/**
+	 * Flags in the high bits of the entry's type byte
+	 */
+	static final int FILLED = 0x10, ROUNDED = 0x20;
+
+	private static final int TYPE_MASK = 0x0f;
+
+	/**
+	 * Set when the first (or second) color of the entry is null
+	 */
+	private static final int NO_COLOR1 = 0x40, NO_COLOR2 = 0x80;
+
+	/**
+	 * The bytes an entry takes in the arrays besides its coordinates: the type, two colors, the name number, the object
+	 * slot and the offset
+	 */
+	private static final int ENTRY_BYTES = 21;
+
+	private byte[] types = new byte[64];
+	private int[] colors = new int[128];
+	private int[] nameNumbers = new int[64];
+	private Drawable[] objects = new Drawable[64];
+
+	/**
+	 * The coordinates of entry i are coords[offsets[i]] up to (not including) coords[offsets[i + 1]]
+	 */
+	private int[] offsets = new int[65];
+	private int[] coords = new int[256];
+
+	private int size = 0;
+
+	/**
+	 * Returns roughly how many bytes an entry held in the arrays takes up
+	 * @param coordinates the number of coordinates it has
+	 * @return the size of the entry in bytes
+	 */
+	static long getMemoryUsage(int coordinates) {
+		return ENTRY_BYTES + coordinates * 4L;
+	}
+
+	/**
+	 * Returns the number of Drawables in the store
+	 * @return the number of Drawables
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a Drawable to the end of the store
+	 * @param d the Drawable to add
+	 */
+	public void add(Drawable d) {
+		ensureCapacity(size + 1);
+		boolean stored = false;
+		Class<?> c = d.getClass();
+		if (c == LineDrawable.class)
+			stored = ((LineDrawable) d).addTo(this);
+		else if (c == RectangleDrawable.class)
+			stored = ((RectangleDrawable) d).addTo(this);
+		else if (c == CircleDrawable.class)
+			stored = ((CircleDrawable) d).addTo(this);
+		else if (c == PencilDrawable.class)
+			stored = ((PencilDrawable) d).addTo(this);
+		else if (c == FinalPolygonDrawable.class)
+			stored = ((FinalPolygonDrawable) d).addTo(this);
+		else if (c == ClearRegionDrawable.class)
+			stored = ((ClearRegionDrawable) d).addTo(this);
+		if (!stored) {
+			types[size] = OBJECT;
+			objects[size] = d;
+			offsets[size + 1] = offsets[size];
+		}
+		size++;
+	}
+
+	/**
+	 * Adds the Drawables to the front of the store, in front of the ones already there
+	 * @param ds the Drawables, oldest first
+	 */
+	public void addAllFirst(List<Drawable> ds) {
+		DrawableStore front = new DrawableStore();
+		for (Drawable d : ds) {
+			front.add(d);
+		}
+		front.append(this, 0, size);
+		types = front.types;
+		colors = front.colors;
+		nameNumbers = front.nameNumbers;
+		objects = front.objects;
+		offsets = front.offsets;
+		coords = front.coords;
+		size = front.size;
+	}
+
+	/**
+	 * Returns the Drawable with the given index, which is a new object each time if it is held in the arrays
+	 * @param i the index
+	 * @return the Drawable
+	 */
+	public Drawable get(int i) {
+		checkIndex(i);
+		int t = types[i] & 0xff;
+		int o = offsets[i];
+		int end = offsets[i + 1];
+		switch (t & TYPE_MASK) {
+		case LINE:
+			return new LineDrawable(coords[o], coords[o + 1], coords[o + 2], coords[o + 3], color(i, 0), getName(i));
+		case RECTANGLE:
+			return new RectangleDrawable(coords[o], coords[o + 1], coords[o + 2], coords[o + 3], (t & FILLED) != 0, color(i, 0),
+					color(i, 1), (t & ROUNDED) != 0, coords[o + 4], coords[o + 5], getName(i));
+		case OVAL:
+			return new CircleDrawable(coords[o], coords[o + 1], coords[o + 2], coords[o + 3], (t & FILLED) != 0, color(i, 0),
+					color(i, 1), getName(i));
+		case PENCIL:
+			return new PencilDrawable(coords, o, end, color(i, 0), getName(i));
+		case POLYGON:
+			int n = (end - o) / 2;
+			int[] xs = new int[n];
+			int[] ys = new int[n];
+			unpack(o, n, xs, ys);
+			return new FinalPolygonDrawable(xs, ys, color(i, 0), color(i, 1), (t & FILLED) != 0, getName(i));
+		case CLEAR:
+			return new ClearRegionDrawable(coords[o], coords[o + 1], coords[o + 2], coords[o + 3], colors[i * 2], getName(i));
+		default:
+			return objects[i];
+		}
+	}
+
+	/**
+	 * Returns the Drawable with the given index if it is kept as an object, or null if it is held in the arrays (which are
+	 * all BoundedDrawables that draw only with the Graphics2D they are given)
+	 * @param i the index
+	 * @return the Drawable object, or null
+	 */
+	public Drawable getObject(int i) {
+		checkIndex(i);
+		return objects[i];
+	}
+
+	/**
+	 * Returns the name of the Drawable with the given index
+	 * @param i the index
+	 * @return the name
+	 */
+	public String getName(int i) {
+		checkIndex(i);
+		switch (types[i] & TYPE_MASK) {
+		case LINE:
+			return LineDrawable.DEFAULT_NAME + nameNumbers[i];
+		case RECTANGLE:
+			return RectangleDrawable.DEFAULT_NAME + nameNumbers[i];
+		case OVAL:
+			return CircleDrawable.DEFAULT_NAME + nameNumbers[i];
+		case PENCIL:
+			return PencilDrawable.DEFAULT_NAME + nameNumbers[i];
+		case POLYGON:
+			return FinalPolygonDrawable.DEFAULT_NAME + nameNumbers[i];
+		case CLEAR:
+			return ClearRegionDrawable.DEFAULT_NAME + nameNumbers[i];
+		default:
+			return objects[i].getName();
+		}
+	}
+
+	/**
+	 * Draws the Drawable with the given index exactly as its draw method would, straight from the arrays
+	 * @param i the index
+	 * @param g the Graphics2D to draw with
+	 */
+	public void draw(int i, Graphics2D g) {
+		checkIndex(i);
+		int t = types[i] & 0xff;
+		int o = offsets[i];
+		switch (t & TYPE_MASK) {
+		case LINE:
+			LineDrawable.draw(g, color(i, 0), coords[o], coords[o + 1], coords[o + 2], coords[o + 3]);
+			break;
+		case RECTANGLE:
+			RectangleDrawable.draw(g, coords[o], coords[o + 1], coords[o + 2], coords[o + 3], (t & FILLED) != 0, color(i, 0),
+					color(i, 1), (t & ROUNDED) != 0, coords[o + 4], coords[o + 5]);
+			break;
+		case OVAL:
+			CircleDrawable.draw(g, coords[o], coords[o + 1], coords[o + 2], coords[o + 3], (t & FILLED) != 0, color(i, 0),
+					color(i, 1));
+			break;
+		case PENCIL:
+			PencilDrawable.draw(g, color(i, 0), coords, o, offsets[i + 1]);
+			break;
+		case POLYGON:
+			int n = (offsets[i + 1] - o) / 2;
+			Polygon polygon = new Polygon(new int[n], new int[n], n);
+			unpack(o, n, polygon.xpoints, polygon.ypoints);
+			FinalPolygonDrawable.draw(g, polygon, color(i, 0), color(i, 1), (t & FILLED) != 0);
+			break;
+		case CLEAR:
+			ClearRegionDrawable.draw(g, coords[o], coords[o + 1], coords[o + 2], coords[o + 3], colors[i * 2]);
+			break;
+		default:
+			objects[i].draw(g);
+		}
+	}
+
+	/**
+	 * Returns the bounds of the Drawable with the given index, the same as its getBounds method would
+	 * @param i the index
+	 * @return the bounds, or null if the Drawable is not a BoundedDrawable (or does not know them)
+	 */
+	public Rectangle getBounds(int i) {
+		checkIndex(i);
+		int o = offsets[i];
+		switch (types[i] & TYPE_MASK) {
+		case LINE:
+			return LineDrawable.getBounds(coords[o], coords[o + 1], coords[o + 2], coords[o + 3]);
+		case RECTANGLE:
+			return RectangleDrawable.getBounds(coords[o], coords[o + 1], coords[o + 2], coords[o + 3]);
+		case OVAL:
+			return CircleDrawable.getBounds(coords[o], coords[o + 1], coords[o + 2], coords[o + 3]);
+		case PENCIL:
+			return PencilDrawable.getBounds(coords, o, offsets[i + 1]);
+		case POLYGON:
+			int n = (offsets[i + 1] - o) / 2;
+			Polygon polygon = new Polygon(new int[n], new int[n], n);
+			unpack(o, n, polygon.xpoints, polygon.ypoints);
+			return FinalPolygonDrawable.getBounds(polygon);
+		case CLEAR:
+			return ClearRegionDrawable.getBounds(coords[o], coords[o + 1], coords[o + 2], coords[o + 3]);
+		default:
+			return objects[i] instanceof BoundedDrawable ? ((BoundedDrawable) objects[i]).getBounds() : null;
+		}
+	}
+
+	/**
+	 * Removes the newest Drawable
+	 * @return the Drawable that was removed
+	 */
+	public Drawable removeLast() {
+		Drawable d = get(size - 1);
+		size--;
+		objects[size] = null;
+		return d;
+	}
+
+	/**
+	 * Removes the oldest n Drawables
+	 * @param n the number to remove
+	 */
+	public void removeFirst(int n) {
+		if (n < 0 || n > size)
+			throw new IndexOutOfBoundsException("Can't remove " + n + " of " + size);
+		int shift = offsets[n];
+		int kept = size - n;
+		System.arraycopy(types, n, types, 0, kept);
+		System.arraycopy(colors, n * 2, colors, 0, kept * 2);
+		System.arraycopy(nameNumbers, n, nameNumbers, 0, kept);
+		System.arraycopy(objects, n, objects, 0, kept);
+		Arrays.fill(objects, kept, size, null);
+		System.arraycopy(coords, shift, coords, 0, offsets[size] - shift);
+		for (int i = 0; i <= kept; i++) {
+			offsets[i] = offsets[i + n] - shift;
+		}
+		size = kept;
+	}
+
+	/**
+	 * Returns a new store holding entries from (inclusive) to to (exclusive) of this one, so that they can be replayed or
+	 * written out on another thread while this store changes.  Only the arrays are copied, so a Drawable kept as an object
+	 * is shared by both stores.
+	 * @param from the index of the first entry to copy
+	 * @param to the index after the last entry to copy
+	 * @return the new store
+	 */
+	public DrawableStore copy(int from, int to) {
+		if (from < 0 || to > size || from > to)
+			throw new IndexOutOfBoundsException("Can't copy " + from + " to " + to + " of " + size);
+		DrawableStore copy = new DrawableStore();
+		copy.append(this, from, to);
+		return copy;
+	}
+
+	/**
+	 * Returns an unmodifiable view of the store as a List, whose get is the store's get
+	 * @return the view
+	 */
+	public List<Drawable> asList() {
+		return new View();
+	}
+
+	/**
+	 * Writes a shape into the arrays as the next entry, without adding it to the size.  Called back by the addTo method of
+	 * the Drawables the store knows how to hold.
+	 * @param type the type tag, with its flags
+	 * @param prefix the name every Drawable of its type starts with
+	 * @param name the Drawable's name
+	 * @param color1 the first (or only) color
+	 * @param color2 the second color, or null
+	 * @param geometry the coordinates
+	 * @return false if the name is not the prefix followed by a number, or a color is a subclass of Color, so that the
+	 * Drawable has to be kept as an object
+	 */
+	boolean addShape(int type, String prefix, String name, Color color1, Color color2, int... geometry) {
+		if ((color1 != null && color1.getClass() != Color.class) || (color2 != null && color2.getClass() != Color.class))
+			return false;
+		int number = nameNumber(name, prefix);
+		if (number < 0)
+			return false;
+		int o = offsets[size];
+		if (o + geometry.length > coords.length)
+			coords = Arrays.copyOf(coords, Math.max(coords.length * 2, o + geometry.length));
+		System.arraycopy(geometry, 0, coords, o, geometry.length);
+		offsets[size + 1] = o + geometry.length;
+		types[size] = (byte) (type | (color1 == null ? NO_COLOR1 : 0) | (color2 == null ? NO_COLOR2 : 0));
+		colors[size * 2] = color1 == null ? 0 : color1.getRGB();
+		colors[size * 2 + 1] = color2 == null ? 0 : color2.getRGB();
+		nameNumbers[size] = number;
+		objects[size] = null;
+		return true;
+	}
+
+	/**
+	 * Returns the number the name ends in, or -1 if it is not the prefix followed by a number written the way a counter
+	 * writes it
+	 */
+	private static int nameNumber(String name, String prefix) {
+		if (name == null || !name.startsWith(prefix) || name.length() == prefix.length() || name.length() > prefix.length() + 9)
+			return -1;
+		String digits = name.substring(prefix.length());
+		if (digits.length() > 1 && digits.charAt(0) == '0')
+			return -1;
+		int number = 0;
+		for (int i = 0; i < digits.length(); i++) {
+			char c = digits.charAt(i);
+			if (c < '0' || c > '9')
+				return -1;
+			number = number * 10 + (c - '0');
+		}
+		return number;
+	}
+
+	/**
+	 * Returns the first (k = 0) or second (k = 1) color of entry i
+	 */
+	private Color color(int i, int k) {
+		if ((types[i] & (k == 0 ? NO_COLOR1 : NO_COLOR2)) != 0)
+			return null;
+		return new Color(colors[i * 2 + k], true);
+	}
+
+	/**
+	 * Copies n points packed as x,y pairs from coords[o] into separate arrays
+	 */
+	private void unpack(int o, int n, int[] xs, int[] ys) {
+		for (int j = 0; j < n; j++) {
+			xs[j] = coords[o + j * 2];
+			ys[j] = coords[o + j * 2 + 1];
+		}
+	}
+
+	/**
+	 * Copies entries from (inclusive) to to (exclusive) of another store onto the end of this one
+	 */
+	private void append(DrawableStore other, int from, int to) {
+		int n = to - from;
+		ensureCapacity(size + n);
+		System.arraycopy(other.types, from, types, size, n);
+		System.arraycopy(other.colors, from * 2, colors, size * 2, n * 2);
+		System.arraycopy(other.nameNumbers, from, nameNumbers, size, n);
+		System.arraycopy(other.objects, from, objects, size, n);
+		int start = other.offsets[from];
+		int length = other.offsets[to] - start;
+		int o = offsets[size];
+		if (o + length > coords.length)
+			coords = Arrays.copyOf(coords, Math.max(coords.length * 2, o + length));
+		System.arraycopy(other.coords, start, coords, o, length);
+		for (int i = 1; i <= n; i++) {
+			offsets[size + i] = other.offsets[from + i] - start + o;
+		}
+		size += n;
+	}
+
+	/**
+	 * Grows the per-entry arrays to hold at least the given number of entries
+	 */
+	private void ensureCapacity(int entries) {
+		if (entries <= types.length)
+			return;
+		int capacity = Math.max(types.length * 2, entries);
+		types = Arrays.copyOf(types, capacity);
+		colors = Arrays.copyOf(colors, capacity * 2);
+		nameNumbers = Arrays.copyOf(nameNumbers, capacity);
+		objects = Arrays.copyOf(objects, capacity);
+		offsets = Arrays.copyOf(offsets, capacity + 1);
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+	}
+
+	/**
+	 * The List view of the store
+	 * @author Shawn Waldon
+	 *
+	 */
+	private final class View extends AbstractList<Drawable> implements RandomAccess {
+
+		public Drawable get(int i) {
+			return DrawableStore.this.get(i);
+		}
+
+		public int size() {
+			return size;
+		}
+	}
+}
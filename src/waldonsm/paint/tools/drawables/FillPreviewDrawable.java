@@ -0,0 +1,93 @@
+package waldonsm.paint.tools.drawables;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The in-progress Drawable for a fill that is running in the background.  The filled spans are written into transparent
+ * tiles as they are reported by the fill, and only tiles that have been touched are ever allocated, so the preview costs
+ * memory in proportion to the area filled so far rather than the size of the image. <P>
+ * addSpan may be called from the fill's thread while draw is called on the EDT.
+ * @author Shawn Waldon
+ *
+ */
+public final class FillPreviewDrawable implements Drawable {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private static final int TILE_SIZE = 256;
+
+	private final int argb;
+	private final int tilesAcross;
+	private final transient AtomicReferenceArray<BufferedImage> tiles;
+
+	/**
+	 * Creates a new, empty FillPreviewDrawable for an image of the given size
+	 * @param width the width of the image being filled
+	 * @param height the height of the image being filled
+	 * @param argb the fill color in the default ARGB format
+	 */
+	public FillPreviewDrawable(int width, int height, int argb) {
+		this.argb = argb;
+		tilesAcross = (width + TILE_SIZE - 1) / TILE_SIZE;
+		int tilesDown = (height + TILE_SIZE - 1) / TILE_SIZE;
+		tiles = new AtomicReferenceArray<BufferedImage>(tilesAcross * tilesDown);
+	}
+
+	/**
+	 * Adds a filled span to the preview
+	 * @param y the row of the span
+	 * @param x0 the first x in the span
+	 * @param x1 the last x in the span (inclusive)
+	 */
+	public void addSpan(int y, int x0, int x1) {
+		int ty = y / TILE_SIZE;
+		int rowInTile = y - ty * TILE_SIZE;
+		for (int tx = x0 / TILE_SIZE; tx <= x1 / TILE_SIZE; tx++) {
+			int[] pixels = ((DataBufferInt) getTile(tx, ty).getRaster().getDataBuffer()).getData();
+			int start = Math.max(x0, tx * TILE_SIZE) - tx * TILE_SIZE;
+			int end = Math.min(x1, tx * TILE_SIZE + TILE_SIZE - 1) - tx * TILE_SIZE;
+			int row = rowInTile * TILE_SIZE;
+			for (int x = start; x <= end; x++) {
+				pixels[row + x] = argb;
+			}
+		}
+	}
+
+	/**
+	 * Returns the tile at the given tile coordinates, creating it if needed
+	 */
+	private BufferedImage getTile(int tx, int ty) {
+		int i = ty * tilesAcross + tx;
+		BufferedImage tile = tiles.get(i);
+		if (tile == null) {
+			tiles.compareAndSet(i, null, new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB));
+			tile = tiles.get(i);
+		}
+		return tile;
+	}
+
+	/**
+	 * Draws the tiles that have been filled so far
+	 */
+	public void draw(Graphics2D g) {
+		for (int i = 0; i < tiles.length(); i++) {
+			BufferedImage tile = tiles.get(i);
+			if (tile != null) {
+				g.drawImage(tile, (i % tilesAcross) * TILE_SIZE, (i / tilesAcross) * TILE_SIZE, null);
+			}
+		}
+	}
+
+	/**
+	 * Returns null, this is never a final Drawable
+	 */
+	public String getName() {
+		return null;
+	}
+}
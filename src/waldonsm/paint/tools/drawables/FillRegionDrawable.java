@@ -3,20 +3,30 @@ package waldonsm.paint.tools.drawables;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.util.ArrayDeque;
 import java.util.Queue;
 
+import waldonsm.paint.metrics.Counter;
+import waldonsm.paint.metrics.LatencyHistogram;
+import waldonsm.paint.metrics.Metrics;
 import waldonsm.paint.model.PaintModel;
 
 /**
  * This Drawable fills a region (recursively defined to be the given point and all adjacent points of the same color) with
  * a new Color.  It does this by acting on the actual image and ignoring the Graphics object passed to it.  The draw method
- * does nothing with the given graphics object
+ * does nothing with the given graphics object. <P>
+ * With a tolerance, the adjacent points only need a color close to the color of the given point.  It can also replace the
+ * color everywhere in the image instead, whether or not the points touch the given point.  Neither is done on images that
+ * are not TYPE_4BYTE_ABGR, which are always filled with the exact color. <P>
+ * When it is finalized it records the old colors of the pixels it fills, so undoing it only puts those back, and redoing it
+ * paints the same spans again rather than doing the fill over.
  * @author Shawn Waldon
  *
  */
-public class FillRegionDrawable implements ModelDependentDrawable {
+public class FillRegionDrawable implements ModelDependentDrawable, BoundedDrawable, ReversibleDrawable, MeasuredDrawable {
 
 	/**
 	 * 
@@ -25,9 +35,31 @@ public class FillRegionDrawable implements ModelDependentDrawable {
 	
 	private final int x, y;
 	private final Color newColor;
+	
+	/**
+	 * How far each channel of a color may be from the color at (x,y) and still be filled (0 in files from before there was
+	 * a tolerance, which is what they did)
+	 */
+	private final int tolerance;
+	
+	/**
+	 * Whether the color is replaced everywhere in the image rather than only in the region touching (x,y)
+	 */
+	private final boolean everywhere;
 	private transient PaintModel model;
 	private final String name;
 	
+	/**
+	 * The result of a fill that was already done in the background against a copy of the image, to be applied by the next
+	 * call to draw instead of doing the fill again.  Only used once, replays always do the fill.
+	 */
+	private transient FillSpans precomputed;
+	
+	/**
+	 * The bounds of the pixels changed by the last draw, or null if they are not known
+	 */
+	private transient Rectangle changed;
+	
 	/**
 	 * The default name of this kind of Drawable
 	 */
@@ -38,6 +70,9 @@ public class FillRegionDrawable implements ModelDependentDrawable {
 	 */
 	private static int count = 0;
 	
+	private static final LatencyHistogram fillTime = Metrics.histogram(Metrics.FILL);
+	private static final Counter pixelsFilled = Metrics.counter("fill.pixels");
+	
 	/**
 	 * Returns the number in the count variable and increments the count
 	 * @return the number in the count variable and increments the count
@@ -54,13 +89,55 @@ public class FillRegionDrawable implements ModelDependentDrawable {
 	 * @param model the PaintModel that this should manipulate
 	 */
 	public FillRegionDrawable(Point p, Color c, PaintModel m) {
+		this(p, c, m, 0, false);
+	}
+	
+	/**
+	 * Creates a new FillRegionDrawable at the specified Point, that fills the colors within the tolerance of the color there
+	 * @param p the Point to start changing the color at
+	 * @param c the new Color to use
+	 * @param m the PaintModel that this should manipulate
+	 * @param tolerance how far each channel (alpha, red, green and blue) of a color may be from the color at p, 0 for the
+	 * exact color
+	 * @param everywhere true to replace the color everywhere in the image, false to only fill the region touching p
+	 */
+	public FillRegionDrawable(Point p, Color c, PaintModel m, int tolerance, boolean everywhere) {
 		x = p.x;
 		y = p.y;
 		newColor = c;
 		model = m;
+		this.tolerance = tolerance;
+		this.everywhere = everywhere;
 		name = DEFAULT_NAME + getNextCount();
 	}
 	
+	/**
+	 * Creates a new FillRegionDrawable whose fill has already been worked out (by filling a copy of the model's image in the
+	 * background).  The first draw paints the given spans instead of filling again, so the result must have been computed
+	 * against the model's current image.
+	 * @param p the Point the fill started at
+	 * @param c the new Color to use
+	 * @param m the PaintModel that this should manipulate
+	 * @param result the spans that the fill changes
+	 */
+	public FillRegionDrawable(Point p, Color c, PaintModel m, FillSpans result) {
+		this(p, c, m, 0, false, result);
+	}
+	
+	/**
+	 * Creates a new FillRegionDrawable whose fill has already been worked out, as above, with a tolerance
+	 * @param p the Point the fill started at
+	 * @param c the new Color to use
+	 * @param m the PaintModel that this should manipulate
+	 * @param tolerance how far each channel of a color may be from the color at p
+	 * @param everywhere true if the color is replaced everywhere in the image
+	 * @param result the spans that the fill changes
+	 */
+	public FillRegionDrawable(Point p, Color c, PaintModel m, int tolerance, boolean everywhere, FillSpans result) {
+		this(p, c, m, tolerance, everywhere);
+		precomputed = result;
+	}
+	
 	public void setModelToUse(PaintModel pm) {
 		model = pm;
 	}
@@ -69,17 +146,79 @@ public class FillRegionDrawable implements ModelDependentDrawable {
 	 * Ignores the passed Graphics2D object and instead directly manipulates the rgb data of the model's image that it takes data from
 	 */
 	public void draw(Graphics2D g) {
-		BufferedImage image = model.getMainImage();
-		if (x >= image.getWidth() || y >= image.getHeight())
-			return;
+		fill(model.getMainImage(), false, true);
+	}
+	
+	/**
+	 * Fills the same as draw, recording the old colors of the filled spans
+	 */
+	public PixelDelta drawWithDelta(Graphics2D g) {
+		return fill(model.getMainImage(), true, true);
+	}
+	
+	/**
+	 * Does the fill on the given image instead, without the result worked out in the background (which only applies to the
+	 * model's image) and without changing the bounds getBounds returns
+	 */
+	public void drawOn(BufferedImage image) {
+		fill(image, false, false);
+	}
+	
+	/**
+	 * Does the fill on an image
+	 * @param image the image to fill
+	 * @param record true to record the filled spans
+	 * @param onModel true if the image is the model's, in which case a precomputed result is used and the bounds of the
+	 * filled region are kept for getBounds
+	 * @return the filled spans with their old colors, or null if they were not recorded
+	 */
+	private PixelDelta fill(BufferedImage image, boolean record, boolean onModel) {
+		long start = System.nanoTime();
+		if (onModel)
+			changed = null;
+		PixelDelta delta = record && FloodFill.canFill(image) ? new PixelDelta(image, newColor.getRGB()) : null;
+		if (x >= image.getWidth() || y >= image.getHeight()) {
+			if (onModel)
+				changed = new Rectangle();
+			return delta;
+		}
 		
+		if (onModel && precomputed != null) {
+			if (delta != null) {
+				byte[] abgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+				for (int i = 0; i < precomputed.size(); i++) {
+					delta.record(abgr, precomputed.getY(i), precomputed.getX0(i), precomputed.getX1(i));
+				}
+			}
+			precomputed.paint(image, newColor.getRGB());
+			pixelsFilled.add(precomputed.getPixelCount());
+			changed = precomputed.getBounds();
+			precomputed = null;
+			fillTime.recordSince(start);
+			return delta;
+		}
+		if (FloodFill.canFill(image)) {
+			FillSpans spans;
+			if (everywhere)
+				spans = FloodFill.replace(image, x, y, newColor.getRGB(), tolerance, delta);
+			else
+				spans = FloodFill.fill(image, x, y, newColor.getRGB(), tolerance, delta);
+			pixelsFilled.add(spans.getPixelCount());
+			if (onModel)
+				changed = spans.getBounds();
+			fillTime.recordSince(start);
+			return delta;
+		}
+		
+		// not a TYPE_4BYTE_ABGR image, go pixel by pixel
 		int initRGB = image.getRGB(x, y);
 		int i, j;
+		int filled = 0;
 		int newRGB = newColor.getRGB();
 //		System.out.println(initRGB);
 //		System.out.println(newRGB);
 		if (initRGB == newRGB) {
-			return;
+			return null;
 		}
 		
 		// make the queues
@@ -101,6 +240,7 @@ public class FillRegionDrawable implements ModelDependentDrawable {
 				if (image.getRGB(i, j) == initRGB) {
 					// change the color
 					image.setRGB(i, j, newRGB);
+					filled++;
 					// put the neighboring pixels on the queue.
 					// south neighbor
 					queueX.offer(i);
@@ -117,7 +257,24 @@ public class FillRegionDrawable implements ModelDependentDrawable {
 				}
 			}
 		}
+		pixelsFilled.add(filled);
+		fillTime.recordSince(start);
+		return null;
+	}
 
+	/**
+	 * Returns the bounds of the region filled by the last draw, or null if it has not been drawn (or was not drawn on a
+	 * TYPE_4BYTE_ABGR image)
+	 */
+	public Rectangle getBounds() {
+		return changed;
+	}
+
+	/**
+	 * Returns the size of the object.  Its spans are only kept with its PixelDelta, which the history counts separately.
+	 */
+	public long getMemoryUsage() {
+		return OBJECT_BYTES;
 	}
 
 	/**
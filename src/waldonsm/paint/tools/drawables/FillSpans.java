@@ -0,0 +1,132 @@
+package waldonsm.paint.tools.drawables;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A list of horizontal runs of pixels (spans), stored as packed ints, which is how FloodFill reports the pixels that a fill
+ * changed.  Each span is a row and the first and last x of the run (inclusive).
+ * @author Shawn Waldon
+ *
+ */
+public final class FillSpans implements Serializable {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private int[] data = new int[48];
+	private int size = 0;
+	private long pixels = 0;
+	private int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+
+	/**
+	 * Adds a span to the list
+	 * @param y the row of the span
+	 * @param x0 the first x in the span
+	 * @param x1 the last x in the span (inclusive)
+	 */
+	public void add(int y, int x0, int x1) {
+		if (size * 3 + 3 > data.length)
+			data = Arrays.copyOf(data, data.length * 2);
+		data[size * 3] = y;
+		data[size * 3 + 1] = x0;
+		data[size * 3 + 2] = x1;
+		size++;
+		pixels += x1 - x0 + 1;
+		if (x0 < minX) minX = x0;
+		if (x1 > maxX) maxX = x1;
+		if (y < minY) minY = y;
+		if (y > maxY) maxY = y;
+	}
+
+	/**
+	 * Adds all of the spans of another list to the end of this one
+	 * @param other the spans to add
+	 */
+	public void addAll(FillSpans other) {
+		for (int i = 0; i < other.size; i++) {
+			add(other.getY(i), other.getX0(i), other.getX1(i));
+		}
+	}
+
+	/**
+	 * Returns the number of spans
+	 * @return the number of spans
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the total number of pixels in all of the spans
+	 * @return the total number of pixels in all of the spans
+	 */
+	public long getPixelCount() {
+		return pixels;
+	}
+
+	/**
+	 * Returns the row of the i'th span
+	 */
+	public int getY(int i) {
+		return data[i * 3];
+	}
+
+	/**
+	 * Returns the first x of the i'th span
+	 */
+	public int getX0(int i) {
+		return data[i * 3 + 1];
+	}
+
+	/**
+	 * Returns the last x (inclusive) of the i'th span
+	 */
+	public int getX1(int i) {
+		return data[i * 3 + 2];
+	}
+
+	/**
+	 * Returns the smallest Rectangle containing all of the spans, or an empty Rectangle if there are no spans
+	 * @return the bounding box of the spans
+	 */
+	public Rectangle getBounds() {
+		if (size == 0)
+			return new Rectangle();
+		return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+	}
+
+	/**
+	 * Sets every pixel in the spans of the given image to the given color
+	 * @param image the image to change, which should be TYPE_4BYTE_ABGR for speed
+	 * @param argb the new color, in the default ARGB format
+	 */
+	public void paint(BufferedImage image, int argb) {
+		if (image.getType() == BufferedImage.TYPE_4BYTE_ABGR) {
+			byte[] abgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+			int w = image.getWidth();
+			byte a = (byte) (argb >>> 24), r = (byte) (argb >> 16), g = (byte) (argb >> 8), b = (byte) argb;
+			for (int i = 0; i < size; i++) {
+				int idx = (getY(i) * w + getX0(i)) * 4;
+				int end = (getY(i) * w + getX1(i)) * 4;
+				for (; idx <= end; idx += 4) {
+					abgr[idx] = a;
+					abgr[idx + 1] = b;
+					abgr[idx + 2] = g;
+					abgr[idx + 3] = r;
+				}
+			}
+		} else {
+			for (int i = 0; i < size; i++) {
+				for (int x = getX0(i); x <= getX1(i); x++) {
+					image.setRGB(x, getY(i), argb);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package waldonsm.paint.tools.drawables;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import waldonsm.paint.metrics.Counter;
+import waldonsm.paint.metrics.LatencyHistogram;
+import waldonsm.paint.metrics.Metrics;
+import waldonsm.paint.model.PaintModel;
+
+/**
+ * Runs one of the ImageFilters over a rectangle of the model's image.  Like a FillRegionDrawable, it changes the pixels of
+ * the model's image directly and ignores the Graphics2D it is given, since what it draws depends on what was drawn before
+ * it.  Only the filter, its settings and the rectangle are kept, so it costs a few ints in the history and in ZDLIF files
+ * however big the rectangle is.  When it is finalized, the pixels of the rectangle are copied first so that undoing it only
+ * puts them back.
+ * @author Shawn Waldon
+ *
+ */
+public class FilterDrawable implements ModelDependentDrawable, BoundedDrawable, ReversibleDrawable, MeasuredDrawable {
+
+	/**
+	 * The filters a FilterDrawable can run
+	 */
+	public static enum Filter {
+		/**
+		 * A Gaussian blur, with the radius as its amount
+		 */
+		BLUR,
+		/**
+		 * An unsharp mask, with the percentage as its amount
+		 */
+		SHARPEN,
+		INVERT,
+		GRAYSCALE,
+		/**
+		 * A change of brightness (the amount) and contrast, each from -100 to 100
+		 */
+		BRIGHTNESS_CONTRAST
+	}
+
+	/**
+	 * to get rid of warnings
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private static final String DEFAULT_NAME = "Filter-";
+
+	private static int count = 0;
+
+	private static final LatencyHistogram filterTime = Metrics.histogram(Metrics.FILTER);
+	private static final Counter pixelsFiltered = Metrics.counter("filter.pixels");
+
+	private final Filter filter;
+	private final int amount, contrast;
+	private final int x, y, width, height;
+	private final String name;
+	private transient PaintModel model;
+
+	/**
+	 * Creates a new FilterDrawable
+	 * @param filter the filter to run
+	 * @param amount the radius of a blur, the percentage of a sharpen or the brightness change, and ignored by the others
+	 * @param contrast the contrast change of BRIGHTNESS_CONTRAST, and ignored by the others
+	 * @param r the rectangle to filter (anything outside the image is left out)
+	 * @param m the PaintModel whose image is filtered
+	 */
+	public FilterDrawable(Filter filter, int amount, int contrast, Rectangle r, PaintModel m) {
+		this.filter = filter;
+		this.amount = amount;
+		this.contrast = contrast;
+		x = r.x;
+		y = r.y;
+		width = r.width;
+		height = r.height;
+		model = m;
+		name = DEFAULT_NAME + (count++);
+	}
+
+	public void setModelToUse(PaintModel pm) {
+		model = pm;
+	}
+
+	/**
+	 * Ignores the passed Graphics2D object and filters the model's image directly
+	 */
+	public void draw(Graphics2D g) {
+		filter(model.getMainImage(), false);
+	}
+
+	/**
+	 * Filters the same as draw, copying the rectangle first
+	 */
+	public PixelDelta drawWithDelta(Graphics2D g) {
+		return filter(model.getMainImage(), true);
+	}
+
+	/**
+	 * Runs the filter on the given image instead
+	 */
+	public void drawOn(BufferedImage image) {
+		filter(image, false);
+	}
+
+	/**
+	 * Runs the filter on an image
+	 * @param image the image to filter
+	 * @param record true to copy the rectangle before it is filtered
+	 * @return the copy of the rectangle, or null if it was not copied
+	 */
+	private PixelDelta filter(BufferedImage image, boolean record) {
+		long start = System.nanoTime();
+		if (!ImageFilters.canFilter(image))
+			return null;
+		Rectangle r = getBounds().intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+		PixelDelta delta = record ? PixelDelta.ofRectangle(image, r) : null;
+		if (r.isEmpty())
+			return delta;
+		switch (filter) {
+		case BLUR:
+			ImageFilters.blur(image, r, amount);
+			break;
+		case SHARPEN:
+			ImageFilters.sharpen(image, r, amount);
+			break;
+		case INVERT:
+			ImageFilters.invert(image, r);
+			break;
+		case GRAYSCALE:
+			ImageFilters.grayscale(image, r);
+			break;
+		case BRIGHTNESS_CONTRAST:
+			ImageFilters.brightnessContrast(image, r, amount, contrast);
+			break;
+		}
+		pixelsFiltered.add((long) r.width * r.height);
+		filterTime.recordSince(start);
+		return delta;
+	}
+
+	/**
+	 * Returns the rectangle that is filtered
+	 */
+	public Rectangle getBounds() {
+		return new Rectangle(x, y, width, height);
+	}
+
+	/**
+	 * Returns the size of the object, which only holds the filter and its rectangle
+	 */
+	public long getMemoryUsage() {
+		return OBJECT_BYTES;
+	}
+
+	/**
+	 * Returns a string that identifies this FilterDrawable
+	 */
+	public String getName() {
+		return name;
+	}
+}
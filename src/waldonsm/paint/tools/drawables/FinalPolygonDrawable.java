@@ -4,16 +4,17 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Polygon;
+import java.awt.Rectangle;
 import java.util.List;
 
-public class FinalPolygonDrawable implements Drawable {
+public class FinalPolygonDrawable implements BoundedDrawable, MeasuredDrawable {
 
 	/**
 	 * 
 	 */
 	private static final long serialVersionUID = 1L;
 	
-	private static final String DEFAULT_NAME = "Polygon";
+	static final String DEFAULT_NAME = "Polygon";
 	
 	private static int counter = 0;
 	
@@ -39,6 +40,19 @@ public class FinalPolygonDrawable implements Drawable {
 		name = DEFAULT_NAME + getCount();
 	}
 	
+	/**
+	 * Creates a FinalPolygonDrawable with the given name, for a DrawableStore to hand out
+	 */
+	FinalPolygonDrawable(int[] xs, int[] ys, Color borderColor, Color fillColor, boolean fill, String name) {
+		this.xs = xs;
+		this.ys = ys;
+		polygon = new Polygon(xs, ys, xs.length);
+		this.borderColor = borderColor;
+		this.fillColor = fillColor;
+		fillShape = fill;
+		this.name = name;
+	}
+	
 	static int[] getXVals(List<Point> points) {
 		int[] xs = new int[points.size()];
 		for (int i = 0; i < xs.length; i++) {
@@ -56,17 +70,62 @@ public class FinalPolygonDrawable implements Drawable {
 	}
 
 	public void draw(Graphics2D g) {
+		draw(g, polygon, borderColor, fillColor, fillShape);
+	}
+	
+	/**
+	 * Draws a polygon, as draw does
+	 */
+	static void draw(Graphics2D g, Polygon polygon, Color borderColor, Color fillColor, boolean fillShape) {
 		if (fillShape) {
 			g.setColor(fillColor);
 			g.fill(polygon);
 		}
 		g.setColor(borderColor);
 		g.draw(polygon);
+	}
+	
+	/**
+	 * Returns the size of its entry in the history's DrawableStore
+	 */
+	public long getMemoryUsage() {
+		return DrawableStore.getMemoryUsage(xs.length * 2);
+	}
 
+	/**
+	 * Adds this polygon to the store's arrays, its points as x,y pairs
+	 * @return false if the store can not hold it
+	 */
+	boolean addTo(DrawableStore store) {
+		int[] xy = new int[xs.length * 2];
+		for (int i = 0; i < xs.length; i++) {
+			xy[i * 2] = xs[i];
+			xy[i * 2 + 1] = ys[i];
+		}
+		return store.addShape(DrawableStore.POLYGON | (fillShape ? DrawableStore.FILLED : 0), DEFAULT_NAME, name, borderColor,
+				fillColor, xy);
 	}
 
 	public String getName() {
 		return name;
 	}
+	
+	/**
+	 * Returns the bounds of the polygon, with a pixel to spare on each side
+	 */
+	public Rectangle getBounds() {
+		return getBounds(polygon);
+	}
+
+	/**
+	 * Returns the bounds of a polygon, as getBounds does
+	 */
+	static Rectangle getBounds(Polygon polygon) {
+		Rectangle r = polygon.getBounds();
+		r.grow(1, 1);
+		r.width++;
+		r.height++;
+		return r;
+	}
 
 }
@@ -0,0 +1,300 @@
+package waldonsm.paint.tools.drawables;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+
+/**
+ * A scanline flood fill that works directly on the bytes of a TYPE_4BYTE_ABGR image. <P>
+ * Instead of visiting one pixel at a time through getRGB and setRGB (with boxed coordinates on a queue), whole runs of
+ * matching pixels are filled at once and only the start of each run in the rows above and below is pushed on a
+ * primitive stack.  The pixels that were changed are returned as FillSpans, and can be reported to a SpanListener as
+ * they are filled so that the fill can be shown (or cancelled) while it is still running.
+ * @author Shawn Waldon
+ *
+ */
+public final class FloodFill {
+
+	/**
+	 * Receives the spans of a fill as they are filled
+	 * @author Shawn Waldon
+	 *
+	 */
+	public interface SpanListener {
+		/**
+		 * Called after each span is filled
+		 * @param y the row of the span
+		 * @param x0 the first x in the span
+		 * @param x1 the last x in the span (inclusive)
+		 * @return false to cancel the fill, true to continue
+		 */
+		boolean spanFilled(int y, int x0, int x1);
+	}
+
+	private FloodFill() {
+		// static methods only
+	}
+
+	/**
+	 * Returns true if the image can be filled by this class, which requires the TYPE_4BYTE_ABGR layout
+	 * @param image the image to check
+	 * @return true if the image is a TYPE_4BYTE_ABGR image
+	 */
+	public static boolean canFill(BufferedImage image) {
+		return image.getType() == BufferedImage.TYPE_4BYTE_ABGR;
+	}
+
+	/**
+	 * Fills the region of the image containing (x,y) with the new color, changing the image in place.
+	 * @param image a TYPE_4BYTE_ABGR image
+	 * @param x the x coordinate to start at
+	 * @param y the y coordinate to start at
+	 * @param newARGB the new color in the default ARGB format
+	 * @return the spans that were changed (empty if the point is outside the image or already the new color)
+	 */
+	public static FillSpans fill(BufferedImage image, int x, int y, int newARGB) {
+		return fill(image, x, y, newARGB, 0);
+	}
+
+	/**
+	 * Fills the region of the image containing (x,y) with the new color, changing the image in place.  The region is made
+	 * of the pixels whose color is within the tolerance of the color at (x,y).
+	 * @param image a TYPE_4BYTE_ABGR image
+	 * @param x the x coordinate to start at
+	 * @param y the y coordinate to start at
+	 * @param newARGB the new color in the default ARGB format
+	 * @param tolerance how far each channel (alpha, red, green and blue) of a pixel may be from the color at (x,y), 0 for
+	 * exactly the same color
+	 * @return the spans that were changed (empty if the point is outside the image)
+	 */
+	public static FillSpans fill(BufferedImage image, int x, int y, int newARGB, int tolerance) {
+		return fill(image, x, y, newARGB, tolerance, null);
+	}
+
+	/**
+	 * Fills the region of the image as above, recording the old colors of the pixels it changes
+	 * @param image a TYPE_4BYTE_ABGR image
+	 * @param x the x coordinate to start at
+	 * @param y the y coordinate to start at
+	 * @param newARGB the new color in the default ARGB format
+	 * @param tolerance how far each channel of a pixel may be from the color at (x,y), 0 for exactly the same color
+	 * @param delta the PixelDelta each span is recorded in before it is filled, or null
+	 * @return the spans that were changed (empty if the point is outside the image)
+	 */
+	public static FillSpans fill(BufferedImage image, int x, int y, int newARGB, int tolerance, PixelDelta delta) {
+		byte[] abgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		return fill(abgr, image.getWidth(), image.getHeight(), x, y, newARGB, tolerance, null, delta);
+	}
+
+	/**
+	 * Fills the region of the pixel data containing (x,y) with the new color, changing the data in place.
+	 * @param abgr the pixel data, 4 bytes per pixel in A, B, G, R order, rows packed with no padding
+	 * @param w the width of the image
+	 * @param h the height of the image
+	 * @param x the x coordinate to start at
+	 * @param y the y coordinate to start at
+	 * @param newARGB the new color in the default ARGB format
+	 * @param listener told about each span as it is filled, or null
+	 * @return the spans that were changed, or null if the listener cancelled the fill
+	 */
+	public static FillSpans fill(byte[] abgr, int w, int h, int x, int y, int newARGB, SpanListener listener) {
+		return fill(abgr, w, h, x, y, newARGB, 0, listener);
+	}
+
+	/**
+	 * Fills the region of the pixel data containing (x,y) with the new color, changing the data in place.  With a tolerance,
+	 * the filled pixels may still match the color at (x,y), so the pixels already filled are kept in a bit mask rather than
+	 * recognized by their new color.
+	 * @param abgr the pixel data, 4 bytes per pixel in A, B, G, R order, rows packed with no padding
+	 * @param w the width of the image
+	 * @param h the height of the image
+	 * @param x the x coordinate to start at
+	 * @param y the y coordinate to start at
+	 * @param newARGB the new color in the default ARGB format
+	 * @param tolerance how far each channel of a pixel may be from the color at (x,y), 0 for exactly the same color
+	 * @param listener told about each span as it is filled, or null
+	 * @return the spans that were changed, or null if the listener cancelled the fill
+	 */
+	public static FillSpans fill(byte[] abgr, int w, int h, int x, int y, int newARGB, int tolerance, SpanListener listener) {
+		return fill(abgr, w, h, x, y, newARGB, tolerance, listener, null);
+	}
+
+	/**
+	 * Does the fill for the methods above, recording each span in the delta (if there is one) before filling it
+	 */
+	private static FillSpans fill(byte[] abgr, int w, int h, int x, int y, int newARGB, int tolerance, SpanListener listener,
+			PixelDelta delta) {
+		FillSpans spans = new FillSpans();
+		if (x < 0 || y < 0 || x >= w || y >= h)
+			return spans;
+		int target = pixelAt(abgr, (y * w + x) * 4);
+		if (tolerance <= 0 && target == newARGB)
+			return spans;
+		long[] filled = tolerance <= 0 ? null : new long[(int) (((long) w * h + 63) >>> 6)];
+		byte na = (byte) (newARGB >>> 24), nr = (byte) (newARGB >> 16), ng = (byte) (newARGB >> 8), nb = (byte) newARGB;
+
+		int[] stack = new int[64];
+		int top = 0;
+		stack[top++] = x;
+		stack[top++] = y;
+		while (top > 0) {
+			int sy = stack[--top];
+			int sx = stack[--top];
+			int row = sy * w;
+			if (!matches(abgr, row + sx, target, tolerance, filled))
+				continue;
+			int lx = sx;
+			while (lx > 0 && matches(abgr, row + lx - 1, target, tolerance, filled))
+				lx--;
+			int rx = sx;
+			while (rx < w - 1 && matches(abgr, row + rx + 1, target, tolerance, filled))
+				rx++;
+			if (delta != null)
+				delta.record(abgr, sy, lx, rx);
+			for (int idx = (row + lx) * 4, end = (row + rx) * 4; idx <= end; idx += 4) {
+				abgr[idx] = na;
+				abgr[idx + 1] = nb;
+				abgr[idx + 2] = ng;
+				abgr[idx + 3] = nr;
+			}
+			if (filled != null) {
+				for (int p = row + lx; p <= row + rx; p++) {
+					filled[p >>> 6] |= 1L << p;
+				}
+			}
+			spans.add(sy, lx, rx);
+			if (listener != null && !listener.spanFilled(sy, lx, rx))
+				return null;
+			// seed the start of each matching run in the rows above and below
+			for (int ny = sy - 1; ny <= sy + 1; ny += 2) {
+				if (ny < 0 || ny >= h)
+					continue;
+				int nrow = ny * w;
+				boolean inRun = false;
+				for (int nx = lx; nx <= rx; nx++) {
+					boolean match = matches(abgr, nrow + nx, target, tolerance, filled);
+					if (match && !inRun) {
+						if (top + 2 > stack.length)
+							stack = Arrays.copyOf(stack, stack.length * 2);
+						stack[top++] = nx;
+						stack[top++] = ny;
+					}
+					inRun = match;
+				}
+			}
+		}
+		return spans;
+	}
+
+	/**
+	 * Replaces every pixel of the image whose color is within the tolerance of the color at (x,y) with the new color,
+	 * whether or not it touches (x,y).  The rows are split into tiles that are done on different threads.
+	 * @param image a TYPE_4BYTE_ABGR image
+	 * @param x the x coordinate of the color to replace
+	 * @param y the y coordinate of the color to replace
+	 * @param newARGB the new color in the default ARGB format
+	 * @param tolerance how far each channel of a pixel may be from the color at (x,y), 0 for exactly the same color
+	 * @return the spans that were changed, in order from the top (empty if the point is outside the image)
+	 */
+	public static FillSpans replace(BufferedImage image, int x, int y, int newARGB, int tolerance) {
+		return replace(image, x, y, newARGB, tolerance, null);
+	}
+
+	/**
+	 * Replaces the color everywhere in the image as above, recording the old colors of the pixels it changes.  Each tile
+	 * records its spans in a PixelDelta of its own, and they are added to the given one in order.
+	 * @param image a TYPE_4BYTE_ABGR image
+	 * @param x the x coordinate of the color to replace
+	 * @param y the y coordinate of the color to replace
+	 * @param newARGB the new color in the default ARGB format
+	 * @param tolerance how far each channel of a pixel may be from the color at (x,y), 0 for exactly the same color
+	 * @param delta the PixelDelta the spans are recorded in, or null
+	 * @return the spans that were changed, in order from the top (empty if the point is outside the image)
+	 */
+	public static FillSpans replace(final BufferedImage image, int x, int y, final int newARGB, final int tolerance,
+			PixelDelta delta) {
+		final int w = image.getWidth();
+		int h = image.getHeight();
+		if (x < 0 || y < 0 || x >= w || y >= h)
+			return new FillSpans();
+		final byte[] abgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		final int target = pixelAt(abgr, (y * w + x) * 4);
+		final byte na = (byte) (newARGB >>> 24), nr = (byte) (newARGB >> 16), ng = (byte) (newARGB >> 8), nb = (byte) newARGB;
+		final FillSpans[] tiles = new FillSpans[(h + ImageFilters.TILE_ROWS - 1) / ImageFilters.TILE_ROWS];
+		final PixelDelta[] tileDeltas = delta == null ? null : new PixelDelta[tiles.length];
+		ImageFilters.forEachTile(h, ImageFilters.TILE_ROWS, new ImageFilters.TileFilter() {
+			public void filterRows(int y0, int y1) {
+				// forEachTile may hand over several tiles' rows at once when there is only one thread
+				for (int t = y0; t < y1; t += ImageFilters.TILE_ROWS) {
+					FillSpans spans = new FillSpans();
+					PixelDelta tileDelta = tileDeltas == null ? null : new PixelDelta(image, newARGB);
+					for (int ty = t; ty < Math.min(y1, t + ImageFilters.TILE_ROWS); ty++) {
+						int row = ty * w;
+						int start = -1;
+						for (int tx = 0; tx <= w; tx++) {
+							boolean match = false;
+							if (tx < w) {
+								int idx = (row + tx) * 4;
+								int pixel = pixelAt(abgr, idx);
+								match = pixel != newARGB && (pixel == target || within(abgr, idx, target, tolerance));
+							}
+							if (match && start < 0) {
+								start = tx;
+							} else if (!match && start >= 0) {
+								if (tileDelta != null)
+									tileDelta.record(abgr, ty, start, tx - 1);
+								for (int idx = (row + start) * 4, end = (row + tx) * 4; idx < end; idx += 4) {
+									abgr[idx] = na;
+									abgr[idx + 1] = nb;
+									abgr[idx + 2] = ng;
+									abgr[idx + 3] = nr;
+								}
+								spans.add(ty, start, tx - 1);
+								start = -1;
+							}
+						}
+					}
+					tiles[t / ImageFilters.TILE_ROWS] = spans;
+					if (tileDeltas != null)
+						tileDeltas[t / ImageFilters.TILE_ROWS] = tileDelta;
+				}
+			}
+		});
+		FillSpans spans = new FillSpans();
+		for (int i = 0; i < tiles.length; i++) {
+			spans.addAll(tiles[i]);
+			if (delta != null)
+				delta.addAll(tileDeltas[i]);
+		}
+		return spans;
+	}
+
+	/**
+	 * Returns true if the pixel with the given index has not been filled yet and matches the target color
+	 * @param filled the pixels already filled, or null for an exact match (where the filled pixels no longer match)
+	 */
+	private static boolean matches(byte[] abgr, int pixel, int target, int tolerance, long[] filled) {
+		if (filled == null)
+			return pixelAt(abgr, pixel * 4) == target;
+		if ((filled[pixel >>> 6] & (1L << pixel)) != 0)
+			return false;
+		return within(abgr, pixel * 4, target, tolerance);
+	}
+
+	/**
+	 * Returns true if no channel of the pixel at the given byte index is further than the tolerance from the target color
+	 */
+	private static boolean within(byte[] abgr, int idx, int target, int tolerance) {
+		return Math.abs((abgr[idx] & 0xff) - (target >>> 24)) <= tolerance
+				&& Math.abs((abgr[idx + 3] & 0xff) - ((target >> 16) & 0xff)) <= tolerance
+				&& Math.abs((abgr[idx + 2] & 0xff) - ((target >> 8) & 0xff)) <= tolerance
+				&& Math.abs((abgr[idx + 1] & 0xff) - (target & 0xff)) <= tolerance;
+	}
+
+	/**
+	 * Returns the pixel at the given byte index as an ARGB int
+	 */
+	private static int pixelAt(byte[] abgr, int idx) {
+		return ((abgr[idx] & 0xff) << 24) | ((abgr[idx + 3] & 0xff) << 16) | ((abgr[idx + 2] & 0xff) << 8) | (abgr[idx + 1] & 0xff);
+	}
+}
@@ -0,0 +1,370 @@
+package waldonsm.paint.tools.drawables;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Filters that work directly on the bytes of a TYPE_4BYTE_ABGR image, changing a rectangle of it in place. <P>
+ * The rectangle is split into tiles of whole rows, which are filtered on different threads at the same time.  Filters
+ * that only look at one pixel at a time (invert, grayscale, brightness and contrast) change each tile in place.  Blurring
+ * and sharpening need the pixels around each one, so the rectangle is copied first and every tile reads the copy: the
+ * Gaussian kernel is applied across each row and then down each column (two passes of 2r+1 taps rather than one of
+ * (2r+1)^2), with the colors premultiplied by alpha so that see-through pixels do not bleed their color into their
+ * neighbours.  Everything is done with int arithmetic, so a filter gives exactly the same result every time it is run. <P>
+ * The number of threads used is the number of processors, or -Djavapaint.filterThreads=&lt;n&gt;.
+ * @author Shawn Waldon
+ *
+ */
+public final class ImageFilters {
+
+	/**
+	 * The system property giving the number of threads used to filter
+	 */
+	public static final String THREADS_PROPERTY = "javapaint.filterThreads";
+
+	/**
+	 * The largest blur radius allowed
+	 */
+	public static final int MAX_RADIUS = 50;
+
+	/**
+	 * The radius of the blur subtracted by sharpen
+	 */
+	private static final int SHARPEN_RADIUS = 2;
+
+	/**
+	 * The number of rows in a tile (tiles for blurs are made taller, so the rows above and below a tile that have to be read
+	 * as well are no more than half of the work)
+	 */
+	static final int TILE_ROWS = 64;
+
+	/**
+	 * The kernel weights are fixed point numbers with this many bits after the point
+	 */
+	private static final int WEIGHT_BITS = 12;
+
+	private static final int THREADS = Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+
+	private static ForkJoinPool pool = null;
+
+	private ImageFilters() {
+		// static methods only
+	}
+
+	/**
+	 * Filters one tile of rows
+	 */
+	interface TileFilter {
+		/**
+		 * Filters rows y0 (inclusive) to y1 (exclusive) of the rectangle
+		 */
+		void filterRows(int y0, int y1);
+	}
+
+	/**
+	 * Returns true if the image can be filtered by this class, which requires the TYPE_4BYTE_ABGR layout
+	 * @param image the image to check
+	 * @return true if the image is a TYPE_4BYTE_ABGR image
+	 */
+	public static boolean canFilter(BufferedImage image) {
+		return image.getType() == BufferedImage.TYPE_4BYTE_ABGR;
+	}
+
+	/**
+	 * Replaces the color of each pixel in the rectangle with its opposite, leaving alpha alone
+	 * @param image a TYPE_4BYTE_ABGR image
+	 * @param r the rectangle to filter, which must be inside the image
+	 */
+	public static void invert(BufferedImage image, final Rectangle r) {
+		final byte[] abgr = data(image);
+		final int w = image.getWidth();
+		forEachTile(r.height, TILE_ROWS, new TileFilter() {
+			public void filterRows(int y0, int y1) {
+				for (int y = r.y + y0; y < r.y + y1; y++) {
+					int end = (y * w + r.x + r.width) * 4;
+					for (int i = (y * w + r.x) * 4; i < end; i += 4) {
+						abgr[i + 1] = (byte) ~abgr[i + 1];
+						abgr[i + 2] = (byte) ~abgr[i + 2];
+						abgr[i + 3] = (byte) ~abgr[i + 3];
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Replaces the color of each pixel in the rectangle with a gray of the same brightness, leaving alpha alone
+	 * @param image a TYPE_4BYTE_ABGR image
+	 * @param r the rectangle to filter, which must be inside the image
+	 */
+	public static void grayscale(BufferedImage image, final Rectangle r) {
+		final byte[] abgr = data(image);
+		final int w = image.getWidth();
+		forEachTile(r.height, TILE_ROWS, new TileFilter() {
+			public void filterRows(int y0, int y1) {
+				for (int y = r.y + y0; y < r.y + y1; y++) {
+					int end = (y * w + r.x + r.width) * 4;
+					for (int i = (y * w + r.x) * 4; i < end; i += 4) {
+						// 0.299 red, 0.587 green, 0.114 blue, out of 256
+						byte gray = (byte) ((29 * (abgr[i + 1] & 0xff) + 150 * (abgr[i + 2] & 0xff) + 77 * (abgr[i + 3] & 0xff) + 128) >> 8);
+						abgr[i + 1] = gray;
+						abgr[i + 2] = gray;
+						abgr[i + 3] = gray;
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Changes the brightness and contrast of each pixel in the rectangle, leaving alpha alone
+	 * @param image a TYPE_4BYTE_ABGR image
+	 * @param r the rectangle to filter, which must be inside the image
+	 * @param brightness from -100 (black) to 100 (white), 0 leaves the brightness alone
+	 * @param contrast from -100 (all gray) to 100 (all black or white), 0 leaves the contrast alone
+	 */
+	public static void brightnessContrast(BufferedImage image, final Rectangle r, int brightness, int contrast) {
+		brightness = Math.max(-100, Math.min(100, brightness));
+		contrast = Math.max(-100, Math.min(100, contrast));
+		double factor = contrast <= 0 ? (100 + contrast) / 100.0 : 100.0 / Math.max(1, 100 - contrast);
+		final byte[] table = new byte[256];
+		for (int v = 0; v < 256; v++) {
+			long result = Math.round((v - 127.5) * factor + 127.5 + brightness * 2.55);
+			table[v] = (byte) Math.max(0, Math.min(255, result));
+		}
+		final byte[] abgr = data(image);
+		final int w = image.getWidth();
+		forEachTile(r.height, TILE_ROWS, new TileFilter() {
+			public void filterRows(int y0, int y1) {
+				for (int y = r.y + y0; y < r.y + y1; y++) {
+					int end = (y * w + r.x + r.width) * 4;
+					for (int i = (y * w + r.x) * 4; i < end; i += 4) {
+						abgr[i + 1] = table[abgr[i + 1] & 0xff];
+						abgr[i + 2] = table[abgr[i + 2] & 0xff];
+						abgr[i + 3] = table[abgr[i + 3] & 0xff];
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Blurs the rectangle with a Gaussian blur.  Pixels outside the rectangle are not used: the edge of the rectangle is
+	 * repeated instead.
+	 * @param image a TYPE_4BYTE_ABGR image
+	 * @param r the rectangle to filter, which must be inside the image
+	 * @param radius how far the blur reaches, from 1 to MAX_RADIUS
+	 */
+	public static void blur(BufferedImage image, Rectangle r, int radius) {
+		convolve(image, r, Math.max(1, Math.min(MAX_RADIUS, radius)), -1);
+	}
+
+	/**
+	 * Sharpens the rectangle with an unsharp mask: each pixel is moved away from a blur of the pixels around it.
+	 * @param image a TYPE_4BYTE_ABGR image
+	 * @param r the rectangle to filter, which must be inside the image
+	 * @param percent how far each pixel is moved, as a percentage of its difference from the blur
+	 */
+	public static void sharpen(BufferedImage image, Rectangle r, int percent) {
+		convolve(image, r, SHARPEN_RADIUS, Math.max(0, percent));
+	}
+
+	/**
+	 * Blurs the rectangle, or sharpens it if sharpenPercent is not negative
+	 */
+	private static void convolve(BufferedImage image, final Rectangle r, final int radius, final int sharpenPercent) {
+		final byte[] abgr = data(image);
+		final int w = image.getWidth();
+		final int[] kernel = gaussianKernel(radius);
+		// copy the rectangle, so that every tile reads the pixels as they were before any of them were changed
+		final byte[] copy = new byte[r.width * r.height * 4];
+		forEachTile(r.height, TILE_ROWS, new TileFilter() {
+			public void filterRows(int y0, int y1) {
+				for (int y = y0; y < y1; y++) {
+					System.arraycopy(abgr, ((r.y + y) * w + r.x) * 4, copy, y * r.width * 4, r.width * 4);
+				}
+			}
+		});
+		forEachTile(r.height, Math.max(TILE_ROWS, 4 * radius), new TileFilter() {
+			public void filterRows(int y0, int y1) {
+				convolveRows(copy, r.width, r.height, y0, y1, kernel, radius, abgr, (r.y * w + r.x) * 4, w * 4, sharpenPercent);
+			}
+		});
+	}
+
+	/**
+	 * Blurs rows y0 to y1 of the copy into the image.  The rows reached by the kernel are blurred across into a buffer first
+	 * (premultiplied, and scaled so alpha uses the same range as the colors, 0 to 255*255), then the buffer is blurred down
+	 * a row at a time.
+	 * @param src the copy, rows packed with no padding
+	 * @param w the width of the copy
+	 * @param h the height of the copy
+	 * @param y0 the first row to filter
+	 * @param y1 the row after the last row to filter
+	 * @param kernel the weights, out of 1 &lt;&lt; WEIGHT_BITS
+	 * @param radius the radius of the kernel
+	 * @param dst the image's pixel data
+	 * @param dstStart the index of the top left pixel of the rectangle in dst
+	 * @param dstStride the length of a row of dst
+	 * @param sharpenPercent how far to move each pixel away from the blur, or -1 to blur
+	 */
+	private static void convolveRows(byte[] src, int w, int h, int y0, int y1, int[] kernel, int radius, byte[] dst,
+			int dstStart, int dstStride, int sharpenPercent) {
+		int top = Math.max(0, y0 - radius);
+		int bottom = Math.min(h, y1 + radius);
+		int rowLength = w * 4;
+		// premultiplied values reach 255*255, which fits in a char
+		char[] across = new char[(bottom - top) * rowLength];
+		int[] padded = new int[(w + 2 * radius) * 4];
+		int[] sums = new int[rowLength];
+		int half = 1 << (WEIGHT_BITS - 1);
+		for (int y = top; y < bottom; y++) {
+			int s = y * rowLength;
+			// premultiply the row, repeating the pixels at each end radius times
+			for (int x = -radius; x < w + radius; x++) {
+				int i = s + Math.max(0, Math.min(w - 1, x)) * 4;
+				int a = src[i] & 0xff;
+				int p = (x + radius) * 4;
+				padded[p] = a * 255;
+				padded[p + 1] = (src[i + 1] & 0xff) * a;
+				padded[p + 2] = (src[i + 2] & 0xff) * a;
+				padded[p + 3] = (src[i + 3] & 0xff) * a;
+			}
+			// one tap at a time over the whole row, which the JIT can vectorize
+			Arrays.fill(sums, half);
+			for (int k = 0; k < kernel.length; k++) {
+				int weight = kernel[k];
+				for (int x = 0, p = k * 4; x < rowLength; x++, p++) {
+					sums[x] += weight * padded[p];
+				}
+			}
+			int out = (y - top) * rowLength;
+			for (int x = 0; x < rowLength; x++) {
+				across[out + x] = (char) (sums[x] >> WEIGHT_BITS);
+			}
+		}
+		int[] down = sums;
+		for (int y = y0; y < y1; y++) {
+			Arrays.fill(down, half);
+			for (int k = 0; k < kernel.length; k++) {
+				int weight = kernel[k];
+				int row = (Math.max(0, Math.min(h - 1, y + k - radius)) - top) * rowLength;
+				for (int x = 0; x < rowLength; x++) {
+					down[x] += weight * across[row + x];
+				}
+			}
+			int d = dstStart + y * dstStride;
+			int s = y * rowLength;
+			for (int x = 0; x < rowLength; x += 4, d += 4, s += 4) {
+				int alpha = down[x] >> WEIGHT_BITS;
+				if (sharpenPercent < 0) {
+					if (alpha == 0) {
+						dst[d] = dst[d + 1] = dst[d + 2] = dst[d + 3] = 0;
+						continue;
+					}
+					// unpremultiply: color = premultiplied * 255 / (alpha * 255)
+					dst[d] = (byte) ((alpha + 127) / 255);
+					dst[d + 1] = (byte) Math.min(255, ((down[x + 1] >> WEIGHT_BITS) * 255 + alpha / 2) / alpha);
+					dst[d + 2] = (byte) Math.min(255, ((down[x + 2] >> WEIGHT_BITS) * 255 + alpha / 2) / alpha);
+					dst[d + 3] = (byte) Math.min(255, ((down[x + 3] >> WEIGHT_BITS) * 255 + alpha / 2) / alpha);
+				} else {
+					// leave alpha (and see-through pixels) alone, and push each color away from the blurred color
+					dst[d] = src[s];
+					if (alpha == 0)
+						continue;
+					for (int c = 1; c < 4; c++) {
+						int original = src[s + c] & 0xff;
+						int blurred = Math.min(255, ((down[x + c] >> WEIGHT_BITS) * 255 + alpha / 2) / alpha);
+						int v = original + (original - blurred) * sharpenPercent / 100;
+						dst[d + c] = (byte) Math.max(0, Math.min(255, v));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the weights of a Gaussian kernel 2*radius+1 long (with a standard deviation of radius/2), as fixed point
+	 * numbers that add up to exactly 1 &lt;&lt; WEIGHT_BITS
+	 */
+	private static int[] gaussianKernel(int radius) {
+		double sigma = radius / 2.0;
+		double[] weights = new double[2 * radius + 1];
+		double total = 0;
+		for (int i = 0; i < weights.length; i++) {
+			double d = i - radius;
+			weights[i] = Math.exp(-d * d / (2 * sigma * sigma));
+			total += weights[i];
+		}
+		int[] kernel = new int[weights.length];
+		int sum = 0;
+		for (int i = 0; i < weights.length; i++) {
+			kernel[i] = (int) Math.round(weights[i] / total * (1 << WEIGHT_BITS));
+			sum += kernel[i];
+		}
+		kernel[radius] += (1 << WEIGHT_BITS) - sum;
+		return kernel;
+	}
+
+	/**
+	 * Returns the pixel data of a TYPE_4BYTE_ABGR image
+	 */
+	private static byte[] data(BufferedImage image) {
+		if (!canFilter(image))
+			throw new IllegalArgumentException("Not a TYPE_4BYTE_ABGR image: " + image.getType());
+		return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+	}
+
+	/**
+	 * Runs the filter on tiles of the given number of rows, on every thread, and returns once they are all done.  With one
+	 * thread (or only one tile) the filter is given all of the rows at once.
+	 */
+	static void forEachTile(int height, int tileRows, final TileFilter filter) {
+		if (THREADS <= 1 || height <= tileRows) {
+			filter.filterRows(0, height);
+			return;
+		}
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int y = 0; y < height; y += tileRows) {
+			final int y0 = y;
+			final int y1 = Math.min(height, y + tileRows);
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					filter.filterRows(y0, y1);
+					return null;
+				}
+			});
+		}
+		try {
+			for (Future<Void> f : getPool().invokeAll(tasks)) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Returns the pool the tiles are filtered on, creating it the first time
+	 */
+	private static synchronized ForkJoinPool getPool() {
+		if (pool == null)
+			pool = new ForkJoinPool(THREADS);
+		return pool;
+	}
+}
@@ -3,8 +3,18 @@ package waldonsm.paint.tools.drawables;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * The in-progress Drawable for a polygon: the lines between the vertices clicked so far, plus a "rubber band" line from the
+ * last vertex to the mouse. <P>
+ * The vertices are kept in growable int arrays with one extra slot at the end for the rubber band point, so the PolygonTool
+ * can keep using the same drawable while the polygon is drawn: moving the mouse only changes the last slot, and adding a
+ * vertex is amortized O(1).
+ * @author Shawn Waldon
+ *
+ */
 public class InProgressPolygonDrawable implements Drawable {
 
 	/**
@@ -12,22 +22,75 @@ public class InProgressPolygonDrawable implements Drawable {
 	 */
 	private static final long serialVersionUID = 1L;
 	
-	private final int[] xVals;
-	private final int[] yVals;
+	private int[] xVals;
+	private int[] yVals;
+	private int vertexCount;
+	private boolean hasRubberBand = false;
 	private final Color lineColor;
 	
+	/**
+	 * Creates a new InProgressPolygonDrawable with the given vertices and no rubber band point
+	 * @param points the vertices clicked so far
+	 * @param lineColor the color to draw the lines in
+	 */
 	public InProgressPolygonDrawable(List<Point> points, Color lineColor) {
-		xVals = FinalPolygonDrawable.getXVals(points);
-		yVals = FinalPolygonDrawable.getYVals(points);
+		vertexCount = points.size();
+		xVals = new int[Math.max(8, vertexCount * 2)];
+		yVals = new int[xVals.length];
+		for (int i = 0; i < vertexCount; i++) {
+			Point p = points.get(i);
+			xVals[i] = p.x;
+			yVals[i] = p.y;
+		}
 		this.lineColor = lineColor;
 	}
+	
+	/**
+	 * Adds a vertex to the end of the polygon
+	 * @param x the x coordinate of the new vertex
+	 * @param y the y coordinate of the new vertex
+	 */
+	public void addVertex(int x, int y) {
+		if (vertexCount + 1 >= xVals.length) {
+			xVals = Arrays.copyOf(xVals, xVals.length * 2);
+			yVals = Arrays.copyOf(yVals, yVals.length * 2);
+		}
+		xVals[vertexCount] = x;
+		yVals[vertexCount] = y;
+		vertexCount++;
+		hasRubberBand = false;
+	}
+	
+	/**
+	 * Moves the rubber band point (the end of the line following the mouse) to the given location
+	 * @param x the x coordinate of the mouse
+	 * @param y the y coordinate of the mouse
+	 */
+	public void setRubberBand(int x, int y) {
+		xVals[vertexCount] = x;
+		yVals[vertexCount] = y;
+		hasRubberBand = true;
+	}
+	
+	/**
+	 * Returns the number of vertices in the polygon, not counting the rubber band point
+	 * @return the number of vertices added
+	 */
+	public int getVertexCount() {
+		return vertexCount;
+	}
+	
+	/**
+	 * Returns the color the lines are drawn in
+	 * @return the line color
+	 */
+	public Color getLineColor() {
+		return lineColor;
+	}
 
 	public void draw(Graphics2D g) {
 		g.setColor(lineColor);
-		for (int i = 0; i < xVals.length -1; i++) {
-			g.drawLine(xVals[i], yVals[i], xVals[i+1], yVals[i+1]);
-		}
-
+		g.drawPolyline(xVals, yVals, hasRubberBand ? vertexCount + 1 : vertexCount);
 	}
 
 	public String getName() {
@@ -3,13 +3,14 @@ package waldonsm.paint.tools.drawables;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
 
 /**
  * A Drawable for drawing lines between two given points.
  * @author Shawn Waldon
  *
  */
-public final class LineDrawable implements Drawable {
+public final class LineDrawable implements BoundedDrawable, MeasuredDrawable {
 
 	/**
 	 * 
@@ -33,7 +34,7 @@ public final class LineDrawable implements Drawable {
 		count++;
 	}
 	
-	private static final String DEFAULT_NAME = "Line";
+	static final String DEFAULT_NAME = "Line";
 	
 	private final String name;
 	
@@ -58,6 +59,18 @@ public final class LineDrawable implements Drawable {
 		name = DEFAULT_NAME + getCount();
 	}
 	
+	/**
+	 * Creates a LineDrawable with the given name, for a DrawableStore to hand out
+	 */
+	LineDrawable(int x1, int y1, int x2, int y2, Color color, String name) {
+		this.x1 = x1;
+		this.y1 = y1;
+		this.x2 = x2;
+		this.y2 = y2;
+		this.color = color;
+		this.name = name;
+	}
+	
 	/**
 	 * Tells this LineDrawable that it is in the final drawables list.
 	 */
@@ -69,16 +82,52 @@ public final class LineDrawable implements Drawable {
 	 * Draws the line into the give graphics object
 	 */
 	public void draw(Graphics2D g) {
+		draw(g, color, x1, y1, x2, y2);
+	}
+	
+	/**
+	 * Draws a line, as draw does
+	 */
+	static void draw(Graphics2D g, Color color, int x1, int y1, int x2, int y2) {
 		g.setColor(color);
 		g.drawLine(x1, y1, x2, y2);
 	}
 	
+	/**
+	 * Adds this line to the store's arrays
+	 * @return false if the store can not hold it
+	 */
+	boolean addTo(DrawableStore store) {
+		return store.addShape(DrawableStore.LINE, DEFAULT_NAME, name, color, null, x1, y1, x2, y2);
+	}
+	
 	// used with a potential scaling technique
 //	public void drawScaled(Graphics2D g, int scaleFactor) {
 //		g.setColor(color);
 //		g.drawLine(x1*scaleFactor, y1*scaleFactor, x2*scaleFactor, y2*scaleFactor);
 //	}
 
+	/**
+	 * Returns the rectangle between the two points, with a pixel to spare on each side
+	 */
+	public Rectangle getBounds() {
+		return getBounds(x1, y1, x2, y2);
+	}
+
+	/**
+	 * Returns the bounds of a line, as getBounds does
+	 */
+	static Rectangle getBounds(int x1, int y1, int x2, int y2) {
+		return new Rectangle(Math.min(x1, x2) - 1, Math.min(y1, y2) - 1, Math.abs(x2 - x1) + 3, Math.abs(y2 - y1) + 3);
+	}
+
+	/**
+	 * Returns the size of its entry in the history's DrawableStore
+	 */
+	public long getMemoryUsage() {
+		return DrawableStore.getMemoryUsage(4);
+	}
+
 	/**
 	 * Returns the string identifier for this LineDrawable
 	 */
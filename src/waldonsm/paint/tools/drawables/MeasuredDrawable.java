@@ -0,0 +1,23 @@
+package waldonsm.paint.tools.drawables;
+
+/**
+ * A Drawable that can say roughly how much memory it takes up while it is kept in the model's undo history, worked out
+ * from what it holds (such as its number of points, or the size of its block of pixels) so that it is cheap enough to ask
+ * on the EDT every time a Drawable is finalized.  The history is capped by these sizes, and Drawables that are not
+ * MeasuredDrawables are counted as a small fixed size.
+ * @author Shawn Waldon
+ *
+ */
+public interface MeasuredDrawable extends Drawable {
+
+	/**
+	 * Roughly how many bytes the object of a Drawable and its name take, before anything else it holds
+	 */
+	int OBJECT_BYTES = 96;
+
+	/**
+	 * Returns roughly how many bytes of memory the Drawable uses in the undo history
+	 * @return the approximate size of the Drawable in bytes
+	 */
+	long getMemoryUsage();
+}
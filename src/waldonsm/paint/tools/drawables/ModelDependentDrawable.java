@@ -1,8 +1,18 @@
 package waldonsm.paint.tools.drawables;
 
+import java.awt.image.BufferedImage;
+
 import waldonsm.paint.model.PaintModel;
 
 public interface ModelDependentDrawable extends Drawable {
 
 	void setModelToUse(PaintModel image);
+	
+	/**
+	 * Draws this onto the given image the way draw would draw it onto the model's image, for replaying the history into an
+	 * image of its own (like a new base raster made in the background).  It must not change anything draw depends on, as it
+	 * may be called on another thread while the model is still using this Drawable.
+	 * @param image the image to draw on, the same size as the model's image
+	 */
+	void drawOn(BufferedImage image);
 }
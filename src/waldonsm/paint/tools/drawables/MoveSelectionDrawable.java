@@ -0,0 +1,188 @@
+package waldonsm.paint.tools.drawables;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import waldonsm.paint.model.PaintModel;
+import waldonsm.paint.model.SharedRaster;
+
+/**
+ * Moves a selected rectangle of the image, filling the place it was taken from with a color.  Only the rectangle, how far
+ * it moved and the fill color are kept, so the history holds a few ints however big the selection is: when the move is
+ * replayed the pixels are read back out of the model's image, which holds what was drawn before the move. <P>
+ * While the selection is being dragged it is drawn from a SharedRaster of the model's image instead, so moving it around
+ * only changes where the same pixels are drawn and never copies them.  They are copied once, when the move is finalized
+ * (the model copies them before it draws on the image they share).  The model also keeps a copy of the pixels under the
+ * source and destination from before the move, so undoing it only puts those back.
+ * @author Shawn Waldon
+ *
+ */
+public class MoveSelectionDrawable implements ModelDependentDrawable, BoundedDrawable, ReversibleDrawable, MeasuredDrawable {
+
+	/**
+	 * to get rid of warnings
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private static final String DEFAULT_NAME = "MoveSelection_";
+
+	private static int count = 0;
+
+	private final int x, y, width, height;
+	private final int fillArgb;
+	private final String name;
+	private int dx = 0, dy = 0;
+
+	private transient PaintModel model;
+
+	/**
+	 * The pixels being moved, while the selection is being dragged
+	 */
+	private transient SharedRaster pixels;
+
+	/**
+	 * Creates a new MoveSelectionDrawable that has not moved yet
+	 * @param source the selected rectangle
+	 * @param fillArgb the color (as an ARGB int) the selected rectangle is filled with once the pixels have been moved away
+	 * @param pixels the pixels of the selected rectangle, drawn until dropPixels is called
+	 * @param m the model whose image the pixels are read from when the move is replayed
+	 */
+	public MoveSelectionDrawable(Rectangle source, int fillArgb, SharedRaster pixels, PaintModel m) {
+		x = source.x;
+		y = source.y;
+		width = source.width;
+		height = source.height;
+		this.fillArgb = fillArgb;
+		this.pixels = pixels;
+		model = m;
+		name = DEFAULT_NAME + (count++);
+	}
+
+	public void setModelToUse(PaintModel pm) {
+		model = pm;
+	}
+
+	/**
+	 * Sets how far the selection has been moved from where it was
+	 * @param dx the distance moved to the right
+	 * @param dy the distance moved down
+	 */
+	public void setOffset(int dx, int dy) {
+		this.dx = dx;
+		this.dy = dy;
+	}
+
+	/**
+	 * Returns true if the selection has been moved from where it was
+	 * @return true if the selection has moved
+	 */
+	public boolean hasMoved() {
+		return dx != 0 || dy != 0;
+	}
+
+	/**
+	 * Returns the rectangle the selection was taken from
+	 * @return the rectangle the selection was taken from
+	 */
+	public Rectangle getSource() {
+		return new Rectangle(x, y, width, height);
+	}
+
+	/**
+	 * Returns the rectangle the selection has been moved to
+	 * @return the rectangle the selection has been moved to
+	 */
+	public Rectangle getDestination() {
+		return new Rectangle(x + dx, y + dy, width, height);
+	}
+
+	/**
+	 * Forgets the pixels being dragged, so that later draws read them from the model's image.  Call it once the move has
+	 * been finalized.
+	 */
+	public void dropPixels() {
+		pixels = null;
+	}
+
+	/**
+	 * Fills the selected rectangle with the fill color, then draws its pixels where the selection has moved to
+	 */
+	public void draw(Graphics2D g) {
+		draw(g, model.getMainImage());
+	}
+
+	/**
+	 * Draws onto the given image instead, reading the pixels that were moved from it if they are no longer held
+	 */
+	public void drawOn(BufferedImage image) {
+		Graphics2D g = image.createGraphics();
+		try {
+			draw(g, image);
+		} finally {
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Fills the selected rectangle with the fill color, then draws its pixels where the selection has moved to
+	 * @param g the Graphics2D to draw with
+	 * @param image the image g draws on, which the pixels are read from if they are no longer held
+	 */
+	private void draw(Graphics2D g, BufferedImage image) {
+		BufferedImage moved;
+		Rectangle source = getSource();
+		SharedRaster held = pixels;
+		if (held != null) {
+			moved = held.getImage();
+		} else {
+			// copy the pixels out of the image first, as filling the rectangle they came from may cover them
+			// (only the part still inside the image, if it has been cropped since)
+			source = source.intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+			if (source.isEmpty())
+				return;
+			moved = new BufferedImage(source.width, source.height, BufferedImage.TYPE_4BYTE_ABGR);
+			moved.setData(image.getRaster().createChild(source.x, source.y, source.width, source.height, 0, 0, null));
+		}
+		Graphics2D g2 = (Graphics2D) g.create();
+		g2.setComposite(AlphaComposite.Src);
+		g2.setColor(new Color(fillArgb, true));
+		g2.fillRect(x, y, width, height);
+		g2.setComposite(AlphaComposite.SrcOver);
+		g2.drawImage(moved, source.x + dx, source.y + dy, null);
+		g2.dispose();
+	}
+
+	/**
+	 * Copies the pixels of the source and destination before drawing, if the model's image is TYPE_4BYTE_ABGR
+	 */
+	public PixelDelta drawWithDelta(Graphics2D g) {
+		BufferedImage image = model.getMainImage();
+		PixelDelta delta = image.getType() == BufferedImage.TYPE_4BYTE_ABGR ? PixelDelta.ofRectangle(image, getBounds()) : null;
+		draw(g);
+		return delta;
+	}
+
+	/**
+	 * Returns the rectangle the selection was taken from together with the one it was moved to
+	 */
+	public Rectangle getBounds() {
+		return getSource().union(getDestination());
+	}
+
+	/**
+	 * Returns the size of the object, and of the pixels being dragged if it still holds them, at 4 bytes a pixel
+	 */
+	public long getMemoryUsage() {
+		return pixels == null ? OBJECT_BYTES : OBJECT_BYTES + width * (long) height * 4;
+	}
+
+	/**
+	 * Returns the name of this Drawable
+	 */
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,127 @@
+package waldonsm.paint.tools.drawables;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+import waldonsm.paint.model.SharedRaster;
+
+/**
+ * Draws pixels that were copied to the clipboard onto the image.  The pixels are kept as the SharedRaster they were copied
+ * as, which the clipboard (and any other pastes of them) share, so pasting the same pixels many times keeps one copy of
+ * them, and none at all while they are still shared with the image they were copied from.  They are written to files
+ * compressed with a Deflater.
+ * @author Shawn Waldon
+ *
+ */
+public class PasteDrawable implements BoundedDrawable, MeasuredDrawable {
+
+	/**
+	 * to get rid of warnings
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private static final String DEFAULT_NAME = "Paste_";
+
+	private static int count = 0;
+
+	private final int x, y;
+	private final String name;
+	private transient SharedRaster pixels;
+
+	/**
+	 * Creates a new PasteDrawable
+	 * @param x the x coordinate of the top left corner of the pasted pixels
+	 * @param y the y coordinate of the top left corner of the pasted pixels
+	 * @param pixels the pixels to paste
+	 */
+	public PasteDrawable(int x, int y, SharedRaster pixels) {
+		this.x = x;
+		this.y = y;
+		this.pixels = pixels;
+		name = DEFAULT_NAME + (count++);
+	}
+
+	/**
+	 * Draws the pixels over the image
+	 */
+	public void draw(Graphics2D g) {
+		g.drawImage(pixels.getImage(), x, y, null);
+	}
+
+	/**
+	 * Returns where the pixels are pasted
+	 */
+	public Rectangle getBounds() {
+		return new Rectangle(x, y, pixels.getWidth(), pixels.getHeight());
+	}
+
+	/**
+	 * Returns the size of the object and its pixels, at 4 bytes a pixel
+	 */
+	public long getMemoryUsage() {
+		return OBJECT_BYTES + pixels.getWidth() * (long) pixels.getHeight() * 4;
+	}
+
+	/**
+	 * Returns the name of this Drawable
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Writes the size of the pixels, then the pixels themselves compressed
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(pixels.getWidth());
+		out.writeInt(pixels.getHeight());
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DeflaterOutputStream deflater = new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED));
+		deflater.write(pixels.copyPixels());
+		deflater.close();
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+	}
+
+	/**
+	 * Reads the pixels written by writeObject
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		int w = in.readInt();
+		int h = in.readInt();
+		byte[] compressed = new byte[in.readInt()];
+		in.readFully(compressed);
+		byte[] data = new byte[w * h * 4];
+		Inflater inflater = new Inflater();
+		inflater.setInput(compressed);
+		try {
+			int read = 0;
+			while (read < data.length && !inflater.finished()) {
+				int n = inflater.inflate(data, read, data.length - read);
+				if (n == 0 && inflater.needsInput())
+					break;
+				read += n;
+			}
+			if (read != data.length)
+				throw new IOException("Pasted pixels cut short");
+		} catch (DataFormatException e) {
+			throw new IOException("Malformed pasted pixels: " + e.getMessage());
+		} finally {
+			inflater.end();
+		}
+		BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_4BYTE_ABGR);
+		image.getRaster().setDataElements(0, 0, w, h, data);
+		pixels = new SharedRaster(image);
+	}
+}
@@ -3,6 +3,7 @@ package waldonsm.paint.tools.drawables;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.util.ArrayList;
 
 /**
@@ -11,14 +12,14 @@ import java.util.ArrayList;
  * @author Shawn Waldon
  *
  */
-public class PencilDrawable implements Drawable {
+public class PencilDrawable implements BoundedDrawable, MeasuredDrawable {
 
 	/**
 	 * to get rid of warnings
 	 */
 	private static final long serialVersionUID = 1L;
 	
-	private static final String DEFAULT_NAME = "Scribble_";
+	static final String DEFAULT_NAME = "Scribble_";
 	
 	private static int count = 0;
 	
@@ -39,6 +40,21 @@ public class PencilDrawable implements Drawable {
 		name = DEFAULT_NAME + (count++);
 	}
 	
+	/**
+	 * Creates a PencilDrawable with the given name, for a DrawableStore to hand out
+	 * @param xy the points, as x,y pairs
+	 * @param from the index in xy of the first point's x
+	 * @param to the index in xy after the last point's y
+	 */
+	PencilDrawable(int[] xy, int from, int to, Color color, String name) {
+		points = new ArrayList<Point>((to - from) / 2);
+		for (int i = from; i < to; i += 2) {
+			points.add(new Point(xy[i], xy[i + 1]));
+		}
+		this.color = color;
+		this.name = name;
+	}
+	
 	/**
 	 * Adds the given point to the list of Points to draw
 	 * @param p
@@ -62,6 +78,82 @@ public class PencilDrawable implements Drawable {
 		}
 	}
 
+	/**
+	 * Draws the same lines as draw, from points packed as x,y pairs
+	 * @param xy the points, as x,y pairs
+	 * @param from the index in xy of the first point's x
+	 * @param to the index in xy after the last point's y
+	 */
+	static void draw(Graphics2D g, Color color, int[] xy, int from, int to) {
+		g.setColor(color);
+		int prevX = xy[from], prevY = xy[from + 1];
+		g.drawLine(prevX, prevY, prevX, prevY);
+		for (int i = from + 2; i < to; i += 2) {
+			g.drawLine(xy[i], xy[i + 1], prevX, prevY);
+			prevX = xy[i];
+			prevY = xy[i + 1];
+		}
+	}
+	
+	/**
+	 * Adds this stroke to the store's arrays
+	 * @return false if the store can not hold it
+	 */
+	boolean addTo(DrawableStore store) {
+		int[] xy = new int[points.size() * 2];
+		for (int i = 0; i < points.size(); i++) {
+			xy[i * 2] = points.get(i).x;
+			xy[i * 2 + 1] = points.get(i).y;
+		}
+		return store.addShape(DrawableStore.PENCIL, DEFAULT_NAME, name, color, null, xy);
+	}
+
+	/**
+	 * Returns the smallest rectangle containing all of the points, with a pixel to spare on each side
+	 */
+	public Rectangle getBounds() {
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (int i = 0; i < points.size(); i++) {
+			Point p = points.get(i);
+			minX = Math.min(minX, p.x);
+			maxX = Math.max(maxX, p.x);
+			minY = Math.min(minY, p.y);
+			maxY = Math.max(maxY, p.y);
+		}
+		return getBounds(minX, minY, maxX, maxY);
+	}
+
+	/**
+	 * Returns the bounds of the points packed as x,y pairs, as getBounds does
+	 * @param xy the points, as x,y pairs
+	 * @param from the index in xy of the first point's x
+	 * @param to the index in xy after the last point's y
+	 */
+	static Rectangle getBounds(int[] xy, int from, int to) {
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (int i = from; i < to; i += 2) {
+			minX = Math.min(minX, xy[i]);
+			maxX = Math.max(maxX, xy[i]);
+			minY = Math.min(minY, xy[i + 1]);
+			maxY = Math.max(maxY, xy[i + 1]);
+		}
+		return getBounds(minX, minY, maxX, maxY);
+	}
+
+	/**
+	 * Returns the rectangle from the smallest to the largest coordinates, with a pixel to spare on each side
+	 */
+	private static Rectangle getBounds(int minX, int minY, int maxX, int maxY) {
+		return new Rectangle(minX - 1, minY - 1, maxX - minX + 3, maxY - minY + 3);
+	}
+
+	/**
+	 * Returns the size of its entry in the history's DrawableStore
+	 */
+	public long getMemoryUsage() {
+		return DrawableStore.getMemoryUsage(points.size() * 2);
+	}
+
 	/**
 	 * Returns the name of this Drawable
 	 */
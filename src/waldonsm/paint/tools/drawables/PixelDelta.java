@@ -0,0 +1,192 @@
+package waldonsm.paint.tools.drawables;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+
+/**
+ * The pixels that a ReversibleDrawable changed in the model's image and the colors they had before, so that the model can
+ * undo it by putting those colors back instead of replaying the whole history.  It is one of two kinds: <UL>
+ * <LI>spans, for fills: the FillSpans that were set to one new color, with the old colors of their pixels run-length
+ * encoded (a fill of one color is one run per span).  These can also be redone by painting the spans again.
+ * <LI>a rectangle, for filters and moves: a copy of the pixels of the rectangle from before.  These can only be undone.
+ * </UL>
+ * Either kind only applies to the TYPE_4BYTE_ABGR image of the size it was recorded on.  Deltas are never saved, they only
+ * live in the model's history in memory.
+ * @author Shawn Waldon
+ *
+ */
+public final class PixelDelta {
+
+	private final int imageWidth, imageHeight;
+
+	private final FillSpans spans;
+	private final int newARGB;
+
+	/**
+	 * The old colors of the pixels in the spans, as pairs of a run length and an ARGB color
+	 */
+	private int[] runs = new int[32];
+	private int runCount = 0;
+
+	private final Rectangle rect;
+	private final byte[] oldPixels;
+
+	/**
+	 * Creates a new, empty PixelDelta for spans of the image that are set to the new color, which are added with record
+	 * before they are painted
+	 * @param image a TYPE_4BYTE_ABGR image
+	 * @param newARGB the color the spans are set to, in the default ARGB format
+	 */
+	public PixelDelta(BufferedImage image, int newARGB) {
+		imageWidth = image.getWidth();
+		imageHeight = image.getHeight();
+		spans = new FillSpans();
+		this.newARGB = newARGB;
+		rect = null;
+		oldPixels = null;
+	}
+
+	private PixelDelta(BufferedImage image, Rectangle r, byte[] oldPixels) {
+		imageWidth = image.getWidth();
+		imageHeight = image.getHeight();
+		spans = null;
+		newARGB = 0;
+		rect = r;
+		this.oldPixels = oldPixels;
+	}
+
+	/**
+	 * Returns a PixelDelta holding the pixels of the rectangle as they are now, to be called just before they are changed
+	 * @param image a TYPE_4BYTE_ABGR image
+	 * @param r the rectangle that is about to change (anything outside the image is left out)
+	 * @return the PixelDelta
+	 */
+	public static PixelDelta ofRectangle(BufferedImage image, Rectangle r) {
+		int w = image.getWidth();
+		Rectangle clipped = r.intersection(new Rectangle(0, 0, w, image.getHeight()));
+		if (clipped.isEmpty())
+			clipped = new Rectangle();
+		byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		byte[] copy = new byte[clipped.width * clipped.height * 4];
+		for (int y = 0; y < clipped.height; y++) {
+			System.arraycopy(data, ((clipped.y + y) * w + clipped.x) * 4, copy, y * clipped.width * 4, clipped.width * 4);
+		}
+		return new PixelDelta(image, clipped, copy);
+	}
+
+	/**
+	 * Adds a span to a PixelDelta of spans, recording the colors its pixels have now, so it must be called before the span
+	 * is painted
+	 * @param abgr the pixel data of the image, 4 bytes per pixel in A, B, G, R order
+	 * @param y the row of the span
+	 * @param x0 the first x in the span
+	 * @param x1 the last x in the span (inclusive)
+	 */
+	public void record(byte[] abgr, int y, int x0, int x1) {
+		spans.add(y, x0, x1);
+		for (int idx = (y * imageWidth + x0) * 4, end = (y * imageWidth + x1) * 4; idx <= end; idx += 4) {
+			int argb = (abgr[idx] & 0xff) << 24 | (abgr[idx + 3] & 0xff) << 16 | (abgr[idx + 2] & 0xff) << 8 | (abgr[idx + 1] & 0xff);
+			addRun(1, argb);
+		}
+	}
+
+	/**
+	 * Adds all of the spans of another PixelDelta of spans, recorded after the ones in this one, to the end of this one
+	 * @param other the spans to add
+	 */
+	public void addAll(PixelDelta other) {
+		spans.addAll(other.spans);
+		for (int i = 0; i < other.runCount; i++) {
+			addRun(other.runs[i * 2], other.runs[i * 2 + 1]);
+		}
+	}
+
+	/**
+	 * Returns true if the delta was recorded on an image like the given one, so that it can be undone (or redone) on it
+	 * @param image the image to check
+	 * @return true if the image is TYPE_4BYTE_ABGR and the same size as the image the delta was recorded on
+	 */
+	public boolean appliesTo(BufferedImage image) {
+		return image.getType() == BufferedImage.TYPE_4BYTE_ABGR && image.getWidth() == imageWidth
+				&& image.getHeight() == imageHeight;
+	}
+
+	/**
+	 * Puts back the old colors of the changed pixels
+	 * @param image the image to change, which appliesTo must be true for
+	 */
+	public void revert(BufferedImage image) {
+		byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		if (rect != null) {
+			for (int y = 0; y < rect.height; y++) {
+				System.arraycopy(oldPixels, y * rect.width * 4, data, ((rect.y + y) * imageWidth + rect.x) * 4, rect.width * 4);
+			}
+			return;
+		}
+		int run = 0, left = runs[0];
+		for (int i = 0; i < spans.size(); i++) {
+			int row = spans.getY(i) * imageWidth;
+			for (int idx = (row + spans.getX0(i)) * 4, end = (row + spans.getX1(i)) * 4; idx <= end; idx += 4) {
+				if (left == 0)
+					left = runs[++run * 2];
+				int argb = runs[run * 2 + 1];
+				data[idx] = (byte) (argb >>> 24);
+				data[idx + 1] = (byte) argb;
+				data[idx + 2] = (byte) (argb >> 8);
+				data[idx + 3] = (byte) (argb >> 16);
+				left--;
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the delta knows the new colors as well as the old ones, so that reapply can redo it
+	 * @return true for a PixelDelta of spans
+	 */
+	public boolean canReapply() {
+		return spans != null;
+	}
+
+	/**
+	 * Sets the pixels of the spans to the new color again
+	 * @param image the image to change, which appliesTo and canReapply must be true for
+	 */
+	public void reapply(BufferedImage image) {
+		spans.paint(image, newARGB);
+	}
+
+	/**
+	 * Returns the smallest Rectangle containing every changed pixel
+	 * @return the bounds of the delta, in image coordinates
+	 */
+	public Rectangle getBounds() {
+		return rect != null ? new Rectangle(rect) : spans.getBounds();
+	}
+
+	/**
+	 * Returns roughly how many bytes of memory the delta uses
+	 * @return the approximate size of the delta in bytes
+	 */
+	public long getMemoryUsage() {
+		if (rect != null)
+			return oldPixels.length;
+		return spans.size() * 12L + runCount * 8L;
+	}
+
+	/**
+	 * Adds a run of pixels of one old color, joining it to the last run if that was the same color
+	 */
+	private void addRun(int length, int argb) {
+		if (runCount > 0 && runs[runCount * 2 - 1] == argb) {
+			runs[runCount * 2 - 2] += length;
+			return;
+		}
+		if (runCount * 2 + 2 > runs.length)
+			runs = Arrays.copyOf(runs, runs.length * 2);
+		runs[runCount * 2] = length;
+		runs[runCount * 2 + 1] = argb;
+		runCount++;
+	}
+}
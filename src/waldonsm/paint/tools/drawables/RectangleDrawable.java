@@ -2,8 +2,9 @@ package waldonsm.paint.tools.drawables;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 
-public class RectangleDrawable implements Drawable {
+public class RectangleDrawable implements BoundedDrawable, MeasuredDrawable {
 	
 	/**
 	 * 
@@ -20,7 +21,7 @@ public class RectangleDrawable implements Drawable {
 		count++;
 	}
 	
-	private static final String DEFAULT_NAME = "Recatangle";
+	static final String DEFAULT_NAME = "Recatangle";
 	
 	private final String name;
 	
@@ -54,6 +55,24 @@ public class RectangleDrawable implements Drawable {
 		name = DEFAULT_NAME + getCount();
 	}
 	
+	/**
+	 * Creates a RectangleDrawable with the given name, for a DrawableStore to hand out
+	 */
+	RectangleDrawable(int x, int y, int width, int height, boolean isFilledRect, Color borderColor, Color fillColor,
+			boolean isRoundedRect, int arcWidth, int arcHeight, String name) {
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		this.isFilledRect = isFilledRect;
+		this.borderColor = borderColor;
+		this.fillColor = fillColor;
+		this.isRoundedRect = isRoundedRect;
+		this.arcWidth = arcWidth;
+		this.arcHeight = arcHeight;
+		this.name = name;
+	}
+	
 	public void setRoundedRect() {
 		isRoundedRect = true;
 		arcHeight = height / 6;
@@ -65,6 +84,14 @@ public class RectangleDrawable implements Drawable {
 	}
 
 	public void draw(Graphics2D g) {
+		draw(g, x, y, width, height, isFilledRect, borderColor, fillColor, isRoundedRect, arcWidth, arcHeight);
+	}
+	
+	/**
+	 * Draws a rectangle, as draw does
+	 */
+	static void draw(Graphics2D g, int x, int y, int width, int height, boolean isFilledRect, Color borderColor,
+			Color fillColor, boolean isRoundedRect, int arcWidth, int arcHeight) {
 		if (isRoundedRect) {
 			if (isFilledRect) {
 				g.setColor(fillColor);
@@ -82,9 +109,40 @@ public class RectangleDrawable implements Drawable {
 		}
 	}
 	
+	/**
+	 * Returns the size of its entry in the history's DrawableStore
+	 */
+	public long getMemoryUsage() {
+		return DrawableStore.getMemoryUsage(6);
+	}
+
+	/**
+	 * Adds this rectangle to the store's arrays
+	 * @return false if the store can not hold it
+	 */
+	boolean addTo(DrawableStore store) {
+		int flags = (isFilledRect ? DrawableStore.FILLED : 0) | (isRoundedRect ? DrawableStore.ROUNDED : 0);
+		return store.addShape(DrawableStore.RECTANGLE | flags, DEFAULT_NAME, name, borderColor, fillColor, x, y, width, height,
+				arcWidth, arcHeight);
+	}
+	
 	public String getName() {
 		return name;
 	}
+	
+	/**
+	 * Returns the rectangle drawn, with a pixel to spare on each side
+	 */
+	public Rectangle getBounds() {
+		return getBounds(x, y, width, height);
+	}
+
+	/**
+	 * Returns the bounds of a rectangle, as getBounds does
+	 */
+	static Rectangle getBounds(int x, int y, int width, int height) {
+		return new Rectangle(x - 1, y - 1, width + 3, height + 3);
+	}
 
 	public int getX() {
 		return x;
@@ -0,0 +1,21 @@
+package waldonsm.paint.tools.drawables;
+
+import java.awt.Graphics2D;
+
+/**
+ * A Drawable that can record which pixels of the model's image it changes and what they were before, as a PixelDelta.
+ * The model keeps the delta of each one it finalizes, so that undoing it puts those pixels back instead of replaying the
+ * whole history, and redoing a fill paints its spans again instead of filling again.
+ * @author Shawn Waldon
+ *
+ */
+public interface ReversibleDrawable extends Drawable {
+
+	/**
+	 * Draws exactly what draw would, and returns what it changed
+	 * @param g the Graphics2D of the model's image
+	 * @return the pixels that were changed with their old colors, or null if they could not be recorded (such as on an
+	 * image that is not TYPE_4BYTE_ABGR)
+	 */
+	PixelDelta drawWithDelta(Graphics2D g);
+}
@@ -0,0 +1,160 @@
+package waldonsm.paint.tools.drawables;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+
+/**
+ * The in-progress Drawable for the drag tools (lines, rectangles and ovals). <P>
+ * One ShapePreviewDrawable is created when the mouse is pressed, holding the point that was clicked, and its other corner
+ * and colors are then changed in place as the mouse is dragged, so dragging does not create any objects.  When the mouse
+ * is released the tool makes the usual (immutable) LineDrawable, RectangleDrawable or CircleDrawable from it.
+ * @author Shawn Waldon
+ *
+ */
+public final class ShapePreviewDrawable implements Drawable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+	
+	public static final int LINE = 0;
+	public static final int RECTANGLE = 1;
+	public static final int OVAL = 2;
+	
+	private final int kind;
+	private final int anchorX, anchorY;
+	private int endX, endY;
+	private boolean hasEnd = false;
+	private boolean isFilled;
+	private Color borderColor;
+	private Color fillColor;
+	
+	/**
+	 * Creates a new ShapePreviewDrawable starting at the given point, which draws nothing until setEnd is called
+	 * @param kind one of LINE, RECTANGLE or OVAL
+	 * @param anchorX the x coordinate of the point the mouse was pressed at
+	 * @param anchorY the y coordinate of the point the mouse was pressed at
+	 */
+	public ShapePreviewDrawable(int kind, int anchorX, int anchorY) {
+		if (kind != LINE && kind != RECTANGLE && kind != OVAL)
+			throw new IllegalArgumentException("Unknown shape: " + kind);
+		this.kind = kind;
+		this.anchorX = anchorX;
+		this.anchorY = anchorY;
+	}
+	
+	/**
+	 * Moves the end of the shape (the corner opposite the anchor) and sets its colors
+	 * @param x the x coordinate of the mouse
+	 * @param y the y coordinate of the mouse
+	 * @param isFilled true if the shape should be filled (ignored for lines)
+	 * @param borderColor the color of the outline, or of the line
+	 * @param fillColor the color to fill the shape with (ignored for lines)
+	 */
+	public void setEnd(int x, int y, boolean isFilled, Color borderColor, Color fillColor) {
+		endX = x;
+		endY = y;
+		this.isFilled = isFilled;
+		this.borderColor = borderColor;
+		this.fillColor = fillColor;
+		hasEnd = true;
+	}
+	
+	/**
+	 * Returns the kind of shape, one of LINE, RECTANGLE or OVAL
+	 */
+	public int getKind() {
+		return kind;
+	}
+
+	public int getAnchorX() {
+		return anchorX;
+	}
+
+	public int getAnchorY() {
+		return anchorY;
+	}
+
+	public int getEndX() {
+		return endX;
+	}
+
+	public int getEndY() {
+		return endY;
+	}
+	
+	/**
+	 * Returns the left edge of the box with corners at the anchor and the end
+	 */
+	public int getX() {
+		return Math.min(anchorX, endX);
+	}
+	
+	/**
+	 * Returns the top edge of the box with corners at the anchor and the end
+	 */
+	public int getY() {
+		return Math.min(anchorY, endY);
+	}
+	
+	/**
+	 * Returns the width of the box with corners at the anchor and the end
+	 */
+	public int getWidth() {
+		return Math.abs(anchorX - endX);
+	}
+	
+	/**
+	 * Returns the height of the box with corners at the anchor and the end
+	 */
+	public int getHeight() {
+		return Math.abs(anchorY - endY);
+	}
+
+	public boolean isFilled() {
+		return isFilled;
+	}
+
+	public Color getBorderColor() {
+		return borderColor;
+	}
+
+	public Color getFillColor() {
+		return fillColor;
+	}
+
+	/**
+	 * Draws the shape the same way its final Drawable will, or nothing if the end has not been set yet
+	 */
+	public void draw(Graphics2D g) {
+		if (!hasEnd)
+			return;
+		if (kind == LINE) {
+			g.setColor(borderColor);
+			g.drawLine(anchorX, anchorY, endX, endY);
+		} else if (kind == RECTANGLE) {
+			if (isFilled) {
+				g.setColor(fillColor);
+				g.fillRect(getX(), getY(), getWidth(), getHeight());
+			}
+			g.setColor(borderColor);
+			g.drawRect(getX(), getY(), getWidth(), getHeight());
+		} else {
+			if (isFilled) {
+				g.setColor(fillColor);
+				g.fillOval(getX(), getY(), getWidth(), getHeight());
+			}
+			g.setColor(borderColor);
+			g.drawOval(getX(), getY(), getWidth(), getHeight());
+		}
+	}
+
+	/**
+	 * Returns null, this is never a final Drawable
+	 */
+	public String getName() {
+		return null;
+	}
+
+}
@@ -0,0 +1,229 @@
+package waldonsm.paint.tools.drawables;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A stroke of spray paint: single pixel dots scattered around the path of the mouse.  Only the path (the points the mouse
+ * was at, sampled at regular intervals), the size of the spray, the number of dots and the seed of the random number
+ * generator are stored, and the dots are made again from those every time the stroke is drawn.  java.util.Random is the
+ * same everywhere and the dots are placed with integer arithmetic only, so a stroke read back from a file is drawn exactly
+ * as it was first drawn. <P>
+ * The dots are set as bits of a one bit per pixel mask covering the stroke, which is then drawn with a single drawImage,
+ * rather than filling a rectangle per dot.  Dots that land on the same pixel set it once.
+ * @author Shawn Waldon
+ *
+ */
+public class SprayDrawable implements BoundedDrawable, MeasuredDrawable {
+
+	/**
+	 * to get rid of warnings
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private static final String DEFAULT_NAME = "Spray_";
+
+	/**
+	 * The number of steps along a segment of the path that a dot can be placed at
+	 */
+	private static final int POSITION_STEPS = 1024;
+
+	private static int count = 0;
+
+	private final int argb;
+	private final long seed;
+	private final int radius;
+	private final int density;
+	private final String name;
+
+	/**
+	 * The path, as x, y pairs
+	 */
+	private transient int[] samples = new int[32];
+	private transient int sampleCount = 0;
+
+	/**
+	 * Creates a new SprayDrawable starting at the given point
+	 * @param x the x coordinate the spray starts at
+	 * @param y the y coordinate the spray starts at
+	 * @param argb the color of the dots, as an ARGB int
+	 * @param radius the farthest a dot lands from the path
+	 * @param density the number of dots sprayed at each sample, and along each radius of the path between samples
+	 * @param seed the seed of the random number generator the dots are placed with
+	 */
+	public SprayDrawable(int x, int y, int argb, int radius, int density, long seed) {
+		if (radius < 1 || density < 1)
+			throw new IllegalArgumentException("Illegal spray size: radius " + radius + ", density " + density);
+		this.argb = argb;
+		this.radius = radius;
+		this.density = density;
+		this.seed = seed;
+		name = DEFAULT_NAME + (count++);
+		addSample(x, y);
+	}
+
+	/**
+	 * Adds a point to the path, spraying another density dots around it (and along the way from the last one)
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 */
+	public void addSample(int x, int y) {
+		if (sampleCount * 2 + 2 > samples.length)
+			samples = Arrays.copyOf(samples, samples.length * 2);
+		samples[sampleCount * 2] = x;
+		samples[sampleCount * 2 + 1] = y;
+		sampleCount++;
+	}
+
+	/**
+	 * Returns the number of points in the path
+	 * @return the number of points in the path
+	 */
+	public int getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * Makes the dots and draws them
+	 */
+	public void draw(Graphics2D g) {
+		Rectangle b = getBounds();
+		IndexColorModel colors = new IndexColorModel(1, 2, new byte[] {0, (byte) (argb >> 16)}, new byte[] {0, (byte) (argb >> 8)},
+				new byte[] {0, (byte) argb}, new byte[] {0, (byte) (argb >>> 24)});
+		BufferedImage mask = new BufferedImage(b.width, b.height, BufferedImage.TYPE_BYTE_BINARY, colors);
+		byte[] bits = ((DataBufferByte) mask.getRaster().getDataBuffer()).getData();
+		int stride = (b.width + 7) / 8;
+		Random random = new Random(seed);
+		int diameter = 2 * radius + 1;
+		int radiusSq = radius * radius;
+		int x0 = samples[0], y0 = samples[1];
+		for (int i = 0; i < sampleCount; i++) {
+			int x1 = samples[i * 2], y1 = samples[i * 2 + 1];
+			int dx = x1 - x0, dy = y1 - y0;
+			// as many dots per radius of the way from the last sample as at a sample, so a fast stroke isn't broken up
+			long lengthSq = (long) dx * dx + (long) dy * dy;
+			int steps = 1;
+			while (steps < POSITION_STEPS && (long) steps * steps * radiusSq < lengthSq) {
+				steps++;
+			}
+			for (int n = density * steps; n > 0; n--) {
+				int along = random.nextInt(POSITION_STEPS + 1);
+				int ox, oy;
+				do {
+					ox = random.nextInt(diameter) - radius;
+					oy = random.nextInt(diameter) - radius;
+				} while (ox * ox + oy * oy > radiusSq);
+				int px = x0 + (int) ((long) dx * along / POSITION_STEPS) + ox - b.x;
+				int py = y0 + (int) ((long) dy * along / POSITION_STEPS) + oy - b.y;
+				bits[py * stride + (px >> 3)] |= 0x80 >> (px & 7);
+			}
+			x0 = x1;
+			y0 = y1;
+		}
+		g.drawImage(mask, b.x, b.y, null);
+	}
+
+	/**
+	 * Returns the smallest rectangle containing every point of the path, grown by the radius of the spray
+	 */
+	public Rectangle getBounds() {
+		int minX = samples[0], maxX = minX, minY = samples[1], maxY = minY;
+		for (int i = 1; i < sampleCount; i++) {
+			minX = Math.min(minX, samples[i * 2]);
+			maxX = Math.max(maxX, samples[i * 2]);
+			minY = Math.min(minY, samples[i * 2 + 1]);
+			maxY = Math.max(maxY, samples[i * 2 + 1]);
+		}
+		return new Rectangle(minX - radius, minY - radius, maxX - minX + 2 * radius + 1, maxY - minY + 2 * radius + 1);
+	}
+
+	/**
+	 * Returns the size of the object and its path
+	 */
+	public long getMemoryUsage() {
+		return OBJECT_BYTES + samples.length * 4L;
+	}
+
+	/**
+	 * Returns the name of this Drawable
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Writes the path as the first point followed by the differences between points, each as a variable length int, which
+	 * takes a byte or two per sample as the mouse never gets far between samples
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		writeVarInt(out, sampleCount);
+		int px = 0, py = 0;
+		for (int i = 0; i < sampleCount; i++) {
+			int x = samples[i * 2], y = samples[i * 2 + 1];
+			writeVarInt(out, zigZag(x - px));
+			writeVarInt(out, zigZag(y - py));
+			px = x;
+			py = y;
+		}
+	}
+
+	/**
+	 * Reads the path written by writeObject
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		sampleCount = readVarInt(in);
+		if (sampleCount < 1)
+			throw new IOException("Spray with no path");
+		samples = new int[sampleCount * 2];
+		int px = 0, py = 0;
+		for (int i = 0; i < sampleCount; i++) {
+			px += unZigZag(readVarInt(in));
+			py += unZigZag(readVarInt(in));
+			samples[i * 2] = px;
+			samples[i * 2 + 1] = py;
+		}
+	}
+
+	/**
+	 * Maps small negative and positive ints to small non-negative ints
+	 */
+	private static int zigZag(int n) {
+		return (n << 1) ^ (n >> 31);
+	}
+
+	private static int unZigZag(int n) {
+		return (n >>> 1) ^ -(n & 1);
+	}
+
+	/**
+	 * Writes an int seven bits at a time, low bits first, with the high bit of each byte set if another byte follows
+	 */
+	private static void writeVarInt(ObjectOutputStream out, int n) throws IOException {
+		while ((n & ~0x7f) != 0) {
+			out.writeByte((n & 0x7f) | 0x80);
+			n >>>= 7;
+		}
+		out.writeByte(n);
+	}
+
+	private static int readVarInt(ObjectInputStream in) throws IOException {
+		int n = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.readUnsignedByte();
+			n |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0)
+				return n;
+		}
+		throw new IOException("Malformed spray path");
+	}
+}
@@ -0,0 +1,30 @@
+#!/bin/sh
+# Makes the class data sharing archive described under "Startup time" in README.md.  Compiles the project into bin and
+# packs it into javapaint.jar (the JVM only archives classes loaded from jars, and refuses a classpath with a non-empty
+# directory on it), then does the training run: JavaPaint is started with -Djavapaint.exitAfterStartup=true, so it exits
+# as soon as the first frame has been painted, and the JVM writes the classes it loaded to the archive.  Needs Java 13 or
+# later and a display.  Run it again whenever the classes or the Java version change.
+#
+# Usage: tools/make-cds.sh [archive]
+#   archive  the file to write, relative to the project directory (javapaint.jsa by default)
+
+set -e
+
+# the program loads its images relative to the project directory
+cd "$(dirname "$0")/.."
+
+ARCHIVE=${1:-javapaint.jsa}
+
+mkdir -p bin
+javac -nowarn -d bin $(find src -name '*.java')
+jar cf javapaint.jar -C bin .
+
+rm -f "$ARCHIVE"
+java -XX:ArchiveClassesAtExit="$ARCHIVE" -Djavapaint.exitAfterStartup=true -cp javapaint.jar waldonsm.paint.Main
+
+if [ ! -f "$ARCHIVE" ]; then
+	echo "The training run did not write $ARCHIVE" >&2
+	exit 1
+fi
+echo "Wrote $ARCHIVE, start JavaPaint with:"
+echo "    java -XX:SharedArchiveFile=$ARCHIVE -cp javapaint.jar waldonsm.paint.Main"